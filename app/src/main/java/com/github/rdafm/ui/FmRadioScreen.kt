@@ -75,9 +75,14 @@ import androidx.compose.ui.unit.sp
 import androidx.core.content.edit
 import coil3.compose.AsyncImage
 import com.service.fm.FmReceiver
+import com.service.fm.StationStore
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.sample
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
 
 
 @OptIn(ExperimentalMaterial3Api::class, ExperimentalMaterial3ExpressiveApi::class)
@@ -89,7 +94,16 @@ fun FmRadioScreen() {
 
 
     val sp = remember { context.getSharedPreferences("fm", Context.MODE_PRIVATE) }
-    val fmReceiver = remember { FmReceiver() }
+    // opened off the main thread below, null until then
+    var store by remember { mutableStateOf<StationStore?>(null) }
+    val fmReceiver = remember {
+        FmReceiver().apply {
+            isTuneCoalescing = true
+            // pause/play toggles resume from standby instead of a full power up
+            standbyTimeout = 60_000
+        }
+    }
+    // settings saved by older versions in SharedPreferences serve as defaults
     var volume by remember { mutableStateOf(sp.getFloat("volume", 0f)) }
     var freq by remember { mutableStateOf(sp.getInt("freq", 9870)) }
     var power by remember { mutableStateOf(fmReceiver.radioIsOn) }
@@ -102,25 +116,40 @@ fun FmRadioScreen() {
     val scaffoldState = rememberBottomSheetScaffoldState()
 
     LaunchedEffect(Unit) {
-        launch(Dispatchers.IO) {
-            val storedList = sp.getStringSet("freqStars", null) ?: emptySet()
-            storedList.mapIndexedTo(freqStars) { index, value -> value.toInt() }
-        }
-        launch(Dispatchers.IO) {
-            snapshotFlow { freq }
-                .sample(100)
-                .collect {
-                    fmReceiver.tuneRadio(it)
-                    sp.edit { putInt("freq", it) }
+        val opened = withContext(Dispatchers.IO) { StationStore.open(File(context.filesDir, "stations.bin")) }
+        try {
+            volume = opened.getFloatSetting(StationStore.SETTING_VOLUME, volume)
+            freq = opened.getSetting(StationStore.SETTING_FREQUENCY, freq)
+            store = opened
+            // returns only once every writer below has finished, also when cancelled
+            coroutineScope {
+                launch(Dispatchers.IO) {
+                    sp.getStringSet("freqStars", null)?.let { stored ->
+                        stored.forEach { opened.setFavorite(it.toInt(), true) }
+                        sp.edit { remove("freqStars") }
+                    }
+                    freqStars.addAll(opened.favorites.toList())
                 }
-        }
-        launch(Dispatchers.IO) {
-            snapshotFlow { volume }
-                .sample(100)
-                .collect {
-                    fmReceiver.setFMVolume((it * 10).toInt())
-                    sp.edit { putFloat("volume", it) }
+                launch(Dispatchers.IO) {
+                    snapshotFlow { freq }
+                        .sample(100)
+                        .collect {
+                            fmReceiver.tuneRadio(it)
+                            opened.putSetting(StationStore.SETTING_FREQUENCY, it)
+                        }
                 }
+                launch(Dispatchers.IO) {
+                    snapshotFlow { volume }
+                        .sample(100)
+                        .collect {
+                            fmReceiver.setFMVolume((it * 10).toInt())
+                            opened.putFloatSetting(StationStore.SETTING_VOLUME, it)
+                        }
+                }
+            }
+        } finally {
+            store = null
+            withContext(NonCancellable + Dispatchers.IO) { opened.close() }
         }
     }
 
@@ -225,16 +254,15 @@ fun FmRadioScreen() {
                     FilledTonalIconToggleButton(
                         freq in freqStars,
                         {
-                            if (freq in freqStars) {
-                                freqStars.remove(freq)
-                            } else {
-                                freqStars.add(freq)
+                            store?.let {
+                                if (it.toggleFavorite(freq)) {
+                                    freqStars.add(freq)
+                                } else {
+                                    freqStars.remove(freq)
+                                }
                             }
-                            val destination = mutableSetOf<String>()
-                            freqStars.mapIndexedTo(destination) { index, value -> value.toString() }
-                            sp.edit { putStringSet("freqStars", destination) }
                         },
-                        enabled = power && !loading,
+                        enabled = power && !loading && store != null,
                     ) {
                         if (freq in freqStars) {
                             Icon(Icons.Rounded.Star, null)
@@ -293,14 +321,18 @@ fun FmRadioScreen() {
                     FilledIconButton(
                         {
                             launch {
-                                val state = if (power) fmReceiver.turnOffRadio() else fmReceiver.turnOnRadio()
-                                if (state == 0) {
-                                    power = !power
-                                    if (power) {
-                                        fmReceiver.tuneRadio(freq)
-                                        fmReceiver.setFMVolume((volume * 10).toInt())
-                                    }
+                                val state = if (power) {
+                                    fmReceiver.turnOffRadio()
                                 } else {
+                                    // power, frequency and volume in one driver call
+                                    fmReceiver.transaction()
+                                        .powerOn()
+                                        .tune(freq)
+                                        .volume((volume * 10).toInt())
+                                        .execute()
+                                }
+                                power = fmReceiver.radioIsOn
+                                if (state != 0) {
                                     scaffoldState.snackbarHostState.showSnackbar("FM收音机打开失败 错误代码:${state}")
                                 }
                             }
@@ -0,0 +1,28 @@
+plugins {
+    id("java")
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Builds the :fm Java sources for the host JVM. The few android.* classes they
+// use are provided by the host shims in src/main/java; the tuner is the
+// in-process SimulatedTunerBackend, so librdafmradio is never loaded.
+sourceSets {
+    main {
+        java.srcDir("../fm/src/main/java")
+    }
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+}
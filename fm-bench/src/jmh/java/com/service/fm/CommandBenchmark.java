@@ -0,0 +1,106 @@
+package com.service.fm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate of the synchronized command methods, alone and with tune and volume
+ * commands racing for the receiver's monitor. Run with the gc profiler (the
+ * default of this module) for the per-command allocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommandBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Receiver {
+
+        /** Latency of one tune ioctl on the simulated chip, in microseconds. */
+        @Param({"0", "20"})
+        public int tuneLatencyUs;
+
+        @Param({"false", "true"})
+        public boolean coalescing;
+
+        FmReceiver receiver;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SimulatedTunerBackend backend = new SimulatedTunerBackend(1)
+                    .addStation(9870, 60, 0x1234, 10, "BENCH", "Benchmark")
+                    .setLatency(SimulatedTunerBackend.Op.TUNE, tuneLatencyUs, TimeUnit.MICROSECONDS);
+            receiver = new FmReceiver(backend);
+            receiver.turnOnRadio();
+            receiver.setTuneCoalescing(coalescing);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            receiver.turnOffRadio();
+            receiver.finish();
+        }
+    }
+
+    /** Walks each thread through the band so no two calls are identical. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int channel;
+        int volume;
+
+        int nextFreq() {
+            channel = (channel + 1) % 200;
+            return SimulatedTunerBackend.BAND_LOW + channel * SimulatedTunerBackend.CHANNEL_SPACING;
+        }
+
+        int nextVolume() {
+            volume = (volume + 1) & FmReceiver.FM_VOLUME_MAX;
+            return volume;
+        }
+    }
+
+    @Benchmark
+    public int tune(Receiver r, Cursor c) {
+        return r.receiver.tuneRadio(c.nextFreq());
+    }
+
+    @Benchmark
+    public int volume(Receiver r, Cursor c) {
+        return r.receiver.setFMVolume(c.nextVolume());
+    }
+
+    @Benchmark
+    public int mute(Receiver r, Cursor c) {
+        return r.receiver.muteAudio((c.nextVolume() & 1) != 0);
+    }
+
+    @Benchmark
+    public int status(Receiver r) {
+        return r.receiver.getStatus();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public int contendedTune(Receiver r, Cursor c) {
+        return r.receiver.tuneRadio(c.nextFreq());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public int contendedVolume(Receiver r, Cursor c) {
+        return r.receiver.setFMVolume(c.nextVolume());
+    }
+}
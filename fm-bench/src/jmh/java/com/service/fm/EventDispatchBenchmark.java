@@ -0,0 +1,179 @@
+package com.service.fm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting an event to the application: posting into the event ring
+ * from one and from four producers, the round trip through the dispatcher
+ * thread, and, for comparison, the actionsEqual() chain the broadcast intent
+ * path used to pick a handler method.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventDispatchBenchmark {
+
+    /** Counts deliveries; the handler runs on the dispatcher thread. */
+    static final class CountingHandler implements IFmReceiverEventHandler {
+        volatile long delivered;
+
+        private void count() {
+            delivered++;
+        }
+
+        @Override
+        public void onStatusEvent(int freq, int rssi, boolean radioIsOn, int rdsProgramType, boolean isMute) {
+            count();
+        }
+
+        @Override
+        public void onSeekCompleteEvent(int freq, int rssi, boolean success) {
+            count();
+        }
+
+        @Override
+        public void onRdsModeEvent(int rdsMode, int alternateFreqHopEnabled) {
+            count();
+        }
+
+        @Override
+        public void onRdsDataEvent(int rdsDataType, int rdsIndex, char[] text, int length) {
+            count();
+        }
+
+        @Override
+        public void onAudioModeEvent(int audioMode) {
+            count();
+        }
+
+        @Override
+        public void onAudioPathEvent(int audioPath) {
+            count();
+        }
+
+        @Override
+        public void onEstimateNoiseFloorLevelEvent(int nfl) {
+            count();
+        }
+
+        @Override
+        public void onLiveAudioQualityEvent(int rssi) {
+            count();
+        }
+
+        @Override
+        public void onWorldRegionEvent(int worldRegion) {
+            count();
+        }
+
+        @Override
+        public void onVolumeEvent(int status, int volume) {
+            count();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dispatcher {
+        final FmReceiverStats stats = new FmReceiverStats();
+        final CountingHandler handler = new CountingHandler();
+        final char[] text = "Benchmark radio text".toCharArray();
+        FmEventDispatcher dispatcher;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            dispatcher = new FmEventDispatcher(stats);
+            dispatcher.setHandler(handler);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            dispatcher.finish();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Actions {
+        private static final int PREFIX_LENGTH = "com.app.fm.action.".length();
+
+        /* Copies, so the comparison cannot short-cut on identity. */
+        final String[] received = {
+                new String(FmReceiver.ACTION_ON_STATUS),
+                new String(FmReceiver.ACTION_ON_RDS_DATA),
+                new String(FmReceiver.ACTION_ON_AUDIO_QUAL),
+                new String(FmReceiver.ACTION_ON_WRLD_RGN),
+        };
+        int next;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean post(Dispatcher d) {
+        return d.dispatcher.post(FmEventDispatcher.TYPE_VOLUME, 0, 10, 0, 0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean postText(Dispatcher d) {
+        return d.dispatcher.postText(FmEventDispatcher.TYPE_RDS_DATA, RdsDecoder.FIELD_RT, 0, d.text,
+                d.text.length);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Group("producers4")
+    @GroupThreads(4)
+    public boolean postContended(Dispatcher d) {
+        return d.dispatcher.post(FmEventDispatcher.TYPE_LIVE_AUDIO_QUALITY, 40, 0, 0, 0);
+    }
+
+    /** One event from post() to the handler, with the dispatcher parked in between. */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public long roundTrip(Dispatcher d) {
+        long target = d.handler.delivered + 1;
+        while (!d.dispatcher.post(FmEventDispatcher.TYPE_VOLUME, 0, 10, 0, 0)) {
+            Thread.onSpinWait();
+        }
+        while (d.handler.delivered < target) {
+            Thread.onSpinWait();
+        }
+        return target;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void actionsEqualChain(Actions a, Blackhole bh) {
+        String action = a.received[a.next++ & 3];
+        int n = Actions.PREFIX_LENGTH;
+        if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_STATUS, action, n)) {
+            bh.consume(0);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_AUDIO_MODE, action, n)) {
+            bh.consume(1);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_AUDIO_PATH, action, n)) {
+            bh.consume(2);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_AUDIO_QUAL, action, n)) {
+            bh.consume(3);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_EST_NFL, action, n)) {
+            bh.consume(4);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_RDS_DATA, action, n)) {
+            bh.consume(5);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_RDS_MODE, action, n)) {
+            bh.consume(6);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_SEEK_CMPL, action, n)) {
+            bh.consume(7);
+        } else if (FmReceiver.actionsEqual(FmReceiver.ACTION_ON_WRLD_RGN, action, n)) {
+            bh.consume(8);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.service.fm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of state reads while a slow seek holds the receiver. The band has
+ * two stations far apart and every seek step costs 100 us, so each seek runs
+ * for about 10 ms; the readers show whether they queue up behind it.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+public class SeekContentionBenchmark {
+
+    FmReceiver receiver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulatedTunerBackend backend = new SimulatedTunerBackend(1)
+                .addStation(8800, 60)
+                .addStation(10000, 60)
+                .setLatency(SimulatedTunerBackend.Op.SEEK_STEP, 100, TimeUnit.MICROSECONDS);
+        receiver = new FmReceiver(backend);
+        receiver.turnOnRadio();
+        receiver.tuneRadio(8800);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        receiver.turnOffRadio();
+        receiver.finish();
+    }
+
+    @Benchmark
+    @Group("seek")
+    @GroupThreads(1)
+    public int seek() {
+        return receiver.seekStation(FmReceiver.SCAN_MODE_UP);
+    }
+
+    @Benchmark
+    @Group("seek")
+    @GroupThreads(3)
+    public boolean radioIsOn() {
+        return receiver.getRadioIsOn();
+    }
+
+    @Benchmark
+    @Group("seek")
+    @GroupThreads(1)
+    public int status() {
+        return receiver.getStatus();
+    }
+
+    @Benchmark
+    @Group("seek")
+    @GroupThreads(1)
+    public int snapshot() {
+        return receiver.getStatusSnapshot().getFreq();
+    }
+}
@@ -0,0 +1,69 @@
+package com.service.fm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the station table operations a UI performs on every frame or
+ * click, with a table holding every 100 kHz channel of the band.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class StationStoreBenchmark {
+
+    private File mFile;
+    private StationStore mStore;
+    private int mChannel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("stations", ".bin");
+        mStore = StationStore.open(mFile);
+        for (int freq = 8750; freq <= 10800; freq += 10) {
+            mStore.updateSignal(freq, 40, 0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mStore.close();
+        mFile.delete();
+    }
+
+    private int nextFreq() {
+        mChannel = (mChannel + 1) % 206;
+        return 8750 + mChannel * 10;
+    }
+
+    @Benchmark
+    public boolean isFavorite() {
+        return mStore.isFavorite(nextFreq());
+    }
+
+    @Benchmark
+    public boolean toggleFavorite() {
+        return mStore.toggleFavorite(nextFreq());
+    }
+
+    @Benchmark
+    public void putSetting() {
+        mStore.putSetting(StationStore.SETTING_FREQUENCY, nextFreq());
+    }
+
+    @Benchmark
+    public int[] getFavorites() {
+        return mStore.getFavorites();
+    }
+}
@@ -0,0 +1,61 @@
+package com.service.fm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of a full band sweep by spacing, with every tune costing what it does
+ * on the chip. The 200 kHz sweep is the coarse pass alone; the 100 and 50
+ * kHz ones add only the reads around the stations, so they should take
+ * little more, not two and four times as long.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SweepBenchmark {
+
+    /** Channel spacing of the band plan, in 10 kHz units. */
+    @Param({"20", "10", "5"})
+    public int spacing;
+
+    /** Latency of one tune ioctl on the simulated chip, in microseconds. */
+    @Param({"200"})
+    public int tuneLatencyUs;
+
+    FmReceiver receiver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulatedTunerBackend backend = new SimulatedTunerBackend(1)
+                .setLatency(SimulatedTunerBackend.Op.TUNE, tuneLatencyUs, TimeUnit.MICROSECONDS);
+        // a busy city band, a station every 1.3 MHz
+        for (int freq = 8790; freq < SimulatedTunerBackend.BAND_HIGH; freq += 130) {
+            backend.addStation(freq, 40 + freq % 20);
+        }
+        receiver = new FmReceiver(backend);
+        receiver.turnOnRadio();
+        receiver.tuneRadio(9870);
+        receiver.setBandPlan(FmBandPlan.of(FmBandPlan.BAND_UE, spacing, FmReceiver.DEEMPHASIS_TIME_DEFAULT));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        receiver.turnOffRadio();
+        receiver.finish();
+    }
+
+    @Benchmark
+    public int[] sweep() {
+        return receiver.sweepBand(FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, null);
+    }
+}
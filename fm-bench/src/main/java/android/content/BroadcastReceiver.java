@@ -0,0 +1,5 @@
+package android.content;
+
+/** Host shim of android.content.BroadcastReceiver. */
+public abstract class BroadcastReceiver {
+}
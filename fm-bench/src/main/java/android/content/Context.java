@@ -0,0 +1,8 @@
+package android.content;
+
+/** Host shim of android.content.Context. */
+public abstract class Context {
+
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+    }
+}
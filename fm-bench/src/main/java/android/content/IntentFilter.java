@@ -0,0 +1,18 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Host shim of android.content.IntentFilter. */
+public class IntentFilter {
+
+    private final List<String> mActions = new ArrayList<>();
+
+    public final void addAction(String action) {
+        mActions.add(action);
+    }
+
+    public final int countActions() {
+        return mActions.size();
+    }
+}
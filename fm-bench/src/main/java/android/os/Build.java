@@ -0,0 +1,15 @@
+package android.os;
+
+/** Host shim of android.os.Build, only the constants the fm library uses. */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static final class VERSION_CODES {
+        public static final int N = 24;
+
+        private VERSION_CODES() {
+        }
+    }
+}
@@ -35,12 +35,16 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // the receiver logs through android.util.Log, a stub on the host
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
 //    implementation(libs.androidx.appcompat)
 //    implementation(libs.material)
-//    testImplementation(libs.junit)
+    testImplementation(libs.junit)
 //    androidTestImplementation(libs.androidx.junit)
 //    androidTestImplementation(libs.androidx.espresso.core)
 }
\ No newline at end of file
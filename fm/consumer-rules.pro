@@ -0,0 +1,3 @@
+# Methods called back from librdafmradio by name.
+-keep interface com.service.fm.IFmScanListener { *; }
+-keep interface com.service.fm.IFmSignalListener { *; }
@@ -74,6 +74,25 @@ struct fm_rssi_req{
     struct fm_ch_rssi cr[16*16];
 };
 
+#define RDS_RAW_DATA_LEN	146
+
+struct rds_raw_data {
+    int dirty; // indicate if the data changed or not
+    int len; // the data len from chip
+    uint8_t data[RDS_RAW_DATA_LEN];
+};
+
+struct rds_group_cnt {
+    unsigned long total;
+    unsigned long groupA[16]; // RDS groupA counter
+    unsigned long groupB[16]; // RDS groupB counter
+};
+
+struct rds_group_cnt_req {
+    int err;
+    struct rds_group_cnt gc;
+};
+
 struct fm_rds_tx_parm {
     uint8_t err;
     uint16_t pi;
@@ -4,12 +4,18 @@
 #include <fcntl.h>
 #include <errno.h>
 #include <string.h>
+#include <stdlib.h>
+#include <stdint.h>
 #include <linux/ioctl.h>
 #include <android/log.h>
 #include "fmradio_jni.h"
 
 #include <fcntl.h> // for open
 #include <unistd.h> // for close
+#include <poll.h>
+#include <pthread.h>
+#include <sys/eventfd.h>
+#include <sys/timerfd.h>
 
 #define USE_FM_NEW_DRIVER	1  //1 -- use new driver; 0 -- use old driver
 
@@ -19,11 +25,12 @@
 #include "fm_cust_cfg.h"
 #else
 #include "fmradio_ioctl.h"
-#define	FMRADIO_DEVNAME		"/dev/RDAFM"
+/* band plan numbering of fm_cust_cfg.h; the old driver has one fixed band */
+#define FM_BAND_UE	1
+#define FM_SPACE_100K	1
+#define FM_SPACE_200K	2
 #endif
 
-#define	FM_DEVICE_NAME		"/dev/RDAFM"
-
 
 #define	audioPath_DEVNAME	\
 "/sys/devices/platform/lm49350-user-interface/Fm_route_switch"
@@ -37,47 +44,309 @@
 	__android_log_print(ANDROID_LOG_DEBUG, LOGTAG, \
 		"%s: %d: %s", __func__, __LINE__, str)
 
+/*
+ * Single-producer/single-consumer ring of raw RDS groups, laid over a direct
+ * ByteBuffer owned by Java. head and tail are free running 31-bit counters;
+ * head is only written by the reader thread, tail only by the Java consumer.
+ */
+struct rds_ring {
+	uint32_t head;
+	uint32_t tail;
+	uint32_t capacity;	/* in groups, a power of two */
+	uint32_t overruns;	/* groups dropped because the ring was full */
+	uint8_t data[];
+};
+
+#define RDS_RING_INDEX_MASK	0x7FFFFFFF
+/* pause after a wakeup without data, in case the driver lacks poll support */
+#define RDS_IDLE_BACKOFF_MS	20
+
+struct RdsReader {
+	pthread_t thread;
+	int running;
+	int pausing;	/* the thread exits for a session reset, the stream goes on */
+	int stopfd;	/* eventfd, tells the reader thread to exit */
+	int datafd;	/* eventfd, wakes the Java consumer */
+	struct rds_ring *ring;
+};
+
+/*
+ * Periodic signal quality sampler. Each sample packs RSSI, stereo state,
+ * PAMD and block error ratio into a jlong, 16 bits each from the low end.
+ */
+struct SignalPoller {
+	pthread_t thread;
+	int running;
+	int stopfd;	/* eventfd, tells the poller thread to exit */
+	int intervalMs;
+	int delta;	/* least change of RSSI, PAMD or BLER worth reporting */
+	JavaVM *vm;
+	jobject receiver;	/* the IFmSignalListener sink, global reference */
+	jmethodID onSignalSample;
+};
+
+/*
+ * One tuner. Each NativeTunerBackend owns one, created by createNative() and
+ * handed to Java as a jlong; tuners on different device nodes share nothing.
+ */
 struct FMRadio {
 	int fmfd;
-	int volume;
+	int volume;	/* last volume set, -1 if none */
+	int muted;
+	int mono;	/* 1 while stereo is forced off */
+	int rdsOn;
 	int audioPath;
 	int freq;
+	int band;	/* band plan set by setBandNative(): FM_BAND_*, */
+	int space;	/* FM_SPACE_* */
+	int low;	/* and the edges, in 100 kHz units */
+	int high;
+	volatile int scanAbort;
+	struct RdsReader rds;
+	struct SignalPoller signal;
+	char devicePath[];
 };
-static struct FMRadio fmradio = {-1, 0, 0, 875};
 
-static int openFmRadio() {
+static void stopRdsReader(struct FMRadio *radio);
+static void stopSignalPoller(struct FMRadio *radio, JNIEnv *env);
+#if USE_FM_NEW_DRIVER
+static int pauseRdsReader(struct FMRadio *radio);
+static void resumeRdsReader(struct FMRadio *radio);
+static int resumeSignalPoller(struct FMRadio *radio);
+#endif
+
+static struct FMRadio *radioOf(jlong handle) {
+	return (struct FMRadio *) (intptr_t) handle;
+}
+
+#if USE_FM_NEW_DRIVER
+/* number of channels covered by the fm_scan_parm.ScanTBL bitmap */
+#define FM_SCAN_TBL_CHANNELS	(16 * 16)
+#else
+#define FM_SCAN_TBL_CHANNELS	256
+#endif
+
+/* one raw RDS group: blocks A, B, C and D, 16 bits each, big-endian */
+#define RDS_GROUP_SIZE		8
+
+/* command program opcodes, as in FmTransaction */
+#define TX_OP_NOP		0
+#define TX_OP_POWER_ON		1
+#define TX_OP_TUNE		2
+#define TX_OP_VOLUME		3
+#define TX_OP_MUTE		4
+#define TX_OP_AUDIO_PATH	5
+/* FmTransaction.MAX_OPS and FmTransaction.NOT_RUN */
+#define TX_MAX_OPS		32
+#define TX_NOT_RUN		INT32_MIN
+
+#if USE_FM_NEW_DRIVER
+/*
+ * The edges of a driver band in 100 kHz units. Scan table channels count
+ * from the lower one; FM_BAND_SPECIAL spans the range the driver was built
+ * with. Returns 0, or -1 for an unknown band.
+ */
+static int bandEdges(int band, int *low, int *high) {
+	switch (band) {
+	case FM_BAND_UE:
+		*low = 875;
+		*high = 1080;
+		return 0;
+	case FM_BAND_JAPAN:
+		*low = 760;
+		*high = 900;
+		return 0;
+	case FM_BAND_JAPANW:
+		*low = 760;
+		*high = 1080;
+		return 0;
+	case FM_BAND_SPECIAL:
+		*low = FM_RX_BAND_FREQ_L;
+		*high = FM_RX_BAND_FREQ_H;
+		return 0;
+	default:
+		return -1;
+	}
+}
+#endif
+
+static int openFmRadio(struct FMRadio *radio) {
 	int fd;
 
 #if USE_FM_NEW_DRIVER
-	fd = open(FM_DEVICE_NAME, O_RDWR);
+	fd = open(radio->devicePath, O_RDWR);
 	if(fd  < 0){ 
-		LOGE("FAIL open %s failed\n", FM_DEVICE_NAME);
+		LOGE("FAIL open %s failed\n", radio->devicePath);
 		return -1; 
 	}
 #else
-	LOGD("Open: %s", FMRADIO_DEVNAME);
-	if ((fd = open(FMRADIO_DEVNAME, O_RDONLY)) < 0) {
-		LOGE("%s: %d: %s", FMRADIO_DEVNAME, errno, strerror(errno));
+	LOGD("Open: %s", radio->devicePath);
+	if ((fd = open(radio->devicePath, O_RDONLY)) < 0) {
+		LOGE("%s: %d: %s", radio->devicePath, errno, strerror(errno));
 		return -1;
 	}
 #endif
 
-	fmradio.fmfd = fd;
-	LOGD("fmradio.fmfd = %d", fmradio.fmfd);
+	radio->fmfd = fd;
+	LOGD("fmfd = %d", radio->fmfd);
 	return 0;
 }
 
-static int closeFmRadio() {
-	LOGD("fmradio.fmfd = %d", fmradio.fmfd);
-	if (fmradio.fmfd > 0) {
-		LOGI("close fmradio.fmfd");
-		close(fmradio.fmfd);
-		fmradio.fmfd = -1;
+static int closeFmRadio(struct FMRadio *radio) {
+	LOGD("fmfd = %d", radio->fmfd);
+	stopRdsReader(radio);
+	stopSignalPoller(radio, NULL);
+	if (radio->fmfd > 0) {
+		LOGI("close fmfd");
+		close(radio->fmfd);
+		radio->fmfd = -1;
 	}
 	return 0;
 }
 
-static int switchAudioPath(int audioPath) {
+#if USE_FM_NEW_DRIVER
+/* how often a busy request is retried, and the first pause, doubled each time */
+#define SESSION_RETRIES		3
+#define SESSION_BACKOFF_US	2000
+
+enum {
+	SESSION_REJECTED,	/* the driver refused the request, the chip is fine */
+	SESSION_BUSY,		/* the chip is busy, the request may succeed later */
+	SESSION_RESET,		/* the device is wedged and has to be opened again */
+};
+
+/*
+ * Classifies a failed request from errno and, for requests carrying one,
+ * the error the driver left in the parameters: it may report FM_BUSY
+ * there under an errno of its own, such as EPERM.
+ */
+static int classifyError(int err, int parmErr) {
+	if (parmErr == FM_BUSY) {
+		return SESSION_BUSY;
+	}
+	switch (err) {
+	case EBUSY:
+	case EAGAIN:
+	case EINTR:
+	case ETIMEDOUT:
+		return SESSION_BUSY;
+	case EIO:
+	case ENODEV:
+	case ENXIO:
+	case EBADF:
+	case EPIPE:
+		return SESSION_RESET;
+	default:
+		return SESSION_REJECTED;
+	}
+}
+
+/*
+ * Issues an ioctl, retrying busy failures with exponential backoff. parmErr
+ * points at the err field of the request's parameters, NULL if it has none.
+ * Returns 0, or -1 with errno and *parmErr set by the last attempt.
+ */
+static int busyIoctl(struct FMRadio *radio, unsigned long request, void *arg, uint8_t *parmErr) {
+	useconds_t backoff = SESSION_BACKOFF_US;
+	int attempt;
+
+	for (attempt = 0;; attempt++) {
+		if (parmErr != NULL) {
+			*parmErr = FM_SUCCESS;
+		}
+		if (ioctl(radio->fmfd, request, arg) == 0) {
+			return 0;
+		}
+		if (attempt == SESSION_RETRIES
+				|| classifyError(errno, parmErr != NULL ? *parmErr : FM_SUCCESS) != SESSION_BUSY) {
+			return -1;
+		}
+		LOGD("busy, retry %d in %u us", attempt + 1, (unsigned) backoff);
+		usleep(backoff);
+		backoff *= 2;
+	}
+}
+
+/*
+ * Opens the device again and restores the last frequency, volume, mute,
+ * mono and RDS state. The RDS reader and signal poller are carried over, so their
+ * consumers see no gap but the groups and samples missed meanwhile. On
+ * failure the session is closed. Returns 0 on success, -1 otherwise.
+ */
+static int resetSession(struct FMRadio *radio) {
+	struct fm_tune_parm parm;
+	uint32_t muted = radio->muted;
+	uint16_t onoff = FM_RDS_ENABLE;
+	int volume = radio->volume;
+	int rds = pauseRdsReader(radio);
+	int signal = radio->signal.running;
+
+	LOGE("resetting %s\n", radio->devicePath);
+	stopSignalPoller(radio, NULL);
+	close(radio->fmfd);
+	radio->fmfd = -1;
+	if (openFmRadio(radio) < 0) {
+		goto fail;
+	}
+
+	memset(&parm, 0, sizeof(struct fm_tune_parm));
+	parm.band = radio->band;
+	parm.freq = radio->freq;
+	parm.hilo = FM_AUTO_HILO_OFF;
+	parm.space = radio->space;
+	if (busyIoctl(radio, FM_IOCTL_POWERUP, &parm, &parm.err)
+			|| (volume >= 0 && busyIoctl(radio, FM_IOCTL_SETVOL, &volume, NULL))
+			|| (muted && busyIoctl(radio, FM_IOCTL_MUTE, &muted, NULL))
+			|| (radio->mono && busyIoctl(radio, FM_IOCTL_SETMONOSTERO, (void *) (intptr_t) 1, NULL))
+			|| (radio->rdsOn && busyIoctl(radio, FM_IOCTL_RDS_ONOFF, &onoff, NULL))) {
+		LOGE("replay failed: %d: %s", errno, strerror(errno));
+		goto fail;
+	}
+
+	if (rds) {
+		resumeRdsReader(radio);
+	}
+	if (signal && resumeSignalPoller(radio)) {
+		LOGE("signal poller lost\n");
+	}
+	LOGD("session reset on %s", radio->devicePath);
+	return 0;
+
+fail:
+	closeFmRadio(radio);
+	return -1;
+}
+
+/*
+ * Issues a state changing ioctl. Busy failures are retried; a failure that
+ * points at a wedged device resets the session and tries once more. The
+ * session is only closed when the device cannot be brought back, a rejected
+ * request leaves it as it was. parmErr is as for busyIoctl(). Returns 0, or
+ * -1 with errno set.
+ */
+static int sessionIoctl(struct FMRadio *radio, unsigned long request, void *arg, uint8_t *parmErr) {
+	int err;
+
+	if (busyIoctl(radio, request, arg, parmErr) == 0) {
+		return 0;
+	}
+	err = errno;
+	if (classifyError(err, parmErr != NULL ? *parmErr : FM_SUCCESS) == SESSION_RESET && resetSession(radio) == 0) {
+		if (busyIoctl(radio, request, arg, parmErr) == 0) {
+			return 0;
+		}
+		err = errno;
+		if (classifyError(err, parmErr != NULL ? *parmErr : FM_SUCCESS) == SESSION_RESET) {
+			/* still wedged right after a reset, give up on the device */
+			closeFmRadio(radio);
+		}
+	}
+	errno = err;
+	return -1;
+}
+#endif
+
+static int switchAudioPath(struct FMRadio *radio, int audioPath) {
 	int fd;
 	int iAudioPath;
 	char cAudioPath;
@@ -98,56 +367,65 @@ static int switchAudioPath(int audioPath) {
 	}
 
 	if (iAudioPath) {
-		fmradio.audioPath = iAudioPath;
+		radio->audioPath = iAudioPath;
 	}
 	close(fd);
 	return 0;
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    turnOnRadioNative
- * Signature: ()I
+ * Signature: (J)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOnRadioNative(JNIEnv *env, jobject thiz) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	int ret;
 	struct fm_tune_parm parm;
 
-	if (openFmRadio() < 0) {
+	if (radio == NULL || openFmRadio(radio) < 0) {
 		return -1;
 	}
 
 	memset(&parm, 0, sizeof(struct fm_tune_parm));
 
-	parm.band = FM_BAND_UE;
-	parm.freq = fmradio.freq;
+	parm.band = radio->band;
+	parm.freq = radio->freq;
 	parm.hilo = FM_AUTO_HILO_OFF;
-	parm.space = FM_SPACE_100K;
+	parm.space = radio->space;
 
-	ret = ioctl(fmradio.fmfd, FM_IOCTL_POWERUP, &parm);
+	ret = ioctl(radio->fmfd, FM_IOCTL_POWERUP, &parm);
 	if(ret){
 		LOGE("FAIL:%d:%d\n", ret, parm.err);
-		closeFmRadio();
+		closeFmRadio(radio);
 		return -1;
 	}
+	/* a fresh power up, nothing to replay yet */
+	radio->volume = -1;
+	radio->muted = 0;
+	radio->mono = 0;
+	radio->rdsOn = 0;
 	return 0;
 #else
 	jint ret = 0;
 	int turnOn = 1;
 
 	LOGI("init fmradio");
-	fmradio.fmfd = -1;
+	if (radio == NULL) {
+		return -1;
+	}
+	radio->fmfd = -1;
 	
-	if (openFmRadio() < 0) {
+	if (openFmRadio(radio) < 0) {
 		return -1;
 	}
 
 	LOGI("ioctl set enable");
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_SET_ENABLE, &turnOn) < 0) {
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_SET_ENABLE, &turnOn) < 0) {
 		LOGE("set enable failed: %d: %s", errno, strerror(errno));
-		close(fmradio.fmfd);
-		fmradio.fmfd = -1;
+		close(radio->fmfd);
+		radio->fmfd = -1;
 		return -1;
 	}
 
@@ -157,45 +435,49 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOnRadioNative(JNIEnv *
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    turnOffRadioNative
- * Signature: ()I
+ * Signature: (J)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOffRadioNative(JNIEnv *env, jobject thiz) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	int ret;
 
-	if(fmradio.fmfd < 0){ 
+	if(radio == NULL || radio->fmfd < 0){ 
 		LOGE("WARN fd unavailable\n");
 		return -2;
 	} 
 
-	ret = ioctl(fmradio.fmfd, FM_IOCTL_POWERDOWN, NULL);
+	ret = ioctl(radio->fmfd, FM_IOCTL_POWERDOWN, NULL);
 	if(ret){
 		LOGE("FAIL:%d\n", ret);
-		closeFmRadio();
+		closeFmRadio(radio);
 		return -1;
 	} 
-	closeFmRadio();
+	closeFmRadio(radio);
 
 	return 0;
 #else
 	jint ret = 0;
 	int turnOff = 0;
 
-	if (fmradio.fmfd < 0) {
-		LOGD("fmradio.fmfd = %d", fmradio.fmfd);
+	if (radio == NULL) {
+		return 0;
+	}
+	if (radio->fmfd < 0) {
+		LOGD("fmfd = %d", radio->fmfd);
 		return 0;
 	}
 
 	LOGI("set disable");
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_SET_ENABLE, &turnOff) < 0) {
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_SET_ENABLE, &turnOff) < 0) {
 		// LOGE("set disable failed: %d: %s", errno, strerror(errno));
 		LOGI("set disable failed");
-		closeFmRadio();
+		closeFmRadio(radio);
 		return -1;
 	}
-	closeFmRadio();
+	closeFmRadio(radio);
 
 	LOGD("set disable ok");
 	return ret;
@@ -203,46 +485,47 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOffRadioNative(JNIEnv
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    tuneRadioNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_tuneRadioNative(JNIEnv *env, jobject thiz, jint freq) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_tuneRadioNative(JNIEnv *env, jclass clazz, jlong handle, jint freq) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	int ret;
 	struct fm_tune_parm parm;
 
-	if(fmradio.fmfd < 0){
+	if(radio == NULL || radio->fmfd < 0){
 		LOGE("WARN fd unavailable\n");
 		return -2;
 	}
 
 	memset(&parm, 0, sizeof(struct fm_tune_parm));
 
-	parm.band = FM_BAND_UE;
+	parm.band = radio->band;
 	parm.freq = (freq / 10);
 	parm.hilo = FM_AUTO_HILO_OFF;
-	parm.space = FM_SPACE_100K;
-	fmradio.freq = parm.freq;
+	parm.space = radio->space;
 
-	ret = ioctl(fmradio.fmfd, FM_IOCTL_TUNE, &parm);
+	ret = sessionIoctl(radio, FM_IOCTL_TUNE, &parm, &parm.err);
 	if(ret){
-		LOGE("FAIL:%d:%d\n", ret, parm.err);
-		closeFmRadio();
+		LOGE("FAIL:%d:%d: %s\n", ret, parm.err, strerror(errno));
 		return -1;
 	}
+	/* only a tune the chip took is replayed by a session reset */
+	radio->freq = parm.freq;
 	LOGE("OK:%d\n", parm.freq);
 	return 0;
 #else
 	jint ret = 0;
 	uint16_t sfreq = freq / 10;
 
-	LOGD("tuneRadioNative fmfd = %d, freq = %d", fmradio.fmfd, sfreq);
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_SET_TUNE, &sfreq) < 0) {
+	LOGD("tuneRadioNative fmfd = %d, freq = %d", radio->fmfd, sfreq);
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_SET_TUNE, &sfreq) < 0) {
 		LOGE("set tune failed: %d: %s", errno, strerror(errno));
 		return -1;
 	}
-	fmradio.freq = sfreq;
+	radio->freq = sfreq;
 	LOGI("set tune ok");
 
 	return ret;
@@ -250,52 +533,161 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_tuneRadioNative(JNIEnv *en
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setBandNative
+ * Signature: (JIIII)I
+ *
+ * Sets the band plan the following power ups, tunes, seeks and scans hand to
+ * the driver. low, high and spacing are in 10 kHz units; the edges must lie
+ * in the driver band, which steps 200 kHz from its start. The driver counts
+ * in 100 kHz, so 100 and 200 kHz are the only spacings it can step. Returns
+ * 0, or -3 for a plan it cannot take.
+ *
+ * The scan table and the RSSI sweep hold FM_SCAN_TBL_CHANNELS channels from
+ * the lower band edge, which leaves out the top of a wider plan such as
+ * JAPANW in 100 kHz steps (321 channels); FmReceiver scans those plans
+ * channel by channel instead of with scanBandNative or readSpectrumNative.
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setBandNative(JNIEnv *env, jclass clazz, jlong handle, jint band, jint low, jint high, jint spacing) {
+	struct FMRadio *radio = radioOf(handle);
+	int bandLow, bandHigh;
+
+	if (radio == NULL) {
+		return -2;
+	}
+	if ((spacing != 10 && spacing != 20) || low % 10 || high % 10 || low >= high) {
+		LOGE("bad band plan %d - %d / %d\n", low, high, spacing);
+		return -3;
+	}
+#if USE_FM_NEW_DRIVER
+	if (bandEdges(band, &bandLow, &bandHigh)) {
+		return -3;
+	}
+#else
+	if (band != FM_BAND_UE || spacing != 10) {
+		return -3;
+	}
+	bandLow = 875;
+	bandHigh = 1080;
+#endif
+	if (low / 10 < bandLow || high / 10 > bandHigh || (spacing == 20 && (low / 10 - bandLow) % 2)) {
+		LOGE("band plan %d - %d outside band %d\n", low, high, band);
+		return -3;
+	}
+
+	radio->band = band;
+	radio->space = spacing == 20 ? FM_SPACE_200K : FM_SPACE_100K;
+	radio->low = low / 10;
+	radio->high = high / 10;
+	if (radio->freq < radio->low || radio->freq > radio->high) {
+		/* seeks start from here, keep it inside the plan */
+		radio->freq = radio->low;
+	}
+	LOGD("band %d: %d - %d, space %d", band, radio->low, radio->high, radio->space);
+	return 0;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    getRadioIsOnNative
- * Signature: ()Z
+ * Signature: (J)Z
  */
-JNIEXPORT jboolean JNICALL Java_com_service_fm_FmReceiver_getRadioIsOnNative(JNIEnv *env, jobject thiz) {
-	return fmradio.fmfd > 0;
+JNIEXPORT jboolean JNICALL Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+	return radio != NULL && radio->fmfd > 0;
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    isPoweredUpNative
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	uint32_t powered = 0;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		return 0;
+	}
+	if (ioctl(radio->fmfd, FM_IOCTL_IS_FM_POWERED_UP, &powered) < 0) {
+		LOGE("is powered up failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+	return powered ? 1 : 0;
+#else
+	/* the old driver cannot be asked, it is enabled while the node is open */
+	return radio != NULL && radio->fmfd >= 0;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readRssiNative
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readRssiNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	int32_t rssi = 0;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return INT32_MIN;
+	}
+	if (ioctl(radio->fmfd, FM_IOCTL_GETRSSI, &rssi) < 0) {
+		LOGE("get rssi failed: %d: %s", errno, strerror(errno));
+		return INT32_MIN;
+	}
+	return rssi;
+#else
+	/* TunerBackend.RSSI_UNKNOWN, the old driver cannot tell */
+	return INT32_MIN;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    muteAudioNative
- * Signature: (Z)I
+ * Signature: (JZ)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_muteAudioNative(JNIEnv *env, jobject thiz, jboolean mute) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_muteAudioNative(JNIEnv *env, jclass clazz, jlong handle, jboolean mute) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	int ret;
+	uint32_t muted = mute ? 1 : 0;
 
-	if(fmradio.fmfd < 0){ 
+	if(radio == NULL || radio->fmfd < 0){ 
 		LOGE("WARN fd unavailable\n");
 		return -2; 
 	}   
 
-	ret = ioctl(fmradio.fmfd, FM_IOCTL_MUTE, &mute);
+	/* the driver copies a uint32_t, not the one byte of a jboolean */
+	ret = sessionIoctl(radio, FM_IOCTL_MUTE, &muted, NULL);
 	if(ret){
-		LOGE("FAIL:%d\n", ret);
-		closeFmRadio();
+		LOGE("FAIL:%d: %s\n", ret, strerror(errno));
 		return -1; 
 	}   
+	radio->muted = muted;
 
 	return 0;
 #endif
 	LOGD("muteAudioNative: mute = %d", mute ? 1 : 0);
-	return switchAudioPath(mute ? 0 : fmradio.audioPath);
+	return switchAudioPath(radio, mute ? 0 : radio->audioPath);
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    seekStationNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationNative(JNIEnv *env, jobject thiz, jint scanMode) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_seekStationNative(JNIEnv *env, jclass clazz, jlong handle, jint scanMode) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	   int ret;
 	   struct fm_seek_parm parm;
 
-	   if (fmradio.fmfd < 0){
+	   if (radio == NULL || radio->fmfd < 0){
 		   LOGE("WARN fd unavailable\n");
 		   return -2;
 	   }
@@ -307,39 +699,39 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationNative(JNIEnv *
 		   parm.seekdir = FM_SEEK_DOWN;
 	   }
 
-	   parm.band = FM_BAND_UE;
-	   parm.freq = fmradio.freq;
+	   parm.band = radio->band;
+	   parm.freq = radio->freq;
 	   parm.hilo = FM_AUTO_HILO_OFF;
-	   parm.space = FM_SPACE_100K;
+	   parm.space = radio->space;
 	   parm.seekth = FM_SEEKTH_LEVEL_DEFAULT;
-	   ret = ioctl(fmradio.fmfd, FM_IOCTL_SEEK, &parm);
+	   ret = ioctl(radio->fmfd, FM_IOCTL_SEEK, &parm);
 
 #if 0
 	   if(ret){
 		   LOGE("FAIL:%d:%d\n", ret, parm.err);
-		   closeFmRadio();
+		   closeFmRadio(radio);
 		   return -1;
 	   }
 #endif
         if (ret < 0)
             LOGE("RDAFM: can't find a station\n");
         else
-            printf("RDAFM: find a station: %d\n",parm.freq);
-	   fmradio.freq = parm.freq;
+            LOGD("RDAFM: find a station: %d\n",parm.freq);
+	   radio->freq = parm.freq;
 
 	   return (10 * parm.freq);
 #else
 	jint ret = -1;
 	int args[4];
 
-	args[0] = fmradio.freq;	// start freq
+	args[0] = radio->freq;	// start freq
 	args[1] = scanMode;	// direction
 	args[2] = 1000;		// timeout
 	args[3] = 0;		// return freq
 
-	LOGD("seekStation fmradio.fmfd = %d, startfreq = %d, direction= %d, timeout = %d", \
-		fmradio.fmfd, args[0], args[1], args[2]);
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_SEARCH, args) < 0) {
+	LOGD("seekStation radio->fmfd = %d, startfreq = %d, direction= %d, timeout = %d", \
+		radio->fmfd, args[0], args[1], args[2]);
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_SEARCH, args) < 0) {
 		LOGE("search failed: %d: %s", errno, strerror(errno));
 		return -1;
 	}
@@ -350,18 +742,31 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationNative(JNIEnv *
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    seekStationAbortNative
- * Signature: ()I
+ * Signature: (J)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationAbortNative(JNIEnv *env, jobject thiz) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_seekStationAbortNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+	/* the driver's stop flag ends a running seek as well as a scan */
+	if (ioctl(radio->fmfd, FM_IOCTL_STOP_SCAN) < 0) {
+		LOGE("stop seek failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+
+	LOGD("stop seek ok");
 	return 0;
 #else
 	jint ret = 0;
 
-	LOGD("seekStationAbort fmradio.fmfd = %d", fmradio.fmfd);
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_STOP_SEARCH) < 0) {
+	LOGD("seekStationAbort radio->fmfd = %d", radio->fmfd);
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_STOP_SEARCH) < 0) {
 		LOGE(" stop search failed: %d: %s", errno, strerror(errno));
 		return -1;
 	}
@@ -372,48 +777,943 @@ JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationAbortNative(JNI
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    setAudioPathNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_setAudioPathNative(JNIEnv *env, jobject thiz, jint audioPath) {
-	return switchAudioPath(audioPath);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setAudioPathNative(JNIEnv *env, jclass clazz, jlong handle, jint audioPath) {
+	struct FMRadio *radio = radioOf(handle);
+	if (radio == NULL) {
+		return -2;
+	}
+	return switchAudioPath(radio, audioPath);
 }
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setMonoNative
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setMonoNative(JNIEnv *env, jclass clazz, jlong handle, jboolean mono) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	int ret;
+
+	if(radio == NULL || radio->fmfd < 0){
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+	/* unlike the other setters the driver takes the value itself, not a pointer */
+	ret = sessionIoctl(radio, FM_IOCTL_SETMONOSTERO, (void *) (intptr_t) (mono ? 1 : 0), NULL);
+	if(ret){
+		LOGE("FAIL:%d: %s\n", ret, strerror(errno));
+		return -1;
+	}
+	radio->mono = mono ? 1 : 0;
+
+	return 0;
+#else
+	LOGE("setMonoNative: not supported by this driver");
+	return -1;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    setFMVolumeNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_setFMVolumeNative(JNIEnv *env, jobject thiz, jint volume) {
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(JNIEnv *env, jclass clazz, jlong handle, jint volume) {
+	struct FMRadio *radio = radioOf(handle);
 #if USE_FM_NEW_DRIVER
 	int ret;
 
-	if(fmradio.fmfd < 0){
-		printf("WARN fd unavailable\n");
+	if(radio == NULL || radio->fmfd < 0){
+		LOGE("WARN fd unavailable\n");
 		return -2;
 	}
 
-	ret = ioctl(fmradio.fmfd, FM_IOCTL_SETVOL, &volume);
+	ret = sessionIoctl(radio, FM_IOCTL_SETVOL, &volume, NULL);
 	if(ret){
-		printf("FAIL:%d\n", ret);
-		closeFmRadio();
+		LOGE("FAIL:%d: %s\n", ret, strerror(errno));
 		return -1;
 	}
+	radio->volume = volume;
 
 	return 0;
 #else
 	jint ret = 0;
 
-	LOGD("setFMVolumeNative fmradio.fmfd = %d, volume = %d", fmradio.fmfd, volume);
-	if (ioctl(fmradio.fmfd, RDAFM_IOCTL_SET_VOLUME, &volume) < 0) {
+	LOGD("setFMVolumeNative radio->fmfd = %d, volume = %d", radio->fmfd, volume);
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_SET_VOLUME, &volume) < 0) {
 		LOGE(" set volume failed: %d: %s", errno, strerror(errno));
 		return -1;
 	}
 
-	fmradio.volume = volume;
+	radio->volume = volume;
 	LOGD("set volume ok");
 	return ret;
 #endif
 }
 
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    runProgramNative
+ * Signature: (J[II[I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_runProgramNative(JNIEnv *env, jclass clazz, jlong handle, jintArray program, jint count, jintArray status) {
+	jint ops[2 * TX_MAX_OPS];
+	jint results[TX_MAX_OPS];
+	jint failed = -1;
+	jint i;
+
+	if (count <= 0) {
+		return -1;
+	}
+	if (count > TX_MAX_OPS) {
+		count = TX_MAX_OPS;
+	}
+	(*env)->GetIntArrayRegion(env, program, 0, 2 * count, ops);
+	for (i = 0; i < count; i++) {
+		results[i] = TX_NOT_RUN;
+	}
+
+	for (i = 0; i < count && failed < 0; i++) {
+		jint arg = ops[2 * i + 1];
+
+		switch (ops[2 * i]) {
+		case TX_OP_NOP:
+			results[i] = 0;
+			break;
+		case TX_OP_POWER_ON:
+			results[i] = Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, clazz, handle);
+			break;
+		case TX_OP_TUNE:
+			results[i] = Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, clazz, handle, arg);
+			break;
+		case TX_OP_VOLUME:
+			results[i] = Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(env, clazz, handle, arg);
+			break;
+		case TX_OP_MUTE:
+			results[i] = Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, clazz, handle, arg != 0);
+			break;
+		case TX_OP_AUDIO_PATH:
+			results[i] = Java_com_service_fm_NativeTunerBackend_setAudioPathNative(env, clazz, handle, arg);
+			break;
+		default:
+			LOGE("unknown program op %d", ops[2 * i]);
+			results[i] = -1;
+			break;
+		}
+		if (results[i] != 0) {
+			failed = i;
+		}
+	}
+
+	(*env)->SetIntArrayRegion(env, status, 0, count, results);
+	return failed;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    scanBandNative
+ * Signature: (JLcom/service/fm/IFmScanListener;)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_service_fm_NativeTunerBackend_scanBandNative(JNIEnv *env, jclass clazz, jlong handle, jobject listener) {
+	struct FMRadio *radio = radioOf(handle);
+	jint found[FM_SCAN_TBL_CHANNELS];
+	int count = 0;
+	jmethodID onStationFound = NULL;
+	jintArray result;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return NULL;
+	}
+
+	if (listener != NULL) {
+		jclass cls = (*env)->GetObjectClass(env, listener);
+		onStationFound = (*env)->GetMethodID(env, cls, "onStationFound", "(I)V");
+		(*env)->DeleteLocalRef(env, cls);
+		if (onStationFound == NULL) {
+			return NULL;
+		}
+	}
+
+#if USE_FM_NEW_DRIVER
+	int ret, i, j, freq, top;
+	int base = FM_FREQ_MIN;
+	int step = radio->space == FM_SPACE_200K ? 2 : 1;
+	struct fm_scan_parm parm;
+
+	memset(&parm, 0, sizeof(struct fm_scan_parm));
+
+	parm.band = radio->band;
+	parm.freq = radio->freq;
+	parm.hilo = FM_AUTO_HILO_OFF;
+	parm.space = radio->space;
+	parm.ScanTBLSize = sizeof(parm.ScanTBL) / sizeof(parm.ScanTBL[0]);
+
+	/* one blocking ioctl sweeps the band, FM_IOCTL_STOP_SCAN cuts it short */
+	ret = ioctl(radio->fmfd, FM_IOCTL_SCAN, &parm);
+	if (ret) {
+		LOGE("FAIL:%d:%d\n", ret, parm.err);
+		return NULL;
+	}
+
+	/*
+	 * bit j of ScanTBL[i] marks channel (16 * i + j) of the band, counted in
+	 * steps of the spacing from its lower edge; a narrower plan drops the
+	 * channels outside it
+	 */
+	bandEdges(radio->band, &base, &top);
+	for (i = 0; i < parm.ScanTBLSize && i < 16; i++) {
+		for (j = 0; j < 16; j++) {
+			freq = base + step * (16 * i + j);
+			if (!(parm.ScanTBL[i] & (1 << j)) || freq < radio->low || freq > radio->high) {
+				continue;
+			}
+			found[count] = 10 * freq;
+			if (onStationFound != NULL) {
+				(*env)->CallVoidMethod(env, listener, onStationFound, found[count]);
+				if ((*env)->ExceptionCheck(env)) {
+					return NULL;
+				}
+			}
+			count++;
+		}
+	}
+	if (parm.freq) {
+		radio->freq = parm.freq;
+	}
+	LOGD("scan ok: %d channels", count);
+#else
+	int args[4];
+	int last = 0;
+
+	/* no table scan on the old driver, walk the band with hardware seeks */
+	radio->scanAbort = 0;
+	args[0] = radio->low;
+	while (!radio->scanAbort && count < FM_SCAN_TBL_CHANNELS) {
+		args[1] = 1;		// direction
+		args[2] = 1000;		// timeout
+		args[3] = 0;		// return freq
+		if (ioctl(radio->fmfd, RDAFM_IOCTL_SEARCH, args) < 0 || args[3] <= last || args[3] > radio->high) {
+			break;
+		}
+		last = args[3];
+		found[count] = last * 10;
+		if (onStationFound != NULL) {
+			(*env)->CallVoidMethod(env, listener, onStationFound, found[count]);
+			if ((*env)->ExceptionCheck(env)) {
+				return NULL;
+			}
+		}
+		count++;
+		args[0] = last + 1;
+	}
+	if (last) {
+		radio->freq = last;
+	}
+	LOGD("scan ok: %d channels", count);
+#endif
+
+	result = (*env)->NewIntArray(env, count);
+	if (result != NULL) {
+		(*env)->SetIntArrayRegion(env, result, 0, count, found);
+	}
+	return result;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopScanNative
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_stopScanNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+#if USE_FM_NEW_DRIVER
+	if (ioctl(radio->fmfd, FM_IOCTL_STOP_SCAN) < 0) {
+		LOGE("stop scan failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+#else
+	radio->scanAbort = 1;
+	if (ioctl(radio->fmfd, RDAFM_IOCTL_STOP_SEARCH) < 0) {
+		LOGE("stop search failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+#endif
+
+	LOGD("stop scan ok");
+	return 0;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readSpectrumNative
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readSpectrumNative(JNIEnv *env, jclass clazz, jlong handle, jobject spectrum) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	int ret;
+	struct fm_rssi_req *req;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+	/* the caller's buffer is laid out as struct fm_rssi_req, no copy needed */
+	req = (struct fm_rssi_req *) (*env)->GetDirectBufferAddress(env, spectrum);
+	if (req == NULL || ((uintptr_t) req & (__alignof__(struct fm_rssi_req) - 1))
+			|| (*env)->GetDirectBufferCapacity(env, spectrum) < (jlong) sizeof(struct fm_rssi_req)) {
+		LOGE("bad spectrum buffer\n");
+		return -3;
+	}
+
+	req->num = sizeof(req->cr) / sizeof(req->cr[0]);
+	req->read_cnt = 0;
+	ret = ioctl(radio->fmfd, FM_IOCTL_SCAN_GETRSSI, req);
+	if (ret) {
+		LOGE("FAIL:%d\n", ret);
+		return -1;
+	}
+	if (req->read_cnt > req->num) {
+		req->read_cnt = req->num;
+	}
+
+	return req->read_cnt;
+#else
+	return -1;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readChannelQualityNative
+ * Signature: (JLjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readChannelQualityNative(JNIEnv *env, jclass clazz, jlong handle, jobject cqi, jint channelCount) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	int ret;
+	struct fm_cqi_req req;
+	jlong capacity;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+	memset(&req, 0, sizeof(struct fm_cqi_req));
+
+	/* let the driver fill the caller's buffer directly */
+	req.cqi_buf = (char *) (*env)->GetDirectBufferAddress(env, cqi);
+	capacity = (*env)->GetDirectBufferCapacity(env, cqi);
+	/* ch_num is 16 bits wide */
+	if (channelCount < 0 || channelCount > 0xFFFF) {
+		LOGE("bad channel count %d\n", channelCount);
+		return -3;
+	}
+	if (req.cqi_buf == NULL || capacity < (jlong) channelCount * (jlong) sizeof(struct fm_cqi)) {
+		LOGE("bad cqi buffer\n");
+		return -3;
+	}
+	req.ch_num = channelCount;
+	req.buf_size = channelCount * sizeof(struct fm_cqi);
+
+	ret = ioctl(radio->fmfd, FM_IOCTL_CQI_GET, &req);
+	if (ret) {
+		LOGE("FAIL:%d\n", ret);
+		return -1;
+	}
+
+	return req.ch_num < channelCount ? req.ch_num : channelCount;
+#else
+	return -1;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setRdsNative
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setRdsNative(JNIEnv *env, jclass clazz, jlong handle, jboolean on) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	int ret;
+	uint16_t onoff = on ? FM_RDS_ENABLE : 0;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+
+	ret = ioctl(radio->fmfd, FM_IOCTL_RDS_ONOFF, &onoff);
+	if (ret) {
+		LOGE("FAIL:%d\n", ret);
+		return -1;
+	}
+	radio->rdsOn = on ? 1 : 0;
+
+	LOGD("rds %s", on ? "on" : "off");
+	return 0;
+#else
+	return -1;
+#endif
+}
+
+#if USE_FM_NEW_DRIVER
+/*
+ * Fetches the driver's RDS log and appends its groups to the ring.
+ * Returns the number of groups received, or -1 on error.
+ */
+static int pushRdsLog(struct FMRadio *radio, struct rds_ring *ring) {
+	struct rds_raw_data raw;
+	uint32_t head, tail;
+	int len, i;
+
+	memset(&raw, 0, sizeof(struct rds_raw_data));
+	if (ioctl(radio->fmfd, FM_IOCTL_RDS_GET_LOG, &raw)) {
+		LOGE("get rds log failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+
+	len = raw.len;
+	if (len < 0) {
+		len = 0;
+	}
+	if (len > (int) sizeof(raw.data)) {
+		len = sizeof(raw.data);
+	}
+
+	head = ring->head;
+	tail = __atomic_load_n(&ring->tail, __ATOMIC_ACQUIRE);
+	for (i = 0; i + RDS_GROUP_SIZE <= len; i += RDS_GROUP_SIZE) {
+		if (((head - tail) & RDS_RING_INDEX_MASK) >= ring->capacity) {
+			__atomic_fetch_add(&ring->overruns, 1, __ATOMIC_RELAXED);
+			continue;
+		}
+		memcpy(ring->data + (head & (ring->capacity - 1)) * RDS_GROUP_SIZE,
+				raw.data + i, RDS_GROUP_SIZE);
+		head = (head + 1) & RDS_RING_INDEX_MASK;
+	}
+	__atomic_store_n(&ring->head, head, __ATOMIC_RELEASE);
+
+	return len / RDS_GROUP_SIZE;
+}
+
+static void *rdsReaderLoop(void *arg) {
+	struct FMRadio *radio = (struct FMRadio *) arg;
+	struct RdsReader *rds = &radio->rds;
+	struct pollfd fds[2];
+	uint64_t one = 1;
+
+	fds[0].fd = radio->fmfd;
+	fds[0].events = POLLIN;
+	fds[1].fd = rds->stopfd;
+	fds[1].events = POLLIN;
+
+	LOGI("rds reader started");
+	for (;;) {
+		if (poll(fds, 2, -1) < 0) {
+			if (errno == EINTR) {
+				continue;
+			}
+			LOGE("rds poll failed: %d: %s", errno, strerror(errno));
+			break;
+		}
+		if (fds[1].revents) {
+			break;
+		}
+		if (fds[0].revents & (POLLERR | POLLHUP | POLLNVAL)) {
+			LOGE("rds poll: device gone\n");
+			break;
+		}
+		if (!(fds[0].revents & POLLIN)) {
+			continue;
+		}
+
+		int groups = pushRdsLog(radio, rds->ring);
+		if (groups < 0) {
+			break;
+		}
+		if (groups > 0) {
+			write(rds->datafd, &one, sizeof(one));
+		} else if (poll(&fds[1], 1, RDS_IDLE_BACKOFF_MS) > 0) {
+			break;
+		}
+	}
+
+	/* let the consumer see the end of the stream, unless it is only paused */
+	if (!__atomic_load_n(&rds->pausing, __ATOMIC_ACQUIRE)) {
+		__atomic_store_n(&rds->running, 0, __ATOMIC_RELEASE);
+		write(rds->datafd, &one, sizeof(one));
+	}
+	LOGI("rds reader stopped");
+	return NULL;
+}
+
+/*
+ * Stops the reader thread for a session reset, leaving the ring and the
+ * consumer as they are. Returns 1 if the reader was paused, 0 if there was
+ * none or it had already ended its stream.
+ */
+static int pauseRdsReader(struct FMRadio *radio) {
+	struct RdsReader *rds = &radio->rds;
+	uint64_t one = 1;
+
+	if (rds->ring == NULL) {
+		return 0;
+	}
+	__atomic_store_n(&rds->pausing, 1, __ATOMIC_RELEASE);
+	write(rds->stopfd, &one, sizeof(one));
+	pthread_join(rds->thread, NULL);
+	__atomic_store_n(&rds->pausing, 0, __ATOMIC_RELAXED);
+	close(rds->stopfd);
+	rds->stopfd = -1;
+	if (!__atomic_load_n(&rds->running, __ATOMIC_ACQUIRE)) {
+		rds->ring = NULL;
+		return 0;
+	}
+	return 1;
+}
+
+/*
+ * Starts the reader thread of a paused reader again, on the new fd. The ring
+ * keeps the groups the consumer has not taken yet.
+ */
+static void resumeRdsReader(struct FMRadio *radio) {
+	struct RdsReader *rds = &radio->rds;
+
+	rds->stopfd = eventfd(0, EFD_CLOEXEC);
+	if (rds->stopfd < 0) {
+		LOGE("eventfd failed: %d: %s", errno, strerror(errno));
+	} else if (pthread_create(&rds->thread, NULL, rdsReaderLoop, radio)) {
+		LOGE("rds thread failed\n");
+		close(rds->stopfd);
+		rds->stopfd = -1;
+	} else {
+		return;
+	}
+	stopRdsReader(radio);
+}
+#endif
+
+/*
+ * Stops the reader thread. The consumer drains what is left in the ring and
+ * closes datafd through releaseRdsReaderNative().
+ */
+static void stopRdsReader(struct FMRadio *radio) {
+	struct RdsReader *rds = &radio->rds;
+	uint64_t one = 1;
+
+	if (rds->ring == NULL) {
+		return;
+	}
+	if (rds->stopfd >= 0) {
+		write(rds->stopfd, &one, sizeof(one));
+		pthread_join(rds->thread, NULL);
+		close(rds->stopfd);
+		rds->stopfd = -1;
+	} else {
+		/* paused by a session reset that failed, end the stream here */
+		__atomic_store_n(&rds->running, 0, __ATOMIC_RELEASE);
+		write(rds->datafd, &one, sizeof(one));
+	}
+	rds->ring = NULL;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    startRdsReaderNative
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_startRdsReaderNative(JNIEnv *env, jclass clazz, jlong handle, jobject ring) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	struct RdsReader *rds = &radio->rds;
+	struct rds_ring *r;
+	jlong capacity;
+	uint32_t groups;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+	if (rds->ring != NULL || rds->datafd >= 0) {
+		LOGE("rds reader busy\n");
+		return -3;
+	}
+
+	r = (struct rds_ring *) (*env)->GetDirectBufferAddress(env, ring);
+	capacity = (*env)->GetDirectBufferCapacity(env, ring);
+	if (r == NULL || capacity <= (jlong) sizeof(struct rds_ring)) {
+		LOGE("bad rds ring\n");
+		return -3;
+	}
+	groups = (capacity - sizeof(struct rds_ring)) / RDS_GROUP_SIZE;
+	while (groups & (groups - 1)) {
+		groups &= groups - 1;
+	}
+	r->head = 0;
+	r->tail = 0;
+	r->capacity = groups;
+	r->overruns = 0;
+
+	rds->stopfd = eventfd(0, EFD_CLOEXEC);
+	rds->datafd = eventfd(0, EFD_CLOEXEC);
+	if (rds->stopfd < 0 || rds->datafd < 0) {
+		LOGE("eventfd failed: %d: %s", errno, strerror(errno));
+		goto fail;
+	}
+
+	rds->ring = r;
+	rds->running = 1;
+	if (pthread_create(&rds->thread, NULL, rdsReaderLoop, radio)) {
+		LOGE("rds thread failed\n");
+		rds->ring = NULL;
+		rds->running = 0;
+		goto fail;
+	}
+	return 0;
+
+fail:
+	if (rds->stopfd >= 0) {
+		close(rds->stopfd);
+		rds->stopfd = -1;
+	}
+	if (rds->datafd >= 0) {
+		close(rds->datafd);
+		rds->datafd = -1;
+	}
+	return -1;
+#else
+	return -1;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopRdsReaderNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_stopRdsReaderNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+	if (radio != NULL) {
+		stopRdsReader(radio);
+	}
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    waitRdsNative
+ * Signature: (JLjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_waitRdsNative(JNIEnv *env, jclass clazz, jlong handle, jobject ring, jint tail) {
+	struct FMRadio *radio = radioOf(handle);
+	struct RdsReader *rds;
+	struct rds_ring *r;
+	uint32_t head;
+	uint64_t count;
+
+	if (radio == NULL) {
+		return -1;
+	}
+	rds = &radio->rds;
+	r = (struct rds_ring *) (*env)->GetDirectBufferAddress(env, ring);
+	if (r == NULL || rds->datafd < 0) {
+		return -1;
+	}
+
+	/* hand the consumed slots back before sleeping */
+	__atomic_store_n(&r->tail, (uint32_t) tail, __ATOMIC_RELEASE);
+	for (;;) {
+		head = __atomic_load_n(&r->head, __ATOMIC_ACQUIRE);
+		if (head != (uint32_t) tail) {
+			return head;
+		}
+		if (!__atomic_load_n(&rds->running, __ATOMIC_ACQUIRE)) {
+			return -1;
+		}
+		if (read(rds->datafd, &count, sizeof(count)) < 0 && errno != EINTR) {
+			return -1;
+		}
+	}
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    releaseRdsReaderNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_releaseRdsReaderNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+
+	if (radio != NULL && radio->rds.datafd >= 0) {
+		close(radio->rds.datafd);
+		radio->rds.datafd = -1;
+	}
+}
+
+#if USE_FM_NEW_DRIVER
+/* Reads the four quality registers into one packed sample. */
+static int readSignalSample(struct FMRadio *radio, jlong *sample) {
+	int32_t rssi = 0;
+	uint16_t stereo = 0, pamd = 0, bler = 0;
+
+	if (ioctl(radio->fmfd, FM_IOCTL_GETRSSI, &rssi)
+			|| ioctl(radio->fmfd, FM_IOCTL_GETMONOSTERO, &stereo)
+			|| ioctl(radio->fmfd, FM_IOCTL_GETCURPAMD, &pamd)
+			|| ioctl(radio->fmfd, FM_IOCTL_GETBLERRATIO, &bler)) {
+		LOGE("read signal failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+
+	*sample = (jlong) (uint16_t) rssi
+			| (jlong) stereo << 16
+			| (jlong) pamd << 32
+			| (jlong) bler << 48;
+	return 0;
+}
+
+static int signalField(jlong sample, int shift) {
+	return (uint16_t) (sample >> shift);
+}
+
+static int signalChanged(jlong last, jlong sample, int delta) {
+	if (signalField(last, 16) != signalField(sample, 16)) {
+		return 1;
+	}
+	return abs((int16_t) signalField(last, 0) - (int16_t) signalField(sample, 0)) > delta
+			|| abs(signalField(last, 32) - signalField(sample, 32)) > delta
+			|| abs(signalField(last, 48) - signalField(sample, 48)) > delta;
+}
+
+static void *signalPollerLoop(void *arg) {
+	struct FMRadio *radio = (struct FMRadio *) arg;
+	struct SignalPoller *poller = &radio->signal;
+	struct pollfd fds[2];
+	struct itimerspec period;
+	JNIEnv *env = NULL;
+	uint64_t ticks;
+	jlong sample, last = 0;
+	int first = 1;
+	int timerfd;
+
+	timerfd = timerfd_create(CLOCK_MONOTONIC, TFD_CLOEXEC);
+	if (timerfd < 0) {
+		LOGE("timerfd failed: %d: %s", errno, strerror(errno));
+		return NULL;
+	}
+	period.it_interval.tv_sec = poller->intervalMs / 1000;
+	period.it_interval.tv_nsec = (poller->intervalMs % 1000) * 1000000L;
+	period.it_value = period.it_interval;
+	timerfd_settime(timerfd, 0, &period, NULL);
+
+	if ((*poller->vm)->AttachCurrentThread(poller->vm, &env, NULL) != JNI_OK) {
+		LOGE("attach signal poller failed\n");
+		close(timerfd);
+		return NULL;
+	}
+
+	fds[0].fd = timerfd;
+	fds[0].events = POLLIN;
+	fds[1].fd = poller->stopfd;
+	fds[1].events = POLLIN;
+
+	LOGI("signal poller started");
+	for (;;) {
+		if (poll(fds, 2, -1) < 0) {
+			if (errno == EINTR) {
+				continue;
+			}
+			break;
+		}
+		if (fds[1].revents) {
+			break;
+		}
+		if (read(timerfd, &ticks, sizeof(ticks)) < 0) {
+			continue;
+		}
+		if (readSignalSample(radio, &sample)) {
+			continue;
+		}
+		if (!first && !signalChanged(last, sample, poller->delta)) {
+			continue;
+		}
+
+		first = 0;
+		last = sample;
+		(*env)->CallVoidMethod(env, poller->receiver, poller->onSignalSample, sample);
+		if ((*env)->ExceptionCheck(env)) {
+			(*env)->ExceptionDescribe(env);
+			(*env)->ExceptionClear(env);
+		}
+	}
+
+	close(timerfd);
+	(*poller->vm)->DetachCurrentThread(poller->vm);
+	LOGI("signal poller stopped");
+	return NULL;
+}
+
+/*
+ * Starts the poller thread with the receiver, interval and delta already
+ * set. Returns 0 on success, -1 otherwise.
+ */
+static int resumeSignalPoller(struct FMRadio *radio) {
+	struct SignalPoller *poller = &radio->signal;
+
+	poller->stopfd = eventfd(0, EFD_CLOEXEC);
+	if (poller->stopfd < 0) {
+		LOGE("eventfd failed: %d: %s", errno, strerror(errno));
+		return -1;
+	}
+	if (pthread_create(&poller->thread, NULL, signalPollerLoop, radio)) {
+		LOGE("signal thread failed\n");
+		close(poller->stopfd);
+		poller->stopfd = -1;
+		return -1;
+	}
+	poller->running = 1;
+	return 0;
+}
+#endif
+
+/*
+ * Stops the poller thread. env may be NULL when called from native code
+ * without one; the receiver reference is then released by the next start.
+ */
+static void stopSignalPoller(struct FMRadio *radio, JNIEnv *env) {
+	struct SignalPoller *poller = &radio->signal;
+	uint64_t one = 1;
+
+	if (poller->running) {
+		write(poller->stopfd, &one, sizeof(one));
+		pthread_join(poller->thread, NULL);
+		close(poller->stopfd);
+		poller->stopfd = -1;
+		poller->running = 0;
+	}
+	if (env != NULL && poller->receiver != NULL) {
+		(*env)->DeleteGlobalRef(env, poller->receiver);
+		poller->receiver = NULL;
+	}
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    startSignalPollerNative
+ * Signature: (JIILcom/service/fm/IFmSignalListener;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_startSignalPollerNative(JNIEnv *env, jclass clazz, jlong handle, jint intervalMs, jint delta, jobject sink) {
+	struct FMRadio *radio = radioOf(handle);
+#if USE_FM_NEW_DRIVER
+	struct SignalPoller *poller = &radio->signal;
+	jclass cls;
+
+	if (radio == NULL || radio->fmfd < 0) {
+		LOGE("WARN fd unavailable\n");
+		return -2;
+	}
+	if (intervalMs <= 0 || delta < 0) {
+		return -3;
+	}
+	stopSignalPoller(radio, env);
+
+	cls = (*env)->GetObjectClass(env, sink);
+	poller->onSignalSample = (*env)->GetMethodID(env, cls, "onSignalSample", "(J)V");
+	(*env)->DeleteLocalRef(env, cls);
+	if (poller->onSignalSample == NULL) {
+		return -1;
+	}
+	if ((*env)->GetJavaVM(env, &poller->vm) != JNI_OK) {
+		return -1;
+	}
+
+	poller->receiver = (*env)->NewGlobalRef(env, sink);
+	poller->intervalMs = intervalMs;
+	poller->delta = delta;
+	if (resumeSignalPoller(radio)) {
+		stopSignalPoller(radio, env);
+		return -1;
+	}
+	return 0;
+#else
+	return -1;
+#endif
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopSignalPollerNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+	if (radio != NULL) {
+		stopSignalPoller(radio, env);
+	}
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    createNative
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_service_fm_NativeTunerBackend_createNative(JNIEnv *env, jclass clazz, jstring devicePath) {
+	struct FMRadio *radio;
+	const char *path;
+
+	path = (*env)->GetStringUTFChars(env, devicePath, NULL);
+	if (path == NULL) {
+		return 0;
+	}
+	radio = calloc(1, sizeof(struct FMRadio) + strlen(path) + 1);
+	if (radio != NULL) {
+		radio->fmfd = -1;
+		radio->volume = -1;
+		radio->freq = 875;
+		radio->band = FM_BAND_UE;
+		radio->space = FM_SPACE_100K;
+		radio->low = 875;
+		radio->high = 1080;
+		radio->rds.stopfd = -1;
+		radio->rds.datafd = -1;
+		radio->signal.stopfd = -1;
+		strcpy(radio->devicePath, path);
+		LOGD("context %p for %s", radio, path);
+	}
+	(*env)->ReleaseStringUTFChars(env, devicePath, path);
+
+	return (jlong) (intptr_t) radio;
+}
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    destroyNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_destroyNative(JNIEnv *env, jclass clazz, jlong handle) {
+	struct FMRadio *radio = radioOf(handle);
+
+	if (radio == NULL) {
+		return;
+	}
+	closeFmRadio(radio);
+	stopSignalPoller(radio, env);
+	if (radio->rds.datafd >= 0) {
+		close(radio->rds.datafd);
+	}
+	free(radio);
+}
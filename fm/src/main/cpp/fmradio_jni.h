@@ -1,219 +1,228 @@
 /* DO NOT EDIT THIS FILE - it is machine generated */
 #include <jni.h>
-/* Header for class com_service_fm_FmReceiver */
+/* Header for class com_service_fm_NativeTunerBackend */
 
-#ifndef _Included_com_service_fm_FmReceiver
-#define _Included_com_service_fm_FmReceiver
+#ifndef _Included_com_service_fm_NativeTunerBackend
+#define _Included_com_service_fm_NativeTunerBackend
 #ifdef __cplusplus
 extern "C" {
 #endif
-#undef com_service_fm_FmReceiver_DEFAULT_BROADCAST_RECEIVER_PRIORITY
-#define com_service_fm_FmReceiver_DEFAULT_BROADCAST_RECEIVER_PRIORITY 200L
-#undef com_service_fm_FmReceiver_FUNC_REGION_NA
-#define com_service_fm_FmReceiver_FUNC_REGION_NA 0L
-#undef com_service_fm_FmReceiver_FUNC_REGION_EUR
-#define com_service_fm_FmReceiver_FUNC_REGION_EUR 1L
-#undef com_service_fm_FmReceiver_FUNC_REGION_JP
-#define com_service_fm_FmReceiver_FUNC_REGION_JP 2L
-#undef com_service_fm_FmReceiver_FUNC_RDS
-#define com_service_fm_FmReceiver_FUNC_RDS 16L
-#undef com_service_fm_FmReceiver_FUNC_RBDS
-#define com_service_fm_FmReceiver_FUNC_RBDS 32L
-#undef com_service_fm_FmReceiver_FUNC_AF
-#define com_service_fm_FmReceiver_FUNC_AF 64L
-#undef com_service_fm_FmReceiver_AUDIO_MODE_AUTO
-#define com_service_fm_FmReceiver_AUDIO_MODE_AUTO 0L
-#undef com_service_fm_FmReceiver_AUDIO_MODE_STEREO
-#define com_service_fm_FmReceiver_AUDIO_MODE_STEREO 1L
-#undef com_service_fm_FmReceiver_AUDIO_MODE_MONO
-#define com_service_fm_FmReceiver_AUDIO_MODE_MONO 2L
-#undef com_service_fm_FmReceiver_AUDIO_MODE_BLEND
-#define com_service_fm_FmReceiver_AUDIO_MODE_BLEND 3L
-#undef com_service_fm_FmReceiver_AUDIO_MODE_SWITCH
-#define com_service_fm_FmReceiver_AUDIO_MODE_SWITCH 3L
-#undef com_service_fm_FmReceiver_AUDIO_PATH_NONE
-#define com_service_fm_FmReceiver_AUDIO_PATH_NONE 0L
-#undef com_service_fm_FmReceiver_AUDIO_PATH_SPEAKER
-#define com_service_fm_FmReceiver_AUDIO_PATH_SPEAKER 1L
-#undef com_service_fm_FmReceiver_AUDIO_PATH_WIRE_HEADSET
-#define com_service_fm_FmReceiver_AUDIO_PATH_WIRE_HEADSET 2L
-#undef com_service_fm_FmReceiver_AUDIO_PATH_DIGITAL
-#define com_service_fm_FmReceiver_AUDIO_PATH_DIGITAL 3L
-#undef com_service_fm_FmReceiver_AUDIO_QUALITY_STEREO
-#define com_service_fm_FmReceiver_AUDIO_QUALITY_STEREO 1L
-#undef com_service_fm_FmReceiver_AUDIO_QUALITY_MONO
-#define com_service_fm_FmReceiver_AUDIO_QUALITY_MONO 2L
-#undef com_service_fm_FmReceiver_AUDIO_QUALITY_BLEND
-#define com_service_fm_FmReceiver_AUDIO_QUALITY_BLEND 4L
-#undef com_service_fm_FmReceiver_SCAN_MODE_NORMAL
-#define com_service_fm_FmReceiver_SCAN_MODE_NORMAL 0L
-#undef com_service_fm_FmReceiver_SCAN_MODE_DOWN
-#define com_service_fm_FmReceiver_SCAN_MODE_DOWN 0L
-#undef com_service_fm_FmReceiver_SCAN_MODE_UP
-#define com_service_fm_FmReceiver_SCAN_MODE_UP 129L
-#undef com_service_fm_FmReceiver_SCAN_MODE_FULL
-#define com_service_fm_FmReceiver_SCAN_MODE_FULL 130L
-#undef com_service_fm_FmReceiver_DEEMPHASIS_50U
-#define com_service_fm_FmReceiver_DEEMPHASIS_50U 0L
-#undef com_service_fm_FmReceiver_DEEMPHASIS_75U
-#define com_service_fm_FmReceiver_DEEMPHASIS_75U 64L
-#undef com_service_fm_FmReceiver_FREQ_STEP_100KHZ
-#define com_service_fm_FmReceiver_FREQ_STEP_100KHZ 0L
-#undef com_service_fm_FmReceiver_FREQ_STEP_50KHZ
-#define com_service_fm_FmReceiver_FREQ_STEP_50KHZ 16L
-#undef com_service_fm_FmReceiver_FM_VOLUME_MAX
-#define com_service_fm_FmReceiver_FM_VOLUME_MAX 255L
-#undef com_service_fm_FmReceiver_NFL_LOW
-#define com_service_fm_FmReceiver_NFL_LOW 0L
-#undef com_service_fm_FmReceiver_NFL_MED
-#define com_service_fm_FmReceiver_NFL_MED 1L
-#undef com_service_fm_FmReceiver_NFL_FINE
-#define com_service_fm_FmReceiver_NFL_FINE 2L
-#undef com_service_fm_FmReceiver_RDS_MODE_OFF
-#define com_service_fm_FmReceiver_RDS_MODE_OFF 0L
-#undef com_service_fm_FmReceiver_RDS_MODE_DEFAULT_ON
-#define com_service_fm_FmReceiver_RDS_MODE_DEFAULT_ON 1L
-#undef com_service_fm_FmReceiver_RDS_MODE_RDS_ON
-#define com_service_fm_FmReceiver_RDS_MODE_RDS_ON 2L
-#undef com_service_fm_FmReceiver_RDS_MODE_RBDS_ON
-#define com_service_fm_FmReceiver_RDS_MODE_RBDS_ON 3L
-#undef com_service_fm_FmReceiver_RDS_COND_NONE
-#define com_service_fm_FmReceiver_RDS_COND_NONE 0L
-#undef com_service_fm_FmReceiver_RDS_COND_PTY
-#define com_service_fm_FmReceiver_RDS_COND_PTY 1L
-#undef com_service_fm_FmReceiver_RDS_COND_TP
-#define com_service_fm_FmReceiver_RDS_COND_TP 2L
-#undef com_service_fm_FmReceiver_RDS_FEATURE_PS
-#define com_service_fm_FmReceiver_RDS_FEATURE_PS 4L
-#undef com_service_fm_FmReceiver_RDS_FEATURE_PTY
-#define com_service_fm_FmReceiver_RDS_FEATURE_PTY 8L
-#undef com_service_fm_FmReceiver_RDS_FEATURE_TP
-#define com_service_fm_FmReceiver_RDS_FEATURE_TP 16L
-#undef com_service_fm_FmReceiver_RDS_FEATURE_PTYN
-#define com_service_fm_FmReceiver_RDS_FEATURE_PTYN 32L
-#undef com_service_fm_FmReceiver_RDS_FEATURE_RT
-#define com_service_fm_FmReceiver_RDS_FEATURE_RT 64L
-#undef com_service_fm_FmReceiver_AF_MODE_OFF
-#define com_service_fm_FmReceiver_AF_MODE_OFF 0L
-#undef com_service_fm_FmReceiver_AF_MODE_ON
-#define com_service_fm_FmReceiver_AF_MODE_ON 1L
-#undef com_service_fm_FmReceiver_MIN_SIGNAL_STRENGTH_DEFAULT
-#define com_service_fm_FmReceiver_MIN_SIGNAL_STRENGTH_DEFAULT 105L
-#undef com_service_fm_FmReceiver_FUNCTIONALITY_DEFAULT
-#define com_service_fm_FmReceiver_FUNCTIONALITY_DEFAULT 0L
-#undef com_service_fm_FmReceiver_FUNC_REGION_DEFAULT
-#define com_service_fm_FmReceiver_FUNC_REGION_DEFAULT 0L
-#undef com_service_fm_FmReceiver_FREQ_STEP_DEFAULT
-#define com_service_fm_FmReceiver_FREQ_STEP_DEFAULT 0L
-#undef com_service_fm_FmReceiver_LIVE_AUDIO_QUALITY_DEFAULT
-#define com_service_fm_FmReceiver_LIVE_AUDIO_QUALITY_DEFAULT 0L
-#undef com_service_fm_FmReceiver_NFL_DEFAULT
-#define com_service_fm_FmReceiver_NFL_DEFAULT 1L
-#undef com_service_fm_FmReceiver_SIGNAL_POLL_INTERVAL_DEFAULT
-#define com_service_fm_FmReceiver_SIGNAL_POLL_INTERVAL_DEFAULT 100L
-#undef com_service_fm_FmReceiver_DEEMPHASIS_TIME_DEFAULT
-#define com_service_fm_FmReceiver_DEEMPHASIS_TIME_DEFAULT 64L
-#undef com_service_fm_FmReceiver_AF_MODE_DEFAULT
-#define com_service_fm_FmReceiver_AF_MODE_DEFAULT 0L
-#undef com_service_fm_FmReceiver_STATUS_OK
-#define com_service_fm_FmReceiver_STATUS_OK 0L
-#undef com_service_fm_FmReceiver_STATUS_FAIL
-#define com_service_fm_FmReceiver_STATUS_FAIL 1L
-#undef com_service_fm_FmReceiver_STATUS_SERVER_FAIL
-#define com_service_fm_FmReceiver_STATUS_SERVER_FAIL 2L
-#undef com_service_fm_FmReceiver_STATUS_ILLEGAL_COMMAND
-#define com_service_fm_FmReceiver_STATUS_ILLEGAL_COMMAND 3L
-#undef com_service_fm_FmReceiver_STATUS_ILLEGAL_PARAMETERS
-#define com_service_fm_FmReceiver_STATUS_ILLEGAL_PARAMETERS 4L
-/*
- * Class:     com_service_fm_FmReceiver
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    turnOnRadioNative
- * Signature: ()I
+ * Signature: (J)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOnRadioNative
-  (JNIEnv *, jobject);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_turnOnRadioNative
+  (JNIEnv *, jclass, jlong);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    turnOffRadioNative
- * Signature: ()I
+ * Signature: (J)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_turnOffRadioNative
-  (JNIEnv *, jobject);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_turnOffRadioNative
+  (JNIEnv *, jclass, jlong);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    tuneRadioNative
- * Signature: (I)I
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_tuneRadioNative
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setBandNative
+ * Signature: (JIIII)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_tuneRadioNative
-  (JNIEnv *, jobject, jint);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setBandNative
+  (JNIEnv *, jclass, jlong, jint, jint, jint, jint);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    getRadioIsOnNative
- * Signature: ()Z
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    isPoweredUpNative
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_isPoweredUpNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readRssiNative
+ * Signature: (J)I
  */
-JNIEXPORT jboolean JNICALL Java_com_service_fm_FmReceiver_getRadioIsOnNative
-  (JNIEnv *, jobject);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readRssiNative
+  (JNIEnv *, jclass, jlong);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    muteAudioNative
- * Signature: (Z)I
+ * Signature: (JZ)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_muteAudioNative
-  (JNIEnv *, jobject, jboolean);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_muteAudioNative
+  (JNIEnv *, jclass, jlong, jboolean);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    seekStationNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationNative
-  (JNIEnv *, jobject, jint);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_seekStationNative
+  (JNIEnv *, jclass, jlong, jint);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    seekStationAbortNative
- * Signature: ()I
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_seekStationAbortNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    scanBandNative
+ * Signature: (JLcom/service/fm/IFmScanListener;)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_service_fm_NativeTunerBackend_scanBandNative
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopScanNative
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_stopScanNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readSpectrumNative
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readSpectrumNative
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    readChannelQualityNative
+ * Signature: (JLjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_readChannelQualityNative
+  (JNIEnv *, jclass, jlong, jobject, jint);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setRdsNative
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setRdsNative
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    startRdsReaderNative
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_startRdsReaderNative
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopRdsReaderNative
+ * Signature: (J)V
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_seekStationAbortNative
-  (JNIEnv *, jobject);
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_stopRdsReaderNative
+  (JNIEnv *, jclass, jlong);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    waitRdsNative
+ * Signature: (JLjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_waitRdsNative
+  (JNIEnv *, jclass, jlong, jobject, jint);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    releaseRdsReaderNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_releaseRdsReaderNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    setAudioPathNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_setAudioPathNative
-  (JNIEnv *, jobject, jint);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setAudioPathNative
+  (JNIEnv *, jclass, jlong, jint);
 
 /*
- * Class:     com_service_fm_FmReceiver
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    setMonoNative
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setMonoNative
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
  * Method:    setFMVolumeNative
- * Signature: (I)I
+ * Signature: (JI)I
  */
-JNIEXPORT jint JNICALL Java_com_service_fm_FmReceiver_setFMVolumeNative
-  (JNIEnv *, jobject, jint);
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_setFMVolumeNative
+  (JNIEnv *, jclass, jlong, jint);
 
-#ifdef __cplusplus
-}
-#endif
-#endif
-/* Header for class com_service_fm_FmReceiver_EventCallbackHandler */
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    runProgramNative
+ * Signature: (J[II[I)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_runProgramNative
+  (JNIEnv *, jclass, jlong, jintArray, jint, jintArray);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    startSignalPollerNative
+ * Signature: (JIILcom/service/fm/IFmSignalListener;)I
+ */
+JNIEXPORT jint JNICALL Java_com_service_fm_NativeTunerBackend_startSignalPollerNative
+  (JNIEnv *, jclass, jlong, jint, jint, jobject);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    stopSignalPollerNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    createNative
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_service_fm_NativeTunerBackend_createNative
+  (JNIEnv *, jclass, jstring);
+
+/*
+ * Class:     com_service_fm_NativeTunerBackend
+ * Method:    destroyNative
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_service_fm_NativeTunerBackend_destroyNative
+  (JNIEnv *, jclass, jlong);
 
-#ifndef _Included_com_service_fm_FmReceiver_EventCallbackHandler
-#define _Included_com_service_fm_FmReceiver_EventCallbackHandler
-#ifdef __cplusplus
-extern "C" {
-#endif
-#undef com_service_fm_FmReceiver_EventCallbackHandler_MIN_PRIORITY
-#define com_service_fm_FmReceiver_EventCallbackHandler_MIN_PRIORITY 1L
-#undef com_service_fm_FmReceiver_EventCallbackHandler_NORM_PRIORITY
-#define com_service_fm_FmReceiver_EventCallbackHandler_NORM_PRIORITY 5L
-#undef com_service_fm_FmReceiver_EventCallbackHandler_MAX_PRIORITY
-#define com_service_fm_FmReceiver_EventCallbackHandler_MAX_PRIORITY 10L
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,184 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * The coarse-to-fine band scan behind
+ * {@link FmReceiver#sweepBand(int, IFmScanListener)}.
+ * <p>
+ * Reading every channel of a 50 kHz plan takes twice the reads of a 100 kHz
+ * one, and four times those of a 200 kHz pass. This sweep first reads the
+ * RSSI every 200 kHz, takes the median of those readings as the noise floor,
+ * and then reads the channels of the plan only between the coarse readings
+ * that stand out as local peaks. Empty stretches of the band cost one read
+ * per 200 kHz whatever the spacing, so a full resolution list takes little
+ * more than the coarse pass.
+ * <p>
+ * A station is a channel read at or over the threshold that is the
+ * strongest of the channels read within 100 kHz of it; the shoulders a
+ * station shows 50 kHz off are not reported as stations of their own.
+ * <p>
+ * Runs under the receiver lock, which mutes the audio around a sweep;
+ * {@link #abort()} may be called from any thread.
+ */
+final class BandSweep {
+
+    /** Spacing of the coarse pass. */
+    static final int COARSE_SPACING = FmBandPlan.SPACING_200KHZ;
+    /**
+     * RSSI a station loses at a coarse channel 100 kHz off. Coarse readings
+     * this far under the threshold are still looked at closer.
+     */
+    static final int COARSE_SLACK = 12;
+    /** RSSI over the floor a coarse peak needs to be looked at closer. */
+    static final int PEAK_MARGIN = 4;
+
+    private static final int UNREAD = Integer.MIN_VALUE;
+    private static final int MAX_CHANNELS = (FmBandPlan.FREQ_MAX - FmBandPlan.FREQ_MIN) / FmBandPlan.SPACING_50KHZ
+            + 1;
+
+    private final TunerBackend mBackend;
+
+    /* RSSI per channel of the plan, UNREAD where the sweep did not look */
+    private final int[] mRssi = new int[MAX_CHANNELS];
+    private final int[] mSorted = new int[MAX_CHANNELS];
+    private final int[] mFound = new int[MAX_CHANNELS];
+
+    private volatile boolean mAborted;
+    private int mReads;
+    private int mFloor;
+
+    BandSweep(TunerBackend backend) {
+        mBackend = backend;
+    }
+
+    /**
+     * Sweeps the band. The tuner is left on the last channel read.
+     *
+     * @param plan
+     *            the band plan the tuner is set to.
+     * @param minSignalStrength
+     *            the least RSSI of a station, or
+     *            {@link FmReceiver#MIN_SIGNAL_STRENGTH_AUTO} for the noise
+     *            floor plus floorMargin.
+     * @param floorMargin
+     *            see minSignalStrength.
+     * @return the stations in ascending order, those found so far if
+     *         aborted, or null if a channel could not be tuned or read.
+     */
+    int[] run(FmBandPlan plan, int minSignalStrength, int floorMargin) {
+        int spacing = plan.getSpacing();
+        int n = plan.getChannelCount();
+        int stride = Math.max(1, COARSE_SPACING / spacing);
+        mAborted = false;
+        mReads = 0;
+        Arrays.fill(mRssi, 0, n, UNREAD);
+
+        int coarse = 0;
+        for (int k = 0; k < n && !mAborted; k = nextCoarse(k, stride, n)) {
+            if (!read(plan, k)) {
+                return null;
+            }
+            mSorted[coarse++] = mRssi[k];
+        }
+        if (coarse == 0) {
+            return new int[0];
+        }
+        Arrays.sort(mSorted, 0, coarse);
+        mFloor = mSorted[coarse / 2];
+        int threshold = minSignalStrength == FmReceiver.MIN_SIGNAL_STRENGTH_AUTO ? mFloor + floorMargin
+                : minSignalStrength;
+        int cutoff = Math.min(threshold, Math.max(threshold - COARSE_SLACK, mFloor + PEAK_MARGIN));
+
+        // look closer between the neighbours of each coarse peak
+        int prev = UNREAD;
+        for (int k = 0; k < n && !mAborted && stride > 1; k = nextCoarse(k, stride, n)) {
+            int next = nextCoarse(k, stride, n);
+            int rssi = mRssi[k];
+            boolean peak = rssi >= cutoff && rssi > prev && (next >= n || rssi >= mRssi[next]);
+            prev = rssi;
+            for (int j = Math.max(0, k - stride + 1); peak && j < Math.min(n, k + stride) && !mAborted; j++) {
+                if (mRssi[j] == UNREAD && !read(plan, j)) {
+                    return null;
+                }
+            }
+        }
+
+        int reach = FmBandPlan.SPACING_100KHZ / spacing;
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            if (mRssi[k] != UNREAD && mRssi[k] >= threshold && isPeak(k, reach, n)) {
+                mFound[count++] = plan.getLow() + k * spacing;
+            }
+        }
+        return Arrays.copyOf(mFound, count);
+    }
+
+    /** Stops a running {@link #run(FmBandPlan, int, int)}. */
+    void abort() {
+        mAborted = true;
+    }
+
+    /**
+     * @return the RSSI reads the last sweep made.
+     */
+    int getReadCount() {
+        return mReads;
+    }
+
+    /**
+     * @return the noise floor the last sweep measured, the median of its
+     *         coarse readings.
+     */
+    int getFloor() {
+        return mFloor;
+    }
+
+    /**
+     * @return the RSSI the last sweep read on a channel of the plan, or
+     *         {@link TunerBackend#RSSI_UNKNOWN} if it did not read it.
+     */
+    int getRssi(FmBandPlan plan, int freq) {
+        if (!plan.contains(freq)) {
+            return TunerBackend.RSSI_UNKNOWN;
+        }
+        int rssi = mRssi[(freq - plan.getLow()) / plan.getSpacing()];
+        return rssi == UNREAD ? TunerBackend.RSSI_UNKNOWN : rssi;
+    }
+
+    private boolean read(FmBandPlan plan, int k) {
+        if (mBackend.tuneRadio(plan.getLow() + k * plan.getSpacing()) != 0) {
+            return false;
+        }
+        int rssi = mBackend.readRssi();
+        if (rssi == TunerBackend.RSSI_UNKNOWN) {
+            return false;
+        }
+        mRssi[k] = rssi;
+        mReads++;
+        return true;
+    }
+
+    /* stronger than the channels read within reach below, at least as strong as those above */
+    private boolean isPeak(int k, int reach, int n) {
+        for (int j = Math.max(0, k - reach); j < k; j++) {
+            if (mRssi[j] >= mRssi[k]) {
+                return false;
+            }
+        }
+        for (int j = k + 1; j <= Math.min(n - 1, k + reach); j++) {
+            if (mRssi[j] > mRssi[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* the coarse channel after k; the last channel of the band is always read */
+    private static int nextCoarse(int k, int stride, int n) {
+        if (k + stride < n) {
+            return k + stride;
+        }
+        return k < n - 1 ? n - 1 : n;
+    }
+}
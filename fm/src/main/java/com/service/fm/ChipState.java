@@ -0,0 +1,82 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * What {@link FmReceiver} last put on the chip, so that setters asked for
+ * a value already in place can return without an ioctl.
+ * <p>
+ * A value is unknown until it is set, and becomes unknown again when it is
+ * forgotten: after a failed command, since the chip may be half way or
+ * reset, after a power transition, and after a seek or scan that moves the
+ * tuner on its own. Every change bumps {@link #getVersion()}, so readers can
+ * tell whether anything moved since they last looked.
+ * <p>
+ * Changes are made under the receiver's lock; the version may be read from
+ * any thread.
+ */
+final class ChipState {
+
+    static final int FREQ = 0;
+    static final int VOLUME = 1;
+    static final int MUTE = 2;
+    static final int AUDIO_PATH = 3;
+    static final int AUDIO_MODE = 4;
+    private static final int FIELD_COUNT = 5;
+
+    /** Value of a field the chip state is not known for. */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int[] mValues = new int[FIELD_COUNT];
+    private volatile long mVersion;
+
+    ChipState() {
+        Arrays.fill(mValues, UNKNOWN);
+    }
+
+    /**
+     * @return true if the chip is known to hold value for field.
+     */
+    boolean has(int field, int value) {
+        return mValues[field] == value;
+    }
+
+    /**
+     * @return the value known for field, {@link #UNKNOWN} if none.
+     */
+    int get(int field) {
+        return mValues[field];
+    }
+
+    /**
+     * Records a value the chip accepted.
+     */
+    void set(int field, int value) {
+        if (mValues[field] != value) {
+            mValues[field] = value;
+            mVersion++;
+        }
+    }
+
+    /**
+     * Forgets the value of one field.
+     */
+    void forget(int field) {
+        set(field, UNKNOWN);
+    }
+
+    /**
+     * Forgets every value.
+     */
+    void invalidate() {
+        Arrays.fill(mValues, UNKNOWN);
+        mVersion++;
+    }
+
+    /**
+     * @return a counter bumped by every change.
+     */
+    long getVersion() {
+        return mVersion;
+    }
+}
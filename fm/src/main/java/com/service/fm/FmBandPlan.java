@@ -0,0 +1,223 @@
+package com.service.fm;
+
+/**
+ * The band a receiver tunes, seeks and scans: a driver band, its edges, the
+ * channel spacing and the deemphasis time. Frequencies are in the units of
+ * {@link FmReceiver#tuneRadio(int)}, 10 kHz.
+ * <p>
+ * {@link FmReceiver#setWorldRegion(int, int)} and
+ * {@link FmReceiver#setStepSize(int)} pick the plan of a region with
+ * {@link #forRegion(int, int, int)}; {@link FmReceiver#setBandPlan(FmBandPlan)}
+ * takes any other. Not every tuner steps every spacing: the RDA driver
+ * counts in 100 kHz, so 50 kHz plans are only taken by tuners that can tune
+ * between its channels, such as {@link SimulatedTunerBackend}.
+ */
+public final class FmBandPlan {
+
+    /** US and Europe, 87.5 - 108 MHz. */
+    public static final int BAND_UE = 1;
+    /** Japan, 76 - 90 MHz. */
+    public static final int BAND_JAPAN = 2;
+    /** Japan wide band, 76 - 108 MHz. */
+    public static final int BAND_JAPANW = 3;
+    /** Any range between 76 and 108 MHz, see {@link #special(int, int, int, int)}. */
+    public static final int BAND_SPECIAL = 4;
+
+    /** 50 kHz channel spacing. */
+    public static final int SPACING_50KHZ = 5;
+    /** 100 kHz channel spacing. */
+    public static final int SPACING_100KHZ = 10;
+    /** 200 kHz channel spacing. */
+    public static final int SPACING_200KHZ = 20;
+
+    /** Lowest frequency any plan may start at. */
+    public static final int FREQ_MIN = 7600;
+    /** Highest frequency any plan may end at. */
+    public static final int FREQ_MAX = 10800;
+
+    /** The plan a receiver starts with: 87.5 - 108 MHz in 100 kHz steps. */
+    static final FmBandPlan DEFAULT = forRegion(FmReceiver.FUNC_REGION_DEFAULT, FmReceiver.FREQ_STEP_DEFAULT,
+            FmReceiver.DEEMPHASIS_TIME_DEFAULT);
+
+    private final int mBand;
+    private final int mLow;
+    private final int mHigh;
+    private final int mSpacing;
+    private final int mDeemphasis;
+
+    private FmBandPlan(int band, int low, int high, int spacing, int deemphasis) {
+        if (low < FREQ_MIN || high > FREQ_MAX || low >= high || low % SPACING_50KHZ != 0) {
+            throw new IllegalArgumentException("band " + low + " - " + high);
+        }
+        if (spacing != SPACING_50KHZ && spacing != SPACING_100KHZ && spacing != SPACING_200KHZ) {
+            throw new IllegalArgumentException("spacing " + spacing);
+        }
+        if (deemphasis != FmReceiver.DEEMPHASIS_50U && deemphasis != FmReceiver.DEEMPHASIS_75U) {
+            throw new IllegalArgumentException("deemphasis " + deemphasis);
+        }
+        mBand = band;
+        mLow = low;
+        mHigh = high;
+        mSpacing = spacing;
+        mDeemphasis = deemphasis;
+    }
+
+    /**
+     * Returns the plan of a world region: 87.5 - 108 MHz for
+     * {@link FmReceiver#FUNC_REGION_NA} and {@link FmReceiver#FUNC_REGION_EUR},
+     * 76 - 90 MHz for {@link FmReceiver#FUNC_REGION_JP}, in 100 kHz steps, or
+     * 50 kHz ones with {@link FmReceiver#FREQ_STEP_50KHZ}.
+     *
+     * @param worldRegion
+     *            one of the FUNC_REGION_ constants.
+     * @param stepSize
+     *            {@link FmReceiver#FREQ_STEP_100KHZ} or
+     *            {@link FmReceiver#FREQ_STEP_50KHZ}.
+     * @param deemphasisTime
+     *            {@link FmReceiver#DEEMPHASIS_50U} or
+     *            {@link FmReceiver#DEEMPHASIS_75U}.
+     * @throws IllegalArgumentException
+     *             if a value is none of these.
+     */
+    public static FmBandPlan forRegion(int worldRegion, int stepSize, int deemphasisTime) {
+        int spacing;
+        switch (stepSize) {
+            case FmReceiver.FREQ_STEP_100KHZ:
+                spacing = SPACING_100KHZ;
+                break;
+            case FmReceiver.FREQ_STEP_50KHZ:
+                spacing = SPACING_50KHZ;
+                break;
+            default:
+                throw new IllegalArgumentException("step size " + stepSize);
+        }
+        switch (worldRegion) {
+            case FmReceiver.FUNC_REGION_NA:
+            case FmReceiver.FUNC_REGION_EUR:
+                return of(BAND_UE, spacing, deemphasisTime);
+            case FmReceiver.FUNC_REGION_JP:
+                return of(BAND_JAPAN, spacing, deemphasisTime);
+            default:
+                throw new IllegalArgumentException("world region " + worldRegion);
+        }
+    }
+
+    /**
+     * Returns the plan covering one of the fixed bands.
+     *
+     * @param band
+     *            {@link #BAND_UE}, {@link #BAND_JAPAN} or {@link #BAND_JAPANW}.
+     * @param spacing
+     *            one of the SPACING_ constants.
+     * @param deemphasisTime
+     *            {@link FmReceiver#DEEMPHASIS_50U} or
+     *            {@link FmReceiver#DEEMPHASIS_75U}.
+     * @throws IllegalArgumentException
+     *             if a value is out of range.
+     */
+    public static FmBandPlan of(int band, int spacing, int deemphasisTime) {
+        switch (band) {
+            case BAND_UE:
+                return new FmBandPlan(band, 8750, 10800, spacing, deemphasisTime);
+            case BAND_JAPAN:
+                return new FmBandPlan(band, 7600, 9000, spacing, deemphasisTime);
+            case BAND_JAPANW:
+                return new FmBandPlan(band, 7600, 10800, spacing, deemphasisTime);
+            default:
+                throw new IllegalArgumentException("band " + band);
+        }
+    }
+
+    /**
+     * Returns a plan of {@link #BAND_SPECIAL} over the given range. On the
+     * RDA driver the range must lie within the special band it was built
+     * with, 87.5 - 108 MHz unless configured otherwise.
+     *
+     * @param low
+     *            the lowest channel, at least {@link #FREQ_MIN} and on the
+     *            50 kHz raster.
+     * @param high
+     *            the highest channel, at most {@link #FREQ_MAX}.
+     * @param spacing
+     *            one of the SPACING_ constants.
+     * @param deemphasisTime
+     *            {@link FmReceiver#DEEMPHASIS_50U} or
+     *            {@link FmReceiver#DEEMPHASIS_75U}.
+     * @throws IllegalArgumentException
+     *             if a value is out of range.
+     */
+    public static FmBandPlan special(int low, int high, int spacing, int deemphasisTime) {
+        return new FmBandPlan(BAND_SPECIAL, low, high, spacing, deemphasisTime);
+    }
+
+    /**
+     * @return one of the BAND_ constants.
+     */
+    public int getBand() {
+        return mBand;
+    }
+
+    /**
+     * @return the lowest channel.
+     */
+    public int getLow() {
+        return mLow;
+    }
+
+    /**
+     * @return the highest channel, the last one on the raster that fits.
+     */
+    public int getHigh() {
+        return mLow + (getChannelCount() - 1) * mSpacing;
+    }
+
+    /**
+     * @return the channel spacing, one of the SPACING_ constants.
+     */
+    public int getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * @return {@link FmReceiver#DEEMPHASIS_50U} or
+     *         {@link FmReceiver#DEEMPHASIS_75U}.
+     */
+    public int getDeemphasis() {
+        return mDeemphasis;
+    }
+
+    /**
+     * @return the number of channels of the plan.
+     */
+    public int getChannelCount() {
+        return (mHigh - mLow) / mSpacing + 1;
+    }
+
+    /**
+     * @return true if freq is a channel of the plan.
+     */
+    public boolean contains(int freq) {
+        return freq >= mLow && freq <= mHigh && (freq - mLow) % mSpacing == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FmBandPlan)) {
+            return false;
+        }
+        FmBandPlan other = (FmBandPlan) o;
+        return mBand == other.mBand && mLow == other.mLow && mHigh == other.mHigh && mSpacing == other.mSpacing
+                && mDeemphasis == other.mDeemphasis;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((mBand * 31 + mLow) * 31 + mHigh) * 31 + mSpacing) * 31 + mDeemphasis;
+    }
+
+    @Override
+    public String toString() {
+        return "FmBandPlan{band=" + mBand + ", " + mLow + " - " + mHigh + ", spacing=" + mSpacing + ", deemphasis="
+                + mDeemphasis + "}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.service.fm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight view over the packed channel quality records written by
+ * {@link FmReceiver#readChannelQuality(ByteBuffer, int)}.
+ * <p>
+ * Each record mirrors the driver's <code>struct fm_cqi</code>: three unsigned
+ * 16-bit fields (channel, RSSI, reserved) in native byte order. The reader
+ * never copies the records and can be re-pointed at a new result with
+ * {@link #wrap(ByteBuffer, int)}, so one instance serves any number of
+ * queries.
+ */
+public final class FmCqiReader {
+
+    /** Size in bytes of one packed record. */
+    public static final int RECORD_SIZE = 6;
+
+    /** Most records one query can ask for, the driver counts them in 16 bits. */
+    public static final int MAX_RECORDS = 0xFFFF;
+
+    private ByteBuffer mBuffer;
+    private int mCount;
+
+    public FmCqiReader() {
+    }
+
+    public FmCqiReader(ByteBuffer buffer, int count) {
+        wrap(buffer, count);
+    }
+
+    /**
+     * Points this reader at a new set of records. The reader reads through
+     * a view of the buffer, so the buffer's own byte order is left as it is.
+     *
+     * @param buffer
+     *            the buffer filled by readChannelQuality().
+     * @param count
+     *            the record count readChannelQuality() returned.
+     * @return this reader.
+     */
+    public FmCqiReader wrap(ByteBuffer buffer, int count) {
+        mBuffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        mCount = Math.max(0, Math.min(count, buffer.capacity() / RECORD_SIZE));
+        return this;
+    }
+
+    /**
+     * @return the number of records available.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return the frequency of record <code>index</code>, in the same units as
+     *         {@link FmReceiver#tuneRadio(int)}.
+     */
+    public int freq(int index) {
+        return 10 * field(index, 0);
+    }
+
+    /**
+     * @return the raw RSSI of record <code>index</code>.
+     */
+    public int rssi(int index) {
+        return field(index, 1);
+    }
+
+    /**
+     * @return the driver specific reserved field of record <code>index</code>.
+     */
+    public int reserved(int index) {
+        return field(index, 2);
+    }
+
+    /**
+     * Finds the record with the strongest signal.
+     *
+     * @return the index of the best record, or -1 if there are none.
+     */
+    public int bestIndex() {
+        int best = -1;
+        int bestRssi = -1;
+        for (int i = 0; i < mCount; i++) {
+            int rssi = rssi(i);
+            if (rssi > bestRssi) {
+                bestRssi = rssi;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int field(int index, int field) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("record " + index + " of " + mCount);
+        }
+        return mBuffer.getShort(index * RECORD_SIZE + field * 2) & 0xFFFF;
+    }
+}
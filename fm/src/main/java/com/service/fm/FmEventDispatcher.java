@@ -0,0 +1,225 @@
+package com.service.fm;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers {@link FmReceiver} events to its {@link IFmReceiverEventHandler}.
+ * <p>
+ * Events are encoded as a type and a few ints into preallocated slots of a
+ * bounded multi-producer ring (after D. Vyukov's bounded MPMC queue), so any
+ * thread, including the native RDS and signal threads, can post without
+ * locking or allocating. A single dispatcher thread takes the slots in order,
+ * calls the handler and hands the slot back to the producers. When the ring
+ * is full the new event is dropped and counted.
+ */
+final class FmEventDispatcher implements Runnable {
+
+    private static final String TAG = "FmEventDispatcher";
+
+    static final int TYPE_STATUS = 1;
+    static final int TYPE_SEEK_COMPLETE = 2;
+    static final int TYPE_RDS_MODE = 3;
+    static final int TYPE_RDS_DATA = 4;
+    static final int TYPE_AUDIO_MODE = 5;
+    static final int TYPE_AUDIO_PATH = 6;
+    static final int TYPE_ESTIMATE_NFL = 7;
+    static final int TYPE_LIVE_AUDIO_QUALITY = 8;
+    static final int TYPE_WORLD_REGION = 9;
+    static final int TYPE_VOLUME = 10;
+
+    private static final int CAPACITY = 64;
+
+    /** One recycled ring slot. */
+    private static final class Event {
+        /* Vyukov sequence: equals the position when free, position + 1 when published. */
+        volatile long sequence;
+        long position;
+        int type;
+        int arg0;
+        int arg1;
+        int arg2;
+        int arg3;
+        final char[] text = new char[RdsDecoder.RT_LENGTH];
+        int textLength;
+    }
+
+    private final Event[] mSlots = new Event[CAPACITY];
+    private final AtomicLong mTail = new AtomicLong();
+    /* Only touched by the dispatcher thread. */
+    private long mHead;
+
+    private final FmReceiverStats mStats;
+
+    private volatile IFmReceiverEventHandler mHandler;
+    private volatile Thread mThread;
+    private volatile boolean mWaiting;
+
+    FmEventDispatcher(FmReceiverStats stats) {
+        mStats = stats;
+        for (int i = 0; i < CAPACITY; i++) {
+            mSlots[i] = new Event();
+            mSlots[i].sequence = i;
+        }
+    }
+
+    /**
+     * Sets the handler and starts the dispatcher thread on first use.
+     * Returns at once, events posted afterwards are delivered.
+     */
+    synchronized void setHandler(IFmReceiverEventHandler handler) {
+        mHandler = handler;
+        if (handler != null && mThread == null) {
+            Thread thread = new Thread(this, "FmEvents");
+            thread.setDaemon(true);
+            mThread = thread;
+            thread.start();
+        }
+    }
+
+    IFmReceiverEventHandler getHandler() {
+        return mHandler;
+    }
+
+    /** Stops the dispatcher thread; queued events are discarded. */
+    synchronized void finish() {
+        Thread thread = mThread;
+        mHandler = null;
+        mThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    boolean post(int type, int arg0, int arg1, int arg2, int arg3) {
+        Event event = claim();
+        if (event == null) {
+            return false;
+        }
+        event.type = type;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.arg2 = arg2;
+        event.arg3 = arg3;
+        event.textLength = 0;
+        publish(event);
+        return true;
+    }
+
+    boolean postText(int type, int arg0, int arg1, char[] text, int length) {
+        Event event = claim();
+        if (event == null) {
+            return false;
+        }
+        event.type = type;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.textLength = Math.min(length, event.text.length);
+        System.arraycopy(text, 0, event.text, 0, event.textLength);
+        publish(event);
+        return true;
+    }
+
+    private Event claim() {
+        if (mHandler == null) {
+            return null;
+        }
+        long pos = mTail.get();
+        for (;;) {
+            Event event = mSlots[(int) pos & (CAPACITY - 1)];
+            long dif = event.sequence - pos;
+            if (dif == 0) {
+                if (mTail.compareAndSet(pos, pos + 1)) {
+                    event.position = pos;
+                    return event;
+                }
+                pos = mTail.get();
+            } else if (dif < 0) {
+                mStats.onEventDropped();
+                return null;
+            } else {
+                pos = mTail.get();
+            }
+        }
+    }
+
+    private void publish(Event event) {
+        event.sequence = event.position + 1;
+        Thread thread = mThread;
+        if (mWaiting && thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /* Returns the next published slot, or null if the ring is empty. */
+    private Event peek() {
+        Event event = mSlots[(int) mHead & (CAPACITY - 1)];
+        return event.sequence == mHead + 1 ? event : null;
+    }
+
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        while (mThread == self) {
+            Event event = peek();
+            if (event == null) {
+                mWaiting = true;
+                if (peek() == null && mThread == self) {
+                    LockSupport.park(this);
+                }
+                mWaiting = false;
+                continue;
+            }
+
+            IFmReceiverEventHandler handler = mHandler;
+            if (handler != null) {
+                try {
+                    deliver(handler, event);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "event handler failed", e);
+                }
+            }
+            event.sequence = mHead + CAPACITY;
+            mHead++;
+        }
+    }
+
+    private static void deliver(IFmReceiverEventHandler handler, Event e) {
+        switch (e.type) {
+            case TYPE_STATUS:
+                handler.onStatusEvent(e.arg0, e.arg1, e.arg2 != 0, e.arg3 >> 1, (e.arg3 & 1) != 0);
+                break;
+            case TYPE_SEEK_COMPLETE:
+                handler.onSeekCompleteEvent(e.arg0, e.arg1, e.arg2 != 0);
+                break;
+            case TYPE_RDS_MODE:
+                handler.onRdsModeEvent(e.arg0, e.arg1);
+                break;
+            case TYPE_RDS_DATA:
+                handler.onRdsDataEvent(e.arg0, e.arg1, e.text, e.textLength);
+                break;
+            case TYPE_AUDIO_MODE:
+                handler.onAudioModeEvent(e.arg0);
+                break;
+            case TYPE_AUDIO_PATH:
+                handler.onAudioPathEvent(e.arg0);
+                break;
+            case TYPE_ESTIMATE_NFL:
+                handler.onEstimateNoiseFloorLevelEvent(e.arg0);
+                break;
+            case TYPE_LIVE_AUDIO_QUALITY:
+                handler.onLiveAudioQualityEvent(e.arg0);
+                break;
+            case TYPE_WORLD_REGION:
+                handler.onWorldRegionEvent(e.arg0);
+                break;
+            case TYPE_VOLUME:
+                handler.onVolumeEvent(e.arg0, e.arg1);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package com.service.fm;
 
+import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.IntentFilter;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Process;
+import android.os.Build;
 import android.util.Log;
 import android.content.Context;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * FmReceiver is the Java API entry point to issue commands to FM receiver
  * hardware. After a command is issued one or more FmReceiverEvents will be
@@ -45,15 +55,6 @@ import android.content.Context;
  */
 public final class FmReceiver {
 	
-	static {
-		try {
-		System.loadLibrary("rdafmradio");
-		} catch(Exception e) {
-			Log.e("FMRADIO", "load librdafmradio", e);
-
-		}
-	}
-
     private static final String TAG = "FmReceiver";
     /**
      * Name of this service
@@ -497,9 +498,16 @@ public final class FmReceiver {
     /* The default constants applied on system startup. */
     /**
      * Specifies default minimum signal strength that will be identified as a
-     * station when scanning.
+     * station when scanning. Passed to a seek or sweep it is a threshold like
+     * any other; see {@link #MIN_SIGNAL_STRENGTH_AUTO} to let the receiver
+     * choose.
      * */
     public static final int MIN_SIGNAL_STRENGTH_DEFAULT = 105;
+    /**
+     * Asks a seek or sweep to choose the minimum signal strength itself, as
+     * a margin over the noise floor. Lies outside any RSSI.
+     */
+    public static final int MIN_SIGNAL_STRENGTH_AUTO = Integer.MIN_VALUE;
     /** Specifies default radio functionality. */
     public static final int FUNCTIONALITY_DEFAULT = FUNC_REGION_NA;
     /** Specifies default world frequency region. */
@@ -512,6 +520,11 @@ public final class FmReceiver {
     public static final int NFL_DEFAULT = NFL_MED;
     /** Specifies the default signal poll interval in ms. */
     public static final int SIGNAL_POLL_INTERVAL_DEFAULT = 100;
+    /**
+     * Specifies the default least change of RSSI, PAMD or block error ratio
+     * that is reported by live polling.
+     */
+    public static final int SIGNAL_DELTA_DEFAULT = 2;
     /** Specifies the default signal poll interval in ms. */
     public static final int DEEMPHASIS_TIME_DEFAULT = DEEMPHASIS_75U;
     /** Default Alternate Frequency mode (DISABLED). */
@@ -529,16 +542,29 @@ public final class FmReceiver {
     /** Function parameters are out of allowed range. */
     public static final int STATUS_ILLEGAL_PARAMETERS = 4;
 
+    /* RSSI spectrum buffer layout, see readSpectrum(). */
+    /**
+     * Maximum number of channels reported by one spectrum read, and covered
+     * by the chip's scan table. Channels are counted from the lower edge of
+     * the band plan, 100 kHz apart or the plan's spacing if wider; a plan
+     * with more, such as {@link FmBandPlan#BAND_JAPANW} in 100 kHz steps, is
+     * scanned channel by channel instead, see
+     * {@link #setBandPlan(FmBandPlan)}.
+     */
+    public static final int SPECTRUM_MAX_CHANNELS = 256;
+    /** Byte offset of the first freq/RSSI pair in a spectrum buffer. */
+    public static final int SPECTRUM_HEADER_SIZE = 4;
+    /** Size in bytes of one freq/RSSI pair in a spectrum buffer. */
+    public static final int SPECTRUM_ENTRY_SIZE = 4;
+    /** Minimum capacity of a buffer passed to readSpectrum(). */
+    public static final int SPECTRUM_BUFFER_SIZE = SPECTRUM_HEADER_SIZE + SPECTRUM_MAX_CHANNELS
+            * SPECTRUM_ENTRY_SIZE;
+
 	/**
 	 * @hide
 	 */
 	protected Context mContext;
 	
-	/**
-	 * @hide
-	 */
-	protected EventCallbackHandler mEventCallbackHandler;
-	
 	/**
 	 * @hide
 	 */
@@ -548,37 +574,307 @@ public final class FmReceiver {
 	 * @hide
 	 */
 	protected int mReceiverPriority=DEFAULT_BROADCAST_RECEIVER_PRIORITY;
-    
-	/**
-	 * @hide
-	 */
-	protected synchronized Handler initEventCallbackHandler() {
-		//TODO: what's this
-        //return null;//initEventCallbackHandler(null);
-		if (mEventCallbackHandler == null) {
-			mEventCallbackHandler = new EventCallbackHandler();
-			mEventCallbackHandler.start();
-			while (mEventCallbackHandler.mHandler ==null) {
-				try {
-					Thread.sleep(100);
-				} catch (Exception e) {}
-				
-			}
-		}
-		return mEventCallbackHandler.mHandler;
-	}
-	
-	/**
-	 * @hide
-	 */ 
-	protected synchronized void finishEventCallbackHandler() {
-		if (mEventCallbackHandler != null) {
-			mEventCallbackHandler.finish();
-			mEventCallbackHandler=null;
-		}
-	}
 
+    /**
+     * Runs asynchronous tuner commands in order, and the standby timeout.
+     * Its single thread exits when idle, so an unused receiver holds no
+     * thread.
+     */
+    private final ScheduledExecutorService mTunerExecutor = createExecutor("FmTuner");
+
+    /**
+     * Sends coalesced tunes, apart from the tuner thread so that a drag does
+     * not wait behind a seek, sweep or revalidation queued there.
+     */
+    private final ScheduledExecutorService mTuneExecutor = createExecutor("FmTune");
+
+    /** Delivers signal samples, so a busy tuner thread does not hold them up. */
+    private final ScheduledExecutorService mSignalExecutor = createExecutor("FmSignal");
+
+    private final TunerBackend mBackend;
+
+    private final FmReceiverStats mStats = new FmReceiverStats();
+
+    private final FmEventDispatcher mEventDispatcher = new FmEventDispatcher(mStats);
+
+    /* Last known state, reported in status events. */
+    private volatile int mFreq = FREQ_UNKNOWN;
+
+    /*
+     * Channel the chip receives on in the low word, FREQ_UNKNOWN while it
+     * moves across channels; the high word counts the moves. Written under
+     * this lock by setTuned(), read by the RDS and poller threads.
+     */
+    private volatile long mTuned = FREQ_UNKNOWN;
+    private volatile boolean mRadioOn;
+    private volatile boolean mMuted;
+    /* The chip was muted by muteWhileAway(), guarded by this. */
+    private boolean mMutedAway;
+
+    /* Program actually sent by runTransaction(), guarded by this. */
+    private final int[] mTxProgram = new int[2 * FmTransaction.MAX_OPS];
+
+    private final ChipState mChip = new ChipState();
+
+    /* Guards publishing only; readers take the volatile reference without it. */
+    private final Object mStatusLock = new Object();
+    private volatile FmStatus mStatus = FmStatus.INITIAL;
+
+    private volatile long mStandbyTimeoutMs;
+
+    /* True while turned off but held powered up and muted, see setStandbyTimeout(). */
+    private volatile boolean mStandby;
+
+    /* Guarded by this; bumped on every standby entry and exit. */
+    private int mStandbyGeneration;
+    private ScheduledFuture<?> mStandbyTimer;
+
+    private static final int FREQ_UNKNOWN = 0;
+
+    private static final int NO_PENDING_TUNE = Integer.MIN_VALUE;
+
+    private volatile boolean mTuneCoalescing;
+
+    /** Single-slot mailbox holding the latest coalesced tune target. */
+    private final AtomicInteger mPendingTune = new AtomicInteger(NO_PENDING_TUNE);
+
+    private final Runnable mTuneDrainer = () -> {
+        int freq = mPendingTune.getAndSet(NO_PENDING_TUNE);
+        if (freq != NO_PENDING_TUNE && tuneRadioNow(freq) != STATUS_OK) {
+            // the caller was told STATUS_OK, report the frequency kept instead
+            postStatus();
+        }
+    };
+
+    /*
+     * The RDS ring shared with the native reader thread: a header of four
+     * ints (head, tail, capacity, overruns) followed by capacity groups.
+     */
+    private static final int RDS_RING_HEADER_SIZE = 16;
+    private static final int RDS_RING_CAPACITY_OFFSET = 8;
+    private static final int RDS_RING_OVERRUNS_OFFSET = 12;
+    private static final int RDS_RING_GROUPS = 256;
+    private static final int RDS_RING_INDEX_MASK = 0x7FFFFFFF;
+    private static final long RDS_STOP_TIMEOUT_MS = 500;
+
+    private final RdsDecoder mRdsDecoder = new RdsDecoder();
+
+    private volatile int mRdsMode = RDS_MODE_OFF;
+
+    private ByteBuffer mRdsRing;
+
+    private Thread mRdsThread;
+
+    private volatile int mRdsPty = -1;
+
+    /* mTuned the decoder is fed under, only touched by the RDS thread. */
+    private long mRdsTuned = FREQ_UNKNOWN;
+
+    /* Scratch buffer of the RDS thread for posting fields. */
+    private final char[] mRdsText = new char[RdsDecoder.RT_LENGTH];
+
+    /* Alternative frequencies of the current channel, guarded by mRdsAf. */
+    private final int[] mRdsAf = new int[RdsDecoder.AF_MAX];
+    private int mRdsAfCount;
+
+    private volatile IFmSignalListener mSignalListener;
+
+    private volatile long mSignalSample;
+
+    private final AtomicBoolean mSignalDeliveryPending = new AtomicBoolean();
+
+    private final Runnable mSignalDrainer = () -> {
+        mSignalDeliveryPending.set(false);
+        IFmSignalListener listener = mSignalListener;
+        if (listener != null) {
+            listener.onSignalSample(mSignalSample);
+        }
+    };
+
+    /** RSSI over the sweep's noise floor a revalidated station must keep. */
+    private static final int REVALIDATE_MARGIN = 10;
+
+    private volatile ScanCache mScanCache;
+
+    private volatile String mScanLocation;
+
+    private volatile int mWorldRegion = FUNC_REGION_DEFAULT;
+
+    private volatile FmBandPlan mBandPlan = FmBandPlan.DEFAULT;
+
+    /* Guarded by this. */
+    private int mStepSize = FREQ_STEP_DEFAULT;
+
+    private final BandSweep mSweep;
+
+    private final NoiseFloorEstimator mNoiseFloor = new NoiseFloorEstimator();
+
+    private final PiRegistry mPiRegistry = new PiRegistry();
+
+    private final ImageFilter mImageFilter = new ImageFilter(mPiRegistry);
+
+    /* Channels sampled and reads per channel by NFL_ level */
+    private static final int[] NFL_CHANNELS = { 8, 16, 32 };
+    private static final int[] NFL_READS = { 2, 4, 8 };
+
+    private volatile IFmStationListListener mStationListListener;
+
+    /* Spectrum buffer of background sweeps, only touched by the tuner thread. */
+    private ByteBuffer mSweepSpectrum;
+
+    /** How long a seek map is trusted, in nanoseconds. */
+    private static final long SEEK_MAP_MAX_AGE_NS = TimeUnit.SECONDS.toNanos(30);
+    /** Candidates a fast seek tunes to before it hands over to the chip. */
+    private static final int FAST_SEEK_CONFIRMS = 3;
+    /** Hardware seeks one seekStation() may chain to reach the threshold. */
+    private static final int HARDWARE_SEEK_ATTEMPTS = 16;
+    /*
+     * fastSeek() result when the chip has to seek instead; backends report
+     * failures as small negative numbers, these lie far from them
+     */
+    private static final int SEEK_MISS = Integer.MIN_VALUE;
+    /* fastSeek() and hardwareSeek() result when seekStationAbort() stopped them */
+    private static final int SEEK_ABORTED = Integer.MIN_VALUE + 1;
+
+    private volatile boolean mFastSeek;
+
+    private volatile boolean mSeekAborted;
+
+    /* Future of the asynchronous seek running under the receiver lock, if any. */
+    private volatile SeekFuture mSeekRequest;
+
+    /* RSSI per channel of the last sweep, guarded by the receiver lock */
+    private final int[] mSeekMapFreq = new int[SPECTRUM_MAX_CHANNELS];
+    private final int[] mSeekMapRssi = new int[SPECTRUM_MAX_CHANNELS];
+    private int mSeekMapCount;
+    private int mSeekMapFloor;
+    private long mSeekMapTime;
+
+    private final AtomicBoolean mSeekMapRefreshPending = new AtomicBoolean();
+
+    private final Runnable mSeekMapRefresher = () -> {
+        mSeekMapRefreshPending.set(false);
+        refreshSeekMap();
+    };
+
+    private static ScheduledExecutorService createExecutor(String name) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+    
     public FmReceiver() {
+        this(new NativeTunerBackend());
+    }
+
+    /**
+     * Creates a receiver for the tuner behind the given device node. Each
+     * receiver has a native context of its own, so receivers on different
+     * nodes can scan, monitor and play at the same time.
+     *
+     * @param devicePath
+     *            the device node, such as /dev/RDAFM1.
+     */
+    public FmReceiver(String devicePath) {
+        this(new NativeTunerBackend(devicePath));
+    }
+
+    /**
+     * Creates a receiver driving the given backend, such as a
+     * {@link SimulatedTunerBackend} for tests without hardware.
+     *
+     * @param backend
+     *            the tuner to drive.
+     */
+    public FmReceiver(TunerBackend backend) {
+        mBackend = backend;
+        mSweep = new BandSweep(backend);
+        mRdsDecoder.setObserver(this::onRdsFieldChanged);
+    }
+
+    /**
+     * Registers the handler receiving the events of this receiver. Replaces
+     * any previous handler. The dispatcher thread is started on the first
+     * registration and the handler receives events posted from then on.
+     *
+     * @param handler
+     *            the handler.
+     */
+    public void registerEventHandler(IFmReceiverEventHandler handler) {
+        mEventDispatcher.setHandler(handler);
+    }
+
+    /**
+     * Unregisters the event handler. Events are no longer queued.
+     */
+    public void unregisterEventHandler() {
+        mEventDispatcher.setHandler(null);
+    }
+
+    /* Publishes power, frequency and mute to the status snapshot. */
+    private void publishStatus() {
+        synchronized (mStatusLock) {
+            mStatus = mStatus.withPower(mRadioOn, mFreq, mMuted);
+        }
+    }
+
+    private void postStatus() {
+        publishStatus();
+        int pty = mRdsMode != RDS_MODE_OFF ? mRdsPty : -1;
+        mEventDispatcher.post(FmEventDispatcher.TYPE_STATUS, mFreq, signalRssi(mSignalSample), mRadioOn ? 1 : 0,
+                pty << 1 | (mMuted ? 1 : 0));
+    }
+
+    /* Called on the RDS thread when the decoder completes a field. */
+    private void onRdsFieldChanged(RdsDecoder decoder, int field) {
+        switch (field) {
+            case RdsDecoder.FIELD_PI:
+                mPiRegistry.notePi(decoder.getPi(), (int) mRdsTuned);
+                mEventDispatcher.post(FmEventDispatcher.TYPE_RDS_DATA, field, decoder.getPi(), 0, 0);
+                break;
+            case RdsDecoder.FIELD_PTY:
+                mRdsPty = decoder.getPty();
+                synchronized (mStatusLock) {
+                    mStatus = mStatus.withRds(mStatus.getProgramService(), mRdsPty);
+                }
+                mEventDispatcher.post(FmEventDispatcher.TYPE_RDS_DATA, field, mRdsPty, 0, 0);
+                break;
+            case RdsDecoder.FIELD_TP:
+                mEventDispatcher.post(FmEventDispatcher.TYPE_RDS_DATA, field, decoder.isTp() ? 1 : 0, 0, 0);
+                break;
+            case RdsDecoder.FIELD_AF:
+                int afCount;
+                synchronized (mRdsAf) {
+                    afCount = mRdsAfCount = decoder.getAlternateFrequencies(mRdsAf);
+                }
+                mEventDispatcher.post(FmEventDispatcher.TYPE_RDS_DATA, field, afCount, 0, 0);
+                break;
+            case RdsDecoder.FIELD_PS:
+                String ps = decoder.getProgramServiceString();
+                synchronized (mStatusLock) {
+                    mStatus = mStatus.withRds(ps, mStatus.getPty());
+                }
+                int psLength = decoder.getProgramService(mRdsText);
+                mPiRegistry.noteProgramService(decoder.getPi(), mRdsText, psLength);
+                mEventDispatcher.postText(FmEventDispatcher.TYPE_RDS_DATA, field, 0, mRdsText, psLength);
+                break;
+            case RdsDecoder.FIELD_PTYN:
+                mEventDispatcher.postText(FmEventDispatcher.TYPE_RDS_DATA, field, 0, mRdsText,
+                        decoder.getProgramTypeName(mRdsText));
+                break;
+            case RdsDecoder.FIELD_RT:
+                mEventDispatcher.postText(FmEventDispatcher.TYPE_RDS_DATA, field, 0, mRdsText,
+                        decoder.getRadioText(mRdsText));
+                break;
+            default:
+                break;
+        }
     }
 
 	/**
@@ -601,35 +897,6 @@ public final class FmReceiver {
 		return (a1.regionMatches(offset, a2, offset, a1length - offset));
 	}
 
-	/**
-	 * @hide
-	 */
-	protected class EventCallbackHandler extends Thread {
-	    
-		public Handler mHandler;
-		
-		public EventCallbackHandler() {
-			super();
-			setPriority(Process.THREAD_PRIORITY_BACKGROUND);
-		}
-		public void run() {
-			Looper.prepare();
-			//TODO: what's this
-			//mHandler = (mCreator == null? new Handler(): mCreator.create());
-			Looper.loop();
-		}
-		
-		
-		public void finish() {
-			if (mHandler != null) {
-				Looper l = mHandler.getLooper();
-				if (l != null) {
-					l.quit();
-				}
-			}
-		}
-	}
-	
     /**
      * Creates a filter for all FTP events
      * 
@@ -661,10 +928,14 @@ public final class FmReceiver {
             }
         }
         
-		if (mEventCallbackHandler != null) {
-			mEventCallbackHandler.finish();
-			mEventCallbackHandler=null;
+		mEventDispatcher.finish();
+		stopRdsReader();
+		if (mStandby) {
+			leaveStandby();
+			mBackend.turnOffRadio();
 		}
+		mChip.invalidate();
+		mBackend.release();
 		
 		if (mContext != null) {
 			mContext = null;
@@ -692,16 +963,25 @@ public final class FmReceiver {
      */
     public synchronized int turnOnRadio() {
         int returnCode = STATUS_SERVER_FAIL;
+        long start = System.nanoTime();
         
-        returnCode = turnOnRadioNative();
+        boolean warm = mStandby && resumeFromStandby();
+        returnCode = warm ? STATUS_OK : mBackend.turnOnRadio();
+        if (!warm) {
+            // a power up starts the chip from its defaults
+            mChip.invalidate();
+        }
         if (returnCode != STATUS_OK) {
         	Log.e(TAG, "turnOnRadio() failed: returnCode = " + returnCode);
+        } else {
+            mStats.onResumed(warm, System.nanoTime() - start);
+            mRadioOn = true;
+            postStatus();
+            scheduleRevalidation();
         }
 
         return returnCode;
     }
-    
-    private native int turnOnRadioNative();
 
     /**
      * Turns off the radio.
@@ -717,19 +997,124 @@ public final class FmReceiver {
     public synchronized int turnOffRadio() {
         int returnCode = STATUS_SERVER_FAIL;
         
-        returnCode = turnOffRadioNative();
+        stopRdsReader();
+        boolean rdsOn = mRdsMode != RDS_MODE_OFF;
+        mRdsMode = RDS_MODE_OFF;
+        mBackend.stopSignalPoller();
+        if (mStandbyTimeoutMs > 0 && mRadioOn && !mStandby && enterStandby(rdsOn)) {
+            returnCode = STATUS_OK;
+        } else {
+            returnCode = mBackend.turnOffRadio();
+            mChip.invalidate();
+            clearSeekMap();
+        }
         if (returnCode != STATUS_OK) {
         	Log.e(TAG, "turnOffRadio() failed: returnCode = " + returnCode);
+        } else {
+            mRadioOn = false;
+            postStatus();
         }
 
         return returnCode;
     }
-    
-    private native int turnOffRadioNative();
+
+    /**
+     * Sets how long {@link #turnOffRadio()} keeps the chip in standby before
+     * powering it down. In standby the chip stays powered up and muted with
+     * the device held open, so the next {@link #turnOnRadio()} only unmutes
+     * it instead of running a full power up. The receiver reports itself
+     * off meanwhile; tuner commands other than {@link #muteAudio(boolean)}
+     * still reach the chip.
+     * <p>
+     * A new timeout applies from the next turnOffRadio(). Resume times of
+     * both paths are counted in {@link #getStats()}.
+     *
+     * @param timeoutMs
+     *            the standby time in milliseconds, 0 (the default) to power
+     *            down at once.
+     */
+    public void setStandbyTimeout(long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("timeout " + timeoutMs);
+        }
+        mStandbyTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return the standby time set with {@link #setStandbyTimeout(long)}.
+     */
+    public long getStandbyTimeout() {
+        return mStandbyTimeoutMs;
+    }
+
+    /**
+     * @return true if the radio is turned off but held in standby.
+     */
+    public boolean isStandby() {
+        return mStandby;
+    }
+
+    private boolean enterStandby(boolean rdsOn) {
+        if (mBackend.muteAudio(true) != STATUS_OK) {
+            mChip.invalidate();
+            return false;
+        }
+        mChip.set(ChipState.MUTE, 1);
+        if (rdsOn) {
+            mBackend.setRds(false);
+        }
+        mStandby = true;
+        final int generation = ++mStandbyGeneration;
+        mStandbyTimer = mTunerExecutor.schedule(() -> onStandbyTimeout(generation), mStandbyTimeoutMs,
+                TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private synchronized void onStandbyTimeout(int generation) {
+        if (mStandby && generation == mStandbyGeneration) {
+            leaveStandby();
+            int returnCode = mBackend.turnOffRadio();
+            mChip.invalidate();
+            clearSeekMap();
+            if (returnCode != STATUS_OK) {
+                Log.e(TAG, "standby power down failed: returnCode = " + returnCode);
+            }
+        }
+    }
+
+    private void leaveStandby() {
+        mStandby = false;
+        mStandbyGeneration++;
+        if (mStandbyTimer != null) {
+            mStandbyTimer.cancel(false);
+            mStandbyTimer = null;
+        }
+    }
+
+    /*
+     * Leaves standby; returns true if the chip was still powered up and is
+     * unmuted again, false if it was powered down and needs a cold start.
+     */
+    private boolean resumeFromStandby() {
+        leaveStandby();
+        if (mBackend.isPoweredUp() == 1 && mBackend.muteAudio(mMuted) == STATUS_OK) {
+            mChip.set(ChipState.MUTE, mMuted ? 1 : 0);
+            return true;
+        }
+        Log.w(TAG, "standby lost, powering up again");
+        mBackend.turnOffRadio();
+        mChip.invalidate();
+        return false;
+    }
 
     /**
      * Tunes radio to a specific frequency. If successful results in a status
      * event callback.
+     * <p>
+     * With {@link #setTuneCoalescing(boolean) tune coalescing} enabled the
+     * request is queued and STATUS_OK is returned at once. If the tune then
+     * fails, it is counted in {@link FmReceiverStats#getTuneFailedCount()}
+     * and a status event reports the frequency the receiver stayed on.
      * 
      * @param freq
      *            the frequency to tune to.
@@ -738,52 +1123,264 @@ public final class FmReceiver {
      * 
      * @see IFmReceiverEventHandler.onStatusEvent().
      */
-    public synchronized int tuneRadio(int freq) {
+    public int tuneRadio(int freq) {
+        mStats.onTuneRequested();
+        if (mTuneCoalescing) {
+            if (mPendingTune.getAndSet(freq) != NO_PENDING_TUNE) {
+                mStats.onTuneDropped();
+            } else {
+                mTuneExecutor.execute(mTuneDrainer);
+            }
+            return STATUS_OK;
+        }
+
+        return tuneRadioNow(freq);
+    }
+
+    private synchronized int tuneRadioNow(int freq) {
         int returnCode = STATUS_SERVER_FAIL;
         
-        returnCode = tuneRadioNative(freq);
+        if (mChip.has(ChipState.FREQ, freq)) {
+            mStats.onCommandSkipped();
+            postStatus();
+            return STATUS_OK;
+        }
+        mStats.onTuneIssued();
+        setTuned(FREQ_UNKNOWN);
+        returnCode = mBackend.tuneRadio(freq);
         if (returnCode != STATUS_OK) {
         	Log.e(TAG, "tuneRadio() failed: returnCode = " + returnCode);
+        	mStats.onTuneFailed();
+        	mChip.invalidate();
+        	checkSession();
+        } else {
+            mChip.set(ChipState.FREQ, freq);
+            mFreq = freq;
+            setTuned(freq);
+            postStatus();
         }
 
         return returnCode;
     }
-    
-    private native int tuneRadioNative(int freq);
+
+    /**
+     * Enables or disables tune coalescing. While enabled
+     * {@link #tuneRadio(int)} returns at once and the tune is sent from the
+     * receiver's tune thread. Requests that arrive while a tune is in flight
+     * replace each other, so only the most recent frequency reaches the chip.
+     * Superseded requests are counted in {@link #getStats()}.
+     *
+     * @param enabled
+     *            true to coalesce tune requests.
+     */
+    public void setTuneCoalescing(boolean enabled) {
+        mTuneCoalescing = enabled;
+    }
+
+    /**
+     * @return true if tune requests are coalesced.
+     */
+    public boolean isTuneCoalescing() {
+        return mTuneCoalescing;
+    }
+
+    /**
+     * Starts a batch of commands that run in one driver call, see
+     * {@link FmTransaction}.
+     *
+     * @return an empty transaction on this receiver.
+     */
+    public FmTransaction transaction() {
+        return new FmTransaction(this);
+    }
+
+    synchronized int runTransaction(FmTransaction tx) {
+        int count = tx.mCount;
+        int[] program = mTxProgram;
+        long start = System.nanoTime();
+        boolean warm = false;
+
+        System.arraycopy(tx.mProgram, 0, program, 0, 2 * count);
+        // fields set earlier in this program, whose cached value no longer holds
+        int touched = 0;
+        for (int i = 0; i < count; i++) {
+            int op = program[2 * i];
+            int field = chipField(op);
+            if (op == FmTransaction.OP_POWER_ON && mStandby) {
+                warm = resumeFromStandby();
+                if (warm) {
+                    program[2 * i] = FmTransaction.OP_NOP;
+                }
+            } else if (op == FmTransaction.OP_POWER_ON) {
+                touched = -1;
+            } else if (op == FmTransaction.OP_MUTE && mStandby) {
+                // in standby the chip stays muted, as with muteAudio()
+                program[2 * i] = FmTransaction.OP_NOP;
+            } else if (field >= 0 && (touched & (1 << field)) == 0
+                    && mChip.has(field, program[2 * i + 1])) {
+                mStats.onCommandSkipped();
+                program[2 * i] = FmTransaction.OP_NOP;
+            } else if (field >= 0) {
+                touched |= 1 << field;
+            }
+            if (program[2 * i] == FmTransaction.OP_POWER_ON || program[2 * i] == FmTransaction.OP_TUNE) {
+                setTuned(FREQ_UNKNOWN);
+            }
+        }
+
+        int failed = mBackend.runProgram(program, count, tx.mStatus);
+        tx.mFailed = failed;
+
+        boolean changed = false;
+        boolean poweredOn = false;
+        int ran = failed < 0 ? count : failed;
+        for (int i = 0; i < ran; i++) {
+            int arg = tx.mProgram[2 * i + 1];
+            int op = program[2 * i];
+            if (op == FmTransaction.OP_POWER_ON) {
+                mChip.invalidate();
+            } else if (chipField(op) >= 0) {
+                mChip.set(chipField(op), arg);
+            }
+            switch (tx.mProgram[2 * i]) {
+                case FmTransaction.OP_POWER_ON:
+                    mStats.onResumed(warm, System.nanoTime() - start);
+                    mRadioOn = true;
+                    poweredOn = true;
+                    changed = true;
+                    break;
+                case FmTransaction.OP_TUNE:
+                    mStats.onTuneRequested();
+                    if (op != FmTransaction.OP_NOP) {
+                        mStats.onTuneIssued();
+                        setTuned(arg);
+                    }
+                    mFreq = arg;
+                    changed = true;
+                    break;
+                case FmTransaction.OP_VOLUME:
+                    synchronized (mStatusLock) {
+                        mStatus = mStatus.withVolume(arg);
+                    }
+                    mEventDispatcher.post(FmEventDispatcher.TYPE_VOLUME, STATUS_OK, arg, 0, 0);
+                    break;
+                case FmTransaction.OP_MUTE:
+                    mMuted = arg != 0;
+                    changed = true;
+                    break;
+                case FmTransaction.OP_AUDIO_PATH:
+                    mEventDispatcher.post(FmEventDispatcher.TYPE_AUDIO_PATH, arg, 0, 0, 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (changed) {
+            postStatus();
+        }
+        if (poweredOn) {
+            scheduleRevalidation();
+        }
+        if (failed < 0) {
+            return STATUS_OK;
+        }
+
+        mChip.invalidate();
+        checkSession();
+        Log.e(TAG, "transaction failed at command " + failed + ": returnCode = " + tx.mStatus[failed]);
+        return tx.mStatus[failed];
+    }
+
+    /* the chip state field an opcode sets, -1 if none */
+    private static int chipField(int op) {
+        switch (op) {
+            case FmTransaction.OP_TUNE:
+                return ChipState.FREQ;
+            case FmTransaction.OP_VOLUME:
+                return ChipState.VOLUME;
+            case FmTransaction.OP_MUTE:
+                return ChipState.MUTE;
+            case FmTransaction.OP_AUDIO_PATH:
+                return ChipState.AUDIO_PATH;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return the live counters of this receiver.
+     */
+    public FmReceiverStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Returns the programs this receiver has heard RDS from, by PI code. The
+     * registry is fed while RDS is on: the PI code and program service name
+     * of every station tuned to, and the RSSI of live polling and scans. It
+     * tells the other transmitters of the current program and which found
+     * channels are the same program, and lets scans drop such duplicates
+     * within 100 kHz.
+     *
+     * @return the registry, kept for the life of the receiver.
+     */
+    public PiRegistry getPiRegistry() {
+        return mPiRegistry;
+    }
 
     /**
      * Gets current radio status. This results in a status event callback.
+     * <p>
+     * This does not take the receiver lock, so it answers at once even
+     * while a seek is running.
      * 
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
      *         code.
      * 
      * @see IFmReceiverEventHandler.onStatusEvent().
+     * @see #getStatusSnapshot()
      */
-    public synchronized int getStatus() {
-        int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: getStatus
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "getStatus() failed", e);
-        }
+    public int getStatus() {
+        postStatus();
+        return STATUS_OK;
+    }
 
-        return returnCode;
+    /**
+     * Returns the current state of the receiver without waiting for an
+     * event. This takes no lock and makes no driver call, so it may be polled
+     * from any thread as often as needed.
+     *
+     * @return the latest snapshot, never null.
+     */
+    public FmStatus getStatusSnapshot() {
+        return mStatus;
     }
 
     /**
-     * Get the On/Off status of FM radio receiver module.
+     * Get the On/Off status of FM radio receiver module. Like
+     * {@link #getStatusSnapshot()} this takes no lock and makes no driver
+     * call.
      * 
      * @return true if radio is on, otherwise returns false.
      * 
      */
 
     public boolean getRadioIsOn() {
-    	return getRadioIsOnNative();
+    	return mStatus.isRadioOn();
     }
 
-    private native boolean getRadioIsOnNative();
+    /*
+     * A failed command may have cost the driver session; if so the radio is
+     * off now.
+     */
+    private void checkSession() {
+        if (mRadioOn && !mBackend.getRadioIsOn()) {
+            Log.w(TAG, "tuner session lost");
+            mRadioOn = false;
+            mChip.invalidate();
+            postStatus();
+        }
+    }
 
     /**
      * Mutes/unmutes radio audio. If muted the hardware will stop sending audio.
@@ -799,16 +1396,31 @@ public final class FmReceiver {
     public synchronized int muteAudio(boolean mute) {
         int returnCode = STATUS_SERVER_FAIL;
         
-        returnCode = muteAudioNative(mute);
+        // in standby the chip stays muted, the choice applies on resume
+        if (mStandby) {
+            returnCode = STATUS_OK;
+        } else if (mChip.has(ChipState.MUTE, mute ? 1 : 0)) {
+            mStats.onCommandSkipped();
+            returnCode = STATUS_OK;
+        } else {
+            returnCode = mBackend.muteAudio(mute);
+            if (returnCode == STATUS_OK) {
+                mChip.set(ChipState.MUTE, mute ? 1 : 0);
+            } else {
+                mChip.invalidate();
+                checkSession();
+            }
+        }
         if (returnCode != STATUS_OK) {
         	Log.e(TAG, "muteAudio() failed: returnCode = " + returnCode);
+        } else {
+            mMuted = mute;
+            postStatus();
         }
 
         return returnCode;
     }
 
-    private native int muteAudioNative(boolean mute);
-
     /**
      * Scans FM toward higher/lower frequency for next clear channel. Will
      * result in a seek complete event callback.
@@ -818,30 +1430,56 @@ public final class FmReceiver {
      *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
      *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
      * @param minSignalStrength
-     *            Minimum signal strength, default =
-     *            {@link #MIN_SIGNAL_STRENGTH_DEFAULT}
+     *            Minimum signal strength, on the scale of
+     *            {@link #spectrumRssi(ByteBuffer, int)}.
+     *            {@link #MIN_SIGNAL_STRENGTH_AUTO} asks for a margin over
+     *            the {@link #estimateNoiseFloorLevel(int) estimated noise
+     *            floor}. Without an estimate it leaves the threshold to the
+     *            chip, or in a {@link #setFastSeek(boolean) fast seek} to the
+     *            noise floor of the seek map.
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
      *         code.
      * 
      * @see IFmReceiverEventHandler.onSeekCompleteEvent().
      */
     public synchronized int seekStation(int scanMode, int minSignalStrength) {
-        int freq = seekStationNative(scanMode);
-        if (freq == -1) {
+        int freq = SEEK_MISS;
+        int threshold = minSignalStrength == MIN_SIGNAL_STRENGTH_AUTO ? defaultThreshold() : minSignalStrength;
+        mSeekAborted = false;
+        setTuned(FREQ_UNKNOWN);
+        if (mFastSeek && (scanMode == SCAN_MODE_UP || scanMode == SCAN_MODE_DOWN)) {
+            freq = fastSeek(scanMode, threshold);
+        }
+        if (freq == SEEK_MISS && !seekAborted()) {
+            freq = hardwareSeek(scanMode, threshold);
+        }
+        boolean aborted = freq == SEEK_ABORTED || freq == SEEK_MISS;
+        if (aborted) {
+            // stopped before the chip seeked, it stays where the last candidate was tuned
+            freq = mChip.get(ChipState.FREQ) != ChipState.UNKNOWN ? mChip.get(ChipState.FREQ) : mFreq;
+        }
+        if (freq < 0) {
         	Log.e(TAG, "SeekStation() failed: freq = " + freq);
+        	freq = -1;
+        	mChip.invalidate();
+        } else {
+            mChip.set(ChipState.FREQ, freq);
+            mFreq = freq;
+            setTuned(freq);
+            publishStatus();
         }
+        mEventDispatcher.post(FmEventDispatcher.TYPE_SEEK_COMPLETE, mFreq, signalRssi(mSignalSample),
+                freq != -1 && !aborted ? 1 : 0, 0);
         
         return freq;
     }
 
-    private native int seekStationNative(int scanMode);
-    
     /**
      * Scans FM toward higher/lower frequency for next clear channel. Will
      * result in a seek complete event callback.
      * <p>
      * Scans with default signal strength setting =
-     * {@link #MIN_SIGNAL_STRENGTH_DEFAULT}
+     * {@link #MIN_SIGNAL_STRENGTH_AUTO}
      * 
      * @param scanMode
      *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
@@ -852,56 +1490,381 @@ public final class FmReceiver {
      * @see IFmReceiverEventHandler.onSeekCompleteEvent().
      */
     public int seekStation(int scanMode) {
-        return seekStation(scanMode, MIN_SIGNAL_STRENGTH_DEFAULT);
+        return seekStation(scanMode, MIN_SIGNAL_STRENGTH_AUTO);
     }
 
     /**
-     * Scans FM toward higher/lower frequency for next clear channel that
-     * supports the requested RDS functionality. Will result in a seek complete
-     * event callback.
-     * <p>
-     * 
-     * @param scanMode
-     *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
-     *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
-     * @param minSignalStrength
-     *            Minimum signal strength, default =
-     *            {@link #MIN_SIGNAL_STRENGTH_DEFAULT}
-     * @param rdsCondition
-     *            the type of RDS condition to scan for.
-     * @param rdsValue
-     *            the condition value to match.
-     * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
-     *         code.
-     * 
-     * @see IFmReceiverEventHandler.onSeekCompleteEvent().
+     * Enables or disables fast seeking. A fast seek up or down does not step
+     * the chip channel by channel: it looks up the next channel over the
+     * threshold in a whole-band RSSI map kept from the last
+     * {@link #readSpectrum(ByteBuffer) sweep}, tunes there and confirms the
+     * channel with one RSSI read. The map is swept again in the background
+     * on the tuner thread when the radio is turned on and whenever a seek
+     * finds it older than 30 seconds; until it is ready, and when the
+     * candidates do not hold up, seeks fall back to the chip. A band plan
+     * wider than {@link #SPECTRUM_MAX_CHANNELS} has no map and always seeks
+     * with the chip.
+     *
+     * @param enabled
+     *            true to seek from the map.
      */
-    public synchronized int seekRdsStation(int scanMode, int minSignalStrength, int rdsCondition, int rdsValue) {
-        int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: seekRdsStation
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "seekRdsStation() failed", e);
+    public void setFastSeek(boolean enabled) {
+        mFastSeek = enabled;
+        if (enabled && mRadioOn) {
+            scheduleSeekMapRefresh();
         }
-
-        return returnCode;
     }
 
     /**
-     * Scans FM toward higher/lower frequency for next clear channel that
-     * supports the requested RDS functionality.. Will result in a seek complete
-     * event callback.
-     * <p>
-     * Scans with default signal strength setting =
-     * {@link #MIN_SIGNAL_STRENGTH_DEFAULT}
-     * 
-     * @param scanMode
-     *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
-     *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
-     * @param rdsCondition
-     *            the type of RDS condition to scan for.
+     * @return true if seeks use the RSSI map.
+     */
+    public boolean isFastSeek() {
+        return mFastSeek;
+    }
+
+    /*
+     * Seeks from the map; returns the frequency found, -1 if the map holds no
+     * channel over the threshold, SEEK_MISS if the chip has to seek, or
+     * SEEK_ABORTED.
+     */
+    private int fastSeek(int scanMode, int minSignalStrength) {
+        if (!fitsSpectrum(mBandPlan)) {
+            return SEEK_MISS;
+        }
+        int count = mSeekMapCount;
+        if (count == 0 || System.nanoTime() - mSeekMapTime > SEEK_MAP_MAX_AGE_NS) {
+            scheduleSeekMapRefresh();
+            return SEEK_MISS;
+        }
+        int threshold = minSignalStrength == MIN_SIGNAL_STRENGTH_AUTO ? mSeekMapFloor + REVALIDATE_MARGIN
+                : minSignalStrength;
+        int step = scanMode == SCAN_MODE_UP ? 1 : -1;
+        int start = Arrays.binarySearch(mSeekMapFreq, 0, count, mFreq);
+        // every channel of the map but the current one, all of them when between channels
+        int last = count - 1;
+        if (start < 0) {
+            // between channels, the first candidate is the insertion point
+            start = step > 0 ? -start - 2 : -start - 1;
+            last = count;
+        }
+
+        int confirms = 0;
+        for (int k = 1; k <= last; k++) {
+            int i = Math.floorMod(start + k * step, count);
+            if (mSeekMapRssi[i] < threshold) {
+                continue;
+            }
+            if (seekAborted()) {
+                return SEEK_ABORTED;
+            }
+            if (confirms++ == FAST_SEEK_CONFIRMS) {
+                break;
+            }
+            int freq = mSeekMapFreq[i];
+            if (mBackend.tuneRadio(freq) != STATUS_OK) {
+                mChip.invalidate();
+                return SEEK_MISS;
+            }
+            mChip.set(ChipState.FREQ, freq);
+            int rssi = mBackend.readRssi();
+            if (rssi == TunerBackend.RSSI_UNKNOWN || rssi >= threshold) {
+                mStats.onFastSeek();
+                return freq;
+            }
+            // the map is out of date here
+            mSeekMapRssi[i] = rssi;
+        }
+        return confirms == 0 ? -1 : SEEK_MISS;
+    }
+
+    /*
+     * Seeks with the chip, chaining seeks until a channel reaches an explicit
+     * threshold.
+     */
+    private int hardwareSeek(int scanMode, int minSignalStrength) {
+        if (seekAborted()) {
+            // the abort was spent on a fast seek, the chip would not hear it
+            return SEEK_ABORTED;
+        }
+        int start = mFreq;
+        int freq = mBackend.seekStation(scanMode);
+        for (int i = 1; i < HARDWARE_SEEK_ATTEMPTS; i++) {
+            if (freq < 0 || freq == start || seekAborted() || minSignalStrength == MIN_SIGNAL_STRENGTH_AUTO) {
+                break;
+            }
+            int rssi = mBackend.readRssi();
+            if (rssi == TunerBackend.RSSI_UNKNOWN || rssi >= minSignalStrength) {
+                break;
+            }
+            freq = mBackend.seekStation(scanMode);
+        }
+        return freq;
+    }
+
+    /*
+     * True once seekStationAbort() stopped the running seek, or the future of
+     * the asynchronous seek running now was cancelled. The future is checked
+     * too because a cancel may land before its seek takes the lock and clears
+     * mSeekAborted.
+     */
+    private boolean seekAborted() {
+        SeekFuture request = mSeekRequest;
+        return mSeekAborted || (request != null && request.isCancelled());
+    }
+
+    /*
+     * The threshold of MIN_SIGNAL_STRENGTH_AUTO: REVALIDATE_MARGIN over the
+     * estimated noise floor of this band and location, or
+     * MIN_SIGNAL_STRENGTH_AUTO itself without an estimate.
+     */
+    private int defaultThreshold() {
+        int floor = mNoiseFloor.get(mBandPlan, mScanLocation, NFL_LOW);
+        return floor == NoiseFloorEstimator.UNKNOWN ? MIN_SIGNAL_STRENGTH_AUTO : floor + REVALIDATE_MARGIN;
+    }
+
+    /*
+     * Reads the RSSI of the found channels that lie within 100 kHz of
+     * another and drops the images among them. Lone channels are not tuned
+     * to. The chip is muted while the channels are read; the caller returns
+     * to the current frequency, which restores the mute state.
+     */
+    private int[] suppressImages(int[] stations) {
+        if (!ImageFilter.hasNeighbours(stations)) {
+            return stations;
+        }
+        int n = stations.length;
+        int[] rssi = new int[n];
+        muteWhileAway();
+        setTuned(FREQ_UNKNOWN);
+        for (int i = 0; i < n; i++) {
+            boolean clustered = (i > 0 && stations[i] - stations[i - 1] <= ImageFilter.REACH)
+                    || (i < n - 1 && stations[i + 1] - stations[i] <= ImageFilter.REACH);
+            rssi[i] = TunerBackend.RSSI_UNKNOWN;
+            if (clustered && mBackend.tuneRadio(stations[i]) == STATUS_OK) {
+                rssi[i] = mBackend.readRssi();
+            }
+        }
+        mChip.forget(ChipState.FREQ);
+        return dropImages(stations, rssi);
+    }
+
+    /*
+     * Mutes the chip before the tuner is moved across other channels, so
+     * the sweep is not heard. returnToFreq() unmutes it again, unless the
+     * user had muted it.
+     */
+    private void muteWhileAway() {
+        if (mChip.has(ChipState.MUTE, 1) || mBackend.muteAudio(true) != STATUS_OK) {
+            return;
+        }
+        mChip.set(ChipState.MUTE, 1);
+        mMutedAway = true;
+    }
+
+    /*
+     * Tunes back to mFreq after reading other channels, then restores the
+     * mute state muteWhileAway() changed.
+     */
+    private void returnToFreq() {
+        if (mFreq != FREQ_UNKNOWN && mBackend.tuneRadio(mFreq) == STATUS_OK) {
+            mChip.set(ChipState.FREQ, mFreq);
+            setTuned(mFreq);
+        }
+        if (mMutedAway) {
+            mMutedAway = false;
+            boolean mute = mMuted || mStandby;
+            if (mBackend.muteAudio(mute) == STATUS_OK) {
+                mChip.set(ChipState.MUTE, mute ? 1 : 0);
+            } else {
+                mChip.forget(ChipState.MUTE);
+            }
+        }
+    }
+
+    /*
+     * True if one spectrum read and the chip's scan table cover the plan,
+     * see SPECTRUM_MAX_CHANNELS.
+     */
+    private static boolean fitsSpectrum(FmBandPlan plan) {
+        int spacing = Math.max(plan.getSpacing(), FmBandPlan.SPACING_100KHZ);
+        return (plan.getHigh() - plan.getLow()) / spacing < SPECTRUM_MAX_CHANNELS;
+    }
+
+    /*
+     * Records the channel the chip receives on, FREQ_UNKNOWN before it
+     * leaves one. The RDS thread drops the groups it has not decoded yet and
+     * starts the decoder over, so no PI code or name is taken for another
+     * channel's.
+     */
+    private void setTuned(int freq) {
+        mTuned = ((mTuned >>> 32) + 1) << 32 | (freq & 0xffffffffL);
+    }
+
+    private int[] dropImages(int[] stations, int[] rssi) {
+        for (int i = 0; i < stations.length; i++) {
+            if (rssi[i] != TunerBackend.RSSI_UNKNOWN) {
+                mPiRegistry.noteRssi(stations[i], rssi[i]);
+            }
+        }
+        int[] kept = mImageFilter.collapse(stations, rssi);
+        if (kept.length < stations.length) {
+            mStats.onImagesDropped(stations.length - kept.length);
+        }
+        return kept;
+    }
+
+    /*
+     * Background sweeps: the RSSI read moves the tuner across the band, so
+     * tune back before another command can run.
+     */
+    private synchronized int readSpectrumAndReturn(ByteBuffer spectrum) {
+        int count = readSpectrum(spectrum);
+        returnToFreq();
+        return count;
+    }
+
+    private void scheduleSeekMapRefresh() {
+        if (mSeekMapRefreshPending.compareAndSet(false, true)) {
+            mTunerExecutor.execute(mSeekMapRefresher);
+        }
+    }
+
+    /* Runs on the tuner thread. */
+    private void refreshSeekMap() {
+        if (mSweepSpectrum == null) {
+            mSweepSpectrum = ByteBuffer.allocateDirect(SPECTRUM_BUFFER_SIZE);
+        }
+        int count = mRadioOn && fitsSpectrum(mBandPlan) ? readSpectrumAndReturn(mSweepSpectrum) : -1;
+        if (count > 0) {
+            storeSeekMap(mSweepSpectrum, count);
+        }
+    }
+
+    private synchronized void storeSeekMap(ByteBuffer spectrum, int count) {
+        for (int i = 0; i < count; i++) {
+            mSeekMapFreq[i] = spectrumFreq(spectrum, i);
+            mSeekMapRssi[i] = spectrumRssi(spectrum, i);
+        }
+        int[] sorted = Arrays.copyOf(mSeekMapRssi, count);
+        Arrays.sort(sorted);
+        mSeekMapFloor = sorted[count / 2];
+        mSeekMapCount = count;
+        mSeekMapTime = System.nanoTime();
+    }
+
+    private synchronized void clearSeekMap() {
+        mSeekMapCount = 0;
+    }
+
+    /**
+     * Scans FM toward higher/lower frequency for next clear channel without
+     * blocking the caller. The seek runs on the receiver's tuner thread.
+     * <p>
+     * Cancelling the returned future aborts the seek in the driver right
+     * away; it does not wait for the receiver lock held by the running seek.
+     * A seek cancelled before it started does not run, and the tuner stays
+     * where it is.
+     *
+     * @param scanMode
+     *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
+     *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
+     * @param minSignalStrength
+     *            Minimum signal strength, default =
+     *            {@link #MIN_SIGNAL_STRENGTH_AUTO}
+     * @return a future completed with the result {@link #seekStation(int, int)}
+     *         would have returned, or exceptionally if the seek threw.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    public CompletableFuture<Integer> seekStationAsync(final int scanMode, final int minSignalStrength) {
+        final SeekFuture future = new SeekFuture();
+        mTunerExecutor.execute(() -> {
+            try {
+                if (!future.isDone()) {
+                    runSeek(future, scanMode, minSignalStrength);
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private synchronized void runSeek(SeekFuture future, int scanMode, int minSignalStrength) {
+        mSeekRequest = future;
+        try {
+            // read after publishing mSeekRequest, so a cancel either shows here or aborts the seek
+            if (!future.isCancelled()) {
+                future.complete(seekStation(scanMode, minSignalStrength));
+            }
+        } finally {
+            mSeekRequest = null;
+        }
+    }
+
+    /**
+     * Future of an asynchronous seek that aborts the seek when cancelled.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private final class SeekFuture extends CompletableFuture<Integer> {
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            // a queued seek is skipped, and must not abort another one running now
+            if (cancelled && mSeekRequest == this) {
+                seekStationAbort();
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Scans FM toward higher/lower frequency for next clear channel that
+     * supports the requested RDS functionality. Will result in a seek complete
+     * event callback.
+     * <p>
+     * 
+     * @param scanMode
+     *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
+     *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
+     * @param minSignalStrength
+     *            Minimum signal strength, default =
+     *            {@link #MIN_SIGNAL_STRENGTH_AUTO}
+     * @param rdsCondition
+     *            the type of RDS condition to scan for.
+     * @param rdsValue
+     *            the condition value to match.
+     * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
+     *         code.
+     * 
+     * @see IFmReceiverEventHandler.onSeekCompleteEvent().
+     */
+    public synchronized int seekRdsStation(int scanMode, int minSignalStrength, int rdsCondition, int rdsValue) {
+        int returnCode = STATUS_SERVER_FAIL;
+        /* Request this action from the server. */
+        try {
+        	//TODO: seekRdsStation
+        	returnCode = 0;
+        } catch (Exception e) {
+            Log.e(TAG, "seekRdsStation() failed", e);
+        }
+
+        return returnCode;
+    }
+
+    /**
+     * Scans FM toward higher/lower frequency for next clear channel that
+     * supports the requested RDS functionality.. Will result in a seek complete
+     * event callback.
+     * <p>
+     * Scans with default signal strength setting =
+     * {@link #MIN_SIGNAL_STRENGTH_AUTO}
+     * 
+     * @param scanMode
+     *            see {@link #SCAN_MODE_NORMAL}, {@link #SCAN_MODE_DOWN},
+     *            {@link #SCAN_MODE_UP} and {@link #SCAN_MODE_FULL}.
+     * @param rdsCondition
+     *            the type of RDS condition to scan for.
      * @param rdsValue
      *            the condition value to match.
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
@@ -910,23 +1873,26 @@ public final class FmReceiver {
      * @see IFmReceiverEventHandler.onSeekCompleteEvent().
      */
     public int seekRdsStation(int scanMode, int rdsCondition, int rdsValue) {
-        return seekRdsStation(scanMode, MIN_SIGNAL_STRENGTH_DEFAULT, rdsCondition, rdsValue);
+        return seekRdsStation(scanMode, MIN_SIGNAL_STRENGTH_AUTO, rdsCondition, rdsValue);
     }
 
     /**
      * Aborts the current station seeking operation if any. Will result in a
      * seek complete event containing the last scanned frequency.
-     * 
+     * <p>
+     * This does not take the receiver lock, so it can interrupt a seek
+     * running on another thread.
      * 
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
      *         code.
      * 
      * @see IFmReceiverEventHandler.onSeekCompleteEvent().
      */
-    public synchronized int seekStationAbort() {
+    public int seekStationAbort() {
         int returnCode = STATUS_SERVER_FAIL;
         
-        returnCode = seekStationAbortNative();
+        mSeekAborted = true;
+        returnCode = mBackend.seekStationAbort();
         if (returnCode != STATUS_OK) {
         	Log.e(TAG, "seekStationAbort() failed: returnCode = " + returnCode);
         }
@@ -934,7 +1900,409 @@ public final class FmReceiver {
         return returnCode;
     }
 
-    private native int seekStationAbortNative();
+    /**
+     * Scans the whole band in a single hardware pass and returns every
+     * channel found. Unlike repeated {@link #seekStation(int)} calls this
+     * crosses into the driver once, using the chip's scan table.
+     * <p>
+     * Found channels are also handed to the listener, in ascending order, as
+     * they are decoded. The scan can be stopped from another thread with
+     * {@link #scanBandAbort()}; the channels found so far are then returned.
+     * <p>
+     * A strong station is found again 100 kHz off. Where the chip reports
+     * channels that close, their RSSI is read and the weaker ones are dropped
+     * as images, or those RDS has shown to carry the same PI code, so the
+     * returned list holds one channel per station. The listener has been
+     * told of the images already. The audio is muted while their RSSI is
+     * read. The tuner returns to the current frequency and the mute state is
+     * restored afterwards.
+     * <p>
+     * The chip's scan table holds {@link #SPECTRUM_MAX_CHANNELS} channels; a
+     * wider band plan is scanned with
+     * {@link #sweepBand(int, IFmScanListener)} instead.
+     *
+     * @param listener
+     *            receives each found channel, may be null.
+     * @return the found frequencies in ascending order, or null if the scan
+     *         could not be started.
+     */
+    public synchronized int[] scanBand(IFmScanListener listener) {
+        if (!fitsSpectrum(mBandPlan)) {
+            return sweepBand(MIN_SIGNAL_STRENGTH_AUTO, listener);
+        }
+        setTuned(FREQ_UNKNOWN);
+        int[] stations = mBackend.scanBand(listener);
+        // the chip stops wherever the scan ended
+        mChip.forget(ChipState.FREQ);
+        if (stations != null) {
+            stations = suppressImages(stations);
+        }
+        returnToFreq();
+        if (stations == null) {
+            Log.e(TAG, "scanBand() failed");
+        } else {
+            ScanCache cache = mScanCache;
+            if (cache != null) {
+                cache.put(mWorldRegion, mScanLocation, stations);
+            }
+        }
+
+        return stations;
+    }
+
+    /**
+     * Scans the whole band in a single hardware pass and returns every
+     * channel found. The result is stored in the {@link #setScanCache(ScanCache)
+     * scan cache}, if any.
+     *
+     * @return the found frequencies in ascending order, or null if the scan
+     *         could not be started.
+     *
+     * @see #scanBand(IFmScanListener)
+     */
+    public int[] scanBand() {
+        return scanBand(null);
+    }
+
+    /**
+     * Scans the {@link #setBandPlan(FmBandPlan) band plan} at its full
+     * resolution in about the time of a 200 kHz pass. The RSSI is read every
+     * 200 kHz first; the channels in between are only read around the
+     * readings that stand out from the noise floor, the median of the coarse
+     * pass. A station is a channel at or over the threshold that is the
+     * strongest within 100 kHz, so a 50 kHz plan does not report the
+     * shoulders of a station as stations. The default threshold is a margin
+     * over the {@link #estimateNoiseFloorLevel(int) estimated noise floor},
+     * or over the median without an estimate. Stations within 100 kHz of a
+     * stronger one are dropped as its images, see
+     * {@link #scanBand(IFmScanListener)}.
+     * <p>
+     * The audio is muted while the tuner moves across the band, the tuner
+     * returns to the current frequency and the mute state is restored
+     * afterwards. The result is stored in the
+     * {@link #setScanCache(ScanCache) scan cache}, if any, and handed to the
+     * listener in ascending order. {@link #scanBandAbort()} stops the sweep,
+     * the stations found so far are then returned. A tuner that cannot read
+     * the RSSI is scanned with {@link #scanBand(IFmScanListener)} instead,
+     * unless the band plan is too wide for the chip's scan table.
+     *
+     * @param minSignalStrength
+     *            the least RSSI of a station, on the scale of
+     *            {@link #spectrumRssi(ByteBuffer, int)}, or
+     *            {@link #MIN_SIGNAL_STRENGTH_AUTO} for a margin over the
+     *            noise floor.
+     * @param listener
+     *            receives each found channel, may be null.
+     * @return the found frequencies in ascending order, or null if the band
+     *         could not be scanned.
+     */
+    public synchronized int[] sweepBand(int minSignalStrength, IFmScanListener listener) {
+        int threshold = minSignalStrength == MIN_SIGNAL_STRENGTH_AUTO ? defaultThreshold() : minSignalStrength;
+        muteWhileAway();
+        setTuned(FREQ_UNKNOWN);
+        int[] stations = mSweep.run(mBandPlan, threshold, REVALIDATE_MARGIN);
+        // the sweep leaves the chip on its last channel
+        mChip.forget(ChipState.FREQ);
+        if (stations == null && !fitsSpectrum(mBandPlan)) {
+            returnToFreq();
+            Log.e(TAG, "sweepBand() cannot read the band");
+            return null;
+        } else if (stations == null) {
+            Log.w(TAG, "sweepBand() cannot read the band, scanning with the chip");
+            return scanBand(listener);
+        }
+        returnToFreq();
+        if (ImageFilter.hasNeighbours(stations)) {
+            int[] rssi = new int[stations.length];
+            for (int i = 0; i < stations.length; i++) {
+                rssi[i] = mSweep.getRssi(mBandPlan, stations[i]);
+            }
+            stations = dropImages(stations, rssi);
+        }
+
+        ScanCache cache = mScanCache;
+        if (cache != null) {
+            cache.put(mWorldRegion, mScanLocation, stations);
+        }
+        for (int i = 0; listener != null && i < stations.length; i++) {
+            listener.onStationFound(stations[i]);
+        }
+        return stations;
+    }
+
+    /**
+     * Aborts a running {@link #scanBand(IFmScanListener)} or
+     * {@link #sweepBand(int, IFmScanListener)}. This does not wait for the
+     * scan to return and may be called from any thread.
+     *
+     * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
+     *         code.
+     */
+    public int scanBandAbort() {
+        int returnCode = STATUS_SERVER_FAIL;
+
+        mSweep.abort();
+        returnCode = mBackend.stopScan();
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "scanBandAbort() failed: returnCode = " + returnCode);
+        }
+
+        return returnCode;
+    }
+
+    /**
+     * Sets the cache of station lists. Every completed
+     * {@link #scanBand(IFmScanListener)} is stored in it, under the world
+     * region and {@link #setScanLocation(String) location}. When the radio is
+     * turned on with a list stored for them, {@link #getCachedStations()}
+     * serves it at once while the tuner thread checks it against one
+     * {@link #readSpectrum(ByteBuffer) RSSI sweep}: stations lost in the
+     * noise are dropped, new peaks are added and the result is stored again
+     * and handed to the {@link #setStationListListener(IFmStationListListener)
+     * listener}.
+     * <p>
+     * A cache may be shared by several receivers.
+     *
+     * @param cache
+     *            the cache, or null for none.
+     */
+    public void setScanCache(ScanCache cache) {
+        mScanCache = cache;
+    }
+
+    /**
+     * @return the cache set with {@link #setScanCache(ScanCache)}, or null.
+     */
+    public ScanCache getScanCache() {
+        return mScanCache;
+    }
+
+    /**
+     * Sets the coarse location scan results are cached under, such as a
+     * cell id or a geohash. Station lists of different locations are kept
+     * apart.
+     *
+     * @param location
+     *            the location, or null if unknown.
+     */
+    public void setScanLocation(String location) {
+        mScanLocation = location;
+    }
+
+    /**
+     * Sets the listener of background revalidations, see
+     * {@link #setScanCache(ScanCache)}.
+     *
+     * @param listener
+     *            the listener, or null for none.
+     */
+    public void setStationListListener(IFmStationListListener listener) {
+        mStationListListener = listener;
+    }
+
+    /**
+     * Returns the cached station list for the current world region and
+     * location without touching the tuner.
+     *
+     * @return the frequencies in ascending order, or null if no scan cache is
+     *         set or it holds no fresh list.
+     */
+    public int[] getCachedStations() {
+        ScanCache cache = mScanCache;
+        return cache == null ? null : cache.get(mWorldRegion, mScanLocation);
+    }
+
+    private void scheduleRevalidation() {
+        final ScanCache cache = mScanCache;
+        final int region = mWorldRegion;
+        final String location = mScanLocation;
+        final int[] cached = cache == null ? null : cache.get(region, location);
+        if (cached != null) {
+            // its sweep refreshes the seek map as well
+            mTunerExecutor.execute(() -> revalidate(cache, region, location, cached));
+        } else if (mFastSeek) {
+            scheduleSeekMapRefresh();
+        }
+    }
+
+    /* Runs on the tuner thread. */
+    private void revalidate(ScanCache cache, int region, String location, int[] cached) {
+        int[] stations;
+        if (!fitsSpectrum(mBandPlan)) {
+            // one spectrum read stops short of the top of the band
+            stations = mRadioOn ? sweepBand(MIN_SIGNAL_STRENGTH_AUTO, null) : null;
+            if (stations == null) {
+                return;
+            }
+        } else {
+            if (mSweepSpectrum == null) {
+                mSweepSpectrum = ByteBuffer.allocateDirect(SPECTRUM_BUFFER_SIZE);
+            }
+            int count = mRadioOn ? readSpectrumAndReturn(mSweepSpectrum) : -1;
+            if (count <= 0) {
+                return;
+            }
+
+            storeSeekMap(mSweepSpectrum, count);
+            int floor = mNoiseFloor.get(mBandPlan, location, NFL_LOW);
+            stations = confirmStations(mSweepSpectrum, count, cached, floor, mImageFilter);
+        }
+        cache.put(region, location, stations);
+        IFmStationListListener listener = mStationListListener;
+        if (listener != null) {
+            listener.onStationListRevalidated(stations);
+        }
+    }
+
+    /*
+     * Keeps the cached stations whose RSSI still clears the noise floor by
+     * REVALIDATE_MARGIN, and adds the channels that clear it as a local peak.
+     * Without an estimated floor the sweep's median is taken. Stations
+     * outside the sweep are kept. Images of stronger stations are dropped.
+     */
+    private static int[] confirmStations(ByteBuffer spectrum, int count, int[] cached, int floor,
+            ImageFilter filter) {
+        int[] freqs = new int[count];
+        int[] rssi = new int[count];
+        for (int i = 0; i < count; i++) {
+            freqs[i] = spectrumFreq(spectrum, i);
+            rssi[i] = spectrumRssi(spectrum, i);
+        }
+        if (floor == NoiseFloorEstimator.UNKNOWN) {
+            int[] sorted = rssi.clone();
+            Arrays.sort(sorted);
+            floor = sorted[count / 2];
+        }
+        int threshold = floor + REVALIDATE_MARGIN;
+
+        int[] result = new int[cached.length + count];
+        int n = 0;
+        for (int freq : cached) {
+            int i = Arrays.binarySearch(freqs, freq);
+            if (i < 0 || rssi[i] >= threshold) {
+                result[n++] = freq;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (rssi[i] >= threshold
+                    && (i == 0 || rssi[i] > rssi[i - 1])
+                    && (i == count - 1 || rssi[i] >= rssi[i + 1])
+                    && Arrays.binarySearch(cached, freqs[i]) < 0) {
+                result[n++] = freqs[i];
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        if (!ImageFilter.hasNeighbours(result)) {
+            return result;
+        }
+        int[] resultRssi = new int[n];
+        for (int k = 0; k < n; k++) {
+            int i = Arrays.binarySearch(freqs, result[k]);
+            resultRssi[k] = i < 0 ? TunerBackend.RSSI_UNKNOWN : rssi[i];
+        }
+        return filter.collapse(result, resultRssi);
+    }
+
+    /**
+     * Reads the RSSI of every channel in the band with a single driver call.
+     * The driver writes its result straight into the given direct buffer, no
+     * intermediate copy or per-channel object is made.
+     * <p>
+     * The buffer is switched to native byte order. After a successful call
+     * entry <i>i</i> can be read with {@link #spectrumFreq(ByteBuffer, int)}
+     * and {@link #spectrumRssi(ByteBuffer, int)}. The buffer may be reused for
+     * every call.
+     * <p>
+     * At most {@link #SPECTRUM_MAX_CHANNELS} channels are read, from the
+     * lower edge of the band plan; the top of a wider plan is left out.
+     *
+     * @param spectrum
+     *            a direct buffer of at least {@link #SPECTRUM_BUFFER_SIZE}
+     *            bytes.
+     * @return the number of channels written, or -1 if the driver call
+     *         failed.
+     * @throws IllegalArgumentException
+     *             if the buffer is not direct or too small.
+     */
+    public synchronized int readSpectrum(ByteBuffer spectrum) {
+        if (!spectrum.isDirect() || spectrum.capacity() < SPECTRUM_BUFFER_SIZE) {
+            throw new IllegalArgumentException("need a direct buffer of " + SPECTRUM_BUFFER_SIZE + " bytes");
+        }
+        spectrum.order(ByteOrder.nativeOrder());
+
+        setTuned(FREQ_UNKNOWN);
+        int count = mBackend.readSpectrum(spectrum);
+        mChip.forget(ChipState.FREQ);
+        if (count < 0) {
+            Log.e(TAG, "readSpectrum() failed: returnCode = " + count);
+            return -1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the channel quality of many channels with a single driver call.
+     * The driver writes packed <code>struct fm_cqi</code> records straight into
+     * the given direct buffer; read them with a {@link FmCqiReader}. Which
+     * channels are reported is up to the driver, normally the channels of the
+     * last band scan.
+     *
+     * @param cqi
+     *            a direct buffer of at least
+     *            <code>channelCount * {@link FmCqiReader#RECORD_SIZE}</code>
+     *            bytes.
+     * @param channelCount
+     *            the maximum number of channels to report, at most
+     *            {@link FmCqiReader#MAX_RECORDS}.
+     * @return the number of records written, or -1 if the driver call failed.
+     * @throws IllegalArgumentException
+     *             if the buffer is not direct or too small, or the count is
+     *             out of range.
+     */
+    public synchronized int readChannelQuality(ByteBuffer cqi, int channelCount) {
+        if (!cqi.isDirect() || channelCount < 0 || channelCount > FmCqiReader.MAX_RECORDS
+                || cqi.capacity() < channelCount * FmCqiReader.RECORD_SIZE) {
+            throw new IllegalArgumentException("need a direct buffer of " + channelCount + " records");
+        }
+
+        int count = mBackend.readChannelQuality(cqi, channelCount);
+        if (count < 0) {
+            Log.e(TAG, "readChannelQuality() failed: returnCode = " + count);
+            return -1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the frequency of a channel filled in by
+     * {@link #readSpectrum(ByteBuffer)}.
+     *
+     * @param spectrum
+     *            the buffer passed to readSpectrum().
+     * @param index
+     *            the channel index, below the count readSpectrum() returned.
+     * @return the frequency in the same units as {@link #tuneRadio(int)}.
+     */
+    public static int spectrumFreq(ByteBuffer spectrum, int index) {
+        return 10 * (spectrum.getShort(SPECTRUM_HEADER_SIZE + index * SPECTRUM_ENTRY_SIZE) & 0xFFFF);
+    }
+
+    /**
+     * Returns the RSSI of a channel filled in by
+     * {@link #readSpectrum(ByteBuffer)}.
+     *
+     * @param spectrum
+     *            the buffer passed to readSpectrum().
+     * @param index
+     *            the channel index, below the count readSpectrum() returned.
+     * @return the raw RSSI reported by the chip.
+     */
+    public static int spectrumRssi(ByteBuffer spectrum, int index) {
+        return spectrum.getShort(SPECTRUM_HEADER_SIZE + index * SPECTRUM_ENTRY_SIZE + 2) & 0xFFFF;
+    }
 
     /**
      * Enables/disables RDS/RDBS feature and AF algorithm. Will result in a RDS
@@ -951,6 +2319,8 @@ public final class FmReceiver {
      *            enables AF algorithm if True. Disables it if False
      * @param afThreshold
      *            the RSSI that the AF should jump to an alternate frequency on.
+     *            AF lists are decoded but hopping is left to the application,
+     *            so this is currently unused.
      * 
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
      *         code.
@@ -959,20 +2329,165 @@ public final class FmReceiver {
      */
     public synchronized int setRdsMode(int rdsMode, int rdsFeatures, int afMode, int afThreshold) {
         int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: setRdsMode
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "setRdsMode() failed", e);
+
+        returnCode = mBackend.setRds(rdsMode != RDS_MODE_OFF);
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setRdsMode() failed: returnCode = " + returnCode);
+            return returnCode;
         }
 
+        // The decoder belongs to the reader thread, stop it before touching it.
+        stopRdsReader();
+        mRdsDecoder.configure(rdsFeatures, afMode == AF_MODE_ON);
+        mRdsDecoder.setRbds(rdsMode == RDS_MODE_RBDS_ON);
+        mRdsDecoder.reset();
+        mRdsMode = rdsMode;
+
+        mRdsPty = -1;
+        clearAlternateFrequencies();
+        synchronized (mStatusLock) {
+            mStatus = mStatus.withRds(null, -1);
+        }
+        if (rdsMode != RDS_MODE_OFF) {
+            returnCode = startRdsReader();
+        }
+        mEventDispatcher.post(FmEventDispatcher.TYPE_RDS_MODE, mRdsMode, afMode, 0, 0);
+
         return returnCode;
     }
 
+    /**
+     * @return the RDS mode last set with
+     *         {@link #setRdsMode(int, int, int, int)}.
+     */
+    public int getRdsMode() {
+        return mRdsMode;
+    }
+
+    /**
+     * Copies the alternative frequencies the current channel last sent, as
+     * reported by an {@link RdsDecoder#FIELD_AF} data event. The list is
+     * dropped when the tuner leaves the channel.
+     *
+     * @param dst
+     *            receives the frequencies, in the units of
+     *            {@link #tuneRadio(int)}, at least {@link RdsDecoder#AF_MAX}
+     *            entries.
+     * @return the number of frequencies copied, 0 if none were received.
+     */
+    public int getAlternateFrequencies(int[] dst) {
+        synchronized (mRdsAf) {
+            System.arraycopy(mRdsAf, 0, dst, 0, mRdsAfCount);
+            return mRdsAfCount;
+        }
+    }
+
+    private void clearAlternateFrequencies() {
+        synchronized (mRdsAf) {
+            mRdsAfCount = 0;
+        }
+    }
+
+    /**
+     * Returns the decoder that assembles the received RDS data. Register an
+     * {@link RdsDecoder.Listener} on it to learn about completed fields. While
+     * RDS is on the decoder is fed by the "FmRds" thread, which also runs the
+     * listener; read it only from the listener.
+     *
+     * @return the RDS decoder of this receiver.
+     */
+    public RdsDecoder getRdsDecoder() {
+        return mRdsDecoder;
+    }
+
+    /**
+     * @return the number of RDS groups dropped since RDS was turned on
+     *         because the decoder could not keep up with the driver.
+     */
+    public int getRdsOverrunCount() {
+        ByteBuffer ring = mRdsRing;
+        return ring == null ? 0 : ring.getInt(RDS_RING_OVERRUNS_OFFSET);
+    }
+
+    /*
+     * The driver is read by a native thread that sleeps in poll() until RDS
+     * data arrives and appends the groups to mRdsRing. The "FmRds" thread
+     * blocks in mBackend.waitRds() until the ring is non-empty and decodes the
+     * groups in place, so there is no polling from Java and no copy.
+     */
+    private int startRdsReader() {
+        if (mRdsRing == null) {
+            mRdsRing = ByteBuffer.allocateDirect(RDS_RING_HEADER_SIZE + RDS_RING_GROUPS * RdsDecoder.GROUP_SIZE)
+                    .order(ByteOrder.nativeOrder());
+        }
+
+        int returnCode = mBackend.startRdsReader(mRdsRing);
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "startRdsReader() failed: returnCode = " + returnCode);
+            return returnCode;
+        }
+
+        Thread thread = new Thread(this::drainRds, "FmRds");
+        thread.setDaemon(true);
+        thread.start();
+        mRdsThread = thread;
+        return STATUS_OK;
+    }
+
+    private void stopRdsReader() {
+        Thread thread = mRdsThread;
+        if (thread == null) {
+            return;
+        }
+        mRdsThread = null;
+
+        mBackend.stopRdsReader();
+        if (thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join(RDS_STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainRds() {
+        ByteBuffer ring = mRdsRing;
+        int capacity = ring.getInt(RDS_RING_CAPACITY_OFFSET);
+        int tail = 0;
+        int head;
+
+        while ((head = mBackend.waitRds(ring, tail)) >= 0) {
+            // read after the head, so every group up to it was received before a later move
+            long tuned = mTuned;
+            if (tuned != mRdsTuned) {
+                // received before the tuner moved, or while it moved; publish the next PI even if the same
+                mRdsTuned = tuned;
+                mRdsDecoder.reset();
+                clearAlternateFrequencies();
+                tail = head;
+            }
+            if ((int) tuned == FREQ_UNKNOWN) {
+                tail = head;
+            }
+            while (tail != head) {
+                int slot = tail & (capacity - 1);
+                int count = Math.min((head - tail) & RDS_RING_INDEX_MASK, capacity - slot);
+                mRdsDecoder.decode(ring, RDS_RING_HEADER_SIZE + slot * RdsDecoder.GROUP_SIZE, count);
+                tail = (tail + count) & RDS_RING_INDEX_MASK;
+            }
+        }
+        mBackend.releaseRdsReader();
+    }
+
     /**
      * Configures FM audio mode to be mono, stereo or blend. Will result in an
      * audio mode event callback.
+     * <p>
+     * The chip only tells forced mono from stereo: {@link #AUDIO_MODE_MONO}
+     * forces mono, the other modes leave the chip to receive stereo where
+     * the signal carries it and blend to mono where it does not.
      * 
      * @param audioMode
      *            the audio mode such as stereo or mono. The following values
@@ -986,12 +2501,22 @@ public final class FmReceiver {
      */
     public synchronized int setAudioMode(int audioMode) {
         int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: setAudioMode
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "setAudioMode() failed", e);
+
+        if (audioMode < AUDIO_MODE_AUTO || audioMode > AUDIO_MODE_SWITCH) {
+            return STATUS_ILLEGAL_PARAMETERS;
+        }
+        if (mChip.has(ChipState.AUDIO_MODE, audioMode)) {
+            mStats.onCommandSkipped();
+            returnCode = STATUS_OK;
+        } else {
+            returnCode = mBackend.setMono(audioMode == AUDIO_MODE_MONO);
+        }
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setAudioMode() failed: returnCode = " + returnCode);
+            mChip.forget(ChipState.AUDIO_MODE);
+        } else {
+            mChip.set(ChipState.AUDIO_MODE, audioMode);
+            mEventDispatcher.post(FmEventDispatcher.TYPE_AUDIO_MODE, audioMode, 0, 0, 0);
         }
 
         return returnCode;
@@ -1016,19 +2541,32 @@ public final class FmReceiver {
     public synchronized int setAudioPath(int audioPath) {
         int returnCode = STATUS_SERVER_FAIL;
 
-        returnCode = setAudioPathNative(audioPath);
+        if (mChip.has(ChipState.AUDIO_PATH, audioPath)) {
+            mStats.onCommandSkipped();
+            returnCode = STATUS_OK;
+        } else {
+            returnCode = mBackend.setAudioPath(audioPath);
+        }
         if (returnCode != STATUS_OK) {
             Log.e(TAG, "setAudioPath() failed: returnCode = " + returnCode);        	
+            mChip.forget(ChipState.AUDIO_PATH);
+        } else {
+            mChip.set(ChipState.AUDIO_PATH, audioPath);
+            mEventDispatcher.post(FmEventDispatcher.TYPE_AUDIO_PATH, audioPath, 0, 0, 0);
         }
 
         return returnCode;
     }
 
-    private native int setAudioPathNative(int audioPath);
     /**
      * Sets the minimum frequency step size to use when scanning for stations.
      * This function does not result in a status callback and the calling
      * application should therefore keep track of this setting.
+     * <p>
+     * The step applies to the band of the world region, see
+     * {@link FmBandPlan#forRegion(int, int, int)}, and replaces a plan set
+     * with {@link #setBandPlan(FmBandPlan)}. The RDA driver cannot step
+     * 50 kHz and refuses it.
      * 
      * @param stepSize
      *            a frequency interval set to {@link #FREQ_STEP_100KHZ} or
@@ -1039,17 +2577,68 @@ public final class FmReceiver {
      */
     public synchronized int setStepSize(int stepSize) {
         int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: setStepSize
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "setStepSize() failed", e);
+
+        if (stepSize != FREQ_STEP_100KHZ && stepSize != FREQ_STEP_50KHZ) {
+            return STATUS_ILLEGAL_PARAMETERS;
+        }
+        returnCode = applyBandPlan(FmBandPlan.forRegion(mWorldRegion, stepSize, mBandPlan.getDeemphasis()));
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setStepSize() failed: returnCode = " + returnCode);
+        } else {
+            mStepSize = stepSize;
         }
 
         return returnCode;
     }
 
+    /**
+     * Sets the band the receiver tunes, seeks and scans, for a plan no world
+     * region gives, such as {@link FmBandPlan#BAND_JAPANW} or a
+     * {@link FmBandPlan#special(int, int, int, int) special} range. The
+     * tuner may stay on its channel until the next tune.
+     * <p>
+     * A plan of more than {@link #SPECTRUM_MAX_CHANNELS} channels,
+     * {@link FmBandPlan#BAND_JAPANW} in 100 kHz steps for one, is wider than
+     * the chip's scan table and spectrum read: it is scanned with
+     * {@link #sweepBand(int, IFmScanListener)}, its cached station lists are
+     * revalidated with the same sweep, and fast seek is not used on it.
+     *
+     * @param plan
+     *            the band plan.
+     * @return STATUS_OK = 0 if successful, otherwise a non-zero error code,
+     *         for instance if the tuner cannot step the spacing.
+     */
+    public synchronized int setBandPlan(FmBandPlan plan) {
+        int returnCode = applyBandPlan(plan);
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setBandPlan() failed: returnCode = " + returnCode);
+        }
+        return returnCode;
+    }
+
+    /**
+     * @return the band plan in use, {@link FmBandPlan#forRegion(int, int, int)
+     *         87.5 - 108 MHz in 100 kHz steps} until another is set.
+     */
+    public FmBandPlan getBandPlan() {
+        return mBandPlan;
+    }
+
+    private int applyBandPlan(FmBandPlan plan) {
+        if (plan.equals(mBandPlan)) {
+            mStats.onCommandSkipped();
+            return STATUS_OK;
+        }
+        int returnCode = mBackend.setBand(plan.getBand(), plan.getLow(), plan.getHigh(), plan.getSpacing());
+        if (returnCode == STATUS_OK) {
+            mBandPlan = plan;
+            // the map holds channels of the old plan, and the chip may move to the new one
+            clearSeekMap();
+            mChip.forget(ChipState.FREQ);
+        }
+        return returnCode;
+    }
+
     /**
      * Sets the FM volume.
      * 
@@ -1064,19 +2653,37 @@ public final class FmReceiver {
     public synchronized int setFMVolume(int volume) {
         int returnCode = STATUS_SERVER_FAIL;
         
-        returnCode = setFMVolumeNative(volume);
-        if (returnCode != STATUS_OK) {
-            Log.e(TAG, "setFMVolume() returnCode = " + returnCode);
+        if (mChip.has(ChipState.VOLUME, volume)) {
+            mStats.onCommandSkipped();
+            returnCode = STATUS_OK;
+        } else {
+            returnCode = mBackend.setFMVolume(volume);
+            if (returnCode != STATUS_OK) {
+                Log.e(TAG, "setFMVolume() returnCode = " + returnCode);
+                mChip.invalidate();
+                checkSession();
+            } else {
+                mChip.set(ChipState.VOLUME, volume);
+            }
+        }
+        if (returnCode == STATUS_OK) {
+            synchronized (mStatusLock) {
+                mStatus = mStatus.withVolume(volume);
+            }
         }
+        mEventDispatcher.post(FmEventDispatcher.TYPE_VOLUME, returnCode, volume, 0, 0);
 
         return returnCode;
     }
-    
-    private native int setFMVolumeNative(int volume);
 
     /**
      * Sets a the world frequency region and the deemphasis time. This results
      * in a world frequency event callback.
+     * <p>
+     * The band plan becomes that of the region, see
+     * {@link FmBandPlan#forRegion(int, int, int)}, at the current
+     * {@link #setStepSize(int) step size}. The RDA driver has no deemphasis
+     * control; the time is kept in the plan for the application.
      * 
      * @param worldRegion
      *            the world region the FM receiver is located. Set to
@@ -1093,12 +2700,20 @@ public final class FmReceiver {
      */
     public synchronized int setWorldRegion(int worldRegion, int deemphasisTime) {
         int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
+        FmBandPlan plan;
+
         try {
-        	//TODO: setWorldRegion
-        	returnCode = 0;
-        } catch (Exception e) {
+            plan = FmBandPlan.forRegion(worldRegion, mStepSize, deemphasisTime);
+        } catch (IllegalArgumentException e) {
             Log.e(TAG, "setWorldRegion() failed", e);
+            return STATUS_ILLEGAL_PARAMETERS;
+        }
+        returnCode = applyBandPlan(plan);
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setWorldRegion() failed: returnCode = " + returnCode);
+        } else {
+            mWorldRegion = worldRegion;
+            mEventDispatcher.post(FmEventDispatcher.TYPE_WORLD_REGION, worldRegion, 0, 0, 0);
         }
 
         return returnCode;
@@ -1108,6 +2723,21 @@ public final class FmReceiver {
      * Estimates the noise floor level given a specific type request. This
      * function returns an RSSI level that is useful for specifying as the
      * minimum signal strength for scan operations.
+     * <p>
+     * The RSSI is sampled on channels spread over the band plan, away from
+     * the {@link #getCachedStations() cached stations}; channels that stand
+     * out from the median one are taken as stations and left out. The
+     * level sets the effort: {@link #NFL_LOW} reads 8 channels twice,
+     * {@link #NFL_MED} 16 channels four times and {@link #NFL_FINE} 32
+     * channels eight times. The audio is muted while the tuner samples the
+     * band; the tuner returns to the current frequency and the mute state is
+     * restored afterwards.
+     * <p>
+     * The estimate is kept for an hour per band plan and
+     * {@link #setScanLocation(String) location}, a request no finer than the
+     * kept one is answered from it without touching the tuner. While one is
+     * kept, seeks and sweeps with {@link #MIN_SIGNAL_STRENGTH_AUTO} take
+     * a margin over it as their threshold.
      * 
      * @param nflLevel
      *            estimate noise floor for {@link #NFL_LOW}, {@link #NFL_MED} or
@@ -1116,24 +2746,100 @@ public final class FmReceiver {
      * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
      *         code.
      * 
-     * @see IFmReceiverEventHandler.onEstimateNflEvent().
+     * @see IFmReceiverEventHandler#onEstimateNoiseFloorLevelEvent(int)
      */
     public synchronized int estimateNoiseFloorLevel(int nflLevel) {
-        int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: estimateNoiseFloorLevel
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "estimateNoiseFloorLevel() failed", e);
+        if (nflLevel < NFL_LOW || nflLevel > NFL_FINE) {
+            return STATUS_ILLEGAL_PARAMETERS;
+        }
+        if (!mRadioOn) {
+            return STATUS_ILLEGAL_COMMAND;
         }
+        FmBandPlan plan = mBandPlan;
+        String location = mScanLocation;
+        int floor = mNoiseFloor.get(plan, location, nflLevel);
+        if (floor == NoiseFloorEstimator.UNKNOWN) {
+            int returnCode = sampleNoiseFloor(plan, nflLevel);
+            returnToFreq();
+            if (returnCode != STATUS_OK) {
+                Log.e(TAG, "estimateNoiseFloorLevel() failed: returnCode = " + returnCode);
+                return returnCode;
+            }
+            floor = mNoiseFloor.put(plan, location, nflLevel);
+        }
+        mEventDispatcher.post(FmEventDispatcher.TYPE_ESTIMATE_NFL, floor, 0, 0, 0);
 
-        return returnCode;
+        return STATUS_OK;
+    }
+
+    /*
+     * Feeds the RSSI of channels spread over the plan to the estimator; a
+     * channel within 100 kHz of a cached station is passed for the next one
+     * up. The chip is muted first; the tuner is left on the last channel
+     * read, for returnToFreq() to tune back and unmute.
+     */
+    private int sampleNoiseFloor(FmBandPlan plan, int nflLevel) {
+        int n = plan.getChannelCount();
+        int channels = Math.min(n, NFL_CHANNELS[nflLevel]);
+        int[] stations = getCachedStations();
+        mNoiseFloor.reset();
+        muteWhileAway();
+        mChip.forget(ChipState.FREQ);
+        setTuned(FREQ_UNKNOWN);
+        for (int i = 0; i < channels && mNoiseFloor.nextChannel(); i++) {
+            int k = (2 * i + 1) * n / (2 * channels);
+            int end = (i + 1) * n / channels;
+            while (k < end - 1 && isNearStation(stations, plan.getLow() + k * plan.getSpacing())) {
+                k++;
+            }
+            if (mBackend.tuneRadio(plan.getLow() + k * plan.getSpacing()) != STATUS_OK) {
+                return STATUS_FAIL;
+            }
+            for (int r = 0; r < NFL_READS[nflLevel]; r++) {
+                int rssi = mBackend.readRssi();
+                if (rssi == TunerBackend.RSSI_UNKNOWN) {
+                    return STATUS_FAIL;
+                }
+                if (!mNoiseFloor.add(rssi)) {
+                    // a station after all, the other reads would say the same
+                    break;
+                }
+            }
+        }
+        return mNoiseFloor.finish() > 0 ? STATUS_OK : STATUS_FAIL;
+    }
+
+    private static boolean isNearStation(int[] stations, int freq) {
+        if (stations == null) {
+            return false;
+        }
+        int i = Arrays.binarySearch(stations, freq);
+        if (i >= 0) {
+            return true;
+        }
+        i = -i - 1;
+        return (i < stations.length && stations[i] - freq <= FmBandPlan.SPACING_100KHZ)
+                || (i > 0 && freq - stations[i - 1] <= FmBandPlan.SPACING_100KHZ);
+    }
+
+    /**
+     * Returns the noise floor last {@link #estimateNoiseFloorLevel(int)
+     * estimated} for the current band plan and location, without touching
+     * the tuner.
+     *
+     * @return the RSSI of the noise floor, or -1 if no fresh estimate is
+     *         kept.
+     */
+    public int getEstimatedNoiseFloor() {
+        int floor = mNoiseFloor.get(mBandPlan, mScanLocation, NFL_LOW);
+        return floor == NoiseFloorEstimator.UNKNOWN ? -1 : floor;
     }
 
     /**
      * Enables or disables the live polling of audio quality on the currently
      * tuned frequency using a specific poll interval.
+     * <p>
+     * Uses {@link #SIGNAL_DELTA_DEFAULT} as the reporting threshold.
      * 
      * @param liveAudioPolling
      *            enables/disables live polling of audio quality.
@@ -1145,19 +2851,113 @@ public final class FmReceiver {
      * 
      * @see IFmReceiverEventHandler.onLiveAudioQualityEvent().
      */
-    public synchronized int setLiveAudioPolling(boolean liveAudioPolling, int signalPollInterval) {
-        int returnCode = STATUS_SERVER_FAIL;
-        /* Request this action from the server. */
-        try {
-        	//TODO: setLiveAudioPolling
-        	returnCode = 0;
-        } catch (Exception e) {
-            Log.e(TAG, "setLiveAudioPolling() failed", e);
+    public int setLiveAudioPolling(boolean liveAudioPolling, int signalPollInterval) {
+        return setLiveAudioPolling(liveAudioPolling, signalPollInterval, SIGNAL_DELTA_DEFAULT);
+    }
+
+    /**
+     * Enables or disables the live polling of audio quality on the currently
+     * tuned frequency. A native timer reads RSSI, stereo state, PAMD and block
+     * error ratio every signalPollInterval ms and reports a sample to the
+     * {@link #setSignalListener(IFmSignalListener) signal listener} only when
+     * the stereo state flips or another value moves by more than
+     * signalDelta. Polling stops when the radio is turned off.
+     * 
+     * @param liveAudioPolling
+     *            enables/disables live polling of audio quality.
+     * @param signalPollInterval
+     *            the sample interval in ms, see
+     *            {@link #SIGNAL_POLL_INTERVAL_DEFAULT}.
+     * @param signalDelta
+     *            the least change that is reported, in raw chip units.
+     * 
+     * @return STATUS_OK = 0 if successful. Otherwise returns a non-zero error
+     *         code.
+     */
+    public synchronized int setLiveAudioPolling(boolean liveAudioPolling, int signalPollInterval, int signalDelta) {
+        if (!liveAudioPolling) {
+            mBackend.stopSignalPoller();
+            return STATUS_OK;
+        }
+        if (signalPollInterval <= 0 || signalDelta < 0) {
+            return STATUS_ILLEGAL_PARAMETERS;
+        }
+
+        int returnCode = mBackend.startSignalPoller(signalPollInterval, signalDelta, this::onSignalSample);
+        if (returnCode != STATUS_OK) {
+            Log.e(TAG, "setLiveAudioPolling() failed: returnCode = " + returnCode);
         }
 
         return returnCode;
     }
 
+    /**
+     * Sets the listener receiving live signal quality samples.
+     *
+     * @param listener
+     *            the listener, or null to stop delivery.
+     */
+    public void setSignalListener(IFmSignalListener listener) {
+        mSignalListener = listener;
+    }
+
+    /**
+     * @return the latest sample reported by live polling, or 0 if there was
+     *         none yet.
+     */
+    public long getSignalSample() {
+        return mSignalSample;
+    }
+
+    /* Called on the backend's poller thread, native or simulated; must not block. */
+    private void onSignalSample(long sample) {
+        mSignalSample = sample;
+        mPiRegistry.noteRssi((int) mTuned, signalRssi(sample));
+        synchronized (mStatusLock) {
+            mStatus = mStatus.withSignal(signalRssi(sample), signalStereo(sample));
+        }
+        mEventDispatcher.post(FmEventDispatcher.TYPE_LIVE_AUDIO_QUALITY, signalRssi(sample), 0, 0, 0);
+        if (mSignalDeliveryPending.compareAndSet(false, true)) {
+            mSignalExecutor.execute(mSignalDrainer);
+        }
+    }
+
+    /**
+     * @param sample
+     *            a sample from live polling.
+     * @return the RSSI of the sample.
+     */
+    public static int signalRssi(long sample) {
+        return (short) sample;
+    }
+
+    /**
+     * @param sample
+     *            a sample from live polling.
+     * @return true if the sample was taken while receiving stereo.
+     */
+    public static boolean signalStereo(long sample) {
+        return ((sample >>> 16) & 0xFFFF) != 0;
+    }
+
+    /**
+     * @param sample
+     *            a sample from live polling.
+     * @return the PAMD (multipath) level of the sample.
+     */
+    public static int signalPamd(long sample) {
+        return (int) ((sample >>> 32) & 0xFFFF);
+    }
+
+    /**
+     * @param sample
+     *            a sample from live polling.
+     * @return the RDS block error ratio of the sample.
+     */
+    public static int signalBler(long sample) {
+        return (int) (sample >>> 48);
+    }
+
 //    /**
 //     * The class containing all the FmReceiver callback function handlers. These
 //     * functions will be called by the FmReceiverService module when callback
@@ -0,0 +1,179 @@
+package com.service.fm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters of one {@link FmReceiver}. All counters are cumulative
+ * since the receiver was created and may be read from any thread.
+ */
+public final class FmReceiverStats {
+
+    private final AtomicLong mTuneRequests = new AtomicLong();
+    private final AtomicLong mTunesIssued = new AtomicLong();
+    private final AtomicLong mTunesDropped = new AtomicLong();
+    private final AtomicLong mTunesFailed = new AtomicLong();
+    private final AtomicLong mCommandsSkipped = new AtomicLong();
+    private final AtomicLong mFastSeeks = new AtomicLong();
+    private final AtomicLong mImagesDropped = new AtomicLong();
+    private final AtomicLong mEventsDropped = new AtomicLong();
+    private final AtomicLong mColdResumes = new AtomicLong();
+    private final AtomicLong mColdResumeNanos = new AtomicLong();
+    private final AtomicLong mWarmResumes = new AtomicLong();
+    private final AtomicLong mWarmResumeNanos = new AtomicLong();
+    private volatile long mLastResumeNanos;
+
+    FmReceiverStats() {
+    }
+
+    /**
+     * @return the number of tuneRadio() calls.
+     */
+    public long getTuneRequestCount() {
+        return mTuneRequests.get();
+    }
+
+    /**
+     * @return the number of tune commands actually sent to the chip.
+     */
+    public long getTuneIssuedCount() {
+        return mTunesIssued.get();
+    }
+
+    /**
+     * @return the number of tune requests superseded by a newer one before
+     *         they were sent, see {@link FmReceiver#setTuneCoalescing(boolean)}.
+     */
+    public long getTuneDroppedCount() {
+        return mTunesDropped.get();
+    }
+
+    /**
+     * @return the number of tuneRadio() commands the chip rejected.
+     */
+    public long getTuneFailedCount() {
+        return mTunesFailed.get();
+    }
+
+    /**
+     * @return the number of commands answered without reaching the chip
+     *         because it already held the requested value.
+     */
+    public long getCommandSkippedCount() {
+        return mCommandsSkipped.get();
+    }
+
+    /**
+     * @return the number of seeks answered from the RSSI map, see
+     *         {@link FmReceiver#setFastSeek(boolean)}.
+     */
+    public long getFastSeekCount() {
+        return mFastSeeks.get();
+    }
+
+    /**
+     * @return the number of channels dropped from scan results as images of
+     *         a station next to them.
+     */
+    public long getImageDroppedCount() {
+        return mImagesDropped.get();
+    }
+
+    /**
+     * @return the number of events not delivered to the
+     *         {@link IFmReceiverEventHandler} because its queue was full.
+     */
+    public long getEventDroppedCount() {
+        return mEventsDropped.get();
+    }
+
+    /**
+     * @return the number of turnOnRadio() calls that powered the chip up
+     *         from off.
+     */
+    public long getColdResumeCount() {
+        return mColdResumes.get();
+    }
+
+    /**
+     * @return the total time spent in cold turnOnRadio() calls, in
+     *         nanoseconds.
+     */
+    public long getColdResumeNanos() {
+        return mColdResumeNanos.get();
+    }
+
+    /**
+     * @return the number of turnOnRadio() calls that resumed from standby,
+     *         see {@link FmReceiver#setStandbyTimeout(long)}.
+     */
+    public long getWarmResumeCount() {
+        return mWarmResumes.get();
+    }
+
+    /**
+     * @return the total time spent in turnOnRadio() calls resuming from
+     *         standby, in nanoseconds.
+     */
+    public long getWarmResumeNanos() {
+        return mWarmResumeNanos.get();
+    }
+
+    /**
+     * @return the duration of the last successful turnOnRadio(), cold or
+     *         warm, in nanoseconds; 0 if there was none.
+     */
+    public long getLastResumeNanos() {
+        return mLastResumeNanos;
+    }
+
+    void onResumed(boolean warm, long nanos) {
+        if (warm) {
+            mWarmResumes.incrementAndGet();
+            mWarmResumeNanos.addAndGet(nanos);
+        } else {
+            mColdResumes.incrementAndGet();
+            mColdResumeNanos.addAndGet(nanos);
+        }
+        mLastResumeNanos = nanos;
+    }
+
+    void onTuneRequested() {
+        mTuneRequests.incrementAndGet();
+    }
+
+    void onTuneIssued() {
+        mTunesIssued.incrementAndGet();
+    }
+
+    void onTuneDropped() {
+        mTunesDropped.incrementAndGet();
+    }
+
+    void onTuneFailed() {
+        mTunesFailed.incrementAndGet();
+    }
+
+    void onCommandSkipped() {
+        mCommandsSkipped.incrementAndGet();
+    }
+
+    void onFastSeek() {
+        mFastSeeks.incrementAndGet();
+    }
+
+    void onImagesDropped(int count) {
+        mImagesDropped.addAndGet(count);
+    }
+
+    void onEventDropped() {
+        mEventsDropped.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "FmReceiverStats{tuneRequests=" + getTuneRequestCount() + ", tunesIssued=" + getTuneIssuedCount()
+                + ", tunesDropped=" + getTuneDroppedCount() + ", tunesFailed=" + getTuneFailedCount() + ", commandsSkipped=" + getCommandSkippedCount() + ", fastSeeks=" + getFastSeekCount() + ", imagesDropped=" + getImageDroppedCount() + ", eventsDropped=" + getEventDroppedCount() + ", coldResumes=" + getColdResumeCount()
+                + ", coldResumeNanos=" + getColdResumeNanos() + ", warmResumes=" + getWarmResumeCount()
+                + ", warmResumeNanos=" + getWarmResumeNanos() + "}";
+    }
+}
@@ -0,0 +1,152 @@
+package com.service.fm;
+
+/**
+ * An immutable picture of a receiver's state, returned by
+ * {@link FmReceiver#getStatusSnapshot()}.
+ * <p>
+ * The receiver publishes a new snapshot whenever a command, a live signal
+ * sample or the RDS decoder changes one of its values, so reading the
+ * current one costs a single volatile read: no lock, no driver call and no
+ * allocation. That makes it safe to poll from the UI thread at frame rate,
+ * even while a seek holds the receiver busy. Compare
+ * {@link #getSequence()} to tell whether anything changed since the last
+ * poll.
+ */
+public final class FmStatus {
+
+    static final FmStatus INITIAL = new FmStatus(0, false, 0, 0, false, false, -1, null, -1);
+
+    private final long mSequence;
+    private final boolean mRadioOn;
+    private final int mFreq;
+    private final int mRssi;
+    private final boolean mStereo;
+    private final boolean mMuted;
+    private final int mVolume;
+    private final String mProgramService;
+    private final int mPty;
+
+    private FmStatus(long sequence, boolean radioOn, int freq, int rssi, boolean stereo, boolean muted,
+            int volume, String programService, int pty) {
+        mSequence = sequence;
+        mRadioOn = radioOn;
+        mFreq = freq;
+        mRssi = rssi;
+        mStereo = stereo;
+        mMuted = muted;
+        mVolume = volume;
+        mProgramService = programService;
+        mPty = pty;
+    }
+
+    /**
+     * @return a number increased by every new snapshot of the receiver.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return true if the radio is on; false while off or in standby.
+     */
+    public boolean isRadioOn() {
+        return mRadioOn;
+    }
+
+    /**
+     * @return the frequency tuned to, 0 if not known yet.
+     */
+    public int getFreq() {
+        return mFreq;
+    }
+
+    /**
+     * @return the RSSI of the latest live signal sample, 0 without live
+     *         polling.
+     */
+    public int getRssi() {
+        return mRssi;
+    }
+
+    /**
+     * @return true if the latest live signal sample was taken in stereo.
+     */
+    public boolean isStereo() {
+        return mStereo;
+    }
+
+    /**
+     * @return true if audio is muted.
+     */
+    public boolean isMuted() {
+        return mMuted;
+    }
+
+    /**
+     * @return the volume last set, -1 if none was.
+     */
+    public int getVolume() {
+        return mVolume;
+    }
+
+    /**
+     * @return the RDS program service name of the current station, or null
+     *         if none was received.
+     */
+    public String getProgramService() {
+        return mProgramService;
+    }
+
+    /**
+     * @return the RDS program type of the current station, -1 if none was
+     *         received.
+     */
+    public int getPty() {
+        return mPty;
+    }
+
+    /* The with* methods return this when nothing changes, so publishing is free then. */
+
+    FmStatus withPower(boolean radioOn, int freq, boolean muted) {
+        if (radioOn == mRadioOn && freq == mFreq && muted == mMuted) {
+            return this;
+        }
+        if (!radioOn) {
+            return new FmStatus(mSequence + 1, false, freq, 0, false, muted, mVolume, null, -1);
+        }
+        if (freq != mFreq) {
+            // another station, its RDS has yet to come
+            return new FmStatus(mSequence + 1, true, freq, mRssi, mStereo, muted, mVolume, null, -1);
+        }
+        return new FmStatus(mSequence + 1, radioOn, freq, mRssi, mStereo, muted, mVolume, mProgramService, mPty);
+    }
+
+    FmStatus withSignal(int rssi, boolean stereo) {
+        if (rssi == mRssi && stereo == mStereo) {
+            return this;
+        }
+        return new FmStatus(mSequence + 1, mRadioOn, mFreq, rssi, stereo, mMuted, mVolume, mProgramService, mPty);
+    }
+
+    FmStatus withVolume(int volume) {
+        if (volume == mVolume) {
+            return this;
+        }
+        return new FmStatus(mSequence + 1, mRadioOn, mFreq, mRssi, mStereo, mMuted, volume, mProgramService, mPty);
+    }
+
+    FmStatus withRds(String programService, int pty) {
+        if (pty == mPty && (programService == null ? mProgramService == null
+                : programService.equals(mProgramService))) {
+            return this;
+        }
+        return new FmStatus(mSequence + 1, mRadioOn, mFreq, mRssi, mStereo, mMuted, mVolume, programService, pty);
+    }
+
+    @Override
+    public String toString() {
+        return "FmStatus{sequence=" + mSequence + ", radioOn=" + mRadioOn + ", freq=" + mFreq + ", rssi=" + mRssi
+                + ", stereo=" + mStereo + ", muted=" + mMuted + ", volume=" + mVolume + ", ps=" + mProgramService
+                + ", pty=" + mPty + "}";
+    }
+}
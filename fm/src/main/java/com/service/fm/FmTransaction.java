@@ -0,0 +1,147 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * A batch of tuner commands sent to the chip in one go, built with
+ * {@link FmReceiver#transaction()}:
+ *
+ * <pre>
+ * int status = receiver.transaction().powerOn().tune(9870).volume(8).mute(false).execute();
+ * </pre>
+ *
+ * The commands are recorded as a compact program of (opcode, argument)
+ * pairs and run by the driver binding in a single call under the receiver's
+ * lock, so no other command can slip in between. The program stops at the
+ * first command that fails; {@link #getStatus(int)} then tells which
+ * commands ran and how each ended.
+ * <p>
+ * The receiver's state and events follow as if the commands had been
+ * called one by one; a power up is counted in {@link FmReceiver#getStats()}
+ * like {@link FmReceiver#turnOnRadio()}. A transaction may be executed any
+ * number of times, which suits presets, but one instance must not be used
+ * from several threads at once.
+ */
+public final class FmTransaction {
+
+    /** Most commands one transaction holds. */
+    public static final int MAX_OPS = 32;
+
+    /** Status of a command that did not run because an earlier one failed. */
+    public static final int NOT_RUN = Integer.MIN_VALUE;
+
+    /* Opcodes, shared with fmradio.c. */
+    static final int OP_NOP = 0;
+    static final int OP_POWER_ON = 1;
+    static final int OP_TUNE = 2;
+    static final int OP_VOLUME = 3;
+    static final int OP_MUTE = 4;
+    static final int OP_AUDIO_PATH = 5;
+
+    private final FmReceiver mReceiver;
+
+    /* (opcode, argument) pairs */
+    final int[] mProgram = new int[2 * MAX_OPS];
+    final int[] mStatus = new int[MAX_OPS];
+    int mCount;
+    int mFailed = -1;
+
+    FmTransaction(FmReceiver receiver) {
+        mReceiver = receiver;
+        Arrays.fill(mStatus, NOT_RUN);
+    }
+
+    /**
+     * Adds a power up, see {@link FmReceiver#turnOnRadio()}.
+     */
+    public FmTransaction powerOn() {
+        return add(OP_POWER_ON, 0);
+    }
+
+    /**
+     * Adds a tune, see {@link FmReceiver#tuneRadio(int)}. Tune coalescing
+     * does not apply.
+     */
+    public FmTransaction tune(int freq) {
+        return add(OP_TUNE, freq);
+    }
+
+    /**
+     * Adds a volume change, see {@link FmReceiver#setFMVolume(int)}.
+     */
+    public FmTransaction volume(int volume) {
+        return add(OP_VOLUME, volume);
+    }
+
+    /**
+     * Adds a mute or unmute, see {@link FmReceiver#muteAudio(boolean)}.
+     */
+    public FmTransaction mute(boolean mute) {
+        return add(OP_MUTE, mute ? 1 : 0);
+    }
+
+    /**
+     * Adds an audio path change, see {@link FmReceiver#setAudioPath(int)}.
+     */
+    public FmTransaction audioPath(int audioPath) {
+        return add(OP_AUDIO_PATH, audioPath);
+    }
+
+    private FmTransaction add(int op, int arg) {
+        if (mCount == MAX_OPS) {
+            throw new IllegalStateException("more than " + MAX_OPS + " commands");
+        }
+        mProgram[2 * mCount] = op;
+        mProgram[2 * mCount + 1] = arg;
+        mCount++;
+        return this;
+    }
+
+    /**
+     * Removes all commands, so the transaction can be filled anew.
+     */
+    public FmTransaction clear() {
+        mCount = 0;
+        mFailed = -1;
+        Arrays.fill(mStatus, NOT_RUN);
+        return this;
+    }
+
+    /**
+     * @return the number of commands recorded.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Runs the commands in order, stopping at the first failure.
+     *
+     * @return STATUS_OK = 0 if every command succeeded, otherwise the code
+     *         of the command that failed.
+     */
+    public int execute() {
+        return mReceiver.runTransaction(this);
+    }
+
+    /**
+     * @param index
+     *            the command, in the order it was added.
+     * @return its result in the last {@link #execute()}: 0 if it succeeded,
+     *         the error code if it failed, {@link #NOT_RUN} if it did not run.
+     */
+    public int getStatus(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+        }
+        return mStatus[index];
+    }
+
+    /**
+     * @return the index of the command that failed in the last
+     *         {@link #execute()}, or -1 if none did.
+     */
+    public int getFailedIndex() {
+        return mFailed;
+    }
+}
@@ -0,0 +1,123 @@
+package com.service.fm;
+
+/**
+ * Receives the events of an {@link FmReceiver}, registered with
+ * {@link FmReceiver#registerEventHandler(IFmReceiverEventHandler)}.
+ * <p>
+ * All methods are called in order on the receiver's single "FmEvents"
+ * dispatcher thread. Events are queued in a bounded ring; if the handler
+ * falls too far behind, new events are dropped and counted in
+ * {@link FmReceiverStats#getEventDroppedCount()}.
+ */
+public interface IFmReceiverEventHandler {
+
+    /**
+     * Reports the state of the radio after it was turned on or off, or
+     * tuned.
+     *
+     * @param freq
+     *            the tuned frequency.
+     * @param rssi
+     *            the last RSSI known from live polling, 0 if none.
+     * @param radioIsOn
+     *            true if the radio is on.
+     * @param rdsProgramType
+     *            the current RDS program type, -1 if unknown.
+     * @param isMute
+     *            true if the audio is muted.
+     */
+    void onStatusEvent(int freq, int rssi, boolean radioIsOn, int rdsProgramType, boolean isMute);
+
+    /**
+     * Reports the end of a seek.
+     *
+     * @param freq
+     *            the frequency the seek stopped on.
+     * @param rssi
+     *            the last RSSI known from live polling, 0 if none.
+     * @param success
+     *            true if a station was found.
+     */
+    void onSeekCompleteEvent(int freq, int rssi, boolean success);
+
+    /**
+     * Reports a change of the RDS mode.
+     *
+     * @param rdsMode
+     *            one of the FmReceiver.RDS_MODE_* values.
+     * @param alternateFreqHopEnabled
+     *            {@link FmReceiver#AF_MODE_ON} or
+     *            {@link FmReceiver#AF_MODE_OFF}.
+     */
+    void onRdsModeEvent(int rdsMode, int alternateFreqHopEnabled);
+
+    /**
+     * Reports a completed RDS field.
+     *
+     * @param rdsDataType
+     *            one of the RdsDecoder.FIELD_* ids.
+     * @param rdsIndex
+     *            the value of numeric fields: the PI code, the program
+     *            type, 1 or 0 for TP, or the number of alternative
+     *            frequencies, which
+     *            {@link FmReceiver#getAlternateFrequencies(int[])} returns.
+     * @param text
+     *            the text of PS, RT and PTYN. The array is recycled and
+     *            valid only during the call.
+     * @param length
+     *            the number of valid characters in text.
+     */
+    void onRdsDataEvent(int rdsDataType, int rdsIndex, char[] text, int length);
+
+    /**
+     * Reports a change of the audio mode.
+     *
+     * @param audioMode
+     *            one of the FmReceiver.AUDIO_MODE_* values.
+     */
+    void onAudioModeEvent(int audioMode);
+
+    /**
+     * Reports a change of the audio path.
+     *
+     * @param audioPath
+     *            one of the FmReceiver.AUDIO_PATH_* values.
+     */
+    void onAudioPathEvent(int audioPath);
+
+    /**
+     * Reports the result of a noise floor estimation.
+     *
+     * @param nfl
+     *            the estimated noise floor, on the RSSI scale of
+     *            FmReceiver.spectrumRssi().
+     */
+    void onEstimateNoiseFloorLevelEvent(int nfl);
+
+    /**
+     * Reports a live signal quality sample, see
+     * {@link FmReceiver#setLiveAudioPolling(boolean, int)}.
+     *
+     * @param rssi
+     *            the RSSI of the sample.
+     */
+    void onLiveAudioQualityEvent(int rssi);
+
+    /**
+     * Reports a change of the world region.
+     *
+     * @param worldRegion
+     *            one of the FmReceiver.FUNC_REGION_* values.
+     */
+    void onWorldRegionEvent(int worldRegion);
+
+    /**
+     * Reports the result of a volume change.
+     *
+     * @param status
+     *            STATUS_OK or an error code.
+     * @param volume
+     *            the volume requested.
+     */
+    void onVolumeEvent(int status, int volume);
+}
@@ -0,0 +1,18 @@
+package com.service.fm;
+
+/**
+ * Receives the partial results of a band scan started with
+ * {@link FmReceiver#scanBand(IFmScanListener)}.
+ */
+public interface IFmScanListener {
+
+    /**
+     * Called once for every channel found, in ascending order, on the thread
+     * that runs the scan.
+     *
+     * @param freq
+     *            the frequency found, in the same units as
+     *            {@link FmReceiver#tuneRadio(int)}.
+     */
+    void onStationFound(int freq);
+}
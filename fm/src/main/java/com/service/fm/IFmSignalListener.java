@@ -0,0 +1,22 @@
+package com.service.fm;
+
+/**
+ * Receives the live signal quality samples enabled with
+ * {@link FmReceiver#setLiveAudioPolling(boolean, int, int)}.
+ */
+public interface IFmSignalListener {
+
+    /**
+     * Called when the signal quality has changed noticeably. Samples are
+     * conflated: if the listener falls behind, only the latest one is
+     * delivered. Called on the receiver's "FmSignal" thread.
+     *
+     * @param sample
+     *            the packed sample, unpacked with
+     *            {@link FmReceiver#signalRssi(long)},
+     *            {@link FmReceiver#signalStereo(long)},
+     *            {@link FmReceiver#signalPamd(long)} and
+     *            {@link FmReceiver#signalBler(long)}.
+     */
+    void onSignalSample(long sample);
+}
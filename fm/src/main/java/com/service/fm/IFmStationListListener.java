@@ -0,0 +1,18 @@
+package com.service.fm;
+
+/**
+ * Receives the station lists a receiver revalidates in the background, see
+ * {@link FmReceiver#setScanCache(ScanCache)}.
+ */
+public interface IFmStationListListener {
+
+    /**
+     * Called on the receiver's "FmTuner" thread when a cached station list
+     * was checked against a fresh RSSI sweep.
+     *
+     * @param stations
+     *            the stations still received plus any new ones, ascending,
+     *            in the same units as {@link FmReceiver#tuneRadio(int)}.
+     */
+    void onStationListRevalidated(int[] stations);
+}
@@ -0,0 +1,119 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * Collapses the images of a station in a scan result to one channel.
+ * <p>
+ * A strong station still reads over the seek threshold 50 and 100 kHz off,
+ * so a chip scan or seek reports it two or three times. Of the found
+ * channels within 100 kHz of each other the strongest is kept, and the
+ * others it outshines are dropped as its images, strongest first, so an
+ * image never suppresses a channel of its own. A channel 100 kHz off must
+ * read {@link #IMAGE_MARGIN} under the stronger one to be taken as its image;
+ * closer channels carry the same program whatever their RSSI.
+ * <p>
+ * Where the {@link PiRegistry} knows the PI code of both channels it decides
+ * alone: the same code within 100 kHz is one station, different codes are
+ * two.
+ */
+final class ImageFilter {
+
+    /** Distance within which two channels may be one station. */
+    static final int REACH = FmBandPlan.SPACING_100KHZ;
+    /** RSSI a channel 100 kHz off must lack to be an image. */
+    static final int IMAGE_MARGIN = 6;
+
+    private final PiRegistry mRegistry;
+
+    ImageFilter(PiRegistry registry) {
+        mRegistry = registry;
+    }
+
+    /**
+     * @return true if a channel of the ascending list lies within
+     *         {@link #REACH} of the next, so there is something to collapse.
+     */
+    static boolean hasNeighbours(int[] freqs) {
+        for (int i = 1; i < freqs.length; i++) {
+            if (freqs[i] - freqs[i - 1] <= REACH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the images from a list of found channels.
+     *
+     * @param freqs
+     *            the channels in ascending order.
+     * @param rssi
+     *            the RSSI of each channel,
+     *            {@link TunerBackend#RSSI_UNKNOWN} where not read; such a
+     *            channel is only dropped on its PI code.
+     * @return the channels kept, in ascending order.
+     */
+    int[] collapse(int[] freqs, int[] rssi) {
+        int n = freqs.length;
+        if (!hasNeighbours(freqs)) {
+            return freqs;
+        }
+        // strongest first, the lower channel first on a tie
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = i;
+            while (j > 0 && stronger(i, order[j - 1], freqs, rssi)) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+
+        // a channel is settled once kept or dropped; only weaker ones are left
+        boolean[] settled = new boolean[n];
+        boolean[] dropped = new boolean[n];
+        for (int i : order) {
+            if (settled[i]) {
+                continue;
+            }
+            settled[i] = true;
+            for (int j = i - 1; j >= 0 && freqs[i] - freqs[j] <= REACH; j--) {
+                if (!settled[j] && isImage(j, i, freqs, rssi)) {
+                    settled[j] = dropped[j] = true;
+                }
+            }
+            for (int j = i + 1; j < n && freqs[j] - freqs[i] <= REACH; j++) {
+                if (!settled[j] && isImage(j, i, freqs, rssi)) {
+                    settled[j] = dropped[j] = true;
+                }
+            }
+        }
+
+        int[] kept = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!dropped[i]) {
+                kept[count++] = freqs[i];
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /* whether channel j is an image of the stronger, kept channel i */
+    private boolean isImage(int j, int i, int[] freqs, int[] rssi) {
+        int piI = mRegistry.getPi(freqs[i]);
+        int piJ = mRegistry.getPi(freqs[j]);
+        if (piI != PiRegistry.PI_UNKNOWN && piJ != PiRegistry.PI_UNKNOWN) {
+            return piI == piJ;
+        }
+        if (rssi[i] == TunerBackend.RSSI_UNKNOWN || rssi[j] == TunerBackend.RSSI_UNKNOWN) {
+            return false;
+        }
+        return Math.abs(freqs[i] - freqs[j]) < REACH || rssi[i] - rssi[j] >= IMAGE_MARGIN;
+    }
+
+    private static boolean stronger(int a, int b, int[] freqs, int[] rssi) {
+        return rssi[a] > rssi[b] || (rssi[a] == rssi[b] && freqs[a] < freqs[b]);
+    }
+}
@@ -0,0 +1,107 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed map from non-negative int keys to int values, the index
+ * from key to record of {@link StationStore} and {@link PiRegistry}.
+ * <p>
+ * Slots are probed linearly from a Fibonacci hash of the key. A removal
+ * shifts the later entries of its run back into the hole instead of leaving
+ * a tombstone, so probes stay short however many entries come and go. The
+ * slot count is fixed; the owner keeps the index at most half full, which
+ * also guarantees every probe meets a free slot. Not thread safe.
+ */
+final class IntIndex {
+
+    /** What {@link #get(int)} and {@link #remove(int)} return for a missing key. */
+    static final int MISSING = -1;
+
+    private static final int FREE = -1;
+
+    private final int[] mKeys;
+    private final int[] mValues;
+    private final int mMask;
+    private final int mShift;
+
+    /**
+     * @param size
+     *            the slot count, a power of two at least twice the most
+     *            entries kept.
+     */
+    IntIndex(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size " + size);
+        }
+        mKeys = new int[size];
+        mValues = new int[size];
+        mMask = size - 1;
+        mShift = Integer.numberOfLeadingZeros(mMask);
+        clear();
+    }
+
+    /**
+     * @return the value of a key, or {@link #MISSING}.
+     */
+    int get(int key) {
+        int slot = slotOf(key);
+        return slot < 0 ? MISSING : mValues[slot];
+    }
+
+    boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Maps a key to a value, replacing the value it had.
+     */
+    void put(int key, int value) {
+        int slot = hash(key);
+        while (mKeys[slot] != FREE && mKeys[slot] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+    }
+
+    /**
+     * @return the value the key had, or {@link #MISSING}.
+     */
+    int remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return MISSING;
+        }
+        int value = mValues[slot];
+        // linear probing delete: shift later entries of the run back into the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mMask; mKeys[next] != FREE; next = (next + 1) & mMask) {
+            int home = hash(mKeys[next]);
+            if (((next - home) & mMask) >= ((next - hole) & mMask)) {
+                mKeys[hole] = mKeys[next];
+                mValues[hole] = mValues[next];
+                hole = next;
+            }
+        }
+        mKeys[hole] = FREE;
+        return value;
+    }
+
+    /** Removes every key. */
+    void clear() {
+        Arrays.fill(mKeys, FREE);
+    }
+
+    private int hash(int key) {
+        return (key * 0x9e3779b9) >>> mShift & mMask;
+    }
+
+    private int slotOf(int key) {
+        for (int slot = hash(key); mKeys[slot] != FREE; slot = (slot + 1) & mMask) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
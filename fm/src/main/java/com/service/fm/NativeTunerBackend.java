@@ -0,0 +1,239 @@
+package com.service.fm;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link TunerBackend} talking to an RDA FM device node through
+ * librdafmradio. Each instance owns a native context of its own, so tuners on
+ * different nodes can be driven in parallel from separate threads.
+ */
+final class NativeTunerBackend implements TunerBackend {
+
+    /** The node of the first, usually the only, tuner. */
+    static final String DEFAULT_DEVICE_PATH = "/dev/RDAFM";
+
+	static {
+		try {
+		System.loadLibrary("rdafmradio");
+		} catch(Exception e) {
+			Log.e("FMRADIO", "load librdafmradio", e);
+
+		}
+	}
+
+    private final String mDevicePath;
+
+    /** The native context, 0 once released. */
+    private volatile long mHandle;
+
+    NativeTunerBackend() {
+        this(DEFAULT_DEVICE_PATH);
+    }
+
+    /**
+     * @param devicePath
+     *            the device node of the tuner, such as /dev/RDAFM1.
+     */
+    NativeTunerBackend(String devicePath) {
+        mDevicePath = devicePath;
+        mHandle = createNative(devicePath);
+        if (mHandle == 0) {
+            throw new OutOfMemoryError("no native context for " + devicePath);
+        }
+    }
+
+    /** @return the device node this backend opens. */
+    String getDevicePath() {
+        return mDevicePath;
+    }
+
+    @Override
+    public void release() {
+        long handle = mHandle;
+        mHandle = 0;
+        if (handle != 0) {
+            destroyNative(handle);
+        }
+    }
+
+    @Override
+    public int turnOnRadio() {
+        return turnOnRadioNative(mHandle);
+    }
+
+    @Override
+    public int turnOffRadio() {
+        return turnOffRadioNative(mHandle);
+    }
+
+    @Override
+    public int tuneRadio(int freq) {
+        return tuneRadioNative(mHandle, freq);
+    }
+
+    @Override
+    public int setBand(int band, int low, int high, int spacing) {
+        return setBandNative(mHandle, band, low, high, spacing);
+    }
+
+    @Override
+    public boolean getRadioIsOn() {
+        return getRadioIsOnNative(mHandle);
+    }
+
+    @Override
+    public int isPoweredUp() {
+        return isPoweredUpNative(mHandle);
+    }
+
+    @Override
+    public int readRssi() {
+        return readRssiNative(mHandle);
+    }
+
+    @Override
+    public int muteAudio(boolean mute) {
+        return muteAudioNative(mHandle, mute);
+    }
+
+    @Override
+    public int seekStation(int scanMode) {
+        return seekStationNative(mHandle, scanMode);
+    }
+
+    @Override
+    public int seekStationAbort() {
+        return seekStationAbortNative(mHandle);
+    }
+
+    @Override
+    public int[] scanBand(IFmScanListener listener) {
+        return scanBandNative(mHandle, listener);
+    }
+
+    @Override
+    public int stopScan() {
+        return stopScanNative(mHandle);
+    }
+
+    @Override
+    public int readSpectrum(ByteBuffer spectrum) {
+        return readSpectrumNative(mHandle, spectrum);
+    }
+
+    @Override
+    public int readChannelQuality(ByteBuffer cqi, int channelCount) {
+        return readChannelQualityNative(mHandle, cqi, channelCount);
+    }
+
+    @Override
+    public int setRds(boolean on) {
+        return setRdsNative(mHandle, on);
+    }
+
+    @Override
+    public int startRdsReader(ByteBuffer ring) {
+        return startRdsReaderNative(mHandle, ring);
+    }
+
+    @Override
+    public void stopRdsReader() {
+        stopRdsReaderNative(mHandle);
+    }
+
+    @Override
+    public int waitRds(ByteBuffer ring, int tail) {
+        return waitRdsNative(mHandle, ring, tail);
+    }
+
+    @Override
+    public void releaseRdsReader() {
+        releaseRdsReaderNative(mHandle);
+    }
+
+    @Override
+    public int setAudioPath(int audioPath) {
+        return setAudioPathNative(mHandle, audioPath);
+    }
+
+    @Override
+    public int setMono(boolean mono) {
+        return setMonoNative(mHandle, mono);
+    }
+
+    @Override
+    public int setFMVolume(int volume) {
+        return setFMVolumeNative(mHandle, volume);
+    }
+
+    @Override
+    public int runProgram(int[] program, int count, int[] status) {
+        return runProgramNative(mHandle, program, count, status);
+    }
+
+    @Override
+    public int startSignalPoller(int intervalMs, int delta, IFmSignalListener sink) {
+        return startSignalPollerNative(mHandle, intervalMs, delta, sink);
+    }
+
+    @Override
+    public void stopSignalPoller() {
+        stopSignalPollerNative(mHandle);
+    }
+
+    private static native int turnOnRadioNative(long handle);
+
+    private static native int turnOffRadioNative(long handle);
+
+    private static native int tuneRadioNative(long handle, int freq);
+
+    private static native int setBandNative(long handle, int band, int low, int high, int spacing);
+
+    private static native boolean getRadioIsOnNative(long handle);
+
+    private static native int isPoweredUpNative(long handle);
+
+    private static native int readRssiNative(long handle);
+
+    private static native int muteAudioNative(long handle, boolean mute);
+
+    private static native int seekStationNative(long handle, int scanMode);
+
+    private static native int seekStationAbortNative(long handle);
+
+    private static native int[] scanBandNative(long handle, IFmScanListener listener);
+
+    private static native int stopScanNative(long handle);
+
+    private static native int readSpectrumNative(long handle, ByteBuffer spectrum);
+
+    private static native int readChannelQualityNative(long handle, ByteBuffer cqi, int channelCount);
+
+    private static native int setRdsNative(long handle, boolean on);
+
+    private static native int startRdsReaderNative(long handle, ByteBuffer ring);
+
+    private static native void stopRdsReaderNative(long handle);
+
+    private static native int waitRdsNative(long handle, ByteBuffer ring, int tail);
+
+    private static native void releaseRdsReaderNative(long handle);
+
+    private static native int setAudioPathNative(long handle, int audioPath);
+
+    private static native int setMonoNative(long handle, boolean mono);
+
+    private static native int setFMVolumeNative(long handle, int volume);
+
+    private static native int runProgramNative(long handle, int[] program, int count, int[] status);
+
+    private static native int startSignalPollerNative(long handle, int intervalMs, int delta, IFmSignalListener sink);
+
+    private static native void stopSignalPollerNative(long handle);
+
+    private static native long createNative(String devicePath);
+
+    private static native void destroyNative(long handle);
+}
@@ -0,0 +1,212 @@
+package com.service.fm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The noise floor estimates of {@link FmReceiver#estimateNoiseFloorLevel(int)}
+ * and the statistics they are taken with.
+ * <p>
+ * An estimate is the mean RSSI of empty channels. The reads of each channel
+ * are folded in one at a time with Welford's method, which keeps the count,
+ * the mean and the sum of squared deviations and is stable where a running
+ * sum of squares is not. When all channels are read, those whose mean stands
+ * more than {@link #STATION_MARGIN} over the median channel are taken as
+ * stations, and the others are merged into one mean and deviation. A channel
+ * whose first read already stands that far over the quietest channel so far
+ * is not read again.
+ * <p>
+ * Finished estimates are kept per band plan and location, for
+ * {@link #MAX_AGE_MS}, the least recently used dropped beyond
+ * {@link #CAPACITY}. The statistics are used under the receiver lock; the
+ * cache is thread safe.
+ */
+final class NoiseFloorEstimator {
+
+    /** What {@link #get(FmBandPlan, String, int)} returns without an estimate. */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /** Band and location pairs kept. */
+    static final int CAPACITY = 16;
+    /** How long an estimate is served, in milliseconds. */
+    static final long MAX_AGE_MS = 60 * 60 * 1000L;
+
+    /** Channels one estimate may sample. */
+    static final int MAX_CHANNELS = 32;
+    /**
+     * RSSI over the median channel that marks a channel as a station; well
+     * clear of read noise, and under the margin seeks look for.
+     */
+    static final int STATION_MARGIN = 6;
+
+    /* Welford state per channel */
+    private final int[] mCount = new int[MAX_CHANNELS];
+    private final double[] mMean = new double[MAX_CHANNELS];
+    private final double[] mM2 = new double[MAX_CHANNELS];
+    private final double[] mSorted = new double[MAX_CHANNELS];
+    private int mChannels;
+    private double mQuietest;
+
+    /* the merged empty channels */
+    private int mTotal;
+    private double mTotalMean;
+    private double mTotalM2;
+    private int mRejected;
+
+    private static final class Entry {
+        final int floor;
+        final int level;
+        final long takenAt;
+
+        Entry(int floor, int level, long takenAt) {
+            this.floor = floor;
+            this.level = level;
+            this.takenAt = takenAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(CAPACITY * 2, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /** Starts a new estimate. */
+    void reset() {
+        mChannels = 0;
+        mQuietest = Double.MAX_VALUE;
+        mTotal = 0;
+        mTotalMean = 0;
+        mTotalM2 = 0;
+        mRejected = 0;
+    }
+
+    /**
+     * Starts the reads of the next channel.
+     *
+     * @return false if {@link #MAX_CHANNELS} were read already.
+     */
+    boolean nextChannel() {
+        if (mChannels == MAX_CHANNELS) {
+            return false;
+        }
+        mCount[mChannels] = 0;
+        mMean[mChannels] = 0;
+        mM2[mChannels] = 0;
+        mChannels++;
+        return true;
+    }
+
+    /**
+     * Folds in one RSSI read of the current channel.
+     *
+     * @return false if the channel reads as a station, further reads of it
+     *         are of no use.
+     */
+    boolean add(int rssi) {
+        int c = mChannels - 1;
+        int n = ++mCount[c];
+        double delta = rssi - mMean[c];
+        mMean[c] += delta / n;
+        mM2[c] += delta * (rssi - mMean[c]);
+        if (n == 1 && rssi > mQuietest + STATION_MARGIN) {
+            return false;
+        }
+        mQuietest = Math.min(mQuietest, mMean[c]);
+        return true;
+    }
+
+    /**
+     * Leaves out the channels that read as stations and merges the others.
+     *
+     * @return the reads merged.
+     */
+    int finish() {
+        if (mChannels == 0) {
+            return 0;
+        }
+        System.arraycopy(mMean, 0, mSorted, 0, mChannels);
+        Arrays.sort(mSorted, 0, mChannels);
+        double limit = mSorted[mChannels / 2] + STATION_MARGIN;
+        for (int c = 0; c < mChannels; c++) {
+            if (mMean[c] > limit) {
+                mRejected++;
+                continue;
+            }
+            // Chan et al., the pairwise form of Welford's update
+            int n = mTotal + mCount[c];
+            double delta = mMean[c] - mTotalMean;
+            mTotalMean += delta * mCount[c] / n;
+            mTotalM2 += mM2[c] + delta * delta * mTotal * mCount[c] / n;
+            mTotal = n;
+        }
+        return mTotal;
+    }
+
+    /**
+     * @return the reads merged by {@link #finish()}.
+     */
+    int getCount() {
+        return mTotal;
+    }
+
+    /**
+     * @return the channels {@link #finish()} took as stations.
+     */
+    int getRejectedCount() {
+        return mRejected;
+    }
+
+    /**
+     * @return the mean of the merged reads, 0 without any.
+     */
+    double getMean() {
+        return mTotalMean;
+    }
+
+    /**
+     * @return the sample standard deviation of the merged reads, 0 below
+     *         two.
+     */
+    double getStdDev() {
+        return mTotal < 2 ? 0 : Math.sqrt(mTotalM2 / (mTotal - 1));
+    }
+
+    /**
+     * Keeps the merged mean as the estimate of a band and location.
+     *
+     * @param level
+     *            the FmReceiver NFL_ level the reads were taken for.
+     * @return the estimate, the mean rounded.
+     */
+    synchronized int put(FmBandPlan plan, String location, int level) {
+        int floor = (int) Math.round(mTotalMean);
+        mEntries.put(key(plan, location), new Entry(floor, level, System.currentTimeMillis()));
+        return floor;
+    }
+
+    /**
+     * Returns the estimate of a band and location.
+     *
+     * @param level
+     *            the least FmReceiver NFL_ level the estimate must have been
+     *            taken for.
+     * @return the noise floor, or {@link #UNKNOWN} if there is no fresh
+     *         estimate of that level.
+     */
+    synchronized int get(FmBandPlan plan, String location, int level) {
+        Entry entry = mEntries.get(key(plan, location));
+        if (entry == null || entry.level < level || System.currentTimeMillis() - entry.takenAt > MAX_AGE_MS) {
+            return UNKNOWN;
+        }
+        return entry.floor;
+    }
+
+    private static String key(FmBandPlan plan, String location) {
+        return plan.getBand() + ":" + plan.getLow() + "-" + plan.getHigh() + "/" + plan.getSpacing() + "/"
+                + (location == null ? "" : location);
+    }
+}
@@ -0,0 +1,306 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+/**
+ * The programs a receiver has heard, by RDS program identification (PI)
+ * code: the frequencies each was received on with their last RSSI, and its
+ * program service name. A broadcaster heard on three transmitters is one
+ * entry with three frequencies, which is what network following and
+ * deduplicated station lists look up.
+ * <p>
+ * Programs are kept in up to {@link #MAX_PROGRAMS} fixed records of
+ * primitive arrays, found through an open-addressed index from PI code to
+ * record, and each 50 kHz channel names the program last heard on it. A
+ * program heard anew once the records are full takes the record of the one
+ * heard least recently. Recording a PI code, a name or an RSSI is a hash
+ * probe and a few array writes, so the RDS and signal threads feed the
+ * registry without allocating.
+ * <p>
+ * A channel belongs to one program at a time: hearing another PI code on it
+ * moves it over. Of a program heard on more than
+ * {@link #MAX_FREQUENCIES} channels the weakest is forgotten.
+ * <p>
+ * Frequencies are in the units of {@link FmReceiver#tuneRadio(int)}. All
+ * methods are thread safe.
+ */
+public final class PiRegistry {
+
+    /** What the lookups return for an unknown PI code. */
+    public static final int PI_UNKNOWN = -1;
+
+    /** Most programs kept. */
+    public static final int MAX_PROGRAMS = 64;
+    /** Most frequencies kept per program. */
+    public static final int MAX_FREQUENCIES = 8;
+
+    private static final int INDEX_SIZE = 2 * MAX_PROGRAMS;
+    private static final int CHANNELS = (FmBandPlan.FREQ_MAX - FmBandPlan.FREQ_MIN) / FmBandPlan.SPACING_50KHZ
+            + 1;
+
+    /* record of every PI code */
+    private final IntIndex mIndex = new IntIndex(INDEX_SIZE);
+    private int mCount;
+
+    /* per record */
+    private final int[] mPi = new int[MAX_PROGRAMS];
+    private final long[] mHeardAt = new long[MAX_PROGRAMS];
+    private final int[] mFreqCount = new int[MAX_PROGRAMS];
+    private final int[] mFreqs = new int[MAX_PROGRAMS * MAX_FREQUENCIES];
+    private final int[] mRssi = new int[MAX_PROGRAMS * MAX_FREQUENCIES];
+    private final int[] mPsLength = new int[MAX_PROGRAMS];
+    private final char[] mPs = new char[MAX_PROGRAMS * RdsDecoder.PS_LENGTH];
+
+    /* PI code last heard per 50 kHz channel */
+    private final int[] mChannelPi = new int[CHANNELS];
+
+    PiRegistry() {
+        clear();
+    }
+
+    /**
+     * Records a PI code received on a frequency.
+     */
+    synchronized void notePi(int pi, int freq) {
+        int ch = channel(freq);
+        if (pi < 0 || ch < 0) {
+            return;
+        }
+        int record = recordOf(pi);
+        if (record < 0) {
+            record = add(pi);
+        }
+        mHeardAt[record] = System.nanoTime();
+
+        int old = mChannelPi[ch];
+        if (old == pi) {
+            return;
+        }
+        if (old != PI_UNKNOWN) {
+            int oldRecord = recordOf(old);
+            if (oldRecord >= 0) {
+                removeFrequency(oldRecord, freq);
+            }
+        }
+        mChannelPi[ch] = pi;
+
+        int base = record * MAX_FREQUENCIES;
+        int n = mFreqCount[record];
+        if (n == MAX_FREQUENCIES) {
+            // make room in place of the weakest
+            int weakest = 0;
+            for (int i = 1; i < n; i++) {
+                if (mRssi[base + i] < mRssi[base + weakest]) {
+                    weakest = i;
+                }
+            }
+            int lost = channel(mFreqs[base + weakest]);
+            if (mChannelPi[lost] == pi) {
+                mChannelPi[lost] = PI_UNKNOWN;
+            }
+            n--;
+            mFreqs[base + weakest] = mFreqs[base + n];
+            mRssi[base + weakest] = mRssi[base + n];
+        }
+        mFreqs[base + n] = freq;
+        mRssi[base + n] = TunerBackend.RSSI_UNKNOWN;
+        mFreqCount[record] = n + 1;
+    }
+
+    /**
+     * Records the RSSI read on a frequency, if a program is known there.
+     */
+    synchronized void noteRssi(int freq, int rssi) {
+        int ch = channel(freq);
+        if (ch < 0 || mChannelPi[ch] == PI_UNKNOWN) {
+            return;
+        }
+        int record = recordOf(mChannelPi[ch]);
+        if (record < 0) {
+            return;
+        }
+        int base = record * MAX_FREQUENCIES;
+        for (int i = 0; i < mFreqCount[record]; i++) {
+            if (mFreqs[base + i] == freq) {
+                mRssi[base + i] = rssi;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the program service name of a program already known.
+     */
+    synchronized void noteProgramService(int pi, char[] ps, int length) {
+        int record = pi < 0 ? -1 : recordOf(pi);
+        if (record < 0) {
+            return;
+        }
+        length = Math.min(length, RdsDecoder.PS_LENGTH);
+        System.arraycopy(ps, 0, mPs, record * RdsDecoder.PS_LENGTH, length);
+        mPsLength[record] = length;
+    }
+
+    /**
+     * @return the PI code last received on a frequency, or
+     *         {@link #PI_UNKNOWN}.
+     */
+    public synchronized int getPi(int freq) {
+        int ch = channel(freq);
+        return ch < 0 ? PI_UNKNOWN : mChannelPi[ch];
+    }
+
+    /**
+     * @return true if the program was heard.
+     */
+    public synchronized boolean contains(int pi) {
+        return pi >= 0 && recordOf(pi) >= 0;
+    }
+
+    /**
+     * Copies the frequencies a program was heard on, strongest first; those
+     * without an RSSI read come last.
+     *
+     * @param freqs
+     *            receives the frequencies, at least {@link #MAX_FREQUENCIES}
+     *            long.
+     * @param rssi
+     *            receives the last RSSI of each,
+     *            {@link TunerBackend#RSSI_UNKNOWN} where none was read; may
+     *            be null.
+     * @return the number of frequencies copied, 0 for an unknown program.
+     */
+    public synchronized int getFrequencies(int pi, int[] freqs, int[] rssi) {
+        int record = pi < 0 ? -1 : recordOf(pi);
+        if (record < 0) {
+            return 0;
+        }
+        int base = record * MAX_FREQUENCIES;
+        int n = mFreqCount[record];
+        for (int i = 0; i < n; i++) {
+            int f = mFreqs[base + i];
+            int r = mRssi[base + i];
+            int j = i;
+            while (j > 0 && r > rssiOf(record, freqs[j - 1])) {
+                freqs[j] = freqs[j - 1];
+                j--;
+            }
+            freqs[j] = f;
+        }
+        for (int i = 0; rssi != null && i < n; i++) {
+            rssi[i] = rssiOf(record, freqs[i]);
+        }
+        return n;
+    }
+
+    /**
+     * @return the frequency of a program with the best last RSSI, or -1 if
+     *         the program is unknown.
+     */
+    public synchronized int getStrongestFrequency(int pi) {
+        int record = pi < 0 ? -1 : recordOf(pi);
+        if (record < 0 || mFreqCount[record] == 0) {
+            return -1;
+        }
+        int base = record * MAX_FREQUENCIES;
+        int best = base;
+        for (int i = base + 1; i < base + mFreqCount[record]; i++) {
+            if (mRssi[i] > mRssi[best]) {
+                best = i;
+            }
+        }
+        return mFreqs[best];
+    }
+
+    /**
+     * Copies the program service name of a program.
+     *
+     * @param dst
+     *            receives the name, at least {@link RdsDecoder#PS_LENGTH}
+     *            chars.
+     * @return the number of chars copied, 0 if no name was received.
+     */
+    public synchronized int getProgramService(int pi, char[] dst) {
+        int record = pi < 0 ? -1 : recordOf(pi);
+        if (record < 0) {
+            return 0;
+        }
+        System.arraycopy(mPs, record * RdsDecoder.PS_LENGTH, dst, 0, mPsLength[record]);
+        return mPsLength[record];
+    }
+
+    /**
+     * @return the number of programs kept.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /** Forgets every program. */
+    public synchronized void clear() {
+        mIndex.clear();
+        Arrays.fill(mChannelPi, PI_UNKNOWN);
+        mCount = 0;
+    }
+
+    /* a new record for pi, the least recently heard one if all are taken */
+    private int add(int pi) {
+        int record;
+        if (mCount < MAX_PROGRAMS) {
+            record = mCount++;
+        } else {
+            record = 0;
+            for (int r = 1; r < MAX_PROGRAMS; r++) {
+                if (mHeardAt[r] - mHeardAt[record] < 0) {
+                    record = r;
+                }
+            }
+            int base = record * MAX_FREQUENCIES;
+            for (int i = 0; i < mFreqCount[record]; i++) {
+                mChannelPi[channel(mFreqs[base + i])] = PI_UNKNOWN;
+            }
+            mIndex.remove(mPi[record]);
+        }
+        mPi[record] = pi;
+        mFreqCount[record] = 0;
+        mPsLength[record] = 0;
+        mIndex.put(pi, record);
+        return record;
+    }
+
+    private void removeFrequency(int record, int freq) {
+        int base = record * MAX_FREQUENCIES;
+        int n = mFreqCount[record];
+        for (int i = 0; i < n; i++) {
+            if (mFreqs[base + i] == freq) {
+                n--;
+                mFreqs[base + i] = mFreqs[base + n];
+                mRssi[base + i] = mRssi[base + n];
+                mFreqCount[record] = n;
+                return;
+            }
+        }
+    }
+
+    private int rssiOf(int record, int freq) {
+        int base = record * MAX_FREQUENCIES;
+        for (int i = 0; i < mFreqCount[record]; i++) {
+            if (mFreqs[base + i] == freq) {
+                return mRssi[base + i];
+            }
+        }
+        return TunerBackend.RSSI_UNKNOWN;
+    }
+
+    private static int channel(int freq) {
+        if (freq < FmBandPlan.FREQ_MIN || freq > FmBandPlan.FREQ_MAX
+                || (freq - FmBandPlan.FREQ_MIN) % FmBandPlan.SPACING_50KHZ != 0) {
+            return -1;
+        }
+        return (freq - FmBandPlan.FREQ_MIN) / FmBandPlan.SPACING_50KHZ;
+    }
+
+    private int recordOf(int pi) {
+        return mIndex.get(pi);
+    }
+}
@@ -0,0 +1,605 @@
+package com.service.fm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental RDS/RBDS group decoder.
+ * <p>
+ * Groups are fed one at a time with {@link #decodeGroup(int, int, int, int)}
+ * or in bulk from a raw driver log with {@link #decode(ByteBuffer, int, int)}.
+ * Program identification (PI), program type (PTY), traffic program (TP),
+ * program service name (PS), radio text (RT), program type name (PTYN) and
+ * the alternative frequency list (AF) are assembled in preallocated buffers.
+ * The {@link Listener} is told about a field only once it is complete and
+ * differs from the last published value.
+ * <p>
+ * Decoding allocates nothing, so the decoder can run for hours at the full
+ * RDS group rate without creating garbage. Published values are read with the
+ * getters, which copy into caller owned arrays.
+ * <p>
+ * Instances are not thread safe; feed and read them from one thread, such as
+ * from inside the listener callback.
+ */
+public final class RdsDecoder {
+
+    /** Field id of the program identification code. */
+    public static final int FIELD_PI = 1;
+    /** Field id of the alternative frequency list. */
+    public static final int FIELD_AF = 2;
+    /** Field id of the program service name. */
+    public static final int FIELD_PS = FmReceiver.RDS_FEATURE_PS;
+    /** Field id of the program type. */
+    public static final int FIELD_PTY = FmReceiver.RDS_FEATURE_PTY;
+    /** Field id of the traffic program flag. */
+    public static final int FIELD_TP = FmReceiver.RDS_FEATURE_TP;
+    /** Field id of the program type name. */
+    public static final int FIELD_PTYN = FmReceiver.RDS_FEATURE_PTYN;
+    /** Field id of the radio text. */
+    public static final int FIELD_RT = FmReceiver.RDS_FEATURE_RT;
+
+    /** Size in bytes of one raw group: four big-endian 16-bit blocks. */
+    public static final int GROUP_SIZE = 8;
+
+    /** Length of the program service name. */
+    public static final int PS_LENGTH = 8;
+    /** Maximum length of the radio text. */
+    public static final int RT_LENGTH = 64;
+    /** Length of the program type name. */
+    public static final int PTYN_LENGTH = 8;
+    /** Maximum number of alternative frequencies in one list. */
+    public static final int AF_MAX = 25;
+
+    /**
+     * Receives notice of completed RDS fields.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a field is complete and its value changed.
+         *
+         * @param decoder
+         *            the decoder, read the new value with its getters.
+         * @param field
+         *            one of the FIELD_* ids.
+         */
+        void onRdsFieldChanged(RdsDecoder decoder, int field);
+    }
+
+    /*
+     * RDS basic character set (EN 50067 annex E, table E.1) for codes
+     * 0x80..0xFF; 0x20..0x7D match ASCII.
+     */
+    private static final String G0_HIGH =
+            "áàéèíìóòúùÑÇŞß¡Ĳ"
+            + "âäêëîïôöûüñçşğıĳ"
+            + "ªα©‰Ğěňőπ€£$←↑→↓"
+            + "º¹²³±İńűµ¿÷°¼½¾§"
+            + "ÁÀÉÈÍÌÓÒÚÙŘČŠŽÐĿ"
+            + "ÂÄÊËÎÏÔÖÛÜřčšžđŀ"
+            + "ÃÅÆŒŷÝÕØÞŊŔĆŚŹŦð"
+            + "ãåæœŵýõøþŋŕćśźŧ ";
+
+    private static final char[] CHARSET = new char[256];
+
+    /* Program type names, RDS (EN 50067 annex F) and RBDS (NRSC-4) */
+    private static final String[] RDS_PTY = {
+            "None", "News", "Current Affairs", "Information", "Sport", "Education", "Drama", "Culture",
+            "Science", "Varied", "Pop Music", "Rock Music", "Easy Listening", "Light Classical",
+            "Serious Classical", "Other Music", "Weather", "Finance", "Children's Programmes", "Social Affairs",
+            "Religion", "Phone In", "Travel", "Leisure", "Jazz Music", "Country Music", "National Music",
+            "Oldies Music", "Folk Music", "Documentary", "Alarm Test", "Alarm"
+    };
+    private static final String[] RBDS_PTY = {
+            "None", "News", "Information", "Sports", "Talk", "Rock", "Classic Rock", "Adult Hits", "Soft Rock",
+            "Top 40", "Country", "Oldies", "Soft", "Nostalgia", "Jazz", "Classical", "Rhythm and Blues",
+            "Soft Rhythm and Blues", "Language", "Religious Music", "Religious Talk", "Personality", "Public",
+            "College", "Spanish Talk", "Spanish Music", "Hip Hop", null, null, "Weather", "Emergency Test",
+            "Emergency"
+    };
+
+    static {
+        for (int i = 0; i < 0x80; i++) {
+            CHARSET[i] = i >= 0x20 && i <= 0x7D ? (char) i : ' ';
+        }
+        CHARSET[0x7E] = '¯';
+        G0_HIGH.getChars(0, 0x80, CHARSET, 0x80);
+    }
+
+    private Listener mListener;
+
+    /* Internal listener of the owning FmReceiver, told before mListener. */
+    private Listener mObserver;
+
+    private int mFeatures = FmReceiver.RDS_FEATURE_PS | FmReceiver.RDS_FEATURE_PTY | FmReceiver.RDS_FEATURE_TP
+            | FmReceiver.RDS_FEATURE_PTYN | FmReceiver.RDS_FEATURE_RT;
+    private boolean mAfEnabled;
+    private boolean mRbds;
+
+    /* Published values. */
+    private int mPi = -1;
+    private int mPty = -1;
+    private int mTp = -1;
+    private final char[] mPs = new char[PS_LENGTH];
+    private int mPsLength;
+    private final char[] mRt = new char[RT_LENGTH];
+    private int mRtLength;
+    private final char[] mPtyn = new char[PTYN_LENGTH];
+    private int mPtynLength;
+    private final int[] mAf = new int[AF_MAX];
+    private int mAfLength;
+
+    /* Values under assembly. */
+    private int mPiCandidate = -1;
+    private int mPtyCandidate = -1;
+    private final char[] mPsBuf = new char[PS_LENGTH];
+    private int mPsMask;
+    private final char[] mRtBuf = new char[RT_LENGTH];
+    private int mRtMask;
+    private int mRtAb = -1;
+    private int mRtEnd = -1;
+    private final char[] mPtynBuf = new char[PTYN_LENGTH];
+    private int mPtynMask;
+    private int mPtynAb = -1;
+    private final int[] mAfBuf = new int[AF_MAX];
+    private int mAfBufLength;
+    private int mAfExpected;
+
+    private long mGroupCount;
+
+    public RdsDecoder() {
+    }
+
+    public RdsDecoder(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the listener told about completed fields.
+     *
+     * @param listener
+     *            the listener, may be null.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Selects the fields to decode.
+     *
+     * @param rdsFeatures
+     *            a mask of {@link FmReceiver#RDS_FEATURE_PS},
+     *            {@link FmReceiver#RDS_FEATURE_PTY},
+     *            {@link FmReceiver#RDS_FEATURE_TP},
+     *            {@link FmReceiver#RDS_FEATURE_PTYN} and
+     *            {@link FmReceiver#RDS_FEATURE_RT}. PI is always decoded.
+     * @param afEnabled
+     *            true to decode alternative frequency lists.
+     */
+    public void configure(int rdsFeatures, boolean afEnabled) {
+        mFeatures = rdsFeatures;
+        mAfEnabled = afEnabled;
+    }
+
+    /**
+     * Selects RBDS (North America) rather than RDS interpretation of the
+     * program type. The codes are the same, most of them name another type,
+     * see {@link #getProgramTypeLabel()}.
+     */
+    public void setRbds(boolean rbds) {
+        mRbds = rbds;
+    }
+
+    /**
+     * @return true if program types follow the RBDS table.
+     */
+    public boolean isRbds() {
+        return mRbds;
+    }
+
+    /**
+     * Forgets all decoded and partially decoded data, for instance after a
+     * tune. Nothing is published.
+     */
+    public void reset() {
+        mPi = -1;
+        mPiCandidate = -1;
+        resetStation();
+    }
+
+    private void resetStation() {
+        mPty = -1;
+        mPtyCandidate = -1;
+        mTp = -1;
+        mPsLength = 0;
+        mPsMask = 0;
+        mRtLength = 0;
+        mRtMask = 0;
+        mRtAb = -1;
+        mRtEnd = -1;
+        mPtynLength = 0;
+        mPtynMask = 0;
+        mPtynAb = -1;
+        mAfLength = 0;
+        mAfBufLength = 0;
+        mAfExpected = 0;
+    }
+
+    /**
+     * Decodes raw groups as logged by the driver.
+     *
+     * @param groups
+     *            the buffer holding the groups, each {@link #GROUP_SIZE} bytes
+     *            of four big-endian blocks A, B, C and D.
+     * @param offset
+     *            byte offset of the first group.
+     * @param count
+     *            number of groups to decode.
+     * @return the number of groups decoded.
+     */
+    public int decode(ByteBuffer groups, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int p = offset + i * GROUP_SIZE;
+            decodeGroup(readBlock(groups, p), readBlock(groups, p + 2), readBlock(groups, p + 4),
+                    readBlock(groups, p + 6));
+        }
+        return count;
+    }
+
+    private static int readBlock(ByteBuffer buf, int index) {
+        return ((buf.get(index) & 0xFF) << 8) | (buf.get(index + 1) & 0xFF);
+    }
+
+    /**
+     * Decodes one group.
+     *
+     * @param a
+     *            block A, the PI code.
+     * @param b
+     *            block B.
+     * @param c
+     *            block C.
+     * @param d
+     *            block D.
+     */
+    public void decodeGroup(int a, int b, int c, int d) {
+        mGroupCount++;
+        decodePi(a & 0xFFFF);
+        if (mPi == -1 || (a & 0xFFFF) != mPi) {
+            // Only trust the rest of a group from the confirmed station.
+            return;
+        }
+
+        int groupType = (b >>> 12) & 0xF;
+        boolean versionB = (b & 0x0800) != 0;
+
+        if ((mFeatures & FIELD_TP) != 0) {
+            int tp = (b >>> 10) & 1;
+            if (tp != mTp) {
+                mTp = tp;
+                publish(FIELD_TP);
+            }
+        }
+        if ((mFeatures & FIELD_PTY) != 0) {
+            decodePty((b >>> 5) & 0x1F);
+        }
+
+        switch (groupType) {
+            case 0:
+                if ((mFeatures & FIELD_PS) != 0) {
+                    decodePs(b & 0x3, d);
+                }
+                if (mAfEnabled && !versionB) {
+                    decodeAf((c >>> 8) & 0xFF);
+                    decodeAf(c & 0xFF);
+                }
+                break;
+            case 2:
+                if ((mFeatures & FIELD_RT) != 0) {
+                    decodeRt(b, c, d, versionB);
+                }
+                break;
+            case 10:
+                if ((mFeatures & FIELD_PTYN) != 0 && !versionB) {
+                    decodePtyn(b, c, d);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void decodePi(int pi) {
+        // Accept a new PI only once it is seen twice in a row.
+        if (pi == mPi) {
+            mPiCandidate = pi;
+            return;
+        }
+        if (pi != mPiCandidate) {
+            mPiCandidate = pi;
+            return;
+        }
+        boolean stationChanged = mPi != -1;
+        mPi = pi;
+        if (stationChanged) {
+            resetStation();
+        }
+        publish(FIELD_PI);
+    }
+
+    private void decodePty(int pty) {
+        if (pty == mPty || pty != mPtyCandidate) {
+            mPtyCandidate = pty;
+            return;
+        }
+        mPty = pty;
+        publish(FIELD_PTY);
+    }
+
+    private void decodePs(int segment, int d) {
+        mPsBuf[segment * 2] = CHARSET[(d >>> 8) & 0xFF];
+        mPsBuf[segment * 2 + 1] = CHARSET[d & 0xFF];
+        mPsMask |= 1 << segment;
+        if (mPsMask != 0xF) {
+            return;
+        }
+        mPsMask = 0;
+        if (copyIfChanged(mPsBuf, PS_LENGTH, mPs, mPsLength)) {
+            mPsLength = PS_LENGTH;
+            publish(FIELD_PS);
+        }
+    }
+
+    private void decodeRt(int b, int c, int d, boolean versionB) {
+        int ab = (b >>> 4) & 1;
+        if (ab != mRtAb) {
+            // The A/B flag toggles when the station starts a new text.
+            mRtAb = ab;
+            mRtMask = 0;
+            mRtEnd = -1;
+        }
+        int segment = b & 0xF;
+        if (versionB) {
+            putRtChars(segment * 2, d, 32);
+        } else {
+            putRtChars(segment * 4, c, RT_LENGTH);
+            putRtChars(segment * 4 + 2, d, RT_LENGTH);
+        }
+        mRtMask |= 1 << segment;
+
+        int charsPerSegment = versionB ? 2 : 4;
+        int length = mRtEnd >= 0 ? mRtEnd : (versionB ? 32 : RT_LENGTH);
+        int segments = (length + charsPerSegment - 1) / charsPerSegment;
+        int needed = (1 << segments) - 1;
+        if ((mRtMask & needed) != needed) {
+            return;
+        }
+        while (length > 0 && mRtBuf[length - 1] == ' ') {
+            length--;
+        }
+        if (copyIfChanged(mRtBuf, length, mRt, mRtLength)) {
+            mRtLength = length;
+            publish(FIELD_RT);
+        }
+    }
+
+    private void putRtChars(int position, int block, int limit) {
+        putRtChar(position, (block >>> 8) & 0xFF, limit);
+        putRtChar(position + 1, block & 0xFF, limit);
+    }
+
+    private void putRtChar(int position, int code, int limit) {
+        if (position >= limit) {
+            return;
+        }
+        if (code == 0x0D) {
+            // Carriage return ends a text shorter than the maximum.
+            if (mRtEnd < 0 || position < mRtEnd) {
+                mRtEnd = position;
+            }
+            return;
+        }
+        mRtBuf[position] = CHARSET[code];
+    }
+
+    private void decodePtyn(int b, int c, int d) {
+        int ab = (b >>> 4) & 1;
+        if (ab != mPtynAb) {
+            mPtynAb = ab;
+            mPtynMask = 0;
+        }
+        int segment = b & 0x1;
+        int p = segment * 4;
+        mPtynBuf[p] = CHARSET[(c >>> 8) & 0xFF];
+        mPtynBuf[p + 1] = CHARSET[c & 0xFF];
+        mPtynBuf[p + 2] = CHARSET[(d >>> 8) & 0xFF];
+        mPtynBuf[p + 3] = CHARSET[d & 0xFF];
+        mPtynMask |= 1 << segment;
+        if (mPtynMask != 0x3) {
+            return;
+        }
+        mPtynMask = 0;
+        if (copyIfChanged(mPtynBuf, PTYN_LENGTH, mPtyn, mPtynLength)) {
+            mPtynLength = PTYN_LENGTH;
+            publish(FIELD_PTYN);
+        }
+    }
+
+    private void decodeAf(int code) {
+        if (code >= 224 && code <= 249) {
+            // Start of a new list, the code carries the number of entries.
+            mAfExpected = Math.min(code - 224, AF_MAX);
+            mAfBufLength = 0;
+            return;
+        }
+        if (code < 1 || code > 204 || mAfExpected == 0) {
+            return;
+        }
+        int freq = 8750 + code * 10;
+        for (int i = 0; i < mAfBufLength; i++) {
+            if (mAfBuf[i] == freq) {
+                return;
+            }
+        }
+        if (mAfBufLength < mAfExpected) {
+            mAfBuf[mAfBufLength++] = freq;
+        }
+        if (mAfBufLength != mAfExpected) {
+            return;
+        }
+        boolean changed = mAfLength != mAfBufLength;
+        for (int i = 0; !changed && i < mAfBufLength; i++) {
+            changed = mAf[i] != mAfBuf[i];
+        }
+        if (changed) {
+            System.arraycopy(mAfBuf, 0, mAf, 0, mAfBufLength);
+            mAfLength = mAfBufLength;
+            publish(FIELD_AF);
+        }
+    }
+
+    private static boolean copyIfChanged(char[] src, int srcLength, char[] dst, int dstLength) {
+        boolean changed = srcLength != dstLength;
+        for (int i = 0; !changed && i < srcLength; i++) {
+            changed = src[i] != dst[i];
+        }
+        if (changed) {
+            System.arraycopy(src, 0, dst, 0, srcLength);
+        }
+        return changed;
+    }
+
+    void setObserver(Listener observer) {
+        mObserver = observer;
+    }
+
+    private void publish(int field) {
+        if (mObserver != null) {
+            mObserver.onRdsFieldChanged(this, field);
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onRdsFieldChanged(this, field);
+        }
+    }
+
+    /**
+     * @return the number of groups decoded since the decoder was created.
+     */
+    public long getGroupCount() {
+        return mGroupCount;
+    }
+
+    /**
+     * @return the program identification code, or -1 if none was received.
+     */
+    public int getPi() {
+        return mPi;
+    }
+
+    /**
+     * @return the program type, or -1 if none was received.
+     */
+    public int getPty() {
+        return mPty;
+    }
+
+    /**
+     * @return the name of the program type, from the RBDS table if
+     *         {@link #setRbds(boolean)} selected it, or null if none was
+     *         received or the code is unassigned.
+     */
+    public String getProgramTypeLabel() {
+        return programTypeLabel(mPty, mRbds);
+    }
+
+    /**
+     * @return the name of a program type code in the RDS or RBDS table, or
+     *         null for a code out of range or unassigned.
+     */
+    public static String programTypeLabel(int pty, boolean rbds) {
+        if (pty < 0 || pty >= RDS_PTY.length) {
+            return null;
+        }
+        return rbds ? RBDS_PTY[pty] : RDS_PTY[pty];
+    }
+
+    /**
+     * @return true if the station carries traffic information.
+     */
+    public boolean isTp() {
+        return mTp == 1;
+    }
+
+    /**
+     * Copies the program service name.
+     *
+     * @param dst
+     *            receives the name, at least {@link #PS_LENGTH} chars.
+     * @return the number of chars copied, 0 if no name was received.
+     */
+    public int getProgramService(char[] dst) {
+        System.arraycopy(mPs, 0, dst, 0, mPsLength);
+        return mPsLength;
+    }
+
+    /**
+     * Copies the radio text.
+     *
+     * @param dst
+     *            receives the text, at least {@link #RT_LENGTH} chars.
+     * @return the number of chars copied, 0 if no text was received.
+     */
+    public int getRadioText(char[] dst) {
+        System.arraycopy(mRt, 0, dst, 0, mRtLength);
+        return mRtLength;
+    }
+
+    /**
+     * Copies the program type name.
+     *
+     * @param dst
+     *            receives the name, at least {@link #PTYN_LENGTH} chars.
+     * @return the number of chars copied, 0 if no name was received.
+     */
+    public int getProgramTypeName(char[] dst) {
+        System.arraycopy(mPtyn, 0, dst, 0, mPtynLength);
+        return mPtynLength;
+    }
+
+    /**
+     * Copies the alternative frequency list.
+     *
+     * @param dst
+     *            receives the frequencies, in the same units as
+     *            {@link FmReceiver#tuneRadio(int)}, at least {@link #AF_MAX}
+     *            entries.
+     * @return the number of frequencies copied.
+     */
+    public int getAlternateFrequencies(int[] dst) {
+        System.arraycopy(mAf, 0, dst, 0, mAfLength);
+        return mAfLength;
+    }
+
+    /**
+     * @return the program service name as a new string, or null if none was
+     *         received.
+     */
+    public String getProgramServiceString() {
+        return mPsLength == 0 ? null : new String(mPs, 0, mPsLength);
+    }
+
+    /**
+     * @return the radio text as a new string, or null if none was received.
+     */
+    public String getRadioTextString() {
+        return mRtLength == 0 ? null : new String(mRt, 0, mRtLength);
+    }
+
+    /**
+     * @return the program type name as a new string, or null if none was
+     *         received.
+     */
+    public String getProgramTypeNameString() {
+        return mPtynLength == 0 ? null : new String(mPtyn, 0, mPtynLength);
+    }
+}
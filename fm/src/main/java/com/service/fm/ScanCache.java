@@ -0,0 +1,207 @@
+package com.service.fm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Station lists of past band scans, so a receiver can offer stations as soon
+ * as it is turned on instead of after a new scan.
+ * <p>
+ * A list is kept per world region and coarse location, such as a cell id or
+ * a geohash supplied by the application; {@link FmReceiver} keys its lists
+ * with {@link FmReceiver#setScanLocation(String)}. Lists expire a fixed time
+ * after they were last stored or revalidated, and the least recently used
+ * location is dropped once the cache is full.
+ * <p>
+ * The cache lives in memory. {@link #writeTo(OutputStream)} and
+ * {@link #readFrom(InputStream)} carry it across process restarts. All
+ * methods are thread safe.
+ */
+public final class ScanCache {
+
+    /** Default number of locations kept. */
+    public static final int CAPACITY_DEFAULT = 16;
+    /** Default lifetime of a list, in milliseconds. */
+    public static final long TTL_DEFAULT_MS = 24 * 60 * 60 * 1000L;
+
+    private static final int MAGIC = 0x46534331; // "FSC1"
+
+    private static final class Entry {
+        final int[] stations;
+        final long updatedAt;
+
+        Entry(int[] stations, long updatedAt) {
+            this.stations = stations;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final long mTtlMs;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    public ScanCache() {
+        this(CAPACITY_DEFAULT, TTL_DEFAULT_MS);
+    }
+
+    /**
+     * @param capacity
+     *            the most locations kept.
+     * @param ttlMs
+     *            how long a list is served after it was stored, in
+     *            milliseconds.
+     */
+    public ScanCache(final int capacity, long ttlMs) {
+        if (capacity <= 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity + ", ttl " + ttlMs);
+        }
+        mTtlMs = ttlMs;
+        mEntries = new LinkedHashMap<String, Entry>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static String key(int region, String location) {
+        return region + "/" + (location == null ? "" : location);
+    }
+
+    /**
+     * Returns the list stored for a region and location.
+     *
+     * @return the frequencies in ascending order, or null if there is no
+     *         list or it expired.
+     */
+    public synchronized int[] get(int region, String location) {
+        String key = key(region, location);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now() - entry.updatedAt >= mTtlMs) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry.stations.clone();
+    }
+
+    /**
+     * @return the age in milliseconds of the list stored for a region and
+     *         location, -1 if there is none.
+     */
+    public synchronized long getAge(int region, String location) {
+        Entry entry = mEntries.get(key(region, location));
+        return entry == null ? -1 : Math.max(0, now() - entry.updatedAt);
+    }
+
+    /**
+     * Stores the result of a scan or revalidation, restarting its lifetime.
+     *
+     * @param stations
+     *            the frequencies found, in ascending order.
+     */
+    public synchronized void put(int region, String location, int[] stations) {
+        mEntries.put(key(region, location), new Entry(stations.clone(), now()));
+    }
+
+    /**
+     * Forgets the list of a region and location.
+     */
+    public synchronized void invalidate(int region, String location) {
+        mEntries.remove(key(region, location));
+    }
+
+    /**
+     * Forgets every list.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return the number of lists held, expired ones included.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the lists that have not expired, least recently used first.
+     * The stream is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        synchronized (this) {
+            dropExpired();
+            data.writeInt(MAGIC);
+            data.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+                Entry entry = e.getValue();
+                data.writeUTF(e.getKey());
+                data.writeLong(entry.updatedAt);
+                data.writeInt(entry.stations.length);
+                for (int freq : entry.stations) {
+                    data.writeInt(freq);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Adds the lists written by {@link #writeTo(OutputStream)}, keeping
+     * their age. Expired lists are skipped. The stream is not closed.
+     *
+     * @throws IOException
+     *             if the stream cannot be read or was not written by a
+     *             cache.
+     */
+    public void readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a scan cache");
+        }
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("bad entry count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            String key = data.readUTF();
+            long updatedAt = data.readLong();
+            int length = data.readInt();
+            if (length < 0 || length > FmReceiver.SPECTRUM_MAX_CHANNELS * 2) {
+                throw new IOException("bad station count " + length);
+            }
+            int[] stations = new int[length];
+            for (int j = 0; j < length; j++) {
+                stations[j] = data.readInt();
+            }
+            synchronized (this) {
+                if (now() - updatedAt < mTtlMs) {
+                    mEntries.put(key, new Entry(stations, updatedAt));
+                }
+            }
+        }
+    }
+
+    private void dropExpired() {
+        long now = now();
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext();) {
+            if (now - it.next().updatedAt >= mTtlMs) {
+                it.remove();
+            }
+        }
+    }
+
+    /* wall clock, so ages survive a reboot */
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,873 @@
+package com.service.fm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pure Java {@link TunerBackend} simulating an FM tuner in a configurable
+ * RF environment, for exercising {@link FmReceiver} on hosts without the
+ * RDA chip.
+ * <p>
+ * Stations are placed on the 50 kHz raster of 76 - 108 MHz with a mean RSSI
+ * and optional RDS content. The tuner covers the channels of the band plan
+ * set with {@link #setBand(int, int, int, int)}, by default the 100 kHz
+ * raster of 87.5 - 108 MHz. Every RSSI reading adds Gaussian noise from a
+ * seeded generator, and a strong station also shows up on its neighbours: 50
+ * kHz off attenuated by {@link #HALF_CHANNEL_REJECTION}, 100 kHz off by
+ * {@link #ADJACENT_REJECTION}, as on a real receiver. While RDS is on, the tuned station's PS (group 0A, with its AF
+ * list) and RT (group 2A) are sent at the real RDS rate of about 11.4 groups
+ * per second, or at any rate set with {@link #setRdsGroupRate(double)}.
+ * <p>
+ * Each operation can be given a latency with {@link #setLatency(Op, long,
+ * TimeUnit)}; seeks pay theirs once per channel stepped, like the chip.
+ * Like the chip's scan table and spectrum read, {@link #scanBand(IFmScanListener)}
+ * and {@link #readSpectrum(ByteBuffer)} stop after
+ * {@link FmReceiver#SPECTRUM_MAX_CHANNELS} channels.
+ * Configuration methods may be called at any time, also while the tuner is
+ * in use.
+ */
+public final class SimulatedTunerBackend implements TunerBackend {
+
+    /** The simulated operations, for {@link #setLatency(Op, long, TimeUnit)}. */
+    public enum Op {
+        /** turnOnRadio() and turnOffRadio(). */
+        POWER,
+        /** tuneRadio(). */
+        TUNE,
+        /** One channel stepped by seekStation(). */
+        SEEK_STEP,
+        /** scanBand(). */
+        SCAN,
+        /** muteAudio(). */
+        MUTE,
+        /** setFMVolume(), setAudioPath() and setMono(). */
+        AUDIO,
+        /** setRds(). */
+        RDS,
+        /** readSpectrum(). */
+        SPECTRUM,
+        /** readChannelQuality(). */
+        CQI,
+        /** One signal quality sample of the signal poller, and readRssi(). */
+        SIGNAL,
+    }
+
+    /** Lowest frequency of the default band. */
+    public static final int BAND_LOW = 8750;
+    /** Highest frequency of the default band. */
+    public static final int BAND_HIGH = 10800;
+    /** Channel raster of the default band. */
+    public static final int CHANNEL_SPACING = 10;
+    /** Attenuation of a station seen on the channels 100 kHz off. */
+    public static final int ADJACENT_REJECTION = 12;
+    /** Attenuation of a station seen 50 kHz off, still inside its bandwidth. */
+    public static final int HALF_CHANNEL_REJECTION = 3;
+    /** RDS group rate of a real transmitter: 1187.5 bit/s, 104 bits a group. */
+    public static final double RDS_GROUP_RATE = 1187.5 / 104;
+
+    /* Stations sit on a 50 kHz raster over every band a plan may cover. */
+    private static final int RASTER = FmBandPlan.SPACING_50KHZ;
+    private static final int SLOTS = (FmBandPlan.FREQ_MAX - FmBandPlan.FREQ_MIN) / RASTER + 1;
+    private static final int RSSI_MAX = 127;
+
+    /* RDS ring header, see TunerBackend.startRdsReader(). */
+    private static final int RING_HEAD = 0;
+    private static final int RING_TAIL = 4;
+    private static final int RING_CAPACITY = 8;
+    private static final int RING_OVERRUNS = 12;
+    private static final int RING_HEADER_SIZE = 16;
+    private static final int RING_INDEX_MASK = 0x7FFFFFFF;
+
+    /* Alternative frequency codes, IEC 62106. */
+    private static final int AF_COUNT_BASE = 224;
+    private static final int AF_FILLER = 205;
+
+    private static final class Station {
+        final int rssi;
+        final int pi;
+        final int pty;
+        final boolean tp;
+        final char[] ps;
+        final char[] rt;
+        final int rtSegments;
+        final int[] afPairs;
+
+        Station(int rssi, int pi, int pty, boolean tp, String ps, String rt, int[] af) {
+            this.rssi = rssi;
+            this.pi = pi;
+            this.pty = pty;
+            this.tp = tp;
+            this.ps = pad(ps, RdsDecoder.PS_LENGTH);
+            String text = rt == null ? "" : rt.length() >= RdsDecoder.RT_LENGTH
+                    ? rt.substring(0, RdsDecoder.RT_LENGTH) : rt + '\r';
+            this.rtSegments = Math.max(1, (text.length() + 3) / 4);
+            this.rt = pad(text, rtSegments * 4);
+            this.afPairs = afPairs(af);
+        }
+    }
+
+    private final Station[] mStations = new Station[SLOTS];
+    private final long[] mLatencyNanos = new long[Op.values().length];
+    private final Random mRandom;
+
+    private volatile double mRssiNoise = 2.0;
+    private volatile int mNoiseFloor = 10;
+    private volatile int mSeekThreshold = 30;
+    private volatile double mRdsGroupRate = RDS_GROUP_RATE;
+
+    /* The band plan, swapped whole so readers see a consistent one. */
+    private volatile int[] mBand = {BAND_LOW, BAND_HIGH, CHANNEL_SPACING};
+
+    private volatile boolean mOn;
+    private volatile boolean mMuted;
+    private volatile boolean mRds;
+    private volatile int mFreq = BAND_LOW;
+    private volatile int mVolume;
+    private volatile int mAudioPath;
+    private volatile boolean mMono;
+    private volatile boolean mSeekAbort;
+    private volatile boolean mScanAbort;
+
+    private final Object mRdsLock = new Object();
+    private Thread mRdsThread;
+    private ByteBuffer mRdsRing;
+    private boolean mRdsRunning;
+
+    private Thread mSignalThread;
+
+    /**
+     * Creates an empty band.
+     *
+     * @param seed
+     *            seed of the noise generator; equal seeds and equal call
+     *            sequences give equal readings.
+     */
+    public SimulatedTunerBackend(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Places a station without RDS.
+     *
+     * @param freq
+     *            the frequency, on the 50 kHz raster of 76 - 108 MHz.
+     * @param rssi
+     *            the mean RSSI, 0 - 127.
+     * @return this backend.
+     */
+    public SimulatedTunerBackend addStation(int freq, int rssi) {
+        mStations[slot(freq)] = new Station(rssi, -1, 0, false, null, null, null);
+        return this;
+    }
+
+    /**
+     * Places a station sending RDS.
+     *
+     * @param freq
+     *            the frequency, on the 50 kHz raster of 76 - 108 MHz.
+     * @param rssi
+     *            the mean RSSI, 0 - 127.
+     * @param pi
+     *            the program identification code.
+     * @param pty
+     *            the program type, 0 - 31.
+     * @param ps
+     *            the program service name, up to 8 characters.
+     * @param rt
+     *            the radio text, up to 64 characters, or null.
+     * @param af
+     *            the alternative frequencies, or null.
+     * @return this backend.
+     */
+    public SimulatedTunerBackend addStation(int freq, int rssi, int pi, int pty, String ps, String rt, int... af) {
+        mStations[slot(freq)] = new Station(rssi, pi & 0xFFFF, pty & 0x1F, true, ps, rt, af);
+        return this;
+    }
+
+    /**
+     * Removes the station on freq, if any.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend removeStation(int freq) {
+        mStations[slot(freq)] = null;
+        return this;
+    }
+
+    /**
+     * Sets the standard deviation of the noise added to every RSSI reading.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend setRssiNoise(double sigma) {
+        mRssiNoise = sigma;
+        return this;
+    }
+
+    /**
+     * Sets the mean RSSI of empty channels.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend setNoiseFloor(int rssi) {
+        mNoiseFloor = rssi;
+        return this;
+    }
+
+    /**
+     * Sets the RSSI at which seek and scan stop on a channel.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend setSeekThreshold(int rssi) {
+        mSeekThreshold = rssi;
+        return this;
+    }
+
+    /**
+     * Sets the number of RDS groups sent per second, {@link #RDS_GROUP_RATE}
+     * by default. Raise it to load-test the RDS path.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend setRdsGroupRate(double groupsPerSecond) {
+        if (groupsPerSecond <= 0) {
+            throw new IllegalArgumentException("groupsPerSecond must be positive");
+        }
+        mRdsGroupRate = groupsPerSecond;
+        return this;
+    }
+
+    /**
+     * Makes every call of op take the given time.
+     *
+     * @return this backend.
+     */
+    public SimulatedTunerBackend setLatency(Op op, long latency, TimeUnit unit) {
+        mLatencyNanos[op.ordinal()] = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * @return the currently tuned frequency.
+     */
+    public int getFreq() {
+        return mFreq;
+    }
+
+    /**
+     * @return true if the audio is muted.
+     */
+    public boolean isMuted() {
+        return mMuted;
+    }
+
+    /**
+     * @return the volume last set.
+     */
+    public int getVolume() {
+        return mVolume;
+    }
+
+    /**
+     * @return the audio path last set.
+     */
+    public int getAudioPath() {
+        return mAudioPath;
+    }
+
+    /**
+     * @return true if mono reception is forced.
+     */
+    public boolean isMono() {
+        return mMono;
+    }
+
+    /**
+     * Reads the RSSI of a channel as the chip would, noise included.
+     *
+     * @param freq
+     *            the frequency, on the 50 kHz raster of 76 - 108 MHz.
+     * @return the RSSI, 0 - 127.
+     */
+    public int sampleRssi(int freq) {
+        int slot = slot(freq);
+        int mean = mNoiseFloor;
+        for (int i = Math.max(0, slot - 2); i <= Math.min(SLOTS - 1, slot + 2); i++) {
+            Station station = mStations[i];
+            if (station != null) {
+                int offset = Math.abs(i - slot);
+                mean = Math.max(mean, station.rssi - (offset == 0 ? 0
+                        : offset == 1 ? HALF_CHANNEL_REJECTION : ADJACENT_REJECTION));
+            }
+        }
+        int rssi = (int) Math.round(mean + mRandom.nextGaussian() * mRssiNoise);
+        return Math.max(0, Math.min(RSSI_MAX, rssi));
+    }
+
+    @Override
+    public int turnOnRadio() {
+        delay(Op.POWER);
+        mOn = true;
+        mMono = false;
+        return 0;
+    }
+
+    @Override
+    public int turnOffRadio() {
+        stopRdsReader();
+        stopSignalPoller();
+        delay(Op.POWER);
+        mOn = false;
+        mRds = false;
+        return 0;
+    }
+
+    @Override
+    public int tuneRadio(int freq) {
+        if (!mOn) {
+            return -2;
+        }
+        int[] band = mBand;
+        if (freq < band[0] || freq > band[1] || (freq - band[0]) % band[2] != 0) {
+            return -1;
+        }
+        delay(Op.TUNE);
+        mFreq = freq;
+        return 0;
+    }
+
+    /**
+     * Takes any plan whose channels lie on the 50 kHz raster of 76 - 108
+     * MHz; the band number is not checked against the edges.
+     */
+    @Override
+    public int setBand(int band, int low, int high, int spacing) {
+        if (band < FmBandPlan.BAND_UE || band > FmBandPlan.BAND_SPECIAL || low < FmBandPlan.FREQ_MIN
+                || high > FmBandPlan.FREQ_MAX || low >= high || spacing <= 0 || spacing % RASTER != 0
+                || (low - FmBandPlan.FREQ_MIN) % RASTER != 0) {
+            return -3;
+        }
+        mBand = new int[] {low, low + (high - low) / spacing * spacing, spacing};
+        return 0;
+    }
+
+    @Override
+    public boolean getRadioIsOn() {
+        return mOn;
+    }
+
+    @Override
+    public int isPoweredUp() {
+        return mOn ? 1 : 0;
+    }
+
+    @Override
+    public int readRssi() {
+        if (!mOn) {
+            return RSSI_UNKNOWN;
+        }
+        delay(Op.SIGNAL);
+        return sampleRssi(mFreq);
+    }
+
+    @Override
+    public int muteAudio(boolean mute) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.MUTE);
+        mMuted = mute;
+        return 0;
+    }
+
+    @Override
+    public int seekStation(int scanMode) {
+        if (!mOn) {
+            return -1;
+        }
+        mSeekAbort = false;
+        int[] band = mBand;
+        int channels = (band[1] - band[0]) / band[2] + 1;
+        int step = scanMode != 0 ? 1 : -1;
+        int ch = Math.max(0, Math.min(channels - 1, (mFreq - band[0]) / band[2]));
+        for (int i = 1; i < channels; i++) {
+            delay(Op.SEEK_STEP);
+            int freq = band[0] + Math.floorMod(ch + i * step, channels) * band[2];
+            if (mSeekAbort) {
+                // The chip stays where the abort caught it.
+                mFreq = freq;
+                return freq;
+            }
+            if (sampleRssi(freq) >= mSeekThreshold) {
+                mFreq = freq;
+                return freq;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int seekStationAbort() {
+        mSeekAbort = true;
+        return 0;
+    }
+
+    @Override
+    public int[] scanBand(IFmScanListener listener) {
+        if (!mOn) {
+            return null;
+        }
+        mScanAbort = false;
+        delay(Op.SCAN);
+
+        int[] band = mBand;
+        int[] found = new int[(band[1] - band[0]) / band[2] + 1];
+        int count = 0;
+        // the scan table ends after as many channels as a spectrum read
+        int end = Math.min(band[1],
+                spectrumStart(band) + (FmReceiver.SPECTRUM_MAX_CHANNELS - 1) * spectrumSpacing(band));
+        for (int freq = band[0]; freq <= end && !mScanAbort; freq += band[2]) {
+            if (sampleRssi(freq) >= mSeekThreshold) {
+                found[count++] = freq;
+                if (listener != null) {
+                    listener.onStationFound(freq);
+                }
+            }
+        }
+
+        int[] stations = new int[count];
+        System.arraycopy(found, 0, stations, 0, count);
+        return stations;
+    }
+
+    @Override
+    public int stopScan() {
+        mScanAbort = true;
+        return 0;
+    }
+
+    @Override
+    public int readSpectrum(ByteBuffer spectrum) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.SPECTRUM);
+        int[] band = mBand;
+        int spacing = spectrumSpacing(band);
+        int first = spectrumStart(band);
+        int count = Math.min(FmReceiver.SPECTRUM_MAX_CHANNELS, (band[1] - first) / spacing + 1);
+        spectrum.order(ByteOrder.nativeOrder());
+        spectrum.putShort(0, (short) FmReceiver.SPECTRUM_MAX_CHANNELS);
+        spectrum.putShort(2, (short) count);
+        for (int ch = 0; ch < count; ch++) {
+            int freq = first + ch * spacing;
+            int p = FmReceiver.SPECTRUM_HEADER_SIZE + ch * FmReceiver.SPECTRUM_ENTRY_SIZE;
+            spectrum.putShort(p, (short) (freq / 10));
+            spectrum.putShort(p + 2, (short) sampleRssi(freq));
+        }
+        return count;
+    }
+
+    @Override
+    public int readChannelQuality(ByteBuffer cqi, int channelCount) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.CQI);
+        int[] band = mBand;
+        int spacing = spectrumSpacing(band);
+        int first = spectrumStart(band);
+        ByteBuffer records = cqi.duplicate().order(ByteOrder.nativeOrder());
+        int count = Math.min(channelCount, (band[1] - first) / spacing + 1);
+        for (int ch = 0; ch < count; ch++) {
+            int freq = first + ch * spacing;
+            int p = ch * FmCqiReader.RECORD_SIZE;
+            records.putShort(p, (short) (freq / 10));
+            records.putShort(p + 2, (short) sampleRssi(freq));
+            records.putShort(p + 4, (short) 0);
+        }
+        return count;
+    }
+
+    @Override
+    public int setRds(boolean on) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.RDS);
+        mRds = on;
+        return 0;
+    }
+
+    @Override
+    public int startRdsReader(ByteBuffer ring) {
+        synchronized (mRdsLock) {
+            if (!mOn) {
+                return -2;
+            }
+            if (mRdsThread != null) {
+                return -3;
+            }
+            ring.order(ByteOrder.nativeOrder());
+            int capacity = Integer.highestOneBit((ring.capacity() - RING_HEADER_SIZE) / RdsDecoder.GROUP_SIZE);
+            if (capacity == 0) {
+                return -3;
+            }
+            ring.putInt(RING_HEAD, 0);
+            ring.putInt(RING_TAIL, 0);
+            ring.putInt(RING_CAPACITY, capacity);
+            ring.putInt(RING_OVERRUNS, 0);
+            mRdsRing = ring;
+            mRdsRunning = true;
+
+            Thread thread = new Thread(this::sendRds, "SimRds");
+            thread.setDaemon(true);
+            mRdsThread = thread;
+            thread.start();
+        }
+        return 0;
+    }
+
+    @Override
+    public void stopRdsReader() {
+        Thread thread;
+        synchronized (mRdsLock) {
+            thread = mRdsThread;
+            mRdsThread = null;
+            mRdsRunning = false;
+            mRdsLock.notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public int waitRds(ByteBuffer ring, int tail) {
+        synchronized (mRdsLock) {
+            ring.putInt(RING_TAIL, tail);
+            for (;;) {
+                int head = ring.getInt(RING_HEAD);
+                if (head != tail) {
+                    return head;
+                }
+                if (!mRdsRunning || ring != mRdsRing) {
+                    return -1;
+                }
+                try {
+                    mRdsLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void releaseRdsReader() {
+        synchronized (mRdsLock) {
+            if (!mRdsRunning) {
+                mRdsRing = null;
+            }
+        }
+    }
+
+    /* Body of the transmitter thread: one group of the tuned station per tick. */
+    private void sendRds() {
+        Thread self = Thread.currentThread();
+        long next = System.nanoTime();
+        int sequence = 0;
+        int tunedFreq = -1;
+
+        while (!self.isInterrupted()) {
+            next += (long) (TimeUnit.SECONDS.toNanos(1) / mRdsGroupRate);
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                if (System.nanoTime() < next) {
+                    continue;
+                }
+            }
+
+            int freq = mFreq;
+            if (freq != tunedFreq) {
+                tunedFreq = freq;
+                sequence = 0;
+            }
+            Station station = mStations[slot(freq)];
+            if (!mRds || station == null || station.pi < 0 || sampleRssi(freq) < mSeekThreshold) {
+                continue;
+            }
+
+            synchronized (mRdsLock) {
+                if (!mRdsRunning) {
+                    break;
+                }
+                pushGroup(mRdsRing, station, sequence++);
+                mRdsLock.notifyAll();
+            }
+        }
+    }
+
+    private static void pushGroup(ByteBuffer ring, Station station, int sequence) {
+        int head = ring.getInt(RING_HEAD);
+        int tail = ring.getInt(RING_TAIL);
+        int capacity = ring.getInt(RING_CAPACITY);
+        if (((head - tail) & RING_INDEX_MASK) >= capacity) {
+            ring.putInt(RING_OVERRUNS, ring.getInt(RING_OVERRUNS) + 1);
+            return;
+        }
+
+        // Alternate the four 0A (PS and AF) segments with the 2A (RT) ones.
+        int b = (station.tp ? 1 << 10 : 0) | station.pty << 5;
+        int c;
+        int d;
+        int index = sequence >>> 1;
+        if ((sequence & 1) == 0) {
+            int segment = index & 3;
+            int pair = station.afPairs.length == 0 ? AF_FILLER << 8 | AF_FILLER
+                    : station.afPairs[index % station.afPairs.length];
+            b |= segment;
+            c = pair;
+            d = station.ps[segment * 2] << 8 | station.ps[segment * 2 + 1];
+        } else {
+            int segment = index % station.rtSegments;
+            b |= 2 << 12 | segment;
+            c = station.rt[segment * 4] << 8 | station.rt[segment * 4 + 1];
+            d = station.rt[segment * 4 + 2] << 8 | station.rt[segment * 4 + 3];
+        }
+
+        int p = RING_HEADER_SIZE + (head & (capacity - 1)) * RdsDecoder.GROUP_SIZE;
+        putBlock(ring, p, station.pi);
+        putBlock(ring, p + 2, b);
+        putBlock(ring, p + 4, c);
+        putBlock(ring, p + 6, d);
+        ring.putInt(RING_HEAD, (head + 1) & RING_INDEX_MASK);
+    }
+
+    /* Blocks are big-endian whatever the order of the ring. */
+    private static void putBlock(ByteBuffer ring, int p, int block) {
+        ring.put(p, (byte) (block >>> 8));
+        ring.put(p + 1, (byte) block);
+    }
+
+    @Override
+    public int setAudioPath(int audioPath) {
+        delay(Op.AUDIO);
+        mAudioPath = audioPath;
+        return 0;
+    }
+
+    @Override
+    public int setMono(boolean mono) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.AUDIO);
+        mMono = mono;
+        return 0;
+    }
+
+    @Override
+    public int setFMVolume(int volume) {
+        if (!mOn) {
+            return -2;
+        }
+        delay(Op.AUDIO);
+        mVolume = volume;
+        return 0;
+    }
+
+    @Override
+    public int runProgram(int[] program, int count, int[] status) {
+        Arrays.fill(status, 0, count, FmTransaction.NOT_RUN);
+        for (int i = 0; i < count; i++) {
+            int arg = program[2 * i + 1];
+            int result;
+            switch (program[2 * i]) {
+                case FmTransaction.OP_NOP:
+                    result = 0;
+                    break;
+                case FmTransaction.OP_POWER_ON:
+                    result = turnOnRadio();
+                    break;
+                case FmTransaction.OP_TUNE:
+                    result = tuneRadio(arg);
+                    break;
+                case FmTransaction.OP_VOLUME:
+                    result = setFMVolume(arg);
+                    break;
+                case FmTransaction.OP_MUTE:
+                    result = muteAudio(arg != 0);
+                    break;
+                case FmTransaction.OP_AUDIO_PATH:
+                    result = setAudioPath(arg);
+                    break;
+                default:
+                    result = -1;
+                    break;
+            }
+            status[i] = result;
+            if (result != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int startSignalPoller(int intervalMs, int delta, IFmSignalListener sink) {
+        if (!mOn) {
+            return -2;
+        }
+        if (intervalMs <= 0 || delta < 0) {
+            return -3;
+        }
+        stopSignalPoller();
+
+        Thread thread = new Thread(() -> pollSignal(intervalMs, delta, sink), "SimSignal");
+        thread.setDaemon(true);
+        mSignalThread = thread;
+        thread.start();
+        return 0;
+    }
+
+    @Override
+    public synchronized void stopSignalPoller() {
+        Thread thread = mSignalThread;
+        mSignalThread = null;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        stopRdsReader();
+        stopSignalPoller();
+        mOn = false;
+    }
+
+    /* Body of the signal poller thread, see the native signalPollerLoop(). */
+    private void pollSignal(int intervalMs, int delta, IFmSignalListener sink) {
+        Thread self = Thread.currentThread();
+        long period = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        long next = System.nanoTime();
+        long last = 0;
+        boolean first = true;
+
+        while (!self.isInterrupted()) {
+            next += period;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                if (System.nanoTime() < next) {
+                    continue;
+                }
+            }
+
+            delay(Op.SIGNAL);
+            long sample = sampleSignal();
+            if (!first && !signalChanged(last, sample, delta)) {
+                continue;
+            }
+            first = false;
+            last = sample;
+            sink.onSignalSample(sample);
+        }
+    }
+
+    private long sampleSignal() {
+        int freq = mFreq;
+        int rssi = sampleRssi(freq);
+        Station station = mStations[slot(freq)];
+        int margin = rssi - mSeekThreshold;
+        int stereo = station != null && margin >= 10 ? 1 : 0;
+        int pamd = Math.max(0, Math.min(0xFF, 40 - margin));
+        int bler = station != null && station.pi >= 0 ? Math.max(0, Math.min(100, 50 - 5 * margin)) : 100;
+        return (rssi & 0xFFFFL) | (long) stereo << 16 | (long) pamd << 32 | (long) bler << 48;
+    }
+
+    private static boolean signalChanged(long last, long sample, int delta) {
+        if (FmReceiver.signalStereo(last) != FmReceiver.signalStereo(sample)) {
+            return true;
+        }
+        return Math.abs(FmReceiver.signalRssi(last) - FmReceiver.signalRssi(sample)) > delta
+                || Math.abs(FmReceiver.signalPamd(last) - FmReceiver.signalPamd(sample)) > delta
+                || Math.abs(FmReceiver.signalBler(last) - FmReceiver.signalBler(sample)) > delta;
+    }
+
+    private void delay(Op op) {
+        long nanos = mLatencyNanos[op.ordinal()];
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        while ((nanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, nanos);
+        }
+    }
+
+    private static int slot(int freq) {
+        if (freq < FmBandPlan.FREQ_MIN || freq > FmBandPlan.FREQ_MAX || (freq - FmBandPlan.FREQ_MIN) % RASTER != 0) {
+            throw new IllegalArgumentException("not a 50 kHz channel of 76 - 108 MHz: " + freq);
+        }
+        return (freq - FmBandPlan.FREQ_MIN) / RASTER;
+    }
+
+    /* Spectrum entries carry 100 kHz units, so a 50 kHz plan is read at 100 kHz. */
+    private static int spectrumSpacing(int[] band) {
+        return Math.max(band[2], FmBandPlan.SPACING_100KHZ);
+    }
+
+    private static int spectrumStart(int[] band) {
+        return band[2] < FmBandPlan.SPACING_100KHZ ? (band[0] + 9) / 10 * 10 : band[0];
+    }
+
+    private static char[] pad(String text, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            char ch = text != null && i < text.length() ? text.charAt(i) : ' ';
+            // Only the ASCII part of the RDS character set is generated.
+            chars[i] = ch < 0x80 ? ch : ' ';
+        }
+        return chars;
+    }
+
+    /* Encodes an AF list as method A code pairs, the count code first. */
+    private static int[] afPairs(int[] af) {
+        int n = af == null ? 0 : Math.min(af.length, RdsDecoder.AF_MAX);
+        if (n == 0) {
+            return new int[0];
+        }
+        int[] codes = new int[n + 1 + (n + 1) % 2];
+        codes[0] = AF_COUNT_BASE + n;
+        for (int i = 0; i < n; i++) {
+            codes[i + 1] = (af[i] - BAND_LOW) / CHANNEL_SPACING;
+        }
+        if (codes.length > n + 1) {
+            codes[n + 1] = AF_FILLER;
+        }
+        int[] pairs = new int[codes.length / 2];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = codes[2 * i] << 8 | codes[2 * i + 1];
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,487 @@
+package com.service.fm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent table of known stations and of the few settings a radio UI
+ * keeps between runs, kept in one memory-mapped file.
+ * <p>
+ * The file is a small header followed by up to {@link #MAX_STATIONS}
+ * fixed-size little-endian records of (frequency, flags, last RSSI, PI, PS,
+ * last seen). Opening the store maps the whole file once and builds an
+ * open-addressed index from frequency to record, so every lookup and every
+ * favorite toggle afterwards is a hash probe and a few bytes written in
+ * place, never a rewrite of the file.
+ * <p>
+ * Station writes land in the mapping directly. Settings, which a UI may
+ * change many times a second, are held in memory and copied into the mapping
+ * by a single flush at most {@link #FLUSH_DELAY_MS} later, together with a
+ * sync of everything else written since the previous flush. Call
+ * {@link #close()} (or {@link #flush()}) to write everything out at once.
+ * <p>
+ * Frequencies are in the same units as {@link FmReceiver#tuneRadio(int)}.
+ * All methods are thread safe.
+ */
+public final class StationStore implements Closeable {
+
+    /** Most stations the table holds, enough for every 50 kHz channel. */
+    public static final int MAX_STATIONS = 1024;
+
+    /** The station is a favorite. */
+    public static final int FLAG_FAVORITE = 1;
+    /** The station was found by a seek or a scan. */
+    public static final int FLAG_FOUND = 1 << 1;
+
+    /** Setting slot of the last tuned frequency. */
+    public static final int SETTING_FREQUENCY = 0;
+    /** Setting slot of the last volume. */
+    public static final int SETTING_VOLUME = 1;
+    /** Number of setting slots. */
+    public static final int SETTING_COUNT = 8;
+
+    /** Longest time a settings write is held back, in milliseconds. */
+    public static final long FLUSH_DELAY_MS = 1000;
+
+    /** Most characters of a Program Service name. */
+    public static final int PS_LENGTH = 8;
+
+    private static final int MAGIC = 0x54534d46; // "FMST"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_COUNT = 8;
+    private static final int HEADER_SETTINGS_SET = 12;
+    private static final int HEADER_SETTINGS = 16;
+    private static final int HEADER_SIZE = HEADER_SETTINGS + 4 * SETTING_COUNT;
+
+    private static final int RECORD_FREQ = 0;
+    private static final int RECORD_FLAGS = 4;
+    private static final int RECORD_RSSI = 8;
+    private static final int RECORD_PI = 10;
+    private static final int RECORD_PS = 12;
+    private static final int RECORD_LAST_SEEN = 24;
+    private static final int RECORD_SIZE = 32;
+
+    private static final int FILE_SIZE = HEADER_SIZE + MAX_STATIONS * RECORD_SIZE;
+
+    /** Index slots, a power of two at least twice MAX_STATIONS. */
+    private static final int INDEX_SIZE = 2048;
+
+    private static final ScheduledExecutorService sFlusher =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "FmStationStore");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mMap;
+
+    /* record of every frequency */
+    private final IntIndex mIndex = new IntIndex(INDEX_SIZE);
+    private int mCount;
+
+    private final int[] mSettings = new int[SETTING_COUNT];
+    private int mSettingsSet;
+    private boolean mSettingsDirty;
+    private boolean mMapDirty;
+    private boolean mClosed;
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+    private StationStore(RandomAccessFile file, MappedByteBuffer map) {
+        mFile = file;
+        mMap = map;
+        mMap.order(ByteOrder.LITTLE_ENDIAN);
+        if (mMap.getInt(HEADER_MAGIC) != MAGIC || mMap.getInt(HEADER_VERSION) != VERSION
+                || !load()) {
+            reset();
+        }
+    }
+
+    /**
+     * Opens a store, creating an empty one if the file does not exist or is
+     * not a store of this version.
+     *
+     * @param file
+     *            the backing file.
+     * @return the store.
+     * @throws IOException
+     *             if the file cannot be created or mapped.
+     */
+    public static StationStore open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() != FILE_SIZE) {
+                raf.setLength(FILE_SIZE);
+            }
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            return new StationStore(raf, map);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private boolean load() {
+        int count = mMap.getInt(HEADER_COUNT);
+        if (count < 0 || count > MAX_STATIONS) {
+            return false;
+        }
+        for (int record = 0; record < count; record++) {
+            int freq = mMap.getInt(offset(record) + RECORD_FREQ);
+            if (freq <= 0 || mIndex.containsKey(freq)) {
+                mIndex.clear();
+                return false;
+            }
+            mIndex.put(freq, record);
+        }
+        mCount = count;
+        mSettingsSet = mMap.getInt(HEADER_SETTINGS_SET);
+        for (int i = 0; i < SETTING_COUNT; i++) {
+            mSettings[i] = mMap.getInt(HEADER_SETTINGS + 4 * i);
+        }
+        return true;
+    }
+
+    private void reset() {
+        for (int i = 0; i < HEADER_SIZE; i += 4) {
+            mMap.putInt(i, 0);
+        }
+        mMap.putInt(HEADER_VERSION, VERSION);
+        mMap.putInt(HEADER_MAGIC, MAGIC);
+        mIndex.clear();
+        mCount = 0;
+        mSettingsSet = 0;
+        Arrays.fill(mSettings, 0);
+        mMapDirty = true;
+    }
+
+    /**
+     * @return the number of stations in the table.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /**
+     * @return true if the table has a record for <code>freq</code>.
+     */
+    public synchronized boolean contains(int freq) {
+        return mIndex.containsKey(freq);
+    }
+
+    /**
+     * @return the flags of <code>freq</code>, 0 if it is not in the table.
+     */
+    public synchronized int getFlags(int freq) {
+        int record = recordOf(freq);
+        return record < 0 ? 0 : mMap.getInt(offset(record) + RECORD_FLAGS);
+    }
+
+    /**
+     * @return true if <code>freq</code> is a favorite.
+     */
+    public boolean isFavorite(int freq) {
+        return (getFlags(freq) & FLAG_FAVORITE) != 0;
+    }
+
+    /**
+     * Marks a station as favorite or not, adding it to the table if needed.
+     *
+     * @return false if the table is full.
+     */
+    public synchronized boolean setFavorite(int freq, boolean favorite) {
+        checkOpen();
+        int record = favorite ? recordFor(freq) : recordOf(freq);
+        if (record < 0) {
+            return !favorite;
+        }
+        int at = offset(record) + RECORD_FLAGS;
+        int flags = mMap.getInt(at);
+        mMap.putInt(at, favorite ? flags | FLAG_FAVORITE : flags & ~FLAG_FAVORITE);
+        changed();
+        return true;
+    }
+
+    /**
+     * Flips the favorite flag of a station.
+     *
+     * @return the new state, false if the table is full.
+     */
+    public synchronized boolean toggleFavorite(int freq) {
+        boolean favorite = !isFavorite(freq);
+        return setFavorite(freq, favorite) && favorite;
+    }
+
+    /**
+     * @return the favorite frequencies, in ascending order.
+     */
+    public synchronized int[] getFavorites() {
+        int[] result = new int[mCount];
+        int n = 0;
+        for (int record = 0; record < mCount; record++) {
+            int at = offset(record);
+            if ((mMap.getInt(at + RECORD_FLAGS) & FLAG_FAVORITE) != 0) {
+                result[n++] = mMap.getInt(at + RECORD_FREQ);
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Records a station found by a seek or a scan, or heard again.
+     *
+     * @param rssi
+     *            the signal strength it was received with.
+     * @param now
+     *            the time it was received, in {@link System#currentTimeMillis()}
+     *            time.
+     * @return false if the table is full.
+     */
+    public synchronized boolean updateSignal(int freq, int rssi, long now) {
+        int record = recordFor(freq);
+        if (record < 0) {
+            return false;
+        }
+        int at = offset(record);
+        mMap.putInt(at + RECORD_FLAGS, mMap.getInt(at + RECORD_FLAGS) | FLAG_FOUND);
+        mMap.putShort(at + RECORD_RSSI, (short) rssi);
+        mMap.putLong(at + RECORD_LAST_SEEN, now);
+        changed();
+        return true;
+    }
+
+    /**
+     * Records the RDS identity of a station.
+     *
+     * @param pi
+     *            the Program Identification code.
+     * @param ps
+     *            the Program Service name, cut to {@link #PS_LENGTH}
+     *            characters; null keeps the stored one.
+     * @return false if the table is full.
+     */
+    public synchronized boolean updateRds(int freq, int pi, CharSequence ps) {
+        int record = recordFor(freq);
+        if (record < 0) {
+            return false;
+        }
+        int at = offset(record);
+        mMap.putShort(at + RECORD_PI, (short) pi);
+        if (ps != null) {
+            for (int i = 0; i < PS_LENGTH; i++) {
+                char c = i < ps.length() ? ps.charAt(i) : 0;
+                mMap.put(at + RECORD_PS + i, (byte) (c < 0x100 ? c : '?'));
+            }
+        }
+        changed();
+        return true;
+    }
+
+    /**
+     * @return the last RSSI of <code>freq</code>, 0 if unknown.
+     */
+    public synchronized int getRssi(int freq) {
+        int record = recordOf(freq);
+        return record < 0 ? 0 : mMap.getShort(offset(record) + RECORD_RSSI);
+    }
+
+    /**
+     * @return the PI code of <code>freq</code>, 0 if unknown.
+     */
+    public synchronized int getPi(int freq) {
+        int record = recordOf(freq);
+        return record < 0 ? 0 : mMap.getShort(offset(record) + RECORD_PI) & 0xffff;
+    }
+
+    /**
+     * @return the Program Service name of <code>freq</code>, null if unknown.
+     */
+    public synchronized String getPs(int freq) {
+        int record = recordOf(freq);
+        if (record < 0) {
+            return null;
+        }
+        char[] ps = new char[PS_LENGTH];
+        int n = 0;
+        int at = offset(record) + RECORD_PS;
+        while (n < PS_LENGTH && mMap.get(at + n) != 0) {
+            ps[n] = (char) (mMap.get(at + n) & 0xff);
+            n++;
+        }
+        return n == 0 ? null : new String(ps, 0, n);
+    }
+
+    /**
+     * @return when <code>freq</code> was last received, in
+     *         {@link System#currentTimeMillis()} time, 0 if never.
+     */
+    public synchronized long getLastSeen(int freq) {
+        int record = recordOf(freq);
+        return record < 0 ? 0 : mMap.getLong(offset(record) + RECORD_LAST_SEEN);
+    }
+
+    /**
+     * Drops a station from the table.
+     *
+     * @return false if it was not in the table.
+     */
+    public synchronized boolean remove(int freq) {
+        checkOpen();
+        int record = mIndex.remove(freq);
+        if (record == IntIndex.MISSING) {
+            return false;
+        }
+        int last = --mCount;
+        if (record != last) {
+            // move the last record into the hole so the table stays dense
+            int from = offset(last);
+            int to = offset(record);
+            for (int i = 0; i < RECORD_SIZE; i += 8) {
+                mMap.putLong(to + i, mMap.getLong(from + i));
+            }
+            mIndex.put(mMap.getInt(to + RECORD_FREQ), record);
+        }
+        mMap.putInt(HEADER_COUNT, mCount);
+        changed();
+        return true;
+    }
+
+    /**
+     * @return the value of a setting, <code>defaultValue</code> if it was
+     *         never set.
+     */
+    public synchronized int getSetting(int setting, int defaultValue) {
+        return (mSettingsSet & (1 << setting)) != 0 ? mSettings[setting] : defaultValue;
+    }
+
+    /**
+     * Changes a setting. The write reaches the file with the next flush, so
+     * calling this at any rate costs no I/O.
+     */
+    public synchronized void putSetting(int setting, int value) {
+        if (setting < 0 || setting >= SETTING_COUNT) {
+            throw new IllegalArgumentException("setting " + setting);
+        }
+        checkOpen();
+        if ((mSettingsSet & (1 << setting)) != 0 && mSettings[setting] == value) {
+            return;
+        }
+        mSettings[setting] = value;
+        mSettingsSet |= 1 << setting;
+        mSettingsDirty = true;
+        changed();
+    }
+
+    /**
+     * @see #getSetting(int, int)
+     */
+    public synchronized float getFloatSetting(int setting, float defaultValue) {
+        return (mSettingsSet & (1 << setting)) != 0 ? Float.intBitsToFloat(mSettings[setting]) : defaultValue;
+    }
+
+    /**
+     * @see #putSetting(int, int)
+     */
+    public void putFloatSetting(int setting, float value) {
+        putSetting(setting, Float.floatToIntBits(value));
+    }
+
+    /**
+     * Writes pending settings into the file and syncs it.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (mClosed || !(mSettingsDirty || mMapDirty)) {
+                return;
+            }
+            if (mSettingsDirty) {
+                for (int i = 0; i < SETTING_COUNT; i++) {
+                    mMap.putInt(HEADER_SETTINGS + 4 * i, mSettings[i]);
+                }
+                mMap.putInt(HEADER_SETTINGS_SET, mSettingsSet);
+                mSettingsDirty = false;
+            }
+            mMapDirty = false;
+            mMap.force();
+        }
+    }
+
+    /**
+     * Flushes the store and closes its file. The store cannot be used
+     * afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+        mFile.close();
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("closed");
+        }
+    }
+
+    private void changed() {
+        mMapDirty = true;
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            sFlusher.schedule(() -> {
+                mFlushScheduled.set(false);
+                flush();
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private int recordOf(int freq) {
+        return mIndex.get(freq);
+    }
+
+    /* the record of freq, appended if it is not in the table, -1 if full */
+    private int recordFor(int freq) {
+        if (freq <= 0) {
+            throw new IllegalArgumentException("freq " + freq);
+        }
+        checkOpen();
+        int record = recordOf(freq);
+        if (record >= 0) {
+            return record;
+        }
+        if (mCount == MAX_STATIONS) {
+            return -1;
+        }
+        record = mCount++;
+        int at = offset(record);
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            mMap.putLong(at + i, 0);
+        }
+        mMap.putInt(at + RECORD_FREQ, freq);
+        mMap.putInt(HEADER_COUNT, mCount);
+        mIndex.put(freq, record);
+        return record;
+    }
+
+    private static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,171 @@
+package com.service.fm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The tuner operations {@link FmReceiver} is built on. The default
+ * implementation talks to the RDA FM driver through librdafmradio;
+ * {@link SimulatedTunerBackend} stands in for the hardware on hosts without
+ * one.
+ * <p>
+ * Methods follow the conventions of the driver binding: frequencies are in
+ * the units of {@link FmReceiver#tuneRadio(int)}, commands return 0 on
+ * success and a negative code on failure, and buffers are direct and in
+ * native byte order. FmReceiver serializes all calls except the abort
+ * methods, {@link #waitRds(ByteBuffer, int)} and the callbacks of
+ * {@link #startSignalPoller(int, int, IFmSignalListener)}.
+ */
+public interface TunerBackend {
+
+    /** What {@link #readRssi()} returns when the RSSI cannot be read. */
+    int RSSI_UNKNOWN = Integer.MIN_VALUE;
+
+    /** Powers the tuner up. */
+    int turnOnRadio();
+
+    /** Powers the tuner down and releases it. */
+    int turnOffRadio();
+
+    /** Tunes to freq. */
+    int tuneRadio(int freq);
+
+    /**
+     * Sets the band plan of the following tunes, seeks and scans, see
+     * {@link FmBandPlan}. The tuner may stay where it is until the next one.
+     *
+     * @param band
+     *            one of the FmBandPlan BAND_ constants.
+     * @param low
+     *            the lowest channel.
+     * @param high
+     *            the highest channel.
+     * @param spacing
+     *            the channel spacing, in the units of frequencies.
+     * @return 0, or a negative code if the tuner cannot step this plan.
+     */
+    int setBand(int band, int low, int high, int spacing);
+
+    /** @return true if the tuner is powered up. */
+    boolean getRadioIsOn();
+
+    /**
+     * Asks the chip itself whether it is powered up, rather than trusting
+     * the state kept on this side.
+     *
+     * @return 1 if powered up, 0 if not, negative if the chip cannot be
+     *         asked.
+     */
+    int isPoweredUp();
+
+    /**
+     * Reads the RSSI of the channel tuned to, on the scale of
+     * {@link FmReceiver#spectrumRssi(java.nio.ByteBuffer, int)}.
+     *
+     * @return the RSSI, or {@link #RSSI_UNKNOWN}.
+     */
+    int readRssi();
+
+    /** Mutes or unmutes the audio. */
+    int muteAudio(boolean mute);
+
+    /**
+     * Seeks to the next station.
+     *
+     * @return the frequency found, or a negative error code.
+     */
+    int seekStation(int scanMode);
+
+    /** Aborts a running {@link #seekStation(int)}; may be called from any thread. */
+    int seekStationAbort();
+
+    /**
+     * Scans the whole band, telling listener about each station as it is
+     * found.
+     *
+     * @return the frequencies found, or null on failure.
+     */
+    int[] scanBand(IFmScanListener listener);
+
+    /** Aborts a running {@link #scanBand(IFmScanListener)}; may be called from any thread. */
+    int stopScan();
+
+    /**
+     * Fills spectrum with the RSSI of every channel of the band, laid out as
+     * described for {@link FmReceiver#readSpectrum(ByteBuffer)}.
+     *
+     * @return the number of channels written.
+     */
+    int readSpectrum(ByteBuffer spectrum);
+
+    /**
+     * Fills cqi with channelCount {@link FmCqiReader} records.
+     *
+     * @return the number of records written.
+     */
+    int readChannelQuality(ByteBuffer cqi, int channelCount);
+
+    /** Turns RDS reception on or off. */
+    int setRds(boolean on);
+
+    /**
+     * Starts appending received RDS groups to ring. The ring starts with
+     * four native order ints: head, tail, capacity and overruns, followed by
+     * capacity groups of {@link RdsDecoder#GROUP_SIZE} bytes. The backend
+     * sets capacity to a power of two, advances head (modulo 2^31) as groups
+     * arrive and counts groups dropped while the ring is full.
+     */
+    int startRdsReader(ByteBuffer ring);
+
+    /**
+     * Stops filling the ring. A pending {@link #waitRds(ByteBuffer, int)}
+     * returns -1 once the remaining groups are consumed.
+     */
+    void stopRdsReader();
+
+    /**
+     * Publishes tail as consumed and blocks until the ring holds groups past
+     * it. Called only from the single consumer thread.
+     *
+     * @return the new head, or -1 when the reader is stopped.
+     */
+    int waitRds(ByteBuffer ring, int tail);
+
+    /** Releases the reader once the consumer has seen -1 from waitRds(). */
+    void releaseRdsReader();
+
+    /** Routes the audio. */
+    int setAudioPath(int audioPath);
+
+    /** Forces mono reception, or lets the chip receive stereo again. */
+    int setMono(boolean mono);
+
+    /** Sets the volume. */
+    int setFMVolume(int volume);
+
+    /**
+     * Runs the first count commands of a program of (opcode, argument)
+     * pairs, see {@link FmTransaction}, stopping at the first failure.
+     *
+     * @param status
+     *            receives the result of every command, {@link FmTransaction#NOT_RUN}
+     *            for those after a failure.
+     * @return the index of the command that failed, or -1.
+     */
+    int runProgram(int[] program, int count, int[] status);
+
+    /**
+     * Starts sampling the signal quality every intervalMs and reports packed
+     * samples to sink when a value moves by more than delta, see
+     * {@link FmReceiver#setLiveAudioPolling(boolean, int, int)}.
+     */
+    int startSignalPoller(int intervalMs, int delta, IFmSignalListener sink);
+
+    /** Stops the signal poller. */
+    void stopSignalPoller();
+
+    /**
+     * Frees the tuner for good, closing it if still open. Called by
+     * {@link FmReceiver#finish()}; no other method may be called afterwards.
+     */
+    void release();
+}
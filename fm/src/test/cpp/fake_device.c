@@ -0,0 +1,659 @@
+#define _GNU_SOURCE
+#include <errno.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <stdarg.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+#include <sys/eventfd.h>
+#include <sys/ioctl.h>
+
+#include "fm_main.h"
+#include "fm_ioctl.h"
+#include "fm_cust_cfg.h"
+#include "fake_device.h"
+
+#define FAKE_CHANNELS		(FM_FREQ_MAX - FM_FREQ_MIN + 1)
+/* groups the chip buffers, more are dropped as on the real part */
+#define FAKE_RDS_QUEUE		64
+#define FAKE_RDS_GROUP_SIZE	8
+
+int __real_open(const char *path, int flags, ...);
+int __real_close(int fd);
+int __real_ioctl(int fd, unsigned long request, ...);
+
+struct FakeDevice {
+	pthread_mutex_t lock;
+	int fd;			/* eventfd behind the open device, -1 when closed */
+	int powered;
+	int freq;
+	int volume;
+	int muted;
+	int rds;
+	int band;		/* FM_BAND_* and FM_SPACE_* of the last command carrying them */
+	int space;
+	int stop;		/* set by FM_IOCTL_STOP_SCAN */
+	int seekThreshold;
+	int rssi[FAKE_CHANNELS];
+	unsigned int delayUs[FAKE_OP_COUNT];
+	int failCount[FAKE_OP_COUNT];
+	int failErrno[FAKE_OP_COUNT];
+	int failBusy[FAKE_OP_COUNT];	/* injected failures report FM_BUSY in the parameters */
+	unsigned long calls[FAKE_OP_COUNT];
+	uint8_t rdsQueue[FAKE_RDS_QUEUE][FAKE_RDS_GROUP_SIZE];
+	unsigned int rdsHead;
+	unsigned int rdsTail;
+};
+
+static struct FakeDevice units[FAKE_DEVICE_UNITS];
+static pthread_once_t unitsOnce = PTHREAD_ONCE_INIT;
+
+static void initUnits(void) {
+	int i;
+
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		pthread_mutex_init(&units[i].lock, NULL);
+		units[i].fd = -1;
+	}
+}
+
+static struct FakeDevice *unitAt(int unit) {
+	pthread_once(&unitsOnce, initUnits);
+	return &units[unit];
+}
+
+static void fakeSleep(unsigned int usec) {
+	struct timespec ts;
+
+	if (usec == 0) {
+		return;
+	}
+	ts.tv_sec = usec / 1000000;
+	ts.tv_nsec = (usec % 1000000) * 1000L;
+	while (nanosleep(&ts, &ts) < 0 && errno == EINTR) {
+	}
+}
+
+static int channelOf(int freq) {
+	if (freq < FM_FREQ_MIN || freq > FM_FREQ_MAX) {
+		return -1;
+	}
+	return freq - FM_FREQ_MIN;
+}
+
+/*
+ * Counts the call, sleeps for the configured delay and consumes one injected
+ * failure. With step non-NULL the delay is handed back instead, for ioctls
+ * that pay it once per channel. Returns 0 to go on, or -1 with errno set.
+ */
+static int enter(struct FakeDevice *dev, enum fake_op op, unsigned int *step) {
+	unsigned int delay;
+	int err = 0;
+
+	pthread_mutex_lock(&dev->lock);
+	dev->calls[op]++;
+	delay = dev->delayUs[op];
+	if (dev->failCount[op] > 0) {
+		dev->failCount[op]--;
+		err = dev->failErrno[op];
+	}
+	pthread_mutex_unlock(&dev->lock);
+
+	if (step != NULL) {
+		*step = delay;
+	} else {
+		fakeSleep(delay);
+	}
+	if (err) {
+		errno = err;
+		return -1;
+	}
+	return 0;
+}
+
+static int fail(int err) {
+	errno = err;
+	return -1;
+}
+
+void fake_device_reset(int unit) {
+	struct FakeDevice *dev = unitAt(unit);
+	int i;
+
+	pthread_mutex_lock(&dev->lock);
+	dev->powered = 0;
+	dev->freq = FM_FREQ_MIN;
+	dev->volume = 0;
+	dev->muted = 0;
+	dev->rds = 0;
+	dev->band = FM_BAND_UNKNOWN;
+	dev->space = FM_SPACE_UNKNOWN;
+	dev->stop = 0;
+	dev->seekThreshold = FAKE_SEEK_THRESHOLD;
+	for (i = 0; i < FAKE_CHANNELS; i++) {
+		dev->rssi[i] = FAKE_NOISE_FLOOR;
+	}
+	memset(dev->delayUs, 0, sizeof(dev->delayUs));
+	memset(dev->failCount, 0, sizeof(dev->failCount));
+	memset(dev->failErrno, 0, sizeof(dev->failErrno));
+	memset(dev->failBusy, 0, sizeof(dev->failBusy));
+	memset(dev->calls, 0, sizeof(dev->calls));
+	dev->rdsHead = 0;
+	dev->rdsTail = 0;
+	pthread_mutex_unlock(&dev->lock);
+}
+
+void fake_device_set_rssi(int unit, int freq, int rssi) {
+	struct FakeDevice *dev = unitAt(unit);
+	int ch = channelOf(freq);
+
+	if (ch >= 0) {
+		pthread_mutex_lock(&dev->lock);
+		dev->rssi[ch] = rssi;
+		pthread_mutex_unlock(&dev->lock);
+	}
+}
+
+void fake_device_set_seek_threshold(int unit, int rssi) {
+	struct FakeDevice *dev = unitAt(unit);
+	pthread_mutex_lock(&dev->lock);
+	dev->seekThreshold = rssi;
+	pthread_mutex_unlock(&dev->lock);
+}
+
+void fake_device_set_delay(int unit, enum fake_op op, unsigned int usec) {
+	struct FakeDevice *dev = unitAt(unit);
+	pthread_mutex_lock(&dev->lock);
+	dev->delayUs[op] = usec;
+	pthread_mutex_unlock(&dev->lock);
+}
+
+void fake_device_fail(int unit, enum fake_op op, int count, int err) {
+	struct FakeDevice *dev = unitAt(unit);
+	pthread_mutex_lock(&dev->lock);
+	dev->failCount[op] = count;
+	dev->failErrno[op] = err;
+	dev->failBusy[op] = 0;
+	pthread_mutex_unlock(&dev->lock);
+}
+
+void fake_device_fail_busy(int unit, enum fake_op op, int count, int err) {
+	struct FakeDevice *dev = unitAt(unit);
+	pthread_mutex_lock(&dev->lock);
+	dev->failCount[op] = count;
+	dev->failErrno[op] = err;
+	dev->failBusy[op] = 1;
+	pthread_mutex_unlock(&dev->lock);
+}
+
+void fake_device_push_rds(int unit, const uint8_t group[8]) {
+	struct FakeDevice *dev = unitAt(unit);
+	uint64_t one = 1;
+	int fd;
+
+	pthread_mutex_lock(&dev->lock);
+	fd = dev->fd;
+	if (dev->rdsHead - dev->rdsTail < FAKE_RDS_QUEUE) {
+		memcpy(dev->rdsQueue[dev->rdsHead % FAKE_RDS_QUEUE], group, FAKE_RDS_GROUP_SIZE);
+		dev->rdsHead++;
+	}
+	pthread_mutex_unlock(&dev->lock);
+
+	if (fd >= 0) {
+		write(fd, &one, sizeof(one));
+	}
+}
+
+unsigned long fake_device_calls(int unit, enum fake_op op) {
+	struct FakeDevice *dev = unitAt(unit);
+	unsigned long calls;
+
+	pthread_mutex_lock(&dev->lock);
+	calls = dev->calls[op];
+	pthread_mutex_unlock(&dev->lock);
+	return calls;
+}
+
+int fake_device_is_open(int unit) {
+	return __atomic_load_n(&unitAt(unit)->fd, __ATOMIC_ACQUIRE) >= 0;
+}
+
+int fake_device_is_powered(int unit) {
+	return __atomic_load_n(&unitAt(unit)->powered, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_freq(int unit) {
+	return __atomic_load_n(&unitAt(unit)->freq, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_volume(int unit) {
+	return __atomic_load_n(&unitAt(unit)->volume, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_is_muted(int unit) {
+	return __atomic_load_n(&unitAt(unit)->muted, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_is_rds_on(int unit) {
+	return __atomic_load_n(&unitAt(unit)->rds, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_band(int unit) {
+	return __atomic_load_n(&unitAt(unit)->band, __ATOMIC_ACQUIRE);
+}
+
+int fake_device_space(int unit) {
+	return __atomic_load_n(&unitAt(unit)->space, __ATOMIC_ACQUIRE);
+}
+
+/* Channels a seek or scan steps over: one, or two in FM_SPACE_200K. */
+static int stepOf(int space) {
+	return space == FM_SPACE_200K ? 2 : 1;
+}
+
+/* Maps FM_DEVICE_NAME to unit 0 and FM_DEVICE_NAME "1".."3" to units 1-3. */
+static struct FakeDevice *unitOfPath(const char *path) {
+	size_t len = strlen(FM_DEVICE_NAME);
+
+	if (strncmp(path, FM_DEVICE_NAME, len) != 0) {
+		return NULL;
+	}
+	if (path[len] == '\0') {
+		return unitAt(0);
+	}
+	if (path[len] > '0' && path[len] < '0' + FAKE_DEVICE_UNITS && path[len + 1] == '\0') {
+		return unitAt(path[len] - '0');
+	}
+	return NULL;
+}
+
+static struct FakeDevice *unitOfFd(int fd) {
+	int i;
+
+	if (fd < 0) {
+		return NULL;
+	}
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		if (__atomic_load_n(&unitAt(i)->fd, __ATOMIC_ACQUIRE) == fd) {
+			return unitAt(i);
+		}
+	}
+	return NULL;
+}
+
+const char *fake_device_path(int unit) {
+	static char paths[FAKE_DEVICE_UNITS][sizeof(FM_DEVICE_NAME) + 1];
+
+	if (paths[unit][0] == '\0') {
+		if (unit == 0) {
+			strcpy(paths[unit], FM_DEVICE_NAME);
+		} else {
+			snprintf(paths[unit], sizeof(paths[unit]), "%s%d", FM_DEVICE_NAME, unit);
+		}
+	}
+	return paths[unit];
+}
+
+int __wrap_open(const char *path, int flags, ...) {
+	struct FakeDevice *dev = unitOfPath(path);
+	mode_t mode = 0;
+	va_list args;
+	int fd;
+
+	if (dev == NULL) {
+		if (flags & (O_CREAT | O_TMPFILE)) {
+			va_start(args, flags);
+			mode = va_arg(args, mode_t);
+			va_end(args);
+		}
+		return __real_open(path, flags, mode);
+	}
+
+	if (enter(dev, FAKE_OPEN, NULL)) {
+		return -1;
+	}
+	pthread_mutex_lock(&dev->lock);
+	if (dev->fd >= 0) {
+		/* the driver allows a single opener */
+		pthread_mutex_unlock(&dev->lock);
+		return fail(EBUSY);
+	}
+	fd = eventfd(0, EFD_CLOEXEC | EFD_NONBLOCK);
+	if (fd >= 0) {
+		dev->fd = fd;
+		if (dev->rdsHead != dev->rdsTail) {
+			uint64_t one = 1;
+			write(fd, &one, sizeof(one));
+		}
+	}
+	pthread_mutex_unlock(&dev->lock);
+	return fd;
+}
+
+int __wrap_close(int fd) {
+	struct FakeDevice *dev = unitOfFd(fd);
+
+	if (dev != NULL) {
+		pthread_mutex_lock(&dev->lock);
+		if (fd == dev->fd) {
+			/* closing the node powers the chip down, as the driver's release() does */
+			dev->fd = -1;
+			dev->powered = 0;
+			dev->volume = 0;
+			dev->muted = 0;
+			dev->rds = 0;
+		}
+		pthread_mutex_unlock(&dev->lock);
+	}
+	return __real_close(fd);
+}
+
+static int powerUp(struct FakeDevice *dev, struct fm_tune_parm *parm) {
+	int ch;
+
+	if (enter(dev, FAKE_POWERUP, NULL)) {
+		return -1;
+	}
+	ch = channelOf(parm->freq);
+	pthread_mutex_lock(&dev->lock);
+	dev->powered = 1;
+	dev->band = parm->band;
+	dev->space = parm->space;
+	if (ch >= 0) {
+		dev->freq = parm->freq;
+	}
+	parm->freq = dev->freq;
+	parm->err = FM_SUCCESS;
+	pthread_mutex_unlock(&dev->lock);
+	return 0;
+}
+
+static int tune(struct FakeDevice *dev, struct fm_tune_parm *parm) {
+	if (enter(dev, FAKE_TUNE, NULL)) {
+		parm->err = dev->failBusy[FAKE_TUNE] ? FM_BUSY : FM_TUNE_FAILED;
+		return -1;
+	}
+	if (!__atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE)) {
+		parm->err = FM_BADSTATUS;
+		return fail(EPERM);
+	}
+	if (channelOf(parm->freq) < 0) {
+		parm->err = FM_EPARM;
+		return fail(EINVAL);
+	}
+	__atomic_store_n(&dev->band, parm->band, __ATOMIC_RELEASE);
+	__atomic_store_n(&dev->space, parm->space, __ATOMIC_RELEASE);
+	__atomic_store_n(&dev->freq, parm->freq, __ATOMIC_RELEASE);
+	parm->err = FM_SUCCESS;
+	return 0;
+}
+
+static int seek(struct FakeDevice *dev, struct fm_seek_parm *parm) {
+	int step = (parm->seekdir == FM_SEEK_UP ? 1 : -1) * stepOf(parm->space);
+	unsigned int delay;
+	int ch, i, rssi, threshold;
+
+	if (enter(dev, FAKE_SEEK, &delay)) {
+		parm->err = FM_SEEK_FAILED;
+		return -1;
+	}
+	if (!__atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE)) {
+		parm->err = FM_BADSTATUS;
+		return fail(EPERM);
+	}
+	ch = channelOf(parm->freq);
+	if (ch < 0) {
+		ch = 0;
+	}
+	__atomic_store_n(&dev->band, parm->band, __ATOMIC_RELEASE);
+	__atomic_store_n(&dev->space, parm->space, __ATOMIC_RELEASE);
+
+	__atomic_store_n(&dev->stop, 0, __ATOMIC_RELEASE);
+	for (i = 1; i < FAKE_CHANNELS / stepOf(parm->space); i++) {
+		fakeSleep(delay);
+		if (__atomic_load_n(&dev->stop, __ATOMIC_ACQUIRE)) {
+			break;
+		}
+		ch = (ch + step + FAKE_CHANNELS) % FAKE_CHANNELS;
+		pthread_mutex_lock(&dev->lock);
+		rssi = dev->rssi[ch];
+		threshold = dev->seekThreshold;
+		pthread_mutex_unlock(&dev->lock);
+		if (rssi >= threshold) {
+			__atomic_store_n(&dev->freq, FM_FREQ_MIN + ch, __ATOMIC_RELEASE);
+			parm->freq = FM_FREQ_MIN + ch;
+			parm->err = FM_SUCCESS;
+			return 0;
+		}
+	}
+
+	/* nothing found or stopped, the chip stays where it was */
+	parm->freq = dev->freq;
+	parm->err = FM_SEEK_FAILED;
+	return fail(__atomic_load_n(&dev->stop, __ATOMIC_ACQUIRE) ? EINTR : EAGAIN);
+}
+
+static int scan(struct FakeDevice *dev, struct fm_scan_parm *parm) {
+	int size = parm->ScanTBLSize;
+	int step = stepOf(parm->space);
+	unsigned int delay;
+	int ch, bit, rssi, threshold;
+
+	if (enter(dev, FAKE_SCAN, &delay)) {
+		parm->err = FM_SCAN_FAILED;
+		return -1;
+	}
+	if (!__atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE)) {
+		parm->err = FM_BADSTATUS;
+		return fail(EPERM);
+	}
+	if (size > (int) (sizeof(parm->ScanTBL) / sizeof(parm->ScanTBL[0]))) {
+		size = sizeof(parm->ScanTBL) / sizeof(parm->ScanTBL[0]);
+	}
+
+	__atomic_store_n(&dev->band, parm->band, __ATOMIC_RELEASE);
+	__atomic_store_n(&dev->space, parm->space, __ATOMIC_RELEASE);
+
+	/* bit n marks the n-th channel of the spacing from the band start */
+	memset(parm->ScanTBL, 0, sizeof(parm->ScanTBL));
+	__atomic_store_n(&dev->stop, 0, __ATOMIC_RELEASE);
+	for (ch = 0, bit = 0; ch < FAKE_CHANNELS && bit < 16 * size; ch += step, bit++) {
+		fakeSleep(delay);
+		if (__atomic_load_n(&dev->stop, __ATOMIC_ACQUIRE)) {
+			break;
+		}
+		pthread_mutex_lock(&dev->lock);
+		rssi = dev->rssi[ch];
+		threshold = dev->seekThreshold;
+		pthread_mutex_unlock(&dev->lock);
+		if (rssi >= threshold) {
+			parm->ScanTBL[bit / 16] |= 1 << (bit % 16);
+		}
+	}
+	parm->ScanTBLSize = size;
+	parm->freq = dev->freq;
+	parm->err = FM_SUCCESS;
+	return 0;
+}
+
+static int scanGetRssi(struct FakeDevice *dev, struct fm_rssi_req *req) {
+	int i, n;
+
+	if (enter(dev, FAKE_SCAN_GETRSSI, NULL)) {
+		return -1;
+	}
+	if (!__atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE)) {
+		return fail(EPERM);
+	}
+	n = req->num < FAKE_CHANNELS ? req->num : FAKE_CHANNELS;
+	pthread_mutex_lock(&dev->lock);
+	for (i = 0; i < n; i++) {
+		req->cr[i].freq = FM_FREQ_MIN + i;
+		req->cr[i].rssi = dev->rssi[i];
+	}
+	pthread_mutex_unlock(&dev->lock);
+	req->read_cnt = n;
+	return 0;
+}
+
+static int cqiGet(struct FakeDevice *dev, struct fm_cqi_req *req) {
+	struct fm_cqi cqi;
+	int i, n;
+
+	if (enter(dev, FAKE_CQI_GET, NULL)) {
+		return -1;
+	}
+	if (!__atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE)) {
+		return fail(EPERM);
+	}
+	if (req->cqi_buf == NULL || req->buf_size < (int) (req->ch_num * sizeof(struct fm_cqi))) {
+		return fail(EINVAL);
+	}
+	n = req->ch_num < FAKE_CHANNELS ? req->ch_num : FAKE_CHANNELS;
+	pthread_mutex_lock(&dev->lock);
+	for (i = 0; i < n; i++) {
+		cqi.ch = FM_FREQ_MIN + i;
+		cqi.rssi = dev->rssi[i];
+		cqi.reserve = 0;
+		memcpy(req->cqi_buf + i * sizeof(struct fm_cqi), &cqi, sizeof(cqi));
+	}
+	pthread_mutex_unlock(&dev->lock);
+	req->ch_num = n;
+	return 0;
+}
+
+static int rdsGetLog(struct FakeDevice *dev, struct rds_raw_data *raw) {
+	uint64_t count;
+	int len = 0;
+
+	if (enter(dev, FAKE_RDS_GET_LOG, NULL)) {
+		return -1;
+	}
+	pthread_mutex_lock(&dev->lock);
+	while (dev->rdsTail != dev->rdsHead && len + FAKE_RDS_GROUP_SIZE <= RDS_RAW_DATA_LEN) {
+		memcpy(raw->data + len, dev->rdsQueue[dev->rdsTail % FAKE_RDS_QUEUE], FAKE_RDS_GROUP_SIZE);
+		dev->rdsTail++;
+		len += FAKE_RDS_GROUP_SIZE;
+	}
+	if (dev->rdsTail == dev->rdsHead && dev->fd >= 0) {
+		/* nothing left, the node stops polling readable */
+		read(dev->fd, &count, sizeof(count));
+	}
+	pthread_mutex_unlock(&dev->lock);
+	raw->len = len;
+	raw->dirty = len > 0;
+	return 0;
+}
+
+static int currentRssi(struct FakeDevice *dev) {
+	int ch = channelOf(__atomic_load_n(&dev->freq, __ATOMIC_ACQUIRE));
+	int rssi;
+
+	pthread_mutex_lock(&dev->lock);
+	rssi = ch >= 0 ? dev->rssi[ch] : 0;
+	pthread_mutex_unlock(&dev->lock);
+	return rssi;
+}
+
+int __wrap_ioctl(int fd, unsigned long request, ...) {
+	struct FakeDevice *dev = unitOfFd(fd);
+	va_list args;
+	void *arg;
+	int rssi;
+
+	va_start(args, request);
+	arg = va_arg(args, void *);
+	va_end(args);
+
+	if (dev == NULL) {
+		return __real_ioctl(fd, request, arg);
+	}
+
+	switch (request) {
+	case FM_IOCTL_POWERUP:
+		return powerUp(dev, arg);
+	case FM_IOCTL_POWERDOWN:
+		if (enter(dev, FAKE_POWERDOWN, NULL)) {
+			return -1;
+		}
+		__atomic_store_n(&dev->powered, 0, __ATOMIC_RELEASE);
+		return 0;
+	case FM_IOCTL_TUNE:
+		return tune(dev, arg);
+	case FM_IOCTL_SEEK:
+		return seek(dev, arg);
+	case FM_IOCTL_SETVOL:
+		if (enter(dev, FAKE_SETVOL, NULL)) {
+			return -1;
+		}
+		if (*(uint32_t *) arg > FM_VOL_MAX) {
+			return fail(EINVAL);
+		}
+		__atomic_store_n(&dev->volume, *(uint32_t *) arg, __ATOMIC_RELEASE);
+		return 0;
+	case FM_IOCTL_MUTE:
+		if (enter(dev, FAKE_MUTE, NULL)) {
+			return -1;
+		}
+		/* the driver copies a full uint32_t from the caller */
+		__atomic_store_n(&dev->muted, *(uint32_t *) arg != 0, __ATOMIC_RELEASE);
+		return 0;
+	case FM_IOCTL_SCAN:
+		return scan(dev, arg);
+	case FM_IOCTL_STOP_SCAN:
+		if (enter(dev, FAKE_STOP_SCAN, NULL)) {
+			return -1;
+		}
+		__atomic_store_n(&dev->stop, 1, __ATOMIC_RELEASE);
+		return 0;
+	case FM_IOCTL_SCAN_GETRSSI:
+		return scanGetRssi(dev, arg);
+	case FM_IOCTL_CQI_GET:
+		return cqiGet(dev, arg);
+	case FM_IOCTL_RDS_ONOFF:
+		if (enter(dev, FAKE_RDS_ONOFF, NULL)) {
+			return -1;
+		}
+		__atomic_store_n(&dev->rds, (*(uint16_t *) arg & FM_RDS_ENABLE) != 0, __ATOMIC_RELEASE);
+		return 0;
+	case FM_IOCTL_RDS_GET_LOG:
+		return rdsGetLog(dev, arg);
+	case FM_IOCTL_GETRSSI:
+		if (enter(dev, FAKE_GETRSSI, NULL)) {
+			return -1;
+		}
+		*(int32_t *) arg = currentRssi(dev);
+		return 0;
+	case FM_IOCTL_GETMONOSTERO:
+		if (enter(dev, FAKE_GETMONOSTERO, NULL)) {
+			return -1;
+		}
+		*(uint16_t *) arg = currentRssi(dev) >= FAKE_STEREO_THRESHOLD;
+		return 0;
+	case FM_IOCTL_GETCURPAMD:
+		if (enter(dev, FAKE_GETCURPAMD, NULL)) {
+			return -1;
+		}
+		/* multipath falls as the signal gets stronger */
+		rssi = currentRssi(dev);
+		*(uint16_t *) arg = rssi < 64 ? 64 - rssi : 0;
+		return 0;
+	case FM_IOCTL_GETBLERRATIO:
+		if (enter(dev, FAKE_GETBLERRATIO, NULL)) {
+			return -1;
+		}
+		*(uint16_t *) arg = __atomic_load_n(&dev->rds, __ATOMIC_ACQUIRE) ? 0 : 100;
+		return 0;
+	case FM_IOCTL_IS_FM_POWERED_UP:
+		if (enter(dev, FAKE_IS_POWERED_UP, NULL)) {
+			return -1;
+		}
+		*(uint32_t *) arg = __atomic_load_n(&dev->powered, __ATOMIC_ACQUIRE);
+		return 0;
+	default:
+		return fail(ENOTTY);
+	}
+}
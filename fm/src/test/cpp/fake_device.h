@@ -0,0 +1,90 @@
+/*
+ * A software model of the RDA FM character device for host builds.
+ *
+ * The test and benchmark binaries are linked with
+ * -Wl,--wrap=open,--wrap=close,--wrap=ioctl, which routes every open(),
+ * close() and ioctl() made by fmradio.c through this file. Opening
+ * FM_DEVICE_NAME hands out an eventfd that stands in for the device node, so
+ * poll() on it behaves as on the real driver: it becomes readable while RDS
+ * groups are queued. Every other path and descriptor goes to libc untouched.
+ *
+ * FAKE_DEVICE_UNITS independent tuners are modelled: unit 0 answers at
+ * FM_DEVICE_NAME, the others at FM_DEVICE_NAME followed by their number
+ * (/dev/RDAFM1, ...). Every function below takes the unit first.
+ *
+ * Frequencies are in the driver's 100 kHz units (875 - 1080), as in
+ * struct fm_tune_parm.
+ */
+#ifndef FAKE_DEVICE_H
+#define FAKE_DEVICE_H
+
+#include <stdint.h>
+
+#define FAKE_DEVICE_UNITS	4
+
+/* the ioctls the model understands, for delays, failures and call counts */
+enum fake_op {
+	FAKE_OPEN,
+	FAKE_POWERUP,
+	FAKE_POWERDOWN,
+	FAKE_TUNE,
+	FAKE_SEEK,		/* the delay applies to every channel stepped */
+	FAKE_SETVOL,
+	FAKE_MUTE,
+	FAKE_SCAN,		/* the delay applies to every channel swept */
+	FAKE_STOP_SCAN,
+	FAKE_SCAN_GETRSSI,
+	FAKE_CQI_GET,
+	FAKE_RDS_ONOFF,
+	FAKE_RDS_GET_LOG,
+	FAKE_GETRSSI,
+	FAKE_GETMONOSTERO,
+	FAKE_GETCURPAMD,
+	FAKE_GETBLERRATIO,
+	FAKE_IS_POWERED_UP,
+	FAKE_OP_COUNT
+};
+
+/* RSSI of a channel without a station */
+#define FAKE_NOISE_FLOOR	10
+/* least RSSI a seek or scan stops on */
+#define FAKE_SEEK_THRESHOLD	30
+/* least RSSI reported as stereo */
+#define FAKE_STEREO_THRESHOLD	40
+
+/* The device node of a unit. */
+const char *fake_device_path(int unit);
+
+/* Powers the unit down, forgets stations, delays, failures and counters. */
+void fake_device_reset(int unit);
+
+/* Sets the RSSI of one channel, FAKE_NOISE_FLOOR removes a station. */
+void fake_device_set_rssi(int unit, int freq, int rssi);
+
+/* Sets the least RSSI a seek or scan stops on. */
+void fake_device_set_seek_threshold(int unit, int rssi);
+
+/* Makes every following call of op sleep for usec microseconds first. */
+void fake_device_set_delay(int unit, enum fake_op op, unsigned int usec);
+
+/* Makes the next count calls of op fail with errno err. */
+void fake_device_fail(int unit, enum fake_op op, int count, int err);
+
+/* As fake_device_fail(), with FM_BUSY in the err field of a tune's parameters. */
+void fake_device_fail_busy(int unit, enum fake_op op, int count, int err);
+
+/* Queues one 8-byte RDS group for FM_IOCTL_RDS_GET_LOG. */
+void fake_device_push_rds(int unit, const uint8_t group[8]);
+
+unsigned long fake_device_calls(int unit, enum fake_op op);
+int fake_device_is_open(int unit);
+int fake_device_is_powered(int unit);
+int fake_device_freq(int unit);
+int fake_device_volume(int unit);
+int fake_device_is_muted(int unit);
+int fake_device_is_rds_on(int unit);
+/* FM_BAND_* and FM_SPACE_* of the last power up, tune, seek or scan, 0 before any */
+int fake_device_band(int unit);
+int fake_device_space(int unit);
+
+#endif
@@ -0,0 +1,234 @@
+#include <stdlib.h>
+#include <string.h>
+
+#include "fake_jni.h"
+
+enum {
+	FAKE_BUFFER,
+	FAKE_LISTENER,
+	FAKE_INT_ARRAY,
+	FAKE_STRING
+};
+
+struct FakeObject {
+	int kind;
+	void *address;
+	jlong capacity;
+	fake_jni_callback callback;
+	void *user;
+	jsize length;
+	jint elements[];
+};
+
+struct FakeMethod {
+	const char *name;
+	const char *sig;
+};
+
+/* the upcalls fmradio.c looks up */
+static const struct FakeMethod methods[] = {
+	{"onStationFound", "(I)V"},
+	{"onSignalSample", "(J)V"},
+};
+
+static __thread int pending;
+
+static struct FakeObject *object(jobject obj) {
+	return (struct FakeObject *) obj;
+}
+
+static jclass JNICALL GetObjectClass(JNIEnv *env, jobject obj) {
+	/* a listener is its own class, its callback decides what a method does */
+	return (jclass) obj;
+}
+
+static jmethodID JNICALL GetMethodID(JNIEnv *env, jclass cls, const char *name, const char *sig) {
+	size_t i;
+
+	for (i = 0; i < sizeof(methods) / sizeof(methods[0]); i++) {
+		if (strcmp(methods[i].name, name) == 0 && strcmp(methods[i].sig, sig) == 0) {
+			return (jmethodID) &methods[i];
+		}
+	}
+	pending = 1;
+	return NULL;
+}
+
+static void JNICALL CallVoidMethod(JNIEnv *env, jobject obj, jmethodID methodID, ...) {
+	const struct FakeMethod *method = (const struct FakeMethod *) methodID;
+	struct FakeObject *listener = object(obj);
+	va_list args;
+	jlong arg;
+
+	va_start(args, methodID);
+	arg = strcmp(method->sig, "(J)V") == 0 ? va_arg(args, jlong) : va_arg(args, jint);
+	va_end(args);
+	if (listener->kind == FAKE_LISTENER && listener->callback != NULL) {
+		listener->callback(listener->user, method->name, arg);
+	}
+}
+
+static jboolean JNICALL ExceptionCheck(JNIEnv *env) {
+	return pending ? JNI_TRUE : JNI_FALSE;
+}
+
+static void JNICALL ExceptionClear(JNIEnv *env) {
+	pending = 0;
+}
+
+static void JNICALL ExceptionDescribe(JNIEnv *env) {
+}
+
+static jintArray JNICALL NewIntArray(JNIEnv *env, jsize len) {
+	struct FakeObject *array = calloc(1, sizeof(struct FakeObject) + len * sizeof(jint));
+
+	if (array != NULL) {
+		array->kind = FAKE_INT_ARRAY;
+		array->length = len;
+	}
+	return (jintArray) array;
+}
+
+static void JNICALL GetIntArrayRegion(JNIEnv *env, jintArray array, jsize start, jsize len, jint *buf) {
+	memcpy(buf, object(array)->elements + start, len * sizeof(jint));
+}
+
+static void JNICALL SetIntArrayRegion(JNIEnv *env, jintArray array, jsize start, jsize len, const jint *buf) {
+	memcpy(object(array)->elements + start, buf, len * sizeof(jint));
+}
+
+static void *JNICALL GetDirectBufferAddress(JNIEnv *env, jobject buf) {
+	return object(buf)->kind == FAKE_BUFFER ? object(buf)->address : NULL;
+}
+
+static jlong JNICALL GetDirectBufferCapacity(JNIEnv *env, jobject buf) {
+	return object(buf)->kind == FAKE_BUFFER ? object(buf)->capacity : -1;
+}
+
+static const char *JNICALL GetStringUTFChars(JNIEnv *env, jstring str, jboolean *isCopy) {
+	if (isCopy != NULL) {
+		*isCopy = JNI_FALSE;
+	}
+	return object(str)->kind == FAKE_STRING ? object(str)->address : NULL;
+}
+
+static void JNICALL ReleaseStringUTFChars(JNIEnv *env, jstring str, const char *chars) {
+}
+
+static jobject JNICALL NewGlobalRef(JNIEnv *env, jobject obj) {
+	return obj;
+}
+
+static void JNICALL DeleteGlobalRef(JNIEnv *env, jobject obj) {
+}
+
+static void JNICALL DeleteLocalRef(JNIEnv *env, jobject obj) {
+}
+
+static jint JNICALL GetJavaVM(JNIEnv *env, JavaVM **vm);
+
+static struct JNINativeInterface_ functions = {
+	.GetObjectClass = GetObjectClass,
+	.GetMethodID = GetMethodID,
+	.CallVoidMethod = CallVoidMethod,
+	.ExceptionCheck = ExceptionCheck,
+	.ExceptionClear = ExceptionClear,
+	.ExceptionDescribe = ExceptionDescribe,
+	.NewIntArray = NewIntArray,
+	.GetIntArrayRegion = GetIntArrayRegion,
+	.SetIntArrayRegion = SetIntArrayRegion,
+	.GetDirectBufferAddress = GetDirectBufferAddress,
+	.GetDirectBufferCapacity = GetDirectBufferCapacity,
+	.GetStringUTFChars = GetStringUTFChars,
+	.ReleaseStringUTFChars = ReleaseStringUTFChars,
+	.NewGlobalRef = NewGlobalRef,
+	.DeleteGlobalRef = DeleteGlobalRef,
+	.DeleteLocalRef = DeleteLocalRef,
+	.GetJavaVM = GetJavaVM,
+};
+
+static JNIEnv env = &functions;
+
+static jint JNICALL AttachCurrentThread(JavaVM *vm, void **penv, void *args) {
+	*penv = &env;
+	return JNI_OK;
+}
+
+static jint JNICALL DetachCurrentThread(JavaVM *vm) {
+	return JNI_OK;
+}
+
+static struct JNIInvokeInterface_ invoke = {
+	.AttachCurrentThread = AttachCurrentThread,
+	.DetachCurrentThread = DetachCurrentThread,
+};
+
+static JavaVM vm = &invoke;
+
+static jint JNICALL GetJavaVM(JNIEnv *e, JavaVM **pvm) {
+	*pvm = &vm;
+	return JNI_OK;
+}
+
+JNIEnv *fake_jni_env(void) {
+	return &env;
+}
+
+jobject fake_jni_new_buffer(void *address, jlong capacity) {
+	struct FakeObject *buf = calloc(1, sizeof(struct FakeObject));
+
+	if (buf != NULL) {
+		buf->kind = FAKE_BUFFER;
+		buf->address = address;
+		buf->capacity = capacity;
+	}
+	return (jobject) buf;
+}
+
+jstring fake_jni_new_string(const char *chars) {
+	struct FakeObject *str = calloc(1, sizeof(struct FakeObject) + strlen(chars) + 1);
+
+	if (str != NULL) {
+		str->kind = FAKE_STRING;
+		str->address = str->elements;
+		strcpy(str->address, chars);
+	}
+	return (jstring) str;
+}
+
+jobject fake_jni_new_listener(fake_jni_callback callback, void *user) {
+	struct FakeObject *listener = calloc(1, sizeof(struct FakeObject));
+
+	if (listener != NULL) {
+		listener->kind = FAKE_LISTENER;
+		listener->callback = callback;
+		listener->user = user;
+	}
+	return (jobject) listener;
+}
+
+void fake_jni_delete(jobject obj) {
+	free(obj);
+}
+
+jintArray fake_jni_new_int_array(const jint *elements, jsize length) {
+	jintArray array = NewIntArray(&env, length);
+
+	if (array != NULL && elements != NULL) {
+		memcpy(object(array)->elements, elements, length * sizeof(jint));
+	}
+	return array;
+}
+
+jint *fake_jni_int_array(jintArray array, jsize *length) {
+	if (array == NULL || object(array)->kind != FAKE_INT_ARRAY) {
+		*length = 0;
+		return NULL;
+	}
+	*length = object(array)->length;
+	return object(array)->elements;
+}
+
+void fake_jni_throw(void) {
+	pending = 1;
+}
@@ -0,0 +1,38 @@
+/*
+ * Just enough of a JNIEnv and a JavaVM to drive the entry points of
+ * fmradio.c without a JVM. Objects are plain C structs: a direct buffer, a
+ * string, an int[] passed to or returned by the native code, or a listener
+ * whose void methods call back into C.
+ */
+#ifndef FAKE_JNI_H
+#define FAKE_JNI_H
+
+#include <jni.h>
+
+/* called for every CallVoidMethod() on a listener, with the only argument */
+typedef void (*fake_jni_callback)(void *user, const char *method, jlong arg);
+
+JNIEnv *fake_jni_env(void);
+
+/* Wraps memory the caller owns as a direct ByteBuffer. */
+jobject fake_jni_new_buffer(void *address, jlong capacity);
+
+/* A java.lang.String holding a copy of chars. */
+jstring fake_jni_new_string(const char *chars);
+
+/* A listener object, its (I)V and (J)V methods end up in callback. */
+jobject fake_jni_new_listener(fake_jni_callback callback, void *user);
+
+/* Releases any object above or an array returned from native code. */
+void fake_jni_delete(jobject obj);
+
+/* An int[] holding a copy of elements, zeroed if NULL, to pass to native code. */
+jintArray fake_jni_new_int_array(const jint *elements, jsize length);
+
+/* The elements of an int[] returned from or passed to native code. */
+jint *fake_jni_int_array(jintArray array, jsize *length);
+
+/* Makes the next ExceptionCheck() report a pending exception. */
+void fake_jni_throw(void);
+
+#endif
@@ -0,0 +1,222 @@
+/*
+ * Microbenchmarks for the native side of every JNI entry point, measured
+ * against the fake device so only the cost of fmradio.c itself shows up.
+ *
+ *   fmradio_bench [iterations] [ioctl delay in microseconds]
+ *
+ * The optional delay is applied to every fake ioctl to model a slow I2C bus;
+ * leave it at 0 to measure the native overhead alone.
+ */
+#define _GNU_SOURCE
+#include <pthread.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "fmradio_jni.h"
+#include "fm_main.h"
+#include "fm_cust_cfg.h"
+#include "fake_device.h"
+#include "fake_jni.h"
+
+#define RDS_RING_HEADER		16
+#define RDS_RING_GROUPS		256
+
+/* per-channel scan time of the band survey comparison */
+#define SURVEY_CHANNEL_US	50
+
+static JNIEnv *env;
+static long iterations = 100000;
+
+static long long nowNs(void) {
+	struct timespec ts;
+
+	clock_gettime(CLOCK_MONOTONIC, &ts);
+	return ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+static void report(const char *name, long count, long long elapsed) {
+	printf("%-24s %10ld ops %12.1f ns/op\n", name, count, (double) elapsed / count);
+}
+
+#define BENCH(name, count, body) do { \
+	long i_; \
+	long long start_ = nowNs(); \
+	for (i_ = 0; i_ < (count); i_++) { \
+		body; \
+	} \
+	report(name, (count), nowNs() - start_); \
+} while (0)
+
+static void onStationFound(void *user, const char *method, jlong freq) {
+}
+
+static jlong createRadio(int unit) {
+	jstring path = fake_jni_new_string(fake_device_path(unit));
+	jlong handle = Java_com_service_fm_NativeTunerBackend_createNative(env, NULL, path);
+
+	fake_jni_delete(path);
+	return handle;
+}
+
+static void *surveyThread(void *arg) {
+	jlong handle = *(jlong *) arg;
+
+	fake_jni_delete(Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, handle, NULL));
+	return NULL;
+}
+
+/*
+ * Scans the band once on every unit, one after the other or all at once,
+ * the way a monitoring rig surveys with several tuners.
+ */
+static void benchSurvey(void) {
+	jlong radios[FAKE_DEVICE_UNITS];
+	pthread_t threads[FAKE_DEVICE_UNITS];
+	long long start;
+	int i;
+
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		fake_device_reset(i);
+		fake_device_set_delay(i, FAKE_SCAN, SURVEY_CHANNEL_US);
+		radios[i] = createRadio(i);
+		Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radios[i]);
+	}
+
+	start = nowNs();
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		surveyThread(&radios[i]);
+	}
+	report("survey, units in turn", 1, nowNs() - start);
+
+	start = nowNs();
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		pthread_create(&threads[i], NULL, surveyThread, &radios[i]);
+	}
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		pthread_join(threads[i], NULL);
+	}
+	report("survey, units at once", 1, nowNs() - start);
+
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, radios[i]);
+	}
+}
+
+int main(int argc, char **argv) {
+	struct fm_rssi_req *req = calloc(1, sizeof(struct fm_rssi_req));
+	struct fm_cqi cqi[FM_FREQ_MAX - FM_FREQ_MIN + 1];
+	size_t ringSize = RDS_RING_HEADER + RDS_RING_GROUPS * 8;
+	uint8_t *ring = aligned_alloc(8, ringSize);
+	static const uint8_t group[8] = {0x12, 0x34, 0x05, 0x40, 0xe0, 0xcd, 0x52, 0x41};
+	static const jint startup[] = {2, 9870, 3, 8, 4, 0};
+	jobject spectrum, quality, rdsBuffer, listener;
+	jintArray program, programStatus;
+	jlong radio;
+	unsigned int delay = 0;
+	int op, head;
+
+	if (argc > 1) {
+		iterations = atol(argv[1]);
+	}
+	if (argc > 2) {
+		delay = atoi(argv[2]);
+	}
+	if (iterations <= 0) {
+		fprintf(stderr, "usage: %s [iterations] [ioctl delay us]\n", argv[0]);
+		return 2;
+	}
+
+	env = fake_jni_env();
+	spectrum = fake_jni_new_buffer(req, sizeof(struct fm_rssi_req));
+	quality = fake_jni_new_buffer(cqi, sizeof(cqi));
+	rdsBuffer = fake_jni_new_buffer(ring, ringSize);
+	listener = fake_jni_new_listener(onStationFound, NULL);
+	program = fake_jni_new_int_array(startup, 6);
+	programStatus = fake_jni_new_int_array(NULL, 3);
+	radio = createRadio(0);
+
+	fake_device_reset(0);
+	for (op = 0; op < FAKE_OP_COUNT; op++) {
+		fake_device_set_delay(0, op, delay);
+	}
+	/* a station every 2 MHz, so a seek steps 20 channels */
+	for (op = FM_FREQ_MIN + 5; op <= FM_FREQ_MAX; op += 20) {
+		fake_device_set_rssi(0, op, 50);
+	}
+
+	BENCH("turnOn+turnOff", iterations / 10, {
+		Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio);
+		Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio);
+	});
+
+	if (Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio)) {
+		fprintf(stderr, "power up failed\n");
+		return 1;
+	}
+
+	BENCH("getRadioIsOn", iterations,
+		Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, radio));
+	BENCH("isPoweredUp", iterations,
+		Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(env, NULL, radio));
+	BENCH("tuneRadio", iterations,
+		Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 8750 + (i_ % 206) * 10));
+	BENCH("setFMVolume", iterations,
+		Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(env, NULL, radio, i_ & 15));
+	BENCH("muteAudio", iterations,
+		Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, i_ & 1));
+	BENCH("setRds", iterations,
+		Java_com_service_fm_NativeTunerBackend_setRdsNative(env, NULL, radio, i_ & 1));
+	/* the three startup commands one by one and as one program */
+	BENCH("tune+volume+mute", iterations, {
+		Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9870);
+		Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(env, NULL, radio, 8);
+		Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, 0);
+	});
+	BENCH("runProgram", iterations,
+		Java_com_service_fm_NativeTunerBackend_runProgramNative(env, NULL, radio, program, 3, programStatus));
+	BENCH("seekStation", iterations / 10,
+		Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 1));
+	BENCH("seekStationAbort", iterations,
+		Java_com_service_fm_NativeTunerBackend_seekStationAbortNative(env, NULL, radio));
+	BENCH("scanBand", iterations / 100,
+		fake_jni_delete(Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, listener)));
+	BENCH("stopScan", iterations,
+		Java_com_service_fm_NativeTunerBackend_stopScanNative(env, NULL, radio));
+	BENCH("readSpectrum", iterations / 10,
+		Java_com_service_fm_NativeTunerBackend_readSpectrumNative(env, NULL, radio, spectrum));
+	BENCH("readChannelQuality", iterations / 10,
+		Java_com_service_fm_NativeTunerBackend_readChannelQualityNative(env, NULL, radio, quality,
+				FM_FREQ_MAX - FM_FREQ_MIN + 1));
+	BENCH("startStopSignalPoller", iterations / 100, {
+		Java_com_service_fm_NativeTunerBackend_startSignalPollerNative(env, NULL, radio, 1000, 2, listener);
+		Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative(env, NULL, radio);
+	});
+
+	/* one group from the device queue through the reader thread to the consumer */
+	Java_com_service_fm_NativeTunerBackend_startRdsReaderNative(env, NULL, radio, rdsBuffer);
+	head = 0;
+	BENCH("rds group round trip", iterations / 10, {
+		fake_device_push_rds(0, group);
+		head = Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, radio, rdsBuffer, head);
+	});
+	Java_com_service_fm_NativeTunerBackend_stopRdsReaderNative(env, NULL, radio);
+	Java_com_service_fm_NativeTunerBackend_releaseRdsReaderNative(env, NULL, radio);
+
+	Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio);
+	Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, radio);
+
+	benchSurvey();
+
+	fake_jni_delete(programStatus);
+	fake_jni_delete(program);
+	fake_jni_delete(listener);
+	fake_jni_delete(rdsBuffer);
+	fake_jni_delete(quality);
+	fake_jni_delete(spectrum);
+	free(ring);
+	free(req);
+	return 0;
+}
@@ -0,0 +1,661 @@
+/*
+ * Drives the JNI entry points of fmradio.c against the fake device and checks
+ * what reaches the driver. Run by ctest, exits non-zero on the first failing
+ * test case.
+ */
+#define _GNU_SOURCE
+#include <errno.h>
+#include <pthread.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+
+#include "fmradio_jni.h"
+#include "fm_main.h"
+#include "fm_cust_cfg.h"
+#include "fake_device.h"
+#include "fake_jni.h"
+
+#define CHECK(cond) do { \
+	if (!(cond)) { \
+		fprintf(stderr, "%s:%d: %s: CHECK(%s) failed\n", __FILE__, __LINE__, __func__, #cond); \
+		return 1; \
+	} \
+} while (0)
+
+#define RDS_RING_HEADER		16
+#define RDS_RING_GROUPS		256
+
+static JNIEnv *env;
+/* the context of unit 0, most tests use only this one */
+static jlong radio;
+
+static void sleepMs(int ms) {
+	struct timespec ts = {ms / 1000, (ms % 1000) * 1000000L};
+	nanosleep(&ts, NULL);
+}
+
+static jlong createRadio(int unit) {
+	jstring path = fake_jni_new_string(fake_device_path(unit));
+	jlong handle = Java_com_service_fm_NativeTunerBackend_createNative(env, NULL, path);
+
+	fake_jni_delete(path);
+	return handle;
+}
+
+static int powerUp(void) {
+	fake_device_reset(0);
+	return Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio);
+}
+
+static int testPowerCycle(void) {
+	CHECK(powerUp() == 0);
+	CHECK(fake_device_is_open(0));
+	CHECK(fake_device_is_powered(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, radio));
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	CHECK(!fake_device_is_open(0));
+	CHECK(!Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, radio));
+	CHECK(fake_device_calls(0, FAKE_POWERDOWN) == 1);
+
+	/* commands without a device are refused before any ioctl */
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == -2);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9870) == -2);
+	CHECK(fake_device_calls(0, FAKE_TUNE) == 0);
+	return 0;
+}
+
+static int testPowerUpFailures(void) {
+	fake_device_reset(0);
+	fake_device_fail(0, FAKE_OPEN, 1, ENOENT);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio) == -1);
+	CHECK(!fake_device_is_open(0));
+
+	fake_device_fail(0, FAKE_POWERUP, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio) == -1);
+	CHECK(!fake_device_is_open(0));
+	CHECK(!Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, radio));
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+static int testPoweredUpQuery(void) {
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(env, NULL, radio) == 1);
+	CHECK(fake_device_calls(0, FAKE_IS_POWERED_UP) == 1);
+
+	/* a failed query keeps the device, the caller decides what to do */
+	fake_device_fail(0, FAKE_IS_POWERED_UP, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(env, NULL, radio) == -1);
+	CHECK(fake_device_is_open(0));
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(env, NULL, radio) == 0);
+	CHECK(fake_device_calls(0, FAKE_IS_POWERED_UP) == 2);
+	return 0;
+}
+
+static int testTune(void) {
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9870) == 0);
+	CHECK(fake_device_freq(0) == 987);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 10800) == 0);
+	CHECK(fake_device_freq(0) == 1080);
+
+	/* a busy chip is asked again */
+	fake_device_fail(0, FAKE_TUNE, 2, EBUSY);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9000) == 0);
+	CHECK(fake_device_freq(0) == 900);
+	CHECK(fake_device_calls(0, FAKE_TUNE) == 5);
+
+	/* busy for too long or rejected, the tune fails but the device stays */
+	fake_device_fail(0, FAKE_TUNE, 10, EBUSY);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9100) == -1);
+	CHECK(fake_device_calls(0, FAKE_TUNE) == 9);
+	fake_device_fail(0, FAKE_TUNE, 1, EINVAL);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9100) == -1);
+	CHECK(fake_device_calls(0, FAKE_TUNE) == 10);
+	CHECK(fake_device_is_open(0));
+	CHECK(fake_device_calls(0, FAKE_OPEN) == 1);
+
+	/* the driver's own busy code is retried whatever the errno */
+	fake_device_fail_busy(0, FAKE_TUNE, 2, EPERM);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9100) == 0);
+	CHECK(fake_device_freq(0) == 910);
+	CHECK(fake_device_calls(0, FAKE_TUNE) == 13);
+
+	/* a wedged device is opened again, powered up on the last good frequency and tuned */
+	fake_device_fail(0, FAKE_TUNE, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9200) == 0);
+	CHECK(fake_device_freq(0) == 920);
+	CHECK(fake_device_calls(0, FAKE_OPEN) == 2);
+	CHECK(fake_device_calls(0, FAKE_POWERUP) == 2);
+
+	/* one that stays wedged is dropped */
+	fake_device_fail(0, FAKE_TUNE, 2, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9300) == -1);
+	CHECK(!fake_device_is_open(0));
+	CHECK(!Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, radio));
+	return 0;
+}
+
+static int testVolumeAndMute(void) {
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(env, NULL, radio, 12) == 0);
+	CHECK(fake_device_volume(0) == 12);
+	CHECK(Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, JNI_TRUE) == 0);
+	CHECK(fake_device_is_muted(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, JNI_FALSE) == 0);
+	CHECK(!fake_device_is_muted(0));
+
+	/* a reset replays the volume and mute before the failed request */
+	CHECK(Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, JNI_TRUE) == 0);
+	fake_device_fail(0, FAKE_SETVOL, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_setFMVolumeNative(env, NULL, radio, 7) == 0);
+	CHECK(fake_device_calls(0, FAKE_OPEN) == 2);
+	CHECK(fake_device_volume(0) == 7);
+	CHECK(fake_device_is_muted(0));
+	CHECK(fake_device_calls(0, FAKE_SETVOL) == 4);
+
+	fake_device_fail(0, FAKE_MUTE, 2, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, JNI_FALSE) == -1);
+	CHECK(!fake_device_is_open(0));
+	return 0;
+}
+
+/* runs (op, arg) pairs through runProgramNative, results land in status */
+static jint runProgram(const jint *program, jint count, jint *status) {
+	jintArray prog = fake_jni_new_int_array(program, 2 * count);
+	jintArray stat = fake_jni_new_int_array(NULL, count);
+	jint failed = Java_com_service_fm_NativeTunerBackend_runProgramNative(env, NULL, radio, prog, count, stat);
+	jsize length;
+
+	memcpy(status, fake_jni_int_array(stat, &length), count * sizeof(jint));
+	fake_jni_delete(stat);
+	fake_jni_delete(prog);
+	return failed;
+}
+
+static int testProgram(void) {
+	/* power on, tune, volume, mute, the opcodes of FmTransaction */
+	static const jint startup[] = {1, 0, 2, 9870, 3, 9, 4, 1};
+	static const jint failing[] = {2, 9000, 3, 5, 4, 0};
+	jint status[4];
+
+	fake_device_reset(0);
+	CHECK(runProgram(startup, 4, status) == -1);
+	CHECK(status[0] == 0 && status[1] == 0 && status[2] == 0 && status[3] == 0);
+	CHECK(fake_device_is_powered(0));
+	CHECK(fake_device_freq(0) == 987);
+	CHECK(fake_device_volume(0) == 9);
+	CHECK(fake_device_is_muted(0));
+
+	/* the program stops at the rejected volume, the unmute never runs */
+	fake_device_fail(0, FAKE_SETVOL, 1, EINVAL);
+	CHECK(runProgram(failing, 3, status) == 1);
+	CHECK(status[0] == 0);
+	CHECK(status[1] == -1);
+	CHECK(status[2] == INT32_MIN);
+	CHECK(fake_device_freq(0) == 900);
+	CHECK(fake_device_calls(0, FAKE_MUTE) == 1);
+	CHECK(fake_device_is_open(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+static int testSeek(void) {
+	CHECK(powerUp() == 0);
+	fake_device_set_rssi(0, 910, 50);
+	fake_device_set_rssi(0, 1012, 45);
+	fake_device_set_rssi(0, 990, FAKE_SEEK_THRESHOLD - 1);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9500) == 0);
+
+	/* a non-zero mode seeks up */
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 1) == 10120);
+	CHECK(fake_device_freq(0) == 1012);
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 1) == 9100);
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 0) == 10120);
+
+	fake_device_set_seek_threshold(0, FAKE_SEEK_THRESHOLD - 1);
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 0) == 9900);
+
+	/* the RSSI of the channel a seek landed on confirms it */
+	CHECK(Java_com_service_fm_NativeTunerBackend_readRssiNative(env, NULL, radio) == FAKE_SEEK_THRESHOLD - 1);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_readRssiNative(env, NULL, radio) == INT32_MIN);
+	return 0;
+}
+
+static void *seekThread(void *arg) {
+	*(int *) arg = Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 1);
+	return NULL;
+}
+
+static int testSeekAbort(void) {
+	pthread_t thread;
+	int freq = 0;
+
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9000) == 0);
+	/* an empty band at 1 ms a step would take 205 ms to sweep */
+	fake_device_set_delay(0, FAKE_SEEK, 1000);
+	CHECK(pthread_create(&thread, NULL, seekThread, &freq) == 0);
+	sleepMs(10);
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationAbortNative(env, NULL, radio) == 0);
+	pthread_join(thread, NULL);
+
+	CHECK(freq == 9000);
+	CHECK(fake_device_freq(0) == 900);
+	CHECK(fake_device_calls(0, FAKE_STOP_SCAN) == 1);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+struct ScanLog {
+	int count;
+	jint freqs[16];
+	int throwAt;
+};
+
+static void onStationFound(void *user, const char *method, jlong freq) {
+	struct ScanLog *log = user;
+
+	if (log->count < 16) {
+		log->freqs[log->count] = (jint) freq;
+	}
+	if (++log->count == log->throwAt) {
+		fake_jni_throw();
+	}
+}
+
+static int testScan(void) {
+	struct ScanLog log = {0};
+	jobject listener = fake_jni_new_listener(onStationFound, &log);
+	jintArray found;
+	jint *freqs;
+	jsize length;
+
+	CHECK(powerUp() == 0);
+	fake_device_set_rssi(0, 875, 40);
+	fake_device_set_rssi(0, 958, 33);
+	fake_device_set_rssi(0, 1080, 60);
+
+	found = Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, listener);
+	freqs = fake_jni_int_array(found, &length);
+	CHECK(length == 3);
+	CHECK(freqs[0] == 8750 && freqs[1] == 9580 && freqs[2] == 10800);
+	CHECK(log.count == 3);
+	CHECK(memcmp(log.freqs, freqs, 3 * sizeof(jint)) == 0);
+	fake_jni_delete(found);
+
+	/* an exception in the listener ends the scan */
+	log.count = 0;
+	log.throwAt = 2;
+	CHECK(Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, listener) == NULL);
+	CHECK(log.count == 2);
+	(*env)->ExceptionClear(env);
+
+	fake_device_fail(0, FAKE_SCAN, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, NULL) == NULL);
+
+	fake_jni_delete(listener);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+static jint setBand(jint band, jint low, jint high, jint spacing) {
+	return Java_com_service_fm_NativeTunerBackend_setBandNative(env, NULL, radio, band, low, high, spacing);
+}
+
+static int testBandPlan(void) {
+	jintArray found;
+	jint *freqs;
+	jsize length;
+
+	CHECK(powerUp() == 0);
+	CHECK(fake_device_band(0) == FM_BAND_UE);
+	CHECK(fake_device_space(0) == FM_SPACE_100K);
+
+	/* plans the driver cannot step are refused before any ioctl */
+	CHECK(setBand(FM_BAND_UE, 8750, 10800, 5) == -3);
+	CHECK(setBand(FM_BAND_UNKNOWN, 8750, 10800, 10) == -3);
+	CHECK(setBand(FM_BAND_JAPAN, 7600, 10800, 10) == -3);
+	CHECK(setBand(FM_BAND_UE, 8755, 10800, 10) == -3);
+	CHECK(setBand(FM_BAND_UE, 8760, 10800, 20) == -3);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9870) == 0);
+	CHECK(fake_device_space(0) == FM_SPACE_100K);
+
+	/* at 200 kHz the scan table counts every second channel */
+	CHECK(setBand(FM_BAND_UE, 8750, 10790, 20) == 0);
+	fake_device_set_rssi(0, 877, 40);
+	fake_device_set_rssi(0, 880, 50);
+	fake_device_set_rssi(0, 1079, 45);
+	found = Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, NULL);
+	freqs = fake_jni_int_array(found, &length);
+	CHECK(length == 2);
+	CHECK(freqs[0] == 8770 && freqs[1] == 10790);
+	CHECK(fake_device_space(0) == FM_SPACE_200K);
+	fake_jni_delete(found);
+
+	/* a narrower plan drops what lies outside, and seeks start inside it */
+	CHECK(setBand(FM_BAND_SPECIAL, 9010, 10790, 20) == 0);
+	found = Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, radio, NULL);
+	freqs = fake_jni_int_array(found, &length);
+	CHECK(length == 1 && freqs[0] == 10790);
+	CHECK(fake_device_band(0) == FM_BAND_SPECIAL);
+	fake_jni_delete(found);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9010) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_seekStationNative(env, NULL, radio, 1) == 10790);
+
+	/* the plan outlives a power cycle */
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, radio) == 0);
+	CHECK(fake_device_band(0) == FM_BAND_SPECIAL);
+	CHECK(fake_device_space(0) == FM_SPACE_200K);
+
+	CHECK(setBand(FM_BAND_UE, 8750, 10800, 10) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+static int testSpectrumAndQuality(void) {
+	struct fm_rssi_req *req = calloc(1, sizeof(struct fm_rssi_req));
+	struct fm_cqi cqi[8];
+	jobject spectrum = fake_jni_new_buffer(req, sizeof(struct fm_rssi_req));
+	jobject quality = fake_jni_new_buffer(cqi, sizeof(cqi));
+	jobject small = fake_jni_new_buffer(req, sizeof(struct fm_rssi_req) - 1);
+	struct fm_cqi *many = calloc(0x10000, sizeof(struct fm_cqi));
+	jobject large = fake_jni_new_buffer(many, 0x10000 * sizeof(struct fm_cqi));
+
+	CHECK(powerUp() == 0);
+	fake_device_set_rssi(0, 876, 44);
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_readSpectrumNative(env, NULL, radio, spectrum)
+			== FM_FREQ_MAX - FM_FREQ_MIN + 1);
+	CHECK(req->cr[1].freq == 876 && req->cr[1].rssi == 44);
+	CHECK(req->cr[2].rssi == FAKE_NOISE_FLOOR);
+	CHECK(Java_com_service_fm_NativeTunerBackend_readSpectrumNative(env, NULL, radio, small) == -3);
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_readChannelQualityNative(env, NULL, radio, quality, 8) == 8);
+	CHECK(cqi[1].ch == 876 && cqi[1].rssi == 44);
+	CHECK(Java_com_service_fm_NativeTunerBackend_readChannelQualityNative(env, NULL, radio, quality, 9) == -3);
+	/* ch_num is 16 bits, 65536 records must not wrap to a request for none */
+	CHECK(Java_com_service_fm_NativeTunerBackend_readChannelQualityNative(env, NULL, radio, large, 0x10000) == -3);
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	fake_jni_delete(large);
+	fake_jni_delete(small);
+	fake_jni_delete(quality);
+	fake_jni_delete(spectrum);
+	free(many);
+	free(req);
+	return 0;
+}
+
+static int testRdsReader(void) {
+	static const uint8_t groups[3][8] = {
+		{0x12, 0x34, 0x05, 0x40, 0xe0, 0xcd, 0x52, 0x41},
+		{0x12, 0x34, 0x05, 0x41, 0xe0, 0xcd, 0x44, 0x49},
+		{0x12, 0x34, 0x25, 0x40, 0x48, 0x65, 0x6c, 0x6c},
+	};
+	size_t size = RDS_RING_HEADER + RDS_RING_GROUPS * 8;
+	uint8_t *ring = aligned_alloc(8, size);
+	jobject buffer = fake_jni_new_buffer(ring, size);
+	int head = 0, i;
+
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_setRdsNative(env, NULL, radio, JNI_TRUE) == 0);
+	CHECK(fake_device_is_rds_on(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_startRdsReaderNative(env, NULL, radio, buffer) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_startRdsReaderNative(env, NULL, radio, buffer) == -3);
+
+	for (i = 0; i < 3; i++) {
+		fake_device_push_rds(0, groups[i]);
+	}
+	while (head < 3) {
+		head = Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, radio, buffer, head);
+		CHECK(head > 0);
+	}
+	CHECK(memcmp(ring + RDS_RING_HEADER, groups, sizeof(groups)) == 0);
+
+	/* once stopped, the consumer sees the end of the stream */
+	Java_com_service_fm_NativeTunerBackend_stopRdsReaderNative(env, NULL, radio);
+	CHECK(Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, radio, buffer, head) == -1);
+	Java_com_service_fm_NativeTunerBackend_releaseRdsReaderNative(env, NULL, radio);
+
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	fake_jni_delete(buffer);
+	free(ring);
+	return 0;
+}
+
+struct SignalLog {
+	int count;
+	jlong last;
+};
+
+static void onSignalSample(void *user, const char *method, jlong sample) {
+	struct SignalLog *log = user;
+
+	__atomic_store_n(&log->last, sample, __ATOMIC_RELAXED);
+	__atomic_add_fetch(&log->count, 1, __ATOMIC_RELEASE);
+}
+
+static int awaitSamples(struct SignalLog *log, int count) {
+	int i;
+
+	for (i = 0; i < 1000 && __atomic_load_n(&log->count, __ATOMIC_ACQUIRE) < count; i++) {
+		sleepMs(1);
+	}
+	return __atomic_load_n(&log->count, __ATOMIC_ACQUIRE) >= count;
+}
+
+static int testSignalPoller(void) {
+	struct SignalLog log = {0};
+	jobject listener = fake_jni_new_listener(onSignalSample, &log);
+
+	CHECK(powerUp() == 0);
+	fake_device_set_rssi(0, 1000, 45);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 10000) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_startSignalPollerNative(env, NULL, radio, 0, 2, listener) == -3);
+	CHECK(Java_com_service_fm_NativeTunerBackend_startSignalPollerNative(env, NULL, radio, 2, 2, listener) == 0);
+
+	CHECK(awaitSamples(&log, 1));
+	CHECK((int16_t) log.last == 45);
+	CHECK((uint16_t) (log.last >> 16) == 1);
+
+	/* a steady signal is not reported again, a change past delta is */
+	sleepMs(20);
+	CHECK(log.count == 1);
+	fake_device_set_rssi(0, 1000, 20);
+	CHECK(awaitSamples(&log, 2));
+	CHECK((int16_t) log.last == 20);
+	CHECK((uint16_t) (log.last >> 16) == 0);
+
+	Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative(env, NULL, radio);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	fake_jni_delete(listener);
+	return 0;
+}
+
+static int testSessionReset(void) {
+	static const uint8_t group[8] = {0x12, 0x34, 0x05, 0x40, 0xe0, 0xcd, 0x52, 0x41};
+	size_t size = RDS_RING_HEADER + RDS_RING_GROUPS * 8;
+	uint8_t *ring = aligned_alloc(8, size);
+	jobject buffer = fake_jni_new_buffer(ring, size);
+	struct SignalLog log = {0};
+	jobject listener = fake_jni_new_listener(onSignalSample, &log);
+	int head;
+
+	CHECK(powerUp() == 0);
+	fake_device_set_rssi(0, 1000, 45);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 10000) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_setRdsNative(env, NULL, radio, JNI_TRUE) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_startRdsReaderNative(env, NULL, radio, buffer) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_startSignalPollerNative(env, NULL, radio, 2, 2, listener) == 0);
+	CHECK(awaitSamples(&log, 1));
+
+	/* a rejected tune is not replayed by the reset below */
+	fake_device_fail(0, FAKE_TUNE, 1, EINVAL);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9000) == -1);
+
+	/* the RDS stream and the signal samples go on across a reset */
+	fake_device_fail(0, FAKE_MUTE, 1, EIO);
+	CHECK(Java_com_service_fm_NativeTunerBackend_muteAudioNative(env, NULL, radio, JNI_TRUE) == 0);
+	CHECK(fake_device_calls(0, FAKE_OPEN) == 2);
+	CHECK(fake_device_freq(0) == 1000);
+	CHECK(fake_device_is_rds_on(0));
+
+	fake_device_push_rds(0, group);
+	head = Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, radio, buffer, 0);
+	CHECK(head == 1);
+	CHECK(memcmp(ring + RDS_RING_HEADER, group, sizeof(group)) == 0);
+	fake_device_set_rssi(0, 1000, 20);
+	CHECK(awaitSamples(&log, 2));
+	CHECK((int16_t) log.last == 20);
+
+	/* when the device cannot come back, the consumer sees the end of the stream */
+	fake_device_fail(0, FAKE_TUNE, 1, EIO);
+	fake_device_fail(0, FAKE_OPEN, 1, ENODEV);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9000) == -1);
+	CHECK(!fake_device_is_open(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, radio, buffer, head) == -1);
+	Java_com_service_fm_NativeTunerBackend_releaseRdsReaderNative(env, NULL, radio);
+	Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative(env, NULL, radio);
+
+	fake_jni_delete(listener);
+	fake_jni_delete(buffer);
+	free(ring);
+	return 0;
+}
+
+static int testReleasedHandle(void) {
+	/* a released backend passes 0, which must fail cleanly */
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, 0) == -1);
+	CHECK(!Java_com_service_fm_NativeTunerBackend_getRadioIsOnNative(env, NULL, 0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_isPoweredUpNative(env, NULL, 0) == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, 0, 9870) == -2);
+	CHECK(Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, 0, NULL) == NULL);
+	CHECK(Java_com_service_fm_NativeTunerBackend_waitRdsNative(env, NULL, 0, NULL, 0) == -1);
+	Java_com_service_fm_NativeTunerBackend_stopRdsReaderNative(env, NULL, 0);
+	Java_com_service_fm_NativeTunerBackend_stopSignalPollerNative(env, NULL, 0);
+	Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, 0);
+	return 0;
+}
+
+static int testDestroyCloses(void) {
+	jlong other = createRadio(1);
+
+	fake_device_reset(1);
+	CHECK(other != 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, other) == 0);
+	CHECK(fake_device_is_open(1));
+	Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, other);
+	CHECK(!fake_device_is_open(1));
+	return 0;
+}
+
+static int testSharedNode(void) {
+	jlong other = createRadio(0);
+
+	/* a second context on the same node is refused without disturbing the first */
+	CHECK(powerUp() == 0);
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, other) == -1);
+	CHECK(Java_com_service_fm_NativeTunerBackend_tuneRadioNative(env, NULL, radio, 9870) == 0);
+	CHECK(fake_device_freq(0) == 987);
+	Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, other);
+	CHECK(fake_device_is_open(0));
+	CHECK(Java_com_service_fm_NativeTunerBackend_turnOffRadioNative(env, NULL, radio) == 0);
+	return 0;
+}
+
+struct Survey {
+	jlong radio;
+	jintArray found;
+};
+
+static void *surveyThread(void *arg) {
+	struct Survey *survey = arg;
+
+	survey->found = Java_com_service_fm_NativeTunerBackend_scanBandNative(env, NULL, survey->radio, NULL);
+	return NULL;
+}
+
+static int testParallelTuners(void) {
+	struct Survey surveys[FAKE_DEVICE_UNITS];
+	pthread_t threads[FAKE_DEVICE_UNITS];
+	jint *freqs;
+	jsize length;
+	int i;
+
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		fake_device_reset(i);
+		/* each unit hears its own station, at 100 us a channel */
+		fake_device_set_rssi(i, 900 + 10 * i, 50);
+		fake_device_set_delay(i, FAKE_SCAN, 100);
+		surveys[i].radio = createRadio(i);
+		CHECK(Java_com_service_fm_NativeTunerBackend_turnOnRadioNative(env, NULL, surveys[i].radio) == 0);
+	}
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		CHECK(pthread_create(&threads[i], NULL, surveyThread, &surveys[i]) == 0);
+	}
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		pthread_join(threads[i], NULL);
+	}
+
+	for (i = 0; i < FAKE_DEVICE_UNITS; i++) {
+		freqs = fake_jni_int_array(surveys[i].found, &length);
+		CHECK(length == 1);
+		CHECK(freqs[0] == 10 * (900 + 10 * i));
+		CHECK(fake_device_calls(i, FAKE_SCAN) == 1);
+		fake_jni_delete(surveys[i].found);
+		Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, surveys[i].radio);
+		CHECK(!fake_device_is_open(i));
+	}
+	return 0;
+}
+
+int main(void) {
+	static const struct {
+		const char *name;
+		int (*run)(void);
+	} tests[] = {
+		{"power cycle", testPowerCycle},
+		{"power up failures", testPowerUpFailures},
+		{"powered up query", testPoweredUpQuery},
+		{"tune", testTune},
+		{"volume and mute", testVolumeAndMute},
+		{"program", testProgram},
+		{"seek", testSeek},
+		{"seek abort", testSeekAbort},
+		{"scan", testScan},
+		{"band plan", testBandPlan},
+		{"spectrum and quality", testSpectrumAndQuality},
+		{"rds reader", testRdsReader},
+		{"signal poller", testSignalPoller},
+		{"session reset", testSessionReset},
+		{"released handle", testReleasedHandle},
+		{"destroy closes", testDestroyCloses},
+		{"shared node", testSharedNode},
+		{"parallel tuners", testParallelTuners},
+	};
+	size_t i;
+
+	env = fake_jni_env();
+	radio = createRadio(0);
+	for (i = 0; i < sizeof(tests) / sizeof(tests[0]); i++) {
+		if (tests[i].run()) {
+			fprintf(stderr, "FAIL %s\n", tests[i].name);
+			return 1;
+		}
+		printf("ok   %s\n", tests[i].name);
+	}
+	Java_com_service_fm_NativeTunerBackend_destroyNative(env, NULL, radio);
+	return 0;
+}
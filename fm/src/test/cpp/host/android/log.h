@@ -0,0 +1,40 @@
+/*
+ * Host stand-in for the NDK's <android/log.h>. Messages go to stderr when
+ * FMRADIO_LOG is set in the environment and are dropped otherwise, so the
+ * tests and benchmarks stay quiet by default.
+ */
+#ifndef HOST_ANDROID_LOG_H
+#define HOST_ANDROID_LOG_H
+
+#include <stdarg.h>
+#include <stdio.h>
+#include <stdlib.h>
+
+/* bionic pulls these in through its own headers, glibc does not */
+#include <stdint.h>
+#include <sys/ioctl.h>
+
+#define ANDROID_LOG_DEBUG	3
+#define ANDROID_LOG_INFO	4
+#define ANDROID_LOG_WARN	5
+#define ANDROID_LOG_ERROR	6
+
+static inline int __android_log_print(int prio, const char *tag, const char *fmt, ...) {
+	static int enabled = -1;
+	va_list args;
+
+	if (enabled < 0) {
+		enabled = getenv("FMRADIO_LOG") != NULL;
+	}
+	if (!enabled) {
+		return 0;
+	}
+	va_start(args, fmt);
+	fprintf(stderr, "%d %s: ", prio, tag);
+	vfprintf(stderr, fmt, args);
+	fputc('\n', stderr);
+	va_end(args);
+	return 1;
+}
+
+#endif
@@ -0,0 +1,69 @@
+package com.service.fm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BandSweepTest {
+
+    private SimulatedTunerBackend mBackend;
+    private BandSweep mSweep;
+
+    @Before
+    public void setUp() {
+        mBackend = new SimulatedTunerBackend(1).setRssiNoise(0).setNoiseFloor(10);
+        mBackend.turnOnRadio();
+        mSweep = new BandSweep(mBackend);
+    }
+
+    private FmBandPlan plan(int spacing) {
+        FmBandPlan plan = FmBandPlan.of(FmBandPlan.BAND_UE, spacing, FmReceiver.DEEMPHASIS_75U);
+        assertEquals(0, mBackend.setBand(plan.getBand(), plan.getLow(), plan.getHigh(), plan.getSpacing()));
+        return plan;
+    }
+
+    @Test
+    public void run_findsStationsWithFewReads() {
+        mBackend.addStation(9000, 50).addStation(9810, 45);
+        FmBandPlan plan = plan(FmBandPlan.SPACING_100KHZ);
+
+        assertArrayEquals(new int[] {9000, 9810}, mSweep.run(plan, FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, 10));
+        assertEquals(10, mSweep.getFloor());
+        assertTrue(mSweep.getReadCount() < plan.getChannelCount());
+        assertEquals(50, mSweep.getRssi(plan, 9000));
+    }
+
+    @Test
+    public void run_halfChannelShouldersAreNotStations() {
+        mBackend.addStation(9000, 50);
+        FmBandPlan plan = plan(FmBandPlan.SPACING_50KHZ);
+
+        assertArrayEquals(new int[] {9000}, mSweep.run(plan, FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, 10));
+        assertEquals(50 - SimulatedTunerBackend.HALF_CHANNEL_REJECTION, mSweep.getRssi(plan, 9005));
+    }
+
+    @Test
+    public void run_explicitThreshold() {
+        mBackend.addStation(9000, 50).addStation(9810, 30);
+        FmBandPlan plan = plan(FmBandPlan.SPACING_100KHZ);
+
+        assertArrayEquals(new int[] {9000}, mSweep.run(plan, 40, 10));
+        assertArrayEquals(new int[] {9000, 9810}, mSweep.run(plan, 30, 10));
+    }
+
+    @Test
+    public void run_failsWhenTunerOff() {
+        FmBandPlan plan = plan(FmBandPlan.SPACING_100KHZ);
+        mBackend.turnOffRadio();
+        assertNull(mSweep.run(plan, FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, 10));
+    }
+
+    @Test
+    public void getRssi_unknownOffPlanOrUnread() {
+        FmBandPlan plan = plan(FmBandPlan.SPACING_100KHZ);
+        mSweep.run(plan, FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, 10);
+        assertEquals(TunerBackend.RSSI_UNKNOWN, mSweep.getRssi(plan, 7600));
+        assertEquals(TunerBackend.RSSI_UNKNOWN, mSweep.getRssi(plan, 8760));
+    }
+}
@@ -0,0 +1,435 @@
+package com.service.fm;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FmReceiverTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private SimulatedTunerBackend mBackend;
+    private FmReceiver mReceiver;
+    private final Events mEvents = new Events();
+
+    /* Records the frequency of each status event. */
+    private static final class Events implements IFmReceiverEventHandler {
+
+        final BlockingQueue<Integer> mStatus = new LinkedBlockingQueue<>();
+
+        int nextStatus() throws InterruptedException {
+            Integer freq = mStatus.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("no status event", freq);
+            return freq;
+        }
+
+        @Override
+        public void onStatusEvent(int freq, int rssi, boolean radioIsOn, int rdsProgramType, boolean isMute) {
+            mStatus.add(freq);
+        }
+
+        @Override
+        public void onSeekCompleteEvent(int freq, int rssi, boolean success) {
+        }
+
+        @Override
+        public void onRdsModeEvent(int rdsMode, int alternateFreqHopEnabled) {
+        }
+
+        @Override
+        public void onRdsDataEvent(int rdsDataType, int rdsIndex, char[] text, int length) {
+        }
+
+        @Override
+        public void onAudioModeEvent(int audioMode) {
+        }
+
+        @Override
+        public void onAudioPathEvent(int audioPath) {
+        }
+
+        @Override
+        public void onEstimateNoiseFloorLevelEvent(int nfl) {
+        }
+
+        @Override
+        public void onLiveAudioQualityEvent(int rssi) {
+        }
+
+        @Override
+        public void onWorldRegionEvent(int worldRegion) {
+        }
+
+        @Override
+        public void onVolumeEvent(int status, int volume) {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mBackend = new SimulatedTunerBackend(1).setRssiNoise(0).setSeekThreshold(40)
+                .addStation(9000, 50).addStation(9500, 50).addStation(10000, 50);
+        mReceiver = new FmReceiver(mBackend);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.turnOnRadio());
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9000));
+    }
+
+    @After
+    public void tearDown() {
+        mReceiver.finish();
+    }
+
+    @Test
+    public void seekStationAsync_completesWithFoundStation() throws Exception {
+        CompletableFuture<Integer> seek = mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP,
+                FmReceiver.MIN_SIGNAL_STRENGTH_AUTO);
+
+        assertEquals(9500, (int) seek.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(9500, mBackend.getFreq());
+        assertEquals(9500, mReceiver.getStatusSnapshot().getFreq());
+    }
+
+    @Test
+    public void seekStationAsync_cancelledBeforeStartDoesNotMove() throws Exception {
+        CompletableFuture<Integer> cancelled;
+        // the queued seek waits for the receiver lock
+        synchronized (mReceiver) {
+            cancelled = mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP, FmReceiver.MIN_SIGNAL_STRENGTH_AUTO);
+            Thread.sleep(50);
+            assertTrue(cancelled.cancel(true));
+        }
+        // runs after the cancelled one on the tuner thread
+        CompletableFuture<Integer> next = mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP,
+                FmReceiver.MIN_SIGNAL_STRENGTH_AUTO);
+
+        assertEquals(9500, (int) next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    public void seekStationAsync_cancelAbortsRunningSeek() throws Exception {
+        mBackend.setLatency(SimulatedTunerBackend.Op.SEEK_STEP, 2, TimeUnit.MILLISECONDS);
+        CompletableFuture<Integer> seek = mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP,
+                FmReceiver.MIN_SIGNAL_STRENGTH_AUTO);
+        Thread.sleep(30);
+        assertTrue(seek.cancel(true));
+
+        // had the seek gone on to 95.0 MHz, this one would find 100.0 MHz
+        assertEquals(9500, mReceiver.seekStation(FmReceiver.SCAN_MODE_UP));
+    }
+
+    @Test
+    public void tuneRadio_coalescedToLatest() throws Exception {
+        mBackend.setLatency(SimulatedTunerBackend.Op.TUNE, 20, TimeUnit.MILLISECONDS);
+        mReceiver.setTuneCoalescing(true);
+        mReceiver.registerEventHandler(mEvents);
+        for (int freq = 9010; freq <= 9100; freq += 10) {
+            assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(freq));
+        }
+
+        while (mEvents.nextStatus() != 9100) {
+            // earlier targets that got through
+        }
+        assertEquals(9100, mBackend.getFreq());
+        FmReceiverStats stats = mReceiver.getStats();
+        assertTrue(stats.getTuneDroppedCount() > 0);
+        assertEquals(stats.getTuneRequestCount(), stats.getTuneIssuedCount() + stats.getTuneDroppedCount());
+    }
+
+    @Test
+    public void tuneRadio_coalescedFailureReported() throws Exception {
+        mReceiver.setTuneCoalescing(true);
+        mReceiver.registerEventHandler(mEvents);
+        // off the 100 kHz raster
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9875));
+
+        assertEquals(9000, mEvents.nextStatus());
+        assertEquals(1, mReceiver.getStats().getTuneFailedCount());
+        assertEquals(9000, mReceiver.getStatusSnapshot().getFreq());
+    }
+
+    @Test
+    public void signalListener_deliveredDuringSeek() throws Exception {
+        // nothing reaches the threshold, so the seek steps through the whole band for a second
+        mBackend.setRssiNoise(3).setSeekThreshold(80)
+                .setLatency(SimulatedTunerBackend.Op.SEEK_STEP, 5, TimeUnit.MILLISECONDS);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setLiveAudioPolling(true, 5, 0));
+        CompletableFuture<Integer> seek = mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP,
+                FmReceiver.MIN_SIGNAL_STRENGTH_AUTO);
+        Thread.sleep(20);
+
+        CountDownLatch sampled = new CountDownLatch(3);
+        mReceiver.setSignalListener(sample -> sampled.countDown());
+        assertTrue(sampled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(seek.isDone());
+        seek.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void turnOnRadio_resumesFromStandby() {
+        mReceiver.setStandbyTimeout(TIMEOUT_MS);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.turnOffRadio());
+        assertTrue(mReceiver.isStandby());
+        assertFalse(mReceiver.getRadioIsOn());
+        assertTrue(mBackend.getRadioIsOn());
+        assertTrue(mBackend.isMuted());
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.turnOnRadio());
+        assertFalse(mReceiver.isStandby());
+        assertTrue(mReceiver.getRadioIsOn());
+        assertFalse(mBackend.isMuted());
+        assertEquals(9000, mBackend.getFreq());
+        assertEquals(1, mReceiver.getStats().getWarmResumeCount());
+        assertEquals(1, mReceiver.getStats().getColdResumeCount());
+    }
+
+    @Test
+    public void turnOnRadio_keepsMuteSetInStandby() {
+        mReceiver.setStandbyTimeout(TIMEOUT_MS);
+        mReceiver.turnOffRadio();
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.muteAudio(true));
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.turnOnRadio());
+        assertTrue(mBackend.isMuted());
+        assertTrue(mReceiver.getStatusSnapshot().isMuted());
+    }
+
+    @Test
+    public void standby_powersDownAfterTimeout() throws Exception {
+        mReceiver.setStandbyTimeout(20);
+        mReceiver.turnOffRadio();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mBackend.getRadioIsOn() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(mBackend.getRadioIsOn());
+        assertFalse(mReceiver.isStandby());
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.turnOnRadio());
+        assertEquals(2, mReceiver.getStats().getColdResumeCount());
+        assertEquals(0, mReceiver.getStats().getWarmResumeCount());
+    }
+
+    @Test
+    public void setters_skipValuesTheChipHolds() {
+        long skipped = mReceiver.getStats().getCommandSkippedCount();
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.muteAudio(true));
+        assertEquals(skipped, mReceiver.getStats().getCommandSkippedCount());
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.muteAudio(true));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9000));
+        assertEquals(skipped + 3, mReceiver.getStats().getCommandSkippedCount());
+        assertEquals(5, mBackend.getVolume());
+        assertTrue(mBackend.isMuted());
+    }
+
+    @Test
+    public void setters_reachChipAfterFailure() {
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        // off the 100 kHz raster, the chip may be anywhere now
+        assertNotEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9875));
+        long skipped = mReceiver.getStats().getCommandSkippedCount();
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9000));
+        assertEquals(skipped, mReceiver.getStats().getCommandSkippedCount());
+    }
+
+    @Test
+    public void setters_reachChipAfterPowerCycle() {
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        mReceiver.turnOffRadio();
+        mReceiver.turnOnRadio();
+        long skipped = mReceiver.getStats().getCommandSkippedCount();
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setFMVolume(5));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9000));
+        assertEquals(skipped, mReceiver.getStats().getCommandSkippedCount());
+    }
+
+    @Test
+    public void tuneRadio_reachesChipAfterSeek() {
+        assertEquals(9500, mReceiver.seekStation(FmReceiver.SCAN_MODE_UP));
+        long skipped = mReceiver.getStats().getCommandSkippedCount();
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.tuneRadio(9000));
+        assertEquals(9000, mBackend.getFreq());
+        assertEquals(skipped, mReceiver.getStats().getCommandSkippedCount());
+    }
+
+    private FmStatus awaitStatus(java.util.function.Predicate<FmStatus> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        FmStatus status = mReceiver.getStatusSnapshot();
+        while (!condition.test(status) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            status = mReceiver.getStatusSnapshot();
+        }
+        assertTrue(status.toString(), condition.test(status));
+        return status;
+    }
+
+    @Test
+    public void statusSnapshot_followsCommands() {
+        FmStatus before = mReceiver.getStatusSnapshot();
+        assertTrue(before.isRadioOn());
+        assertEquals(9000, before.getFreq());
+
+        mReceiver.setFMVolume(7);
+        mReceiver.muteAudio(true);
+        mReceiver.tuneRadio(9500);
+        FmStatus after = mReceiver.getStatusSnapshot();
+        assertEquals(9500, after.getFreq());
+        assertTrue(after.isMuted());
+        assertEquals(7, after.getVolume());
+        assertEquals(before.getSequence() + 3, after.getSequence());
+        // a published snapshot never changes
+        assertEquals(9000, before.getFreq());
+        assertFalse(before.isMuted());
+
+        mReceiver.turnOffRadio();
+        assertFalse(mReceiver.getStatusSnapshot().isRadioOn());
+    }
+
+    @Test
+    public void statusSnapshot_keptWhileNothingChanges() {
+        FmStatus before = mReceiver.getStatusSnapshot();
+        mReceiver.tuneRadio(9000);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.getStatus());
+        assertSame(before, mReceiver.getStatusSnapshot());
+    }
+
+    @Test
+    public void statusSnapshot_carriesSignalAndRds() throws Exception {
+        mBackend.addStation(9700, 60, 0xC201, 4, "RADIO 1 ", "").setRdsGroupRate(1000);
+        mReceiver.tuneRadio(9700);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setLiveAudioPolling(true, 5, 0));
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setRdsMode(FmReceiver.RDS_MODE_RDS_ON,
+                FmReceiver.RDS_FEATURE_PS | FmReceiver.RDS_FEATURE_PTY, FmReceiver.AF_MODE_OFF, 0));
+
+        FmStatus status = awaitStatus(s -> "RADIO 1 ".equals(s.getProgramService()) && s.getRssi() == 60);
+        assertEquals(9700, status.getFreq());
+        assertEquals(4, status.getPty());
+        assertTrue(status.isStereo());
+
+        mReceiver.tuneRadio(9000);
+        status = mReceiver.getStatusSnapshot();
+        assertNull(status.getProgramService());
+        assertEquals(-1, status.getPty());
+    }
+
+    /* Turns fast seek on and seeks up once the map, swept first on the tuner thread, is ready. */
+    private int fastSeekUp(int minSignalStrength) throws Exception {
+        mReceiver.setFastSeek(true);
+        return mReceiver.seekStationAsync(FmReceiver.SCAN_MODE_UP, minSignalStrength)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void fastSeek_answersFromMap() throws Exception {
+        assertEquals(9500, fastSeekUp(45));
+        assertEquals(9000, mReceiver.seekStation(FmReceiver.SCAN_MODE_DOWN, 45));
+        // wraps around the band
+        assertEquals(10000, mReceiver.seekStation(FmReceiver.SCAN_MODE_DOWN, 45));
+
+        assertEquals(3, mReceiver.getStats().getFastSeekCount());
+        assertEquals(10000, mBackend.getFreq());
+        assertEquals(10000, mReceiver.getStatusSnapshot().getFreq());
+    }
+
+    @Test
+    public void fastSeek_honoursThreshold() throws Exception {
+        mBackend.addStation(9300, 44);
+        assertEquals(9500, fastSeekUp(45));
+        mReceiver.tuneRadio(9000);
+        assertEquals(9300, mReceiver.seekStation(FmReceiver.SCAN_MODE_UP, 40));
+    }
+
+    @Test
+    public void fastSeek_confirmsCandidateOnChip() throws Exception {
+        assertEquals(9500, fastSeekUp(45));
+        // the station has gone since the sweep, the next candidate is tried
+        mBackend.removeStation(9000);
+        assertEquals(10000, mReceiver.seekStation(FmReceiver.SCAN_MODE_DOWN, 45));
+        assertEquals(2, mReceiver.getStats().getFastSeekCount());
+    }
+
+    @Test
+    public void seekStation_withoutFastSeekUsesChip() {
+        assertEquals(9500, mReceiver.seekStation(FmReceiver.SCAN_MODE_UP, 45));
+        assertEquals(0, mReceiver.getStats().getFastSeekCount());
+    }
+
+    /* Runs the scan on another thread; true if the chip was muted at some point while it ran. */
+    private boolean mutedDuring(Runnable scan) throws InterruptedException {
+        Thread thread = new Thread(scan);
+        thread.start();
+        boolean muted = false;
+        while (thread.isAlive()) {
+            muted |= mBackend.isMuted();
+            thread.join(1);
+        }
+        return muted;
+    }
+
+    @Test
+    public void sweepBand_mutesWhileAway() throws Exception {
+        mBackend.setLatency(SimulatedTunerBackend.Op.TUNE, 1, TimeUnit.MILLISECONDS);
+        assertTrue(mutedDuring(() -> mReceiver.sweepBand(FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, null)));
+        assertFalse(mBackend.isMuted());
+        assertEquals(9000, mBackend.getFreq());
+
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.muteAudio(true));
+        mReceiver.sweepBand(FmReceiver.MIN_SIGNAL_STRENGTH_AUTO, null);
+        assertTrue(mBackend.isMuted());
+    }
+
+    @Test
+    public void scanBand_widePlanSweptChannelByChannel() {
+        mBackend.addStation(10500, 50);
+        FmBandPlan wide = FmBandPlan.of(FmBandPlan.BAND_JAPANW, FmBandPlan.SPACING_100KHZ, FmReceiver.DEEMPHASIS_50U);
+        assertTrue(wide.getChannelCount() > FmReceiver.SPECTRUM_MAX_CHANNELS);
+        assertEquals(FmReceiver.STATUS_OK, mReceiver.setBandPlan(wide));
+
+        assertArrayEquals(new int[] {9000, 9500, 10000, 10500}, mReceiver.scanBand());
+        assertEquals(9000, mBackend.getFreq());
+        assertFalse(mBackend.isMuted());
+    }
+
+    @Test
+    public void fastSeek_notUsedOnWidePlan() throws Exception {
+        mReceiver.setBandPlan(FmBandPlan.of(FmBandPlan.BAND_JAPANW, FmBandPlan.SPACING_100KHZ,
+                FmReceiver.DEEMPHASIS_50U));
+        assertEquals(9500, fastSeekUp(45));
+        assertEquals(0, mReceiver.getStats().getFastSeekCount());
+    }
+
+    @Test
+    public void estimateNoiseFloorLevel_mutesWhileSampling() throws Exception {
+        mBackend.setLatency(SimulatedTunerBackend.Op.SIGNAL, 1, TimeUnit.MILLISECONDS);
+        assertTrue(mutedDuring(() -> mReceiver.estimateNoiseFloorLevel(FmReceiver.NFL_FINE)));
+        assertFalse(mBackend.isMuted());
+        assertEquals(9000, mBackend.getFreq());
+    }
+
+    @Test
+    public void scanBand_mutesWhileReadingImages() throws Exception {
+        // shows up 100 kHz off on either side
+        mBackend.addStation(9100, 60);
+        mBackend.setLatency(SimulatedTunerBackend.Op.SIGNAL, 20, TimeUnit.MILLISECONDS);
+        int[][] stations = new int[1][];
+        assertTrue(mutedDuring(() -> stations[0] = mReceiver.scanBand()));
+        assertArrayEquals(new int[] {9000, 9100, 9500, 10000}, stations[0]);
+        assertFalse(mBackend.isMuted());
+        assertEquals(9000, mBackend.getFreq());
+    }
+}
@@ -0,0 +1,82 @@
+package com.service.fm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FmTransactionTest {
+
+    private SimulatedTunerBackend mBackend;
+    private FmReceiver mReceiver;
+
+    @Before
+    public void setUp() {
+        mBackend = new SimulatedTunerBackend(1);
+        mReceiver = new FmReceiver(mBackend);
+    }
+
+    @After
+    public void tearDown() {
+        mReceiver.finish();
+    }
+
+    @Test
+    public void execute_runsEveryCommand() {
+        FmTransaction tx = mReceiver.transaction().powerOn().tune(9870).volume(8).mute(false);
+
+        assertEquals(FmReceiver.STATUS_OK, tx.execute());
+        assertEquals(-1, tx.getFailedIndex());
+        for (int i = 0; i < tx.size(); i++) {
+            assertEquals(0, tx.getStatus(i));
+        }
+        assertTrue(mBackend.getRadioIsOn());
+        assertEquals(9870, mBackend.getFreq());
+        assertEquals(8, mBackend.getVolume());
+        assertEquals(9870, mReceiver.getStatusSnapshot().getFreq());
+    }
+
+    @Test
+    public void execute_stopsAtFirstFailure() {
+        // off the 100 kHz raster
+        FmTransaction tx = mReceiver.transaction().powerOn().tune(9875).volume(8);
+
+        assertNotEquals(FmReceiver.STATUS_OK, tx.execute());
+        assertEquals(1, tx.getFailedIndex());
+        assertEquals(0, tx.getStatus(0));
+        assertNotEquals(0, tx.getStatus(1));
+        assertEquals(FmTransaction.NOT_RUN, tx.getStatus(2));
+        assertEquals(0, mBackend.getVolume());
+    }
+
+    @Test
+    public void execute_skipsCommandsTheChipHasApplied() {
+        mReceiver.transaction().powerOn().tune(9870).volume(8).execute();
+        long skipped = mReceiver.getStats().getCommandSkippedCount();
+
+        FmTransaction preset = mReceiver.transaction().tune(9870).volume(8);
+        assertEquals(FmReceiver.STATUS_OK, preset.execute());
+        assertEquals(skipped + 2, mReceiver.getStats().getCommandSkippedCount());
+    }
+
+    @Test
+    public void clear_emptiesTransaction() {
+        FmTransaction tx = mReceiver.transaction().powerOn().tune(9870);
+        assertEquals(2, tx.size());
+        assertEquals(0, tx.clear().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_limited() {
+        FmTransaction tx = mReceiver.transaction();
+        for (int i = 0; i <= FmTransaction.MAX_OPS; i++) {
+            tx.volume(i);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getStatus_checksIndex() {
+        mReceiver.transaction().powerOn().getStatus(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.service.fm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageFilterTest {
+
+    private static final int UNKNOWN = TunerBackend.RSSI_UNKNOWN;
+
+    private PiRegistry mRegistry;
+    private ImageFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mRegistry = new PiRegistry();
+        mFilter = new ImageFilter(mRegistry);
+    }
+
+    @Test
+    public void hasNeighbours_onlyWithinReach() {
+        assertFalse(ImageFilter.hasNeighbours(new int[] {9000, 9020, 9040}));
+        assertTrue(ImageFilter.hasNeighbours(new int[] {9000, 9020, 9030}));
+        assertFalse(ImageFilter.hasNeighbours(new int[0]));
+    }
+
+    @Test
+    public void collapse_loneChannelsUntouched() {
+        int[] freqs = {9000, 9200, 9400};
+        assertSame(freqs, mFilter.collapse(freqs, new int[] {40, 50, 60}));
+    }
+
+    @Test
+    public void collapse_keepsStrongestOfCluster() {
+        int[] kept = mFilter.collapse(new int[] {9000, 9010, 9020}, new int[] {40, 52, 41});
+        assertArrayEquals(new int[] {9010}, kept);
+    }
+
+    @Test
+    public void collapse_strongestSettlesFirst() {
+        // 9020 drops 9010 first, so 9010 never gets to drop 9000
+        int[] kept = mFilter.collapse(new int[] {9000, 9010, 9020}, new int[] {45, 50, 60});
+        assertArrayEquals(new int[] {9000, 9020}, kept);
+    }
+
+    @Test
+    public void collapse_adjacentChannelNeedsMargin() {
+        int[] freqs = {9000, 9010};
+        assertArrayEquals(freqs, mFilter.collapse(freqs, new int[] {50, 50 - ImageFilter.IMAGE_MARGIN + 1}));
+        assertArrayEquals(new int[] {9000},
+                mFilter.collapse(freqs, new int[] {50, 50 - ImageFilter.IMAGE_MARGIN}));
+    }
+
+    @Test
+    public void collapse_halfChannelAlwaysImage() {
+        assertArrayEquals(new int[] {9005}, mFilter.collapse(new int[] {9000, 9005}, new int[] {49, 50}));
+    }
+
+    @Test
+    public void collapse_tieKeepsLowerChannel() {
+        assertArrayEquals(new int[] {9000}, mFilter.collapse(new int[] {9000, 9005}, new int[] {50, 50}));
+    }
+
+    @Test
+    public void collapse_unknownRssiKept() {
+        int[] freqs = {9000, 9005};
+        assertArrayEquals(freqs, mFilter.collapse(freqs, new int[] {50, UNKNOWN}));
+    }
+
+    @Test
+    public void collapse_piDecides() {
+        mRegistry.notePi(0x1234, 9000);
+        mRegistry.notePi(0x5678, 9010);
+        int[] freqs = {9000, 9010};
+        assertArrayEquals(freqs, mFilter.collapse(freqs, new int[] {60, 30}));
+
+        mRegistry.notePi(0x1234, 9010);
+        assertArrayEquals(new int[] {9000}, mFilter.collapse(freqs, new int[] {50, 48}));
+    }
+}
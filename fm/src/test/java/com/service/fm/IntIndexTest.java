@@ -0,0 +1,58 @@
+package com.service.fm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntIndexTest {
+
+    @Test
+    public void put_replacesValue() {
+        IntIndex index = new IntIndex(8);
+        index.put(0, 1);
+        index.put(0, 2);
+        assertEquals(2, index.get(0));
+        assertEquals(2, index.remove(0));
+        assertEquals(IntIndex.MISSING, index.get(0));
+        assertEquals(IntIndex.MISSING, index.remove(0));
+    }
+
+    @Test
+    public void remove_keepsRunsReachable() {
+        IntIndex index = new IntIndex(64);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(100);
+            if (random.nextBoolean() && (expected.size() < 32 || expected.containsKey(key))) {
+                index.put(key, i);
+                expected.put(key, i);
+            } else {
+                Integer value = expected.remove(key);
+                assertEquals(value == null ? IntIndex.MISSING : value, index.remove(key));
+            }
+        }
+        for (int key = 0; key < 100; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? IntIndex.MISSING : value, index.get(key));
+            assertEquals(value != null, index.containsKey(key));
+        }
+    }
+
+    @Test
+    public void clear_removesEveryKey() {
+        IntIndex index = new IntIndex(8);
+        index.put(5, 5);
+        index.clear();
+        assertFalse(index.containsKey(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void size_powerOfTwo() {
+        new IntIndex(12);
+    }
+}
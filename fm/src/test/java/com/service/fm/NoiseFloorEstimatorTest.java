@@ -0,0 +1,82 @@
+package com.service.fm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NoiseFloorEstimatorTest {
+
+    private NoiseFloorEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new NoiseFloorEstimator();
+        mEstimator.reset();
+    }
+
+    private void channel(int... reads) {
+        assertTrue(mEstimator.nextChannel());
+        for (int rssi : reads) {
+            if (!mEstimator.add(rssi)) {
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void finish_mergesEmptyChannels() {
+        channel(10, 12);
+        channel(11, 13);
+        channel(9, 11);
+
+        assertEquals(6, mEstimator.finish());
+        assertEquals(11.0, mEstimator.getMean(), 1e-9);
+        // sample deviation of 10, 12, 11, 13, 9, 11
+        assertEquals(Math.sqrt(10.0 / 5), mEstimator.getStdDev(), 1e-9);
+        assertEquals(0, mEstimator.getRejectedCount());
+    }
+
+    @Test
+    public void add_stopsOnStationRead() {
+        channel(10, 10);
+        assertTrue(mEstimator.nextChannel());
+        assertFalse(mEstimator.add(10 + NoiseFloorEstimator.STATION_MARGIN + 1));
+    }
+
+    @Test
+    public void finish_leavesOutStations() {
+        // read first, with no quiet channel to compare with yet
+        channel(45, 45);
+        channel(10, 10);
+        channel(12, 12);
+
+        assertEquals(4, mEstimator.finish());
+        assertEquals(11.0, mEstimator.getMean(), 1e-9);
+        assertEquals(1, mEstimator.getRejectedCount());
+    }
+
+    @Test
+    public void nextChannel_limited() {
+        for (int i = 0; i < NoiseFloorEstimator.MAX_CHANNELS; i++) {
+            assertTrue(mEstimator.nextChannel());
+        }
+        assertFalse(mEstimator.nextChannel());
+    }
+
+    @Test
+    public void cache_keyedByPlanLocationAndLevel() {
+        FmBandPlan plan = FmBandPlan.of(FmBandPlan.BAND_UE, FmBandPlan.SPACING_100KHZ, FmReceiver.DEEMPHASIS_75U);
+        FmBandPlan japan = FmBandPlan.of(FmBandPlan.BAND_JAPAN, FmBandPlan.SPACING_100KHZ,
+                FmReceiver.DEEMPHASIS_50U);
+        channel(10, 11);
+        mEstimator.finish();
+
+        assertEquals(11, mEstimator.put(plan, "cell", FmReceiver.NFL_MED));
+        assertEquals(11, mEstimator.get(plan, "cell", FmReceiver.NFL_LOW));
+        assertEquals(11, mEstimator.get(plan, "cell", FmReceiver.NFL_MED));
+        assertEquals(NoiseFloorEstimator.UNKNOWN, mEstimator.get(plan, "cell", FmReceiver.NFL_FINE));
+        assertEquals(NoiseFloorEstimator.UNKNOWN, mEstimator.get(plan, "other", FmReceiver.NFL_LOW));
+        assertEquals(NoiseFloorEstimator.UNKNOWN, mEstimator.get(japan, "cell", FmReceiver.NFL_LOW));
+    }
+}
@@ -0,0 +1,118 @@
+package com.service.fm;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PiRegistryTest {
+
+    private PiRegistry mRegistry;
+    private final int[] mFreqs = new int[PiRegistry.MAX_FREQUENCIES];
+    private final int[] mRssi = new int[PiRegistry.MAX_FREQUENCIES];
+
+    @Before
+    public void setUp() {
+        mRegistry = new PiRegistry();
+    }
+
+    @Test
+    public void frequencies_strongestFirst() {
+        mRegistry.notePi(0xC201, 9000);
+        mRegistry.notePi(0xC201, 9630);
+        mRegistry.notePi(0xC201, 10110);
+        mRegistry.noteRssi(9000, 30);
+        mRegistry.noteRssi(9630, 50);
+
+        assertEquals(3, mRegistry.getFrequencies(0xC201, mFreqs, mRssi));
+        assertArrayEquals(new int[] {9630, 9000, 10110}, Arrays.copyOf(mFreqs, 3));
+        assertArrayEquals(new int[] {50, 30, TunerBackend.RSSI_UNKNOWN}, Arrays.copyOf(mRssi, 3));
+        assertEquals(9630, mRegistry.getStrongestFrequency(0xC201));
+        assertEquals(1, mRegistry.size());
+    }
+
+    @Test
+    public void notePi_movesChannelToNewProgram() {
+        mRegistry.notePi(0x1111, 9000);
+        mRegistry.notePi(0x2222, 9000);
+
+        assertEquals(0x2222, mRegistry.getPi(9000));
+        assertEquals(0, mRegistry.getFrequencies(0x1111, mFreqs, null));
+        assertEquals(1, mRegistry.getFrequencies(0x2222, mFreqs, null));
+        assertTrue(mRegistry.contains(0x1111));
+    }
+
+    @Test
+    public void notePi_forgetsWeakestFrequency() {
+        for (int i = 0; i < PiRegistry.MAX_FREQUENCIES; i++) {
+            mRegistry.notePi(0xC201, 9000 + 100 * i);
+            mRegistry.noteRssi(9000 + 100 * i, 40 + i);
+        }
+        mRegistry.noteRssi(9300, 10);
+        mRegistry.notePi(0xC201, 10500);
+
+        assertEquals(PiRegistry.MAX_FREQUENCIES, mRegistry.getFrequencies(0xC201, mFreqs, null));
+        assertEquals(PiRegistry.PI_UNKNOWN, mRegistry.getPi(9300));
+        assertEquals(0xC201, mRegistry.getPi(10500));
+    }
+
+    @Test
+    public void notePi_evictsLeastRecentlyHeard() {
+        for (int pi = 0; pi < PiRegistry.MAX_PROGRAMS; pi++) {
+            mRegistry.notePi(pi, 8750 + 10 * pi);
+        }
+        // hearing program 0 again leaves program 1 the oldest
+        mRegistry.notePi(0, 8750);
+        mRegistry.notePi(0x4000, 10700);
+
+        assertEquals(PiRegistry.MAX_PROGRAMS, mRegistry.size());
+        assertTrue(mRegistry.contains(0));
+        assertFalse(mRegistry.contains(1));
+        assertTrue(mRegistry.contains(0x4000));
+        assertEquals(PiRegistry.PI_UNKNOWN, mRegistry.getPi(8760));
+        assertEquals(-1, mRegistry.getStrongestFrequency(1));
+    }
+
+    @Test
+    public void notePi_indexSurvivesManyEvictions() {
+        int programs = 3 * PiRegistry.MAX_PROGRAMS;
+        for (int pi = 0; pi < programs; pi++) {
+            mRegistry.notePi(pi * 0x101, FmBandPlan.FREQ_MIN + 5 * pi);
+        }
+        for (int pi = 0; pi < programs; pi++) {
+            assertEquals("pi " + pi, pi >= programs - PiRegistry.MAX_PROGRAMS, mRegistry.contains(pi * 0x101));
+        }
+    }
+
+    @Test
+    public void programService_onlyOfKnownProgram() {
+        char[] ps = "RADIO 1 ".toCharArray();
+        mRegistry.noteProgramService(0x1234, ps, ps.length);
+        assertFalse(mRegistry.contains(0x1234));
+
+        mRegistry.notePi(0x1234, 9870);
+        mRegistry.noteProgramService(0x1234, ps, ps.length);
+        char[] dst = new char[RdsDecoder.PS_LENGTH];
+        assertEquals("RADIO 1 ", new String(dst, 0, mRegistry.getProgramService(0x1234, dst)));
+    }
+
+    @Test
+    public void notePi_ignoresOffRasterAndNegative() {
+        mRegistry.notePi(0x1234, 9002);
+        mRegistry.notePi(-1, 9000);
+        assertEquals(0, mRegistry.size());
+        assertEquals(PiRegistry.PI_UNKNOWN, mRegistry.getPi(9002));
+    }
+
+    @Test
+    public void clear_forgetsEverything() {
+        mRegistry.notePi(0, 9000);
+        assertEquals(0, mRegistry.getPi(9000));
+        mRegistry.clear();
+        assertEquals(0, mRegistry.size());
+        assertFalse(mRegistry.contains(0));
+        assertEquals(PiRegistry.PI_UNKNOWN, mRegistry.getPi(9000));
+    }
+}
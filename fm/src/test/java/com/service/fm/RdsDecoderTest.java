@@ -0,0 +1,140 @@
+package com.service.fm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RdsDecoderTest {
+
+    private static final int PI = 0xC201;
+
+    private RdsDecoder mDecoder;
+    private final List<Integer> mFields = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mDecoder = new RdsDecoder((decoder, field) -> mFields.add(field));
+    }
+
+    /* group 0A carrying two PS chars, and AF codes in block C */
+    private void group0A(int pty, int segment, String ps, int af0, int af1) {
+        int b = (pty << 5) | segment;
+        int c = (af0 << 8) | af1;
+        int d = (ps.charAt(2 * segment) << 8) | ps.charAt(2 * segment + 1);
+        mDecoder.decodeGroup(PI, b, c, d);
+    }
+
+    private void sendPs(String ps) {
+        for (int segment = 0; segment < 4; segment++) {
+            group0A(0, segment, ps, 0, 0);
+        }
+    }
+
+    @Test
+    public void pi_confirmedBySecondGroup() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        assertEquals(-1, mDecoder.getPi());
+        assertFalse(mFields.contains(RdsDecoder.FIELD_PI));
+
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        assertEquals(PI, mDecoder.getPi());
+        assertTrue(mFields.contains(RdsDecoder.FIELD_PI));
+    }
+
+    @Test
+    public void ps_completeOnlyWithAllSegments() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        for (int segment = 0; segment < 3; segment++) {
+            group0A(0, segment, "RADIO 1 ", 0, 0);
+        }
+        assertNull(mDecoder.getProgramServiceString());
+        assertFalse(mFields.contains(RdsDecoder.FIELD_PS));
+
+        group0A(0, 3, "RADIO 1 ", 0, 0);
+        assertEquals("RADIO 1 ", mDecoder.getProgramServiceString());
+        char[] dst = new char[RdsDecoder.PS_LENGTH];
+        assertEquals(RdsDecoder.PS_LENGTH, mDecoder.getProgramService(dst));
+    }
+
+    @Test
+    public void ps_segmentsInAnyOrder() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        for (int segment : new int[] {2, 0, 3, 1}) {
+            group0A(0, segment, "NEWS FM ", 0, 0);
+        }
+        assertEquals("NEWS FM ", mDecoder.getProgramServiceString());
+    }
+
+    @Test
+    public void ps_publishedOnlyWhenChanged() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        sendPs("RADIO 1 ");
+        sendPs("RADIO 1 ");
+        sendPs("RADIO 2 ");
+        int published = 0;
+        for (int field : mFields) {
+            if (field == RdsDecoder.FIELD_PS) {
+                published++;
+            }
+        }
+        assertEquals(2, published);
+        assertEquals("RADIO 2 ", mDecoder.getProgramServiceString());
+    }
+
+    @Test
+    public void af_listCompleteAtAnnouncedLength() {
+        mDecoder.configure(RdsDecoder.FIELD_PS, true);
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        // 224 + 3 announces three entries: 88.0, 96.3 and 101.1 MHz
+        group0A(0, 0, "        ", 224 + 3, 5);
+        int[] af = new int[RdsDecoder.AF_MAX];
+        assertEquals(0, mDecoder.getAlternateFrequencies(af));
+
+        group0A(0, 1, "        ", 88, 136);
+        assertEquals(3, mDecoder.getAlternateFrequencies(af));
+        assertArrayEquals(new int[] {8800, 9630, 10110}, Arrays.copyOf(af, 3));
+        assertTrue(mFields.contains(RdsDecoder.FIELD_AF));
+    }
+
+    @Test
+    public void pty_labelFollowsStandard() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        group0A(4, 0, "        ", 0, 0);
+        group0A(4, 1, "        ", 0, 0);
+        assertEquals(4, mDecoder.getPty());
+        assertEquals("Sport", mDecoder.getProgramTypeLabel());
+
+        mDecoder.setRbds(true);
+        assertEquals("Talk", mDecoder.getProgramTypeLabel());
+        assertNull(RdsDecoder.programTypeLabel(27, true));
+        assertEquals("Oldies Music", RdsDecoder.programTypeLabel(27, false));
+        assertNull(RdsDecoder.programTypeLabel(-1, false));
+    }
+
+    @Test
+    public void groups_ofOtherPiIgnored() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        // a stray group is not taken for a new station, nor for part of this one's name
+        for (int segment = 0; segment < 4; segment++) {
+            mDecoder.decodeGroup(0x1234, segment, 0, ('X' << 8) | 'X');
+            mDecoder.decodeGroup(PI, 0, 0, 0);
+        }
+        assertEquals(PI, mDecoder.getPi());
+        assertNull(mDecoder.getProgramServiceString());
+    }
+
+    @Test
+    public void reset_forgetsStation() {
+        mDecoder.decodeGroup(PI, 0, 0, 0);
+        sendPs("RADIO 1 ");
+        mDecoder.reset();
+        assertEquals(-1, mDecoder.getPi());
+        assertNull(mDecoder.getProgramServiceString());
+    }
+}
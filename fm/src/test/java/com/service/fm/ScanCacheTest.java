@@ -0,0 +1,81 @@
+package com.service.fm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanCacheTest {
+
+    private static final int REGION = FmReceiver.FUNC_REGION_EUR;
+
+    @Test
+    public void put_storesCopy() {
+        ScanCache cache = new ScanCache();
+        int[] stations = {8800, 9630};
+        cache.put(REGION, "cell", stations);
+        stations[0] = 0;
+
+        int[] got = cache.get(REGION, "cell");
+        assertArrayEquals(new int[] {8800, 9630}, got);
+        got[1] = 0;
+        assertArrayEquals(new int[] {8800, 9630}, cache.get(REGION, "cell"));
+        assertNull(cache.get(REGION, "other"));
+        assertNull(cache.get(FmReceiver.FUNC_REGION_JP, "cell"));
+    }
+
+    @Test
+    public void put_dropsLeastRecentlyUsed() {
+        ScanCache cache = new ScanCache(2, ScanCache.TTL_DEFAULT_MS);
+        cache.put(REGION, "a", new int[] {8800});
+        cache.put(REGION, "b", new int[] {8900});
+        cache.get(REGION, "a");
+        cache.put(REGION, "c", new int[] {9000});
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(REGION, "a"));
+        assertNull(cache.get(REGION, "b"));
+        assertNotNull(cache.get(REGION, "c"));
+    }
+
+    @Test
+    public void get_expires() throws InterruptedException {
+        ScanCache cache = new ScanCache(4, 20);
+        cache.put(REGION, null, new int[] {8800});
+        assertNotNull(cache.get(REGION, null));
+        Thread.sleep(40);
+        assertNull(cache.get(REGION, null));
+        assertEquals(-1, cache.getAge(REGION, null));
+    }
+
+    @Test
+    public void invalidate_forgetsList() {
+        ScanCache cache = new ScanCache();
+        cache.put(REGION, "cell", new int[] {8800});
+        cache.invalidate(REGION, "cell");
+        assertNull(cache.get(REGION, "cell"));
+    }
+
+    @Test
+    public void writeTo_roundTrip() throws IOException {
+        ScanCache cache = new ScanCache();
+        cache.put(REGION, "a", new int[] {8800, 9630});
+        cache.put(REGION, "b", new int[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.writeTo(out);
+
+        ScanCache copy = new ScanCache();
+        copy.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, copy.size());
+        assertArrayEquals(new int[] {8800, 9630}, copy.get(REGION, "a"));
+        assertArrayEquals(new int[0], copy.get(REGION, "b"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsOtherData() throws IOException {
+        new ScanCache().readFrom(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 0}));
+    }
+}
@@ -0,0 +1,92 @@
+package com.service.fm;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StationStoreTest {
+
+    private File mFile;
+    private StationStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("stations", ".bin");
+        mFile.delete();
+        mStore = StationStore.open(mFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        mFile.delete();
+    }
+
+    private void reopen() throws IOException {
+        mStore.close();
+        mStore = StationStore.open(mFile);
+    }
+
+    @Test
+    public void favorites_sortedAndPersistent() throws IOException {
+        mStore.setFavorite(9630, true);
+        mStore.setFavorite(8800, true);
+        mStore.updateSignal(10110, 40, 1000L);
+        assertTrue(mStore.toggleFavorite(10110));
+        assertFalse(mStore.toggleFavorite(9630));
+        reopen();
+
+        assertArrayEquals(new int[] {8800, 10110}, mStore.getFavorites());
+        assertEquals(3, mStore.size());
+        assertEquals(40, mStore.getRssi(10110));
+        assertEquals(1000L, mStore.getLastSeen(10110));
+    }
+
+    @Test
+    public void updateRds_keepsPiAndName() throws IOException {
+        mStore.updateRds(9870, 0xC201, "RADIO 1");
+        reopen();
+        assertEquals(0xC201, mStore.getPi(9870));
+        assertEquals("RADIO 1", mStore.getPs(9870));
+    }
+
+    @Test
+    public void remove_keepsOtherRecordsReachable() throws IOException {
+        for (int freq = 8750; freq <= 10800; freq += 5) {
+            mStore.updateSignal(freq, freq % 100, 0);
+        }
+        for (int freq = 8750; freq <= 10800; freq += 10) {
+            assertTrue(mStore.remove(freq));
+        }
+        assertFalse(mStore.remove(8750));
+        reopen();
+
+        for (int freq = 8750; freq <= 10800; freq += 5) {
+            boolean kept = (freq - 8750) % 10 != 0;
+            assertEquals("freq " + freq, kept, mStore.contains(freq));
+            if (kept) {
+                assertEquals(freq % 100, mStore.getRssi(freq));
+            }
+        }
+    }
+
+    @Test
+    public void settings_defaultUntilSet() throws IOException {
+        assertEquals(-1, mStore.getSetting(StationStore.SETTING_VOLUME, -1));
+        mStore.putSetting(StationStore.SETTING_VOLUME, 7);
+        mStore.putFloatSetting(StationStore.SETTING_FREQUENCY, 98.7f);
+        reopen();
+        assertEquals(7, mStore.getSetting(StationStore.SETTING_VOLUME, -1));
+        assertEquals(98.7f, mStore.getFloatSetting(StationStore.SETTING_FREQUENCY, 0f), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_rejectsNonPositiveFrequency() {
+        mStore.setFavorite(0, true);
+    }
+}
@@ -22,3 +22,4 @@ dependencyResolutionManagement {
 rootProject.name = "rdafm"
 include(":app")
 include(":fm")
+include(":fm-bench")